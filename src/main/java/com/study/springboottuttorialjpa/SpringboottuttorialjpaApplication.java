@@ -2,8 +2,12 @@ package com.study.springboottuttorialjpa;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+// For the NotificationDispatcher, CurrencyRegistry, FxRateCache, PaymentPartitionManager, PaymentExportService,
+// PaymentReconciliationService and RateLimitFilter.
+@EnableScheduling
 public class SpringboottuttorialjpaApplication {
 
     public static void main(String[] args) {
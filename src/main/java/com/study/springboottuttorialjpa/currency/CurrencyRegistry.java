@@ -0,0 +1,138 @@
+package com.study.springboottuttorialjpa.currency;
+
+import com.study.springboottuttorialjpa.enums.Currency;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The currencies in which payments are accepted, and the settlement currency into which they are converted
+ * (see FxRateCache).
+ *
+ * The accepted currencies are an immutable EnumSet that is replaced as a whole when the configuration changes, so
+ * isAccepted is a single bit test without locking, and a reader never sees a half updated set.
+ * They come from currency.accepted, and can be changed at runtime through currency.accepted-file: a properties file
+ * with the same key that is checked every currency.reload-interval-ms.
+ */
+@Component
+@Slf4j
+public class CurrencyRegistry implements MeterBinder {
+
+    static final String ACCEPTED_KEY = "currency.accepted";
+
+    private final Currency settlementCurrency;
+    private final Path acceptedFile;
+
+    private final AtomicReference<Set<Currency>> accepted = new AtomicReference<>();
+    private volatile long acceptedFileModified;
+
+    /**
+     * @param accepted     comma separated currency codes, e.g. "USD,GBP,EUR".
+     * @param acceptedFile may be empty; then the accepted currencies only change through setAcceptedCurrencies.
+     */
+    @Autowired
+    public CurrencyRegistry(
+            @Value("${" + ACCEPTED_KEY + ":USD,GBP,EUR}") String accepted
+            , @Value("${currency.settlement:USD}") String settlementCurrency
+            , @Value("${currency.accepted-file:}") String acceptedFile) {
+        this.settlementCurrency = parseCurrency(settlementCurrency);
+        this.acceptedFile = acceptedFile.isBlank() ? null : Paths.get(acceptedFile);
+        setAcceptedCurrencies(parseCurrencies(accepted));
+        reload();
+    }
+
+    public boolean isAccepted(Currency currency) {
+        return currency != null && accepted.get().contains(currency);
+    }
+
+    /**
+     * @return an immutable snapshot.
+     */
+    public Set<Currency> getAcceptedCurrencies() {
+        return accepted.get();
+    }
+
+    public Currency getSettlementCurrency() {
+        return settlementCurrency;
+    }
+
+    public void setAcceptedCurrencies(Collection<Currency> currencies) {
+        Set<Currency> snapshot = Collections.unmodifiableSet(
+                currencies.isEmpty() ? EnumSet.noneOf(Currency.class) : EnumSet.copyOf(currencies));
+        Set<Currency> previous = accepted.getAndSet(snapshot);
+        if (!snapshot.equals(previous)) {
+            log.info("Accepted currencies: {}", snapshot);
+        }
+    }
+
+    /**
+     * Reads currency.accepted-file again if it has been modified since the last time.
+     * A file that can't be read or contains an unknown currency is logged and leaves the accepted currencies as
+     * they are.
+     */
+    @Scheduled(fixedDelayString = "${currency.reload-interval-ms:10000}")
+    public void reload() {
+        if (acceptedFile == null || !Files.isRegularFile(acceptedFile)) {
+            return;
+        }
+        try {
+            long modified = Files.getLastModifiedTime(acceptedFile).toMillis();
+            if (modified == acceptedFileModified) {
+                return;
+            }
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(acceptedFile)) {
+                properties.load(reader);
+            }
+            String value = properties.getProperty(ACCEPTED_KEY);
+            if (value == null) {
+                throw new IllegalArgumentException(String.format("No %s in %s", ACCEPTED_KEY, acceptedFile));
+            }
+            setAcceptedCurrencies(parseCurrencies(value));
+            acceptedFileModified = modified;
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Cannot reload the accepted currencies from {}", acceptedFile, e);
+        }
+    }
+
+    static Set<Currency> parseCurrencies(String codes) {
+        Set<Currency> currencies = EnumSet.noneOf(Currency.class);
+        for (String code : codes.split(",")) {
+            if (!code.isBlank()) {
+                currencies.add(parseCurrency(code));
+            }
+        }
+        return currencies;
+    }
+
+    private static Currency parseCurrency(String code) {
+        Currency currency = Currency.fromCode(code.trim());
+        if (currency == null) {
+            throw new IllegalArgumentException(String.format("Currency [%s] does not exist", code.trim()));
+        }
+        return currency;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("currency.accepted", accepted, a -> a.get().size())
+                .register(registry);
+    }
+}
@@ -0,0 +1,57 @@
+package com.study.springboottuttorialjpa.currency;
+
+import com.study.springboottuttorialjpa.enums.Currency;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Local stand-in for a rates provider: reads the rates from a properties file, currency.fx.file, on every fetch.
+ * A line "EUR.USD=1.08" means that one EUR is worth 1.08 USD.
+ * Used unless currency.fx.source is set to another implementation.
+ */
+@Component
+@ConditionalOnProperty(
+        value = "currency.fx.source",
+        havingValue = "file",
+        matchIfMissing = true
+)
+public class FileFxRateSource implements FxRateSource {
+
+    private final Resource file;
+
+    @Autowired
+    public FileFxRateSource(@Value("${currency.fx.file:classpath:fx-rates.properties}") Resource file) {
+        this.file = file;
+    }
+
+    @Override
+    public Map<Currency, BigDecimal> fetchRates(Currency target) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream inputStream = file.getInputStream()) {
+            properties.load(inputStream);
+        }
+        Map<Currency, BigDecimal> rates = new EnumMap<>(Currency.class);
+        for (Currency currency : Currency.values()) {
+            String rate = properties.getProperty(currency.name() + "." + target.name());
+            if (rate != null) {
+                try {
+                    rates.put(currency, new BigDecimal(rate.trim()));
+                } catch (NumberFormatException e) {
+                    throw new IOException(String.format(
+                            "Rate [%s] of %s to %s in %s is not a number", rate, currency, target, file), e);
+                }
+            }
+        }
+        return rates;
+    }
+}
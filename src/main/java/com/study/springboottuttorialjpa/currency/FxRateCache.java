@@ -0,0 +1,160 @@
+package com.study.springboottuttorialjpa.currency;
+
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.general.Money;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The exchange rates into the settlement currency (see CurrencyRegistry), fetched from the FxRateSource every
+ * currency.fx.refresh-interval-ms. Converting a payment only reads the cached rates and never calls the source.
+ *
+ * The rates of a fetch are kept together as one immutable snapshot. When no fetch has succeeded for
+ * currency.fx.maximum-age-seconds the snapshot is stale and evicted: the payments that need a conversion are
+ * refused until the source is back, rather than converted at an outdated rate.
+ */
+@Component
+@Slf4j
+public class FxRateCache implements MeterBinder {
+
+    private final FxRateSource fxRateSource;
+    private final Currency settlementCurrency;
+    private final long maximumAgeNanos;
+    private final LongSupplier nanoClock;
+
+    // Null until the first successful fetch, and after an eviction.
+    private final AtomicReference<Rates> rates = new AtomicReference<>();
+
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failedRefreshes = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Autowired
+    public FxRateCache(
+            FxRateSource fxRateSource
+            , CurrencyRegistry currencyRegistry
+            , @Value("${currency.fx.maximum-age-seconds:900}") long maximumAgeSeconds) {
+        this(fxRateSource, currencyRegistry.getSettlementCurrency(), maximumAgeSeconds, System::nanoTime);
+        // Don't refuse the first payments while waiting for the first scheduled refresh.
+        refresh();
+    }
+
+    FxRateCache(
+            FxRateSource fxRateSource
+            , Currency settlementCurrency
+            , long maximumAgeSeconds
+            , LongSupplier nanoClock) {
+        this.fxRateSource = fxRateSource;
+        this.settlementCurrency = settlementCurrency;
+        this.maximumAgeNanos = TimeUnit.SECONDS.toNanos(maximumAgeSeconds);
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @return the amount in the settlement currency, rounded half even to its minor units; the amount itself if
+     * it already is in the settlement currency.
+     * @throws IllegalStateException if there is no (fresh) rate for the currency of the amount.
+     */
+    public Money toSettlementCurrency(Money amount) {
+        Currency currency = amount.getCurrency();
+        if (currency == settlementCurrency) {
+            return amount;
+        }
+        BigDecimal rate = currentRates().get(currency);
+        if (rate == null) {
+            throw new IllegalStateException(String.format(
+                    "No exchange rate from [%s] to [%s]", currency, settlementCurrency));
+        }
+        BigDecimal converted = amount.toBigDecimal().multiply(rate)
+                .setScale(settlementCurrency.getFractionDigits(), RoundingMode.HALF_EVEN);
+        return Money.of(converted, settlementCurrency);
+    }
+
+    /**
+     * Fetches the rates from the source and replaces the cached ones.
+     * A failing fetch is logged and leaves the cached rates as they are, until they get stale.
+     */
+    @Scheduled(fixedDelayString = "${currency.fx.refresh-interval-ms:60000}")
+    public void refresh() {
+        try {
+            Map<Currency, BigDecimal> fetched = new EnumMap<>(Currency.class);
+            for (Map.Entry<Currency, BigDecimal> entry : fxRateSource.fetchRates(settlementCurrency).entrySet()) {
+                if (entry.getValue().signum() <= 0) {
+                    throw new IllegalArgumentException(String.format(
+                            "Rate %s of %s is not positive", entry.getValue(), entry.getKey()));
+                }
+                fetched.put(entry.getKey(), entry.getValue());
+            }
+            rates.set(new Rates(Collections.unmodifiableMap(fetched), nanoClock.getAsLong()));
+            refreshes.increment();
+        } catch (Exception e) {
+            failedRefreshes.increment();
+            log.warn("Cannot refresh the exchange rates to {}", settlementCurrency, e);
+        }
+    }
+
+    private Map<Currency, BigDecimal> currentRates() {
+        Rates current = rates.get();
+        if (current == null) {
+            return Collections.emptyMap();
+        }
+        if (nanoClock.getAsLong() - current.fetchedAt >= maximumAgeNanos) {
+            if (rates.compareAndSet(current, null)) {
+                evictions.increment();
+                log.warn("The exchange rates to {} are stale and have been evicted", settlementCurrency);
+            }
+            return Collections.emptyMap();
+        }
+        return current.rates;
+    }
+
+    private double ageSeconds() {
+        Rates current = rates.get();
+        return current == null
+                ? Double.NaN
+                : (nanoClock.getAsLong() - current.fetchedAt) / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("currency.fx.refreshes", refreshes, LongAdder::sum)
+                .tag("outcome", "success")
+                .register(registry);
+        FunctionCounter.builder("currency.fx.refreshes", failedRefreshes, LongAdder::sum)
+                .tag("outcome", "failure")
+                .register(registry);
+        FunctionCounter.builder("currency.fx.evictions", evictions, LongAdder::sum)
+                .register(registry);
+        Gauge.builder("currency.fx.age", this, FxRateCache::ageSeconds)
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    private static final class Rates {
+
+        private final Map<Currency, BigDecimal> rates;
+        private final long fetchedAt;
+
+        private Rates(Map<Currency, BigDecimal> rates, long fetchedAt) {
+            this.rates = rates;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
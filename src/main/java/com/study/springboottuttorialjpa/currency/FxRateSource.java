@@ -0,0 +1,21 @@
+package com.study.springboottuttorialjpa.currency;
+
+import com.study.springboottuttorialjpa.enums.Currency;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Where the exchange rates come from, e.g. a rates provider or a file.
+ * Only called by the FxRateCache, never in the request path of a payment.
+ */
+public interface FxRateSource {
+
+    /**
+     * @return per currency the source has a rate for: how many units of the target currency one unit of it is
+     * worth, e.g. EUR -> 1.08 for target USD.
+     * @throws IOException if the rates could not be fetched; the cache keeps its current rates.
+     */
+    Map<Currency, BigDecimal> fetchRates(Currency target) throws IOException;
+}
@@ -0,0 +1,25 @@
+package com.study.springboottuttorialjpa.customer;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.UUID;
+
+/**
+ * The result for one line of a bulk registration upload.
+ * Written back to the client as a single NDJSON line.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CustomerBulkRegistrationResult {
+
+    private final long line;
+    private final String phoneNumber;
+    private final CustomerRegistrationStatus status;
+    private final UUID customerId;
+    private final String message;
+}
@@ -0,0 +1,258 @@
+package com.study.springboottuttorialjpa.customer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.study.springboottuttorialjpa.utils.PhoneNumberValidator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Registers customers from an NDJSON upload: one customer JSON object per line.
+ *
+ * The upload is processed in chunks:
+ * - every record in the chunk is parsed, and the phone numbers are validated and normalized as one batch.
+ * - the phone numbers of the whole chunk are resolved with one query.
+ * - the new customers are inserted with one multi-row insert.
+ * - the result of every record is written back as an NDJSON line and flushed.
+ * Only one chunk is held in memory at a time, regardless of the size of the upload.
+ * Every new customer gets a generated id; an id in the upload is ignored.
+ */
+@Service
+@Slf4j
+public class CustomerBulkRegistrationService {
+
+    private final CustomerJdbcRepository customerJdbcRepository;
+    private final CustomerPhoneNumberCache customerPhoneNumberCache;
+    private final CustomerPhoneNumberFilter customerPhoneNumberFilter;
+    private final CustomerExistenceService customerExistenceService;
+    private final PhoneNumberValidator phoneNumberValidator;
+    private final CustomerIdGenerator customerIdGenerator;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+
+    @Autowired
+    public CustomerBulkRegistrationService(
+            CustomerJdbcRepository customerJdbcRepository
+            , CustomerPhoneNumberCache customerPhoneNumberCache
+            , CustomerPhoneNumberFilter customerPhoneNumberFilter
+            , CustomerExistenceService customerExistenceService
+            , PhoneNumberValidator phoneNumberValidator
+            , CustomerIdGenerator customerIdGenerator
+            , ObjectMapper objectMapper
+            , @Value("${customer.bulk-registration.chunk-size:500}") int chunkSize) {
+        if (chunkSize < 1 || chunkSize > CustomerJdbcRepository.MAXIMUM_INSERT_SIZE) {
+            throw new IllegalArgumentException(String.format(
+                    "The bulk registration chunk size must be 1 - %d, not %d",
+                    CustomerJdbcRepository.MAXIMUM_INSERT_SIZE, chunkSize));
+        }
+        this.customerJdbcRepository = customerJdbcRepository;
+        this.customerPhoneNumberCache = customerPhoneNumberCache;
+        this.customerPhoneNumberFilter = customerPhoneNumberFilter;
+        this.customerExistenceService = customerExistenceService;
+        this.phoneNumberValidator = phoneNumberValidator;
+        this.customerIdGenerator = customerIdGenerator;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+    }
+
+    public void registerNewCustomers(InputStream inputStream, OutputStream outputStream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        List<BulkRecord> chunk = new ArrayList<>(chunkSize);
+        long lineNumber = 0;
+        long registered = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            chunk.add(parse(lineNumber, line));
+            if (chunk.size() == chunkSize) {
+                registered += processChunk(chunk, outputStream);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            registered += processChunk(chunk, outputStream);
+        }
+        outputStream.flush();
+        log.info("Bulk registration finished: {} lines read, {} customers registered", lineNumber, registered);
+    }
+
+    private BulkRecord parse(long lineNumber, String line) {
+        Customer customer;
+        try {
+            customer = objectMapper.readValue(line, Customer.class);
+        } catch (JsonProcessingException e) {
+            return BulkRecord.rejected(lineNumber, null, CustomerRegistrationStatus.INVALID_RECORD, e.getOriginalMessage());
+        }
+        String phoneNumber = customer.getPhoneNumber();
+        if (customer.getName() == null || customer.getName().isBlank() || phoneNumber == null) {
+            return BulkRecord.rejected(lineNumber, phoneNumber, CustomerRegistrationStatus.INVALID_RECORD,
+                    "name and phoneNumber are required");
+        }
+        return new BulkRecord(lineNumber, customer);
+    }
+
+    /**
+     * Validates the phone numbers of the parsed records in one batch and replaces them by their normalized form.
+     */
+    private void normalizePhoneNumbers(List<BulkRecord> chunk) {
+        List<String> phoneNumbers = new ArrayList<>(chunk.size());
+        for (BulkRecord record : chunk) {
+            if (record.result == null) {
+                phoneNumbers.add(record.customer.getPhoneNumber());
+            }
+        }
+        String[] normalized = phoneNumberValidator.normalizeAll(phoneNumbers);
+        int i = 0;
+        for (BulkRecord record : chunk) {
+            if (record.result != null) {
+                continue;
+            }
+            String phoneNumber = normalized[i++];
+            if (phoneNumber == null) {
+                record.complete(CustomerRegistrationStatus.INVALID_PHONE_NUMBER,
+                        null, String.format("Phone Number %s is not valid", record.customer.getPhoneNumber()));
+            } else {
+                record.customer.setPhoneNumber(phoneNumber);
+            }
+        }
+    }
+
+    /**
+     * @return the number of customers that have been inserted.
+     */
+    private int processChunk(List<BulkRecord> chunk, OutputStream outputStream) throws IOException {
+        normalizePhoneNumbers(chunk);
+
+        // Only the phone numbers the filter can't rule out need to be looked up.
+        Set<String> phoneNumbers = new LinkedHashSet<>();
+        for (BulkRecord record : chunk) {
+            if (record.result == null && customerPhoneNumberFilter.mightBeRegistered(record.customer.getPhoneNumber())) {
+                phoneNumbers.add(record.customer.getPhoneNumber());
+            }
+        }
+
+        // At most one query for the whole chunk. Customers to be inserted from this chunk are added to the map as
+        // well, so duplicates within the upload are resolved the same way as existing customers, once it is known
+        // whether the first one has actually been inserted.
+        Map<String, Customer> owners = new HashMap<>(customerJdbcRepository.selectCustomersByPhoneNumbers(phoneNumbers));
+        for (String phoneNumber : phoneNumbers) {
+            if (!owners.containsKey(phoneNumber)) {
+                customerPhoneNumberFilter.falsePositive();
+            }
+        }
+        Map<String, BulkRecord> inserts = new LinkedHashMap<>();
+        List<BulkRecord> duplicates = new ArrayList<>();
+        for (BulkRecord record : chunk) {
+            if (record.result != null) {
+                continue;
+            }
+            Customer customer = record.customer;
+            Customer owner = owners.get(customer.getPhoneNumber());
+            if (owner == null) {
+                customer.setId(customerIdGenerator.nextId());
+                owners.put(customer.getPhoneNumber(), customer);
+                inserts.put(customer.getPhoneNumber(), record);
+            } else if (inserts.containsKey(customer.getPhoneNumber())) {
+                duplicates.add(record);
+            } else {
+                resolve(record, owner);
+            }
+        }
+
+        List<Customer> customers = new ArrayList<>(inserts.size());
+        for (BulkRecord record : inserts.values()) {
+            customers.add(record.customer);
+        }
+        Set<UUID> insertedIds = customerJdbcRepository.insertCustomers(customers);
+        List<BulkRecord> lost = new ArrayList<>();
+        for (BulkRecord record : inserts.values()) {
+            customerPhoneNumberFilter.registered(record.customer.getPhoneNumber());
+            // Either way the phone number is registered now, but it may have been cached as not registered.
+            customerPhoneNumberCache.invalidate(record.customer.getPhoneNumber());
+            if (insertedIds.contains(record.customer.getId())) {
+                record.complete(CustomerRegistrationStatus.REGISTERED, record.customer.getId(), null);
+                customerExistenceService.registered(record.customer.getId());
+            } else {
+                lost.add(record);
+            }
+        }
+        // The inserts that lost a race against a concurrent registration of the same number are resolved against
+        // the customers that won it, with one more query, like the phone numbers that were registered already.
+        if (!lost.isEmpty()) {
+            Set<String> lostPhoneNumbers = new LinkedHashSet<>();
+            for (BulkRecord record : lost) {
+                lostPhoneNumbers.add(record.customer.getPhoneNumber());
+            }
+            Map<String, Customer> winners = customerJdbcRepository.selectCustomersByPhoneNumbers(lostPhoneNumbers);
+            for (BulkRecord record : lost) {
+                Customer winner = winners.get(record.customer.getPhoneNumber());
+                owners.put(record.customer.getPhoneNumber(), winner);
+                resolve(record, winner);
+            }
+        }
+        for (BulkRecord record : duplicates) {
+            resolve(record, owners.get(record.customer.getPhoneNumber()));
+        }
+
+        for (BulkRecord record : chunk) {
+            outputStream.write(objectMapper.writeValueAsBytes(record.result));
+            outputStream.write('\n');
+        }
+        outputStream.flush();
+        return insertedIds.size();
+    }
+
+    /**
+     * @param owner the customer the phone number is registered to; null if that customer is unknown.
+     */
+    private static void resolve(BulkRecord record, Customer owner) {
+        if (owner != null && owner.getName().equals(record.customer.getName())) {
+            record.complete(CustomerRegistrationStatus.ALREADY_REGISTERED, owner.getId(), null);
+        } else {
+            record.complete(CustomerRegistrationStatus.PHONE_NUMBER_TAKEN, null,
+                    String.format("phone number [%s] has been taken", record.customer.getPhoneNumber()));
+        }
+    }
+
+    private static final class BulkRecord {
+
+        private final long line;
+        private final Customer customer;
+        private CustomerBulkRegistrationResult result;
+
+        private BulkRecord(long line, Customer customer) {
+            this.line = line;
+            this.customer = customer;
+        }
+
+        private static BulkRecord rejected(long line, String phoneNumber, CustomerRegistrationStatus status, String message) {
+            BulkRecord record = new BulkRecord(line, null);
+            record.result = new CustomerBulkRegistrationResult(line, phoneNumber, status, null, message);
+            return record;
+        }
+
+        private void complete(CustomerRegistrationStatus status, UUID customerId, String message) {
+            result = new CustomerBulkRegistrationResult(line, customer.getPhoneNumber(), status, customerId, message);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.study.springboottuttorialjpa.customer;
+
+import com.study.springboottuttorialjpa.utils.SizeBoundedEviction;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Answers whether a customer exists, without loading the customer.
+ *
+ * The ids of customers known to exist are kept in a size bounded, concurrent set. Customers are never deleted, so
+ * a known id stays valid; unknown ids are not remembered, because the customer may be registered at any moment.
+ * An id that is not in the set is checked with an exists query, which only needs the primary key index.
+ * The set is warmed by the registrations, so a payment for a recently registered customer doesn't reach the
+ * database at all.
+ */
+@Service
+@Slf4j
+public class CustomerExistenceService implements MeterBinder {
+
+    private static final String CACHE_NAME = "customer-id";
+
+    private final CustomerRepository customerRepository;
+    private final CustomerJdbcRepository customerJdbcRepository;
+
+    private final Set<UUID> knownIds = ConcurrentHashMap.newKeySet();
+    // Evicts arbitrary ids; they are simply looked up again.
+    private final SizeBoundedEviction eviction;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public CustomerExistenceService(
+            CustomerRepository customerRepository
+            , CustomerJdbcRepository customerJdbcRepository
+            , @Value("${customer.existence-cache.maximum-size:100000}") int maximumSize) {
+        this.customerRepository = customerRepository;
+        this.customerJdbcRepository = customerJdbcRepository;
+        this.eviction = new SizeBoundedEviction(maximumSize);
+    }
+
+    public boolean exists(UUID customerId) {
+        if (customerId == null) {
+            return false;
+        }
+        if (knownIds.contains(customerId)) {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        boolean exists = customerRepository.existsCustomerById(customerId);
+        if (exists) {
+            registered(customerId);
+        }
+        return exists;
+    }
+
+    /**
+     * Batch variant of exists: the ids that are not known yet are checked with a single query.
+     *
+     * @return the given ids of the customers that exist.
+     */
+    public Set<UUID> findExisting(Collection<UUID> customerIds) {
+        Set<UUID> existing = new HashSet<>();
+        Set<UUID> unknown = new HashSet<>();
+        for (UUID customerId : customerIds) {
+            if (customerId == null) {
+                continue;
+            }
+            if (knownIds.contains(customerId)) {
+                hits.increment();
+                existing.add(customerId);
+            } else if (unknown.add(customerId)) {
+                misses.increment();
+            }
+        }
+        for (UUID customerId : customerJdbcRepository.selectExistingCustomerIds(unknown)) {
+            registered(customerId);
+            existing.add(customerId);
+        }
+        return existing;
+    }
+
+    /**
+     * To be called whenever a customer has been registered.
+     */
+    public void registered(UUID customerId) {
+        if (knownIds.add(customerId)) {
+            eviction.evictIfFull(knownIds, id -> false, id -> true);
+        }
+    }
+
+    public long size() {
+        return knownIds.size();
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+                .tag("cache", CACHE_NAME).tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+                .tag("cache", CACHE_NAME).tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", eviction, SizeBoundedEviction::evictionCount)
+                .tag("cache", CACHE_NAME)
+                .register(registry);
+        Gauge.builder("cache.size", knownIds, Set::size)
+                .tag("cache", CACHE_NAME)
+                .register(registry);
+    }
+}
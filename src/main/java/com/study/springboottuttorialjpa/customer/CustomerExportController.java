@@ -0,0 +1,39 @@
+package com.study.springboottuttorialjpa.customer;
+
+import com.study.springboottuttorialjpa.general.ExportFormat;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+@RestController
+@RequestMapping(value = "api/v1/customer-export")
+@Slf4j
+public class CustomerExportController {
+
+    private final CustomerExportService customerExportService;
+
+    @Autowired
+    public CustomerExportController(CustomerExportService customerExportService) {
+        this.customerExportService = customerExportService;
+    }
+
+    /**
+     * Streams all customers, e.g.:
+     * GET api/v1/customer-export?format=CSV
+     * The response is written while the customers are being read; the last line reports the rows per second.
+     */
+    @GetMapping
+    public void exportCustomers(
+            @RequestParam(name = "format", defaultValue = "NDJSON") ExportFormat format,
+            HttpServletResponse response) throws IOException {
+        response.setContentType(format.getContentType());
+        response.setCharacterEncoding("UTF-8");
+        customerExportService.exportCustomers(format, response.getOutputStream());
+    }
+}
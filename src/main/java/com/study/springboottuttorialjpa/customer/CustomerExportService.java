@@ -0,0 +1,114 @@
+package com.study.springboottuttorialjpa.customer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.study.springboottuttorialjpa.general.ExportFormat;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports all customers as NDJSON or CSV.
+ *
+ * The customers are read with keyset pagination on id (see CustomerJdbcRepository.selectCustomersAfter), one page
+ * at a time, and every page is written and flushed before the next one is read.
+ * Only one page is held in memory, regardless of the size of the table.
+ *
+ * The export ends with a summary line: the number of rows, the elapsed time and the rows per second.
+ * - NDJSON: {"rows":...,"elapsedMillis":...,"rowsPerSecond":...}
+ * - CSV: a comment line, # rows=...,elapsedMillis=...,rowsPerSecond=...
+ */
+@Service
+@Slf4j
+public class CustomerExportService {
+
+    private static final String CSV_HEADER = "id,name,phoneNumber";
+
+    private final CustomerJdbcRepository customerJdbcRepository;
+    private final ObjectMapper objectMapper;
+    private final int pageSize;
+
+    @Autowired
+    public CustomerExportService(
+            CustomerJdbcRepository customerJdbcRepository
+            , ObjectMapper objectMapper
+            , @Value("${customer.export.page-size:1000}") int pageSize) {
+        this.customerJdbcRepository = customerJdbcRepository;
+        this.objectMapper = objectMapper;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return the number of customers that have been exported.
+     */
+    public long exportCustomers(ExportFormat format, OutputStream outputStream) throws IOException {
+        long start = System.nanoTime();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        long rows = 0;
+        UUID afterId = null;
+        List<Customer> page;
+        do {
+            page = customerJdbcRepository.selectCustomersAfter(afterId, pageSize);
+            for (Customer customer : page) {
+                write(format, customer, writer);
+            }
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+                rows += page.size();
+            }
+            writer.flush();
+        } while (page.size() == pageSize);
+
+        long elapsedNanos = System.nanoTime() - start;
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        long rowsPerSecond = elapsedNanos == 0 ? rows : rows * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        writeSummary(format, rows, elapsedMillis, rowsPerSecond, writer);
+        writer.flush();
+        log.info("Customer export finished: {} rows in {} ms ({} rows/s)", rows, elapsedMillis, rowsPerSecond);
+        return rows;
+    }
+
+    private void write(ExportFormat format, Customer customer, Writer writer) throws IOException {
+        if (format == ExportFormat.CSV) {
+            writer.write(String.valueOf(customer.getId()));
+            writer.write(',');
+            writer.write(ExportFormat.csvField(customer.getName()));
+            writer.write(',');
+            writer.write(ExportFormat.csvField(customer.getPhoneNumber()));
+        } else {
+            writer.write(objectMapper.writeValueAsString(customer));
+        }
+        writer.write('\n');
+    }
+
+    private void writeSummary(ExportFormat format, long rows, long elapsedMillis, long rowsPerSecond, Writer writer)
+            throws IOException {
+        if (format == ExportFormat.CSV) {
+            writer.write(String.format("# rows=%d,elapsedMillis=%d,rowsPerSecond=%d", rows, elapsedMillis, rowsPerSecond));
+        } else {
+            Map<String, Long> summary = new LinkedHashMap<>();
+            summary.put("rows", rows);
+            summary.put("elapsedMillis", elapsedMillis);
+            summary.put("rowsPerSecond", rowsPerSecond);
+            writer.write(objectMapper.writeValueAsString(summary));
+        }
+        writer.write('\n');
+    }
+}
@@ -0,0 +1,12 @@
+package com.study.springboottuttorialjpa.customer;
+
+import java.util.UUID;
+
+/**
+ * Generates the primary key of a new Customer.
+ * The implementation is selected with property customer.id-generator (time-ordered or random).
+ */
+public interface CustomerIdGenerator {
+
+    UUID nextId();
+}
@@ -0,0 +1,151 @@
+package com.study.springboottuttorialjpa.customer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Plain JDBC access to the customer table for the bulk operations (registration and export).
+ *
+ * The JPA repository is fine for single customers, but every entity it returns is kept in the persistence context.
+ * For uploads of hundreds of thousands of customers we don't want that, and we want the inserts to be sent as
+ * one statement per chunk.
+ */
+@Repository
+public class CustomerJdbcRepository {
+
+    private static final RowMapper<Customer> CUSTOMER_ROW_MAPPER = (rs, rowNum) -> new Customer(
+            rs.getObject("id", UUID.class),
+            rs.getString("name"),
+            rs.getString("phone_number"));
+
+    // Postgres takes at most 32767 bind parameters per statement; insertCustomers binds 3 per customer.
+    public static final int MAXIMUM_INSERT_SIZE = Short.MAX_VALUE / 3;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public CustomerJdbcRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Resolves all given phone numbers with a single query; no query at all when there are none.
+     *
+     * @return the registered customers keyed by phone number.
+     */
+    public Map<String, Customer> selectCustomersByPhoneNumbers(Collection<String> phoneNumbers) {
+        Map<String, Customer> customers = new HashMap<>();
+        if (phoneNumbers.isEmpty()) {
+            return customers;
+        }
+        jdbcTemplate.query(
+                "select c.id, c.name, c.phone_number from customer c where c.phone_number in (:phone_numbers)",
+                Map.of("phone_numbers", phoneNumbers),
+                rs -> {
+                    Customer customer = CUSTOMER_ROW_MAPPER.mapRow(rs, 0);
+                    customers.put(customer.getPhoneNumber(), customer);
+                });
+        return customers;
+    }
+
+    /**
+     * Resolves all given customer ids with a single index-only query; no query at all when there are none.
+     *
+     * @return the ids of the customers that exist.
+     */
+    public Set<UUID> selectExistingCustomerIds(Collection<UUID> customerIds) {
+        Set<UUID> existing = new HashSet<>();
+        if (customerIds.isEmpty()) {
+            return existing;
+        }
+        jdbcTemplate.query(
+                "select c.id from customer c where c.id in (:ids)",
+                Map.of("ids", customerIds),
+                rs -> {
+                    existing.add(rs.getObject(1, UUID.class));
+                });
+        return existing;
+    }
+
+    /**
+     * Streams all registered phone numbers. Postgres only uses a cursor (and honours the fetch size) inside a
+     * transaction, so the rows are fetched in batches of fetchSize instead of loading the whole table.
+     */
+    @Transactional(readOnly = true)
+    public void streamPhoneNumbers(int fetchSize, Consumer<String> consumer) {
+        jdbcTemplate.getJdbcOperations().query(
+                connection -> {
+                    PreparedStatement statement = connection.prepareStatement("select c.phone_number from customer c");
+                    statement.setFetchSize(fetchSize);
+                    return statement;
+                },
+                rs -> {
+                    consumer.accept(rs.getString(1));
+                });
+    }
+
+    /**
+     * Keyset pagination: the next page of customers ordered by id, starting after the given id.
+     * Every page is a range scan on the primary key index, however far into the table it is, and no page is more
+     * than limit rows.
+     *
+     * @param afterId the id of the last customer of the previous page; null for the first page.
+     */
+    public List<Customer> selectCustomersAfter(UUID afterId, int limit) {
+        if (afterId == null) {
+            return jdbcTemplate.query(
+                    "select c.id, c.name, c.phone_number from customer c order by c.id limit :limit",
+                    Map.of("limit", limit),
+                    CUSTOMER_ROW_MAPPER);
+        }
+        return jdbcTemplate.query(
+                "select c.id, c.name, c.phone_number from customer c where c.id > :after_id order by c.id limit :limit",
+                Map.of("after_id", afterId, "limit", limit),
+                CUSTOMER_ROW_MAPPER);
+    }
+
+    /**
+     * Inserts the customers, at most MAXIMUM_INSERT_SIZE, with one multi-row insert, in one transaction.
+     * A phone number that has been registered concurrently does not fail the insert; that customer is just not
+     * inserted. Which ones have been inserted is read from the returned ids, not from update counts: the driver
+     * doesn't report the count per row of a multi-row insert.
+     *
+     * @return the ids of the customers that have been inserted.
+     */
+    @Transactional
+    public Set<UUID> insertCustomers(List<Customer> customers) {
+        Set<UUID> inserted = new HashSet<>();
+        if (customers.isEmpty()) {
+            return inserted;
+        }
+        StringBuilder sql = new StringBuilder("insert into customer (id, name, phone_number) values ");
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+        for (int i = 0; i < customers.size(); i++) {
+            Customer customer = customers.get(i);
+            sql.append(i == 0 ? "" : ", ").append("(:id").append(i).append(", :name").append(i)
+                    .append(", :phone_number").append(i).append(')');
+            parameters.addValue("id" + i, customer.getId())
+                    .addValue("name" + i, customer.getName())
+                    .addValue("phone_number" + i, customer.getPhoneNumber());
+        }
+        sql.append(" on conflict (phone_number) do nothing returning id");
+        jdbcTemplate.query(sql.toString(), parameters, rs -> {
+            inserted.add(rs.getObject(1, UUID.class));
+        });
+        return inserted;
+    }
+}
@@ -0,0 +1,169 @@
+package com.study.springboottuttorialjpa.customer;
+
+import com.study.springboottuttorialjpa.utils.SizeBoundedEviction;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size bounded, TTL evicting cache in front of CustomerRepository.selectCustomerByPhoneNumber.
+ *
+ * Both outcomes of the lookup are cached: the customer, or the fact that the phone number is not registered.
+ * Reads go straight to a ConcurrentHashMap and never take a lock.
+ * The cached Customer instances are shared between callers and must not be modified.
+ *
+ * Registering through this cache invalidates the phone number, and a newly registered customer is cached straight
+ * away. A lookup that started before an invalidation does not store its (possibly outdated) result. Registrations
+ * on other instances are not seen: a phone number cached as not registered is only trusted until the TTL, and is
+ * never more than a reason to try the insert, see CustomerRepository.insertOrMatchCustomer.
+ */
+@Component
+@Slf4j
+public class CustomerPhoneNumberCache implements MeterBinder {
+
+    private static final String CACHE_NAME = "customer-phone-number";
+
+    private final CustomerRepository customerRepository;
+    private final long ttlNanos;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final SizeBoundedEviction eviction;
+    // Incremented on every invalidation. Lookups that overlap with an invalidation don't populate the cache.
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Autowired
+    public CustomerPhoneNumberCache(
+            CustomerRepository customerRepository
+            , @Value("${customer.phone-number-cache.maximum-size:10000}") int maximumSize
+            , @Value("${customer.phone-number-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.customerRepository = customerRepository;
+        this.eviction = new SizeBoundedEviction(maximumSize);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    public Optional<Customer> selectCustomerByPhoneNumber(String phoneNumber) {
+        long now = System.nanoTime();
+        Optional<Customer> cached = lookup(phoneNumber, now);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        long invalidationsBeforeLoad = invalidations.get();
+        Optional<Customer> customer = customerRepository.selectCustomerByPhoneNumber(phoneNumber)
+                // Keep a detached copy; the entity itself belongs to the persistence context of this request.
+                .map(c -> new Customer(c.getId(), c.getName(), c.getPhoneNumber()));
+        if (invalidations.get() == invalidationsBeforeLoad) {
+            put(phoneNumber, customer, now);
+        }
+        return customer;
+    }
+
+    /**
+     * Registers the customer through CustomerRepository.insertOrMatchCustomer and invalidates the phone number.
+     * A newly registered customer is cached straight away, so retries don't reach the database.
+     */
+    public CustomerRegistrationStatus registerCustomer(Customer customer) {
+        CustomerRegistrationStatus status;
+        try {
+            status = customerRepository.insertOrMatchCustomer(customer);
+        } finally {
+            invalidate(customer.getPhoneNumber());
+        }
+        if (status == CustomerRegistrationStatus.REGISTERED) {
+            put(customer.getPhoneNumber(),
+                    Optional.of(new Customer(customer.getId(), customer.getName(), customer.getPhoneNumber())),
+                    System.nanoTime());
+        }
+        return status;
+    }
+
+    /**
+     * To be called whenever a customer with this phone number is written without going through this cache.
+     */
+    public void invalidate(String phoneNumber) {
+        invalidations.incrementAndGet();
+        entries.remove(phoneNumber);
+    }
+
+    public long size() {
+        return entries.size();
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return eviction.evictionCount();
+    }
+
+    /**
+     * @return the cached outcome; null if nothing (valid) is cached.
+     */
+    private Optional<Customer> lookup(String phoneNumber, long now) {
+        Entry entry = entries.get(phoneNumber);
+        if (entry == null) {
+            return null;
+        }
+        if (now - entry.loadedAt < ttlNanos) {
+            return entry.customer;
+        }
+        if (entries.remove(phoneNumber, entry)) {
+            eviction.evicted();
+        }
+        return null;
+    }
+
+    private void put(String phoneNumber, Optional<Customer> customer, long now) {
+        entries.put(phoneNumber, new Entry(customer, now));
+        eviction.evictIfFull(entries.values(), entry -> now - entry.loadedAt >= ttlNanos, entry -> true);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", hits, LongAdder::sum)
+                .tag("cache", CACHE_NAME).tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", misses, LongAdder::sum)
+                .tag("cache", CACHE_NAME).tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", eviction, SizeBoundedEviction::evictionCount)
+                .tag("cache", CACHE_NAME)
+                .register(registry);
+        Gauge.builder("cache.size", entries, Map::size)
+                .tag("cache", CACHE_NAME)
+                .register(registry);
+    }
+
+    private static final class Entry {
+
+        private final Optional<Customer> customer;
+        private final long loadedAt;
+
+        private Entry(Optional<Customer> customer, long loadedAt) {
+            this.customer = customer;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
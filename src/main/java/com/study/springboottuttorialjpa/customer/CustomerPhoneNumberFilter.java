@@ -0,0 +1,104 @@
+package com.study.springboottuttorialjpa.customer;
+
+import com.study.springboottuttorialjpa.utils.BloomFilter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter over all registered phone numbers.
+ *
+ * Most registrations use a phone number that has never been seen. For those the filter answers
+ * "definitely not registered" without a database round trip.
+ * - The filter is built once at startup by streaming the phone numbers from the customer table.
+ * - Every successful registration adds its phone number.
+ * - Until the filter has been built every phone number "might be registered", so nothing is skipped.
+ * The unique constraint on customer.phone_number remains the final guard.
+ */
+@Component
+@Slf4j
+public class CustomerPhoneNumberFilter implements MeterBinder {
+
+    private static final int FETCH_SIZE = 10_000;
+
+    private final CustomerJdbcRepository customerJdbcRepository;
+    private final BloomFilter bloomFilter;
+    private volatile boolean ready;
+
+    // "Might be registered" answers for which the lookup found no customer.
+    private final LongAdder falsePositives = new LongAdder();
+    private final LongAdder skippedLookups = new LongAdder();
+
+    @Autowired
+    public CustomerPhoneNumberFilter(
+            CustomerJdbcRepository customerJdbcRepository
+            , @Value("${customer.phone-number-filter.expected-insertions:1000000}") long expectedInsertions
+            , @Value("${customer.phone-number-filter.false-positive-probability:0.01}") double falsePositiveProbability) {
+        this.customerJdbcRepository = customerJdbcRepository;
+        this.bloomFilter = new BloomFilter(expectedInsertions, falsePositiveProbability);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        long start = System.currentTimeMillis();
+        LongAdder count = new LongAdder();
+        customerJdbcRepository.streamPhoneNumbers(FETCH_SIZE, phoneNumber -> {
+            bloomFilter.put(phoneNumber);
+            count.increment();
+        });
+        ready = true;
+        log.info("Phone number filter built from {} customers in {} ms; expected false positive probability {}",
+                count.sum(), System.currentTimeMillis() - start, bloomFilter.expectedFalsePositiveProbability());
+    }
+
+    /**
+     * @return false if the phone number is definitely not registered.
+     */
+    public boolean mightBeRegistered(String phoneNumber) {
+        if (!ready || bloomFilter.mightContain(phoneNumber)) {
+            return true;
+        }
+        skippedLookups.increment();
+        return false;
+    }
+
+    public void registered(String phoneNumber) {
+        bloomFilter.put(phoneNumber);
+    }
+
+    /**
+     * To be called when the filter answered "might be registered" but the lookup found nothing.
+     */
+    public void falsePositive() {
+        if (ready) {
+            falsePositives.increment();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("customer.phone_number_filter.size", bloomFilter, BloomFilter::approximateElementCount)
+                .description("Approximate number of phone numbers in the filter")
+                .register(registry);
+        Gauge.builder("customer.phone_number_filter.bits", bloomFilter, BloomFilter::bitSize)
+                .register(registry);
+        Gauge.builder("customer.phone_number_filter.false_positive_probability", bloomFilter,
+                        BloomFilter::expectedFalsePositiveProbability)
+                .description("Expected false positive probability at the current fill")
+                .register(registry);
+        FunctionCounter.builder("customer.phone_number_filter.false_positives", falsePositives, LongAdder::sum)
+                .description("Lookups that were not skipped but found no customer")
+                .register(registry);
+        FunctionCounter.builder("customer.phone_number_filter.skipped_lookups", skippedLookups, LongAdder::sum)
+                .register(registry);
+    }
+}
@@ -3,21 +3,32 @@ package com.study.springboottuttorialjpa.customer;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+
 @RestController
 @RequestMapping(value = "api/v1/customer-registration")
 @Slf4j
 public class CustomerRegistrationController {
 
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+
     private final CustomerRegistrationService customerRegistrationService;
+    private final CustomerBulkRegistrationService customerBulkRegistrationService;
 
     @Autowired
-    public CustomerRegistrationController(CustomerRegistrationService customerRegistrationService) {
+    public CustomerRegistrationController(
+            CustomerRegistrationService customerRegistrationService
+            , CustomerBulkRegistrationService customerBulkRegistrationService) {
         this.customerRegistrationService = customerRegistrationService;
+        this.customerBulkRegistrationService = customerBulkRegistrationService;
     }
 
     @PutMapping
@@ -26,4 +37,16 @@ public class CustomerRegistrationController {
         log.info("request = {}", request.toString());
         customerRegistrationService.registerNewCustomer(request);
     }
+
+    /**
+     * Bulk registration.
+     * The body is read as a stream of customers, one JSON object per line (NDJSON), e.g.:
+     * {"name":"Rob","phoneNumber":"+31464332059"}
+     * The result of every line is streamed back as NDJSON while the upload is still being read.
+     */
+    @PostMapping(path = "bulk", consumes = APPLICATION_NDJSON, produces = APPLICATION_NDJSON)
+    public void registerNewCustomers(InputStream requestBody, HttpServletResponse response) throws IOException {
+        response.setContentType(APPLICATION_NDJSON);
+        customerBulkRegistrationService.registerNewCustomers(requestBody, response.getOutputStream());
+    }
 }
@@ -6,33 +6,51 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
-import java.util.UUID;
 
 @Service
 @Slf4j
 public class CustomerRegistrationService {
 
-    private final CustomerRepository customerRepository;
+    // All access to the customers by phone number goes through the cache.
+    private final CustomerPhoneNumberCache customerPhoneNumberCache;
+    private final CustomerPhoneNumberFilter customerPhoneNumberFilter;
+    private final CustomerExistenceService customerExistenceService;
     private final PhoneNumberValidator phoneNumberValidator;
+    private final CustomerIdGenerator customerIdGenerator;
 
     @Autowired
-    public CustomerRegistrationService(CustomerRepository customerRepository, PhoneNumberValidator phoneNumberValidator) {
-        this.customerRepository = customerRepository;
+    public CustomerRegistrationService(
+            CustomerPhoneNumberCache customerPhoneNumberCache
+            , CustomerPhoneNumberFilter customerPhoneNumberFilter
+            , CustomerExistenceService customerExistenceService
+            , PhoneNumberValidator phoneNumberValidator
+            , CustomerIdGenerator customerIdGenerator) {
+        this.customerPhoneNumberCache = customerPhoneNumberCache;
+        this.customerPhoneNumberFilter = customerPhoneNumberFilter;
+        this.customerExistenceService = customerExistenceService;
         this.phoneNumberValidator = phoneNumberValidator;
+        this.customerIdGenerator = customerIdGenerator;
     }
 
     public void registerNewCustomer(CustomerRegistrationRequest request) throws IllegalAccessException {
 
-        String phoneNumber = request.getCustomer().getPhoneNumber();
+        // Customers are stored and looked up by their normalized (E.164) phone number.
+        String phoneNumber = phoneNumberValidator.normalize(request.getCustomer().getPhoneNumber());
 
-        log.info("Correctness phonenumber = {}", phoneNumberValidator.test(phoneNumber));
-
-        if (!phoneNumberValidator.test(phoneNumber)) {
-            throw new IllegalStateException(String.format("Phone Number %s is not valid", phoneNumber));
+        if (phoneNumber == null) {
+            throw new IllegalStateException(String.format("Phone Number %s is not valid", request.getCustomer().getPhoneNumber()));
         }
+        request.getCustomer().setPhoneNumber(phoneNumber);
 
-        Optional<Customer> optionalCustomer = customerRepository.selectCustomerByPhoneNumber(phoneNumber);
-
+        // Only a phone number the filter can't rule out is looked up: a retry of a registration that was just done
+        // is then answered from the cache.
+        Optional<Customer> optionalCustomer = Optional.empty();
+        if (customerPhoneNumberFilter.mightBeRegistered(phoneNumber)) {
+            optionalCustomer = customerPhoneNumberCache.selectCustomerByPhoneNumber(phoneNumber);
+            if (optionalCustomer.isEmpty()) {
+                customerPhoneNumberFilter.falsePositive();
+            }
+        }
         if (optionalCustomer.isPresent()) {
             Customer customer = optionalCustomer.get();
             if (customer.getName().equals(request.getCustomer().getName())) {
@@ -40,11 +58,24 @@ public class CustomerRegistrationService {
             }
             throw new IllegalAccessException(String.format("phone number [%s] has been taken", customer.getPhoneNumber()));
         }
-        // RJWK: This is not the correct way of dealing with an ID. The ID might be duplicated.
+
+        // The insert itself tells whether the phone number is still free: it may have been registered in the meantime,
+        // or on another instance.
         if (request.getCustomer().getId() == null) {
-            request.getCustomer().setId(UUID.randomUUID());
+            request.getCustomer().setId(customerIdGenerator.nextId());
+        }
+        CustomerRegistrationStatus status = customerPhoneNumberCache.registerCustomer(request.getCustomer());
+        // Whatever the outcome, the phone number is registered now.
+        customerPhoneNumberFilter.registered(phoneNumber);
+        switch (status) {
+            case REGISTERED:
+                customerExistenceService.registered(request.getCustomer().getId());
+                return;
+            case ALREADY_REGISTERED:
+                return;
+            default:
+                throw new IllegalAccessException(String.format("phone number [%s] has been taken", phoneNumber));
         }
-        customerRepository.save(request.getCustomer());
     }
 
 }
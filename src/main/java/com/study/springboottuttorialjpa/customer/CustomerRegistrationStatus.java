@@ -0,0 +1,16 @@
+package com.study.springboottuttorialjpa.customer;
+
+/**
+ * Outcome of registering a single customer.
+ */
+public enum CustomerRegistrationStatus {
+
+    REGISTERED,
+    // The phone number is already registered with the same name.
+    ALREADY_REGISTERED,
+    // The phone number is registered for a different customer.
+    PHONE_NUMBER_TAKEN,
+    INVALID_PHONE_NUMBER,
+    // The record could not be parsed or misses required fields.
+    INVALID_RECORD
+}
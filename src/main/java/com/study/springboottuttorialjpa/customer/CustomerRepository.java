@@ -5,6 +5,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 import java.util.UUID;
@@ -12,6 +13,39 @@ import java.util.UUID;
 @Repository
 public interface CustomerRepository extends JpaRepository<Customer, UUID> {
 
-    @Query(value = "select c.id, c.name, c.phone_number from customer c where c.phone_number = :phone_number", nativeQuery = true)
+    // Phone numbers are stored normalized (E.164), see PhoneNumberValidator.normalize.
+    @Query("select c from customer c where c.phoneNumber = :phone_number")
     Optional<Customer> selectCustomerByPhoneNumber(@Param("phone_number") String phoneNumber);
+
+    // Only needs the primary key index; the customer itself is not loaded.
+    // Read-write, so it is answered by the primary: a customer that has just registered may not be on a replica yet.
+    @Transactional
+    @Query(value = "select exists (select 1 from customer c where c.id = :id)", nativeQuery = true)
+    boolean existsCustomerById(@Param("id") UUID id);
+
+    /**
+     * Registers the customer with one atomic statement.
+     * - No customer with the phone number: the row is inserted and true is returned (xmax = 0 for a new row).
+     * - A customer with the phone number and the same name: the existing row is kept and false is returned.
+     *   (The no-op update is what makes Postgres return the existing row.)
+     * - A customer with the phone number and another name: nothing is returned.
+     * Concurrent registrations of the same phone number wait for each other on the unique index instead of both
+     * passing a separate check.
+     *
+     * The explicit @Transactional is needed because query methods inherit a read-only transaction.
+     */
+    @Transactional
+    @Query(value = "insert into customer (id, name, phone_number) values (:id, :name, :phone_number) " +
+            "on conflict (phone_number) do update set name = excluded.name where customer.name = excluded.name " +
+            "returning (xmax = 0)", nativeQuery = true)
+    Optional<Boolean> insertCustomerOnConflict(
+            @Param("id") UUID id,
+            @Param("name") String name,
+            @Param("phone_number") String phoneNumber);
+
+    default CustomerRegistrationStatus insertOrMatchCustomer(Customer customer) {
+        return insertCustomerOnConflict(customer.getId(), customer.getName(), customer.getPhoneNumber())
+                .map(inserted -> inserted ? CustomerRegistrationStatus.REGISTERED : CustomerRegistrationStatus.ALREADY_REGISTERED)
+                .orElse(CustomerRegistrationStatus.PHONE_NUMBER_TAKEN);
+    }
 }
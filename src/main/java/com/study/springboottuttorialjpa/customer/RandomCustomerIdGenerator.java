@@ -0,0 +1,23 @@
+package com.study.springboottuttorialjpa.customer;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+
+/**
+ * Random (version 4) UUIDs.
+ * Consecutive ids land on random pages of the primary key index.
+ */
+@Service
+@ConditionalOnProperty(
+        value = "customer.id-generator",
+        havingValue = "random"
+)
+public class RandomCustomerIdGenerator implements CustomerIdGenerator {
+
+    @Override
+    public UUID nextId() {
+        return UUID.randomUUID();
+    }
+}
@@ -0,0 +1,73 @@
+package com.study.springboottuttorialjpa.customer;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Time ordered (version 7) UUIDs.
+ *
+ * Resource:
+ * - https://www.rfc-editor.org/rfc/rfc9562#name-uuid-version-7
+ *
+ * Layout (most significant bit first):
+ * - 48 bits: unix timestamp in milliseconds.
+ * - 4 bits: version (7).
+ * - 12 bits: counter within the millisecond (RFC 9562 method 1), so ids of one instance are strictly increasing.
+ * - 2 bits: variant.
+ * - 62 bits: random.
+ *
+ * Because new ids are always larger than the previous ones, inserts go to the right-most page of the primary key
+ * index instead of to a random page.
+ *
+ * The timestamp and counter are kept in one AtomicLong and advanced with compare-and-set: no locks.
+ * When more than 4096 ids are requested within one millisecond, or the clock goes backwards, the counter simply
+ * runs on into the next millisecond so the ids stay increasing.
+ *
+ * The random bits come from ThreadLocalRandom. The ids are keys, not secrets.
+ */
+@Service
+@ConditionalOnProperty(
+        value = "customer.id-generator",
+        havingValue = "time-ordered",
+        matchIfMissing = true
+)
+public class TimeOrderedCustomerIdGenerator implements CustomerIdGenerator {
+
+    private static final int COUNTER_BITS = 12;
+
+    private final LongSupplier clock;
+    // (timestamp << COUNTER_BITS) | counter of the last id handed out.
+    private final AtomicLong lastTimestampAndCounter = new AtomicLong();
+
+    public TimeOrderedCustomerIdGenerator() {
+        this(System::currentTimeMillis);
+    }
+
+    TimeOrderedCustomerIdGenerator(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public UUID nextId() {
+        long timestampAndCounter;
+        long last;
+        do {
+            last = lastTimestampAndCounter.get();
+            timestampAndCounter = clock.getAsLong() << COUNTER_BITS;
+            if (timestampAndCounter <= last) {
+                timestampAndCounter = last + 1;
+            }
+        } while (!lastTimestampAndCounter.compareAndSet(last, timestampAndCounter));
+
+        long timestamp = timestampAndCounter >>> COUNTER_BITS;
+        long counter = timestampAndCounter & ((1L << COUNTER_BITS) - 1);
+        long mostSignificantBits = (timestamp << 16) | 0x7000L | counter;
+        long leastSignificantBits = (ThreadLocalRandom.current().nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+}
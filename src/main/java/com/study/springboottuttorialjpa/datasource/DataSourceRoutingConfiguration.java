@@ -0,0 +1,67 @@
+package com.study.springboottuttorialjpa.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * With datasource.routing.enabled the application runs against a primary (spring.datasource) and the replicas in
+ * datasource.replica.urls, see ReplicaRoutingDataSource.
+ *
+ * Read-only transactions are @Transactional(readOnly = true), and the query methods of the Spring Data repositories
+ * that don't declare a transaction of their own. For those JpaTransactionManager also makes the Hibernate session
+ * read-only and doesn't flush it: the loaded entities are not dirty checked.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "datasource.routing.enabled", havingValue = "true")
+public class DataSourceRoutingConfiguration {
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            DataSourceProperties primaryProperties
+            , @Value("${datasource.replica.urls:}") String replicaUrls
+            , @Value("${datasource.replica.username:${spring.datasource.username:}}") String replicaUsername
+            , @Value("${datasource.replica.password:${spring.datasource.password:}}") String replicaPassword
+            , @Value("${datasource.replica.maximum-pool-size:10}") int replicaMaximumPoolSize) {
+        HikariDataSource primary = primaryProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        primary.setPoolName("primary");
+
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls.split(",")) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariDataSource replica = primaryProperties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(url.trim())
+                    .username(replicaUsername)
+                    .password(replicaPassword)
+                    .build();
+            replica.setPoolName("replica-" + replicas.size());
+            replica.setMaximumPoolSize(replicaMaximumPoolSize);
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+        return new ReplicaRoutingDataSource(primary, replicas);
+    }
+
+    /**
+     * The DataSource of JPA and the JdbcTemplates.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+}
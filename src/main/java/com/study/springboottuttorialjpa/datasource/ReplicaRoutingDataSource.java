@@ -0,0 +1,104 @@
+package com.study.springboottuttorialjpa.datasource;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends the connections of read-only transactions round robin to the replicas, and all other connections to the
+ * primary. Writes, and reads outside a transaction, always go to the primary.
+ *
+ * The decision is made when the connection is taken, so this must sit behind a LazyConnectionDataSourceProxy (see
+ * DataSourceRoutingConfiguration): the transaction managers take the connection before they mark the transaction
+ * read-only, the proxy postpones it to the first statement.
+ *
+ * A replica lags behind the primary. Reads that must see what has just been written (e.g. the idempotency keys)
+ * need a read-write transaction.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements MeterBinder, AutoCloseable {
+
+    static final String PRIMARY = "primary";
+
+    private final List<DataSource> dataSources = new ArrayList<>();
+    private final List<String> replicaKeys = new ArrayList<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    private final LongAdder primaryConnections = new LongAdder();
+    private final LongAdder replicaConnections = new LongAdder();
+
+    /**
+     * @param replicas may be empty; then everything goes to the primary.
+     */
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        dataSources.add(primary);
+        for (DataSource replica : replicas) {
+            String key = "replica-" + replicaKeys.size();
+            targets.put(key, replica);
+            replicaKeys.add(key);
+            dataSources.add(replica);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        // Unknown keys are a bug here, not a reason to quietly fall back to the primary.
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (replicaKeys.isEmpty() || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            primaryConnections.increment();
+            return PRIMARY;
+        }
+        replicaConnections.increment();
+        return replicaKeys.get(Math.floorMod(nextReplica.getAndIncrement(), replicaKeys.size()));
+    }
+
+    public long primaryConnectionCount() {
+        return primaryConnections.sum();
+    }
+
+    public long replicaConnectionCount() {
+        return replicaConnections.sum();
+    }
+
+    /**
+     * Closes the connection pools of the primary and the replicas.
+     */
+    @Override
+    public void close() {
+        for (DataSource dataSource : dataSources) {
+            if (dataSource instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) dataSource).close();
+                } catch (Exception e) {
+                    log.warn("Cannot close {}", dataSource, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("datasource.routing.connections", primaryConnections, LongAdder::sum)
+                .tag("target", PRIMARY)
+                .register(registry);
+        FunctionCounter.builder("datasource.routing.connections", replicaConnections, LongAdder::sum)
+                .tag("target", "replica")
+                .register(registry);
+    }
+}
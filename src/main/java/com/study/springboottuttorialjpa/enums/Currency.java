@@ -1,30 +1,45 @@
 package com.study.springboottuttorialjpa.enums;
 
-import antlr.StringUtils;
-
-import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
+/**
+ * fractionDigits: the number of digits after the decimal point of an amount, as in ISO 4217 (e.g. 2 for cents).
+ * Amounts are kept in minor units, see Money.
+ */
 public enum Currency {
 
-    USD,
-    GBP,
-    EUR;
+    USD(2),
+    GBP(2),
+    EUR(2);
 
-    public static Boolean doesExist(String name) {
+    // Looked up on every request; values() would copy the array on each call.
+    private static final Map<String, Currency> BY_NAME = new HashMap<>();
 
-        for (Currency currency: Currency.values()) {
-            if (currency.name().equals(name)) {
-                return true;
-            }
+    static {
+        for (Currency currency : values()) {
+            BY_NAME.put(currency.name(), currency);
         }
-        return false;
-
-//        Arrays.stream(Currency.values()).anyMatch( currency -> {
-//            if (currency.name().equals(name)) {
-//                return true;
-//            }
-//            return false;
-//        });
-//        return false;
+    }
+
+    private final int fractionDigits;
+
+    Currency(int fractionDigits) {
+        this.fractionDigits = fractionDigits;
+    }
+
+    public int getFractionDigits() {
+        return fractionDigits;
+    }
+
+    public static Boolean doesExist(String name) {
+        return BY_NAME.containsKey(name);
+    }
+
+    /**
+     * @return the currency with this (ISO 4217) code; null if there is none.
+     */
+    public static Currency fromCode(String code) {
+        return BY_NAME.get(code);
     }
 }
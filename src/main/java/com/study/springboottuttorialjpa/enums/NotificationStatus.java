@@ -0,0 +1,13 @@
+package com.study.springboottuttorialjpa.enums;
+
+/**
+ * PENDING: waiting to be sent, possibly after failed attempts.
+ * SENT: handed over to the NotificationSender.
+ * FAILED: given up after notification.dispatcher.maximum-attempts attempts.
+ */
+public enum NotificationStatus {
+
+    PENDING,
+    SENT,
+    FAILED
+}
@@ -0,0 +1,17 @@
+package com.study.springboottuttorialjpa.enums;
+
+/**
+ * PENDING: the payment has been accepted, but the card has not been charged yet. A payment that stays PENDING
+ *          is charged by the PendingPaymentSweeper.
+ * SUCCEEDED: the card has been debited.
+ * FAILED: the card has not been debited.
+ * UNKNOWN: the card processor did not answer in time, or failed without a definite answer; the card may or may
+ *          not have been debited. It is settled by the PaymentSettlementService.
+ */
+public enum PaymentStatus {
+
+    PENDING,
+    SUCCEEDED,
+    FAILED,
+    UNKNOWN
+}
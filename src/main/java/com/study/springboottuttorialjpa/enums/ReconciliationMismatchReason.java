@@ -0,0 +1,18 @@
+package com.study.springboottuttorialjpa.enums;
+
+/**
+ * Why a payment doesn't match the charge at the card processor, see PaymentReconciliationService.
+ * MISSING_CHARGE_ID: the payment SUCCEEDED, but has no charge id to check it against.
+ * CHARGE_NOT_FOUND: the card processor doesn't know the charge of the payment.
+ * NOT_DEBITED: the payment SUCCEEDED, but the card has not been debited (or has been refunded).
+ * DEBITED_NOT_SUCCEEDED: the card has been debited, but the payment did not succeed.
+ * AMOUNT_DIFFERS: the charge is for another amount or currency than the payment.
+ */
+public enum ReconciliationMismatchReason {
+
+    MISSING_CHARGE_ID,
+    CHARGE_NOT_FOUND,
+    NOT_DEBITED,
+    DEBITED_NOT_SUCCEEDED,
+    AMOUNT_DIFFERS
+}
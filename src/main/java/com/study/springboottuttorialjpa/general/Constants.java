@@ -1,11 +0,0 @@
-package com.study.springboottuttorialjpa.general;
-
-import com.study.springboottuttorialjpa.enums.Currency;
-
-import java.util.List;
-
-public class Constants {
-
-    public static final List<Currency> ACCEPTED_CURRENCIES = List.of(Currency.USD, Currency.GBP);
-
-}
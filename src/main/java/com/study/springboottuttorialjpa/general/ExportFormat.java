@@ -0,0 +1,39 @@
+package com.study.springboottuttorialjpa.general;
+
+/**
+ * The formats in which data can be exported.
+ * - NDJSON: one JSON object per line.
+ * - CSV: a header line followed by one line per row.
+ */
+public enum ExportFormat {
+
+    NDJSON("application/x-ndjson"),
+    CSV("text/csv");
+
+    private final String contentType;
+
+    ExportFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Quotes a CSV field if needed (RFC 4180): fields containing a comma, quote or line break are enclosed in
+     * quotes, and quotes within the field are doubled.
+     */
+    public static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + value.replace("\"", "\"\"") + '"';
+            }
+        }
+        return value;
+    }
+}
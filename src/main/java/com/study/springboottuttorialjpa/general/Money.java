@@ -0,0 +1,222 @@
+package com.study.springboottuttorialjpa.general;
+
+import com.study.springboottuttorialjpa.enums.Currency;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * An amount of money: a long in minor units of the currency (e.g. cents), plus the currency.
+ *
+ * Used instead of BigDecimal, which allocates for every parse, comparison and hash code.
+ * - Totals are kept as a long in minor units and added to with addTo, which doesn't allocate; an overflow throws an
+ *   ArithmeticException instead of wrapping around.
+ * - compareTo, equals and hashCode don't allocate.
+ * - parseMinorUnits reads a decimal string straight into minor units and appendTo writes it back, neither with an
+ *   intermediate BigDecimal or String.
+ * Instances are immutable.
+ *
+ * Mapped as an embeddable onto the (bigint) amount and currency columns of the owning entity.
+ */
+@Embeddable
+public final class Money implements Comparable<Money> {
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L
+    };
+
+    @Column(name = "amount")
+    private long minorUnits;
+
+    @Column(name = "currency")
+    private Currency currency;
+
+    // For JPA.
+    protected Money() {
+    }
+
+    private Money(long minorUnits, Currency currency) {
+        this.minorUnits = minorUnits;
+        this.currency = Objects.requireNonNull(currency, "currency");
+    }
+
+    public static Money ofMinorUnits(long minorUnits, Currency currency) {
+        return new Money(minorUnits, currency);
+    }
+
+    /**
+     * @param amount a decimal string like "10", "10.5" or "-10.50", with at most currency.fractionDigits decimals.
+     * @throws NumberFormatException if the amount is not such a decimal string or doesn't fit in a long.
+     */
+    public static Money parse(CharSequence amount, Currency currency) {
+        return new Money(parseMinorUnits(amount, currency.getFractionDigits()), currency);
+    }
+
+    /**
+     * @throws ArithmeticException if the amount has more decimals than the currency or doesn't fit in a long.
+     */
+    public static Money of(BigDecimal amount, Currency currency) {
+        return new Money(amount.movePointRight(currency.getFractionDigits()).longValueExact(), currency);
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    /**
+     * Adds the amount to a total in minor units, without creating a Money: for totals that are kept as a long.
+     *
+     * @throws IllegalArgumentException if the amount is not in the currency of the total.
+     * @throws ArithmeticException      if the sum doesn't fit in a long.
+     */
+    public long addTo(long totalMinorUnits, Currency totalCurrency) {
+        if (currency != totalCurrency) {
+            throw currencyMismatch(currency, totalCurrency);
+        }
+        return Math.addExact(totalMinorUnits, minorUnits);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        checkCurrency(other);
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, currency.getFractionDigits());
+    }
+
+    /**
+     * @return the amount as a decimal string with exactly currency.fractionDigits decimals, e.g. "10.50".
+     */
+    public String toDecimalString() {
+        return appendTo(new StringBuilder(24)).toString();
+    }
+
+    /**
+     * Writes the amount as toDecimalString does, without creating intermediate objects.
+     */
+    public StringBuilder appendTo(StringBuilder builder) {
+        int fractionDigits = currency.getFractionDigits();
+        long value = minorUnits;
+        if (value < 0) {
+            builder.append('-');
+        }
+        long unit = POWERS_OF_TEN[fractionDigits];
+        // Negating Long.MIN_VALUE overflows, so work on the negative remainders.
+        long whole = Math.abs(value / unit);
+        long fraction = Math.abs(value % unit);
+        builder.append(whole);
+        if (fractionDigits > 0) {
+            builder.append('.');
+            for (int i = fractionDigits - 1; i > 0 && fraction < POWERS_OF_TEN[i]; i--) {
+                builder.append('0');
+            }
+            builder.append(fraction);
+        }
+        return builder;
+    }
+
+    /**
+     * Parses a decimal string into minor units, e.g. "10.5" with 2 fraction digits is 1050.
+     * Reads the characters once and allocates nothing.
+     *
+     * @throws NumberFormatException if the amount is not a decimal string with at most fractionDigits decimals, or
+     *                               doesn't fit in a long.
+     */
+    public static long parseMinorUnits(CharSequence amount, int fractionDigits) {
+        int length = amount.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (amount.charAt(i) == '-' || amount.charAt(i) == '+')) {
+            negative = amount.charAt(i) == '-';
+            i++;
+        }
+        long value = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; i < length; i++) {
+            char c = amount.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (decimals >= 0 && ++decimals > fractionDigits) {
+                    throw new NumberFormatException(String.format(
+                            "Amount [%s] has more than %d decimals", amount, fractionDigits));
+                }
+                // Accumulate negatively: the range of negative longs is one larger.
+                value = subtractExact(multiplyExact(value, 10, amount), c - '0', amount);
+                digits++;
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                throw new NumberFormatException(String.format("Amount [%s] is not a decimal number", amount));
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException(String.format("Amount [%s] is not a decimal number", amount));
+        }
+        for (int scale = Math.max(decimals, 0); scale < fractionDigits; scale++) {
+            value = multiplyExact(value, 10, amount);
+        }
+        if (negative) {
+            return value;
+        }
+        if (value == Long.MIN_VALUE) {
+            throw tooLarge(amount);
+        }
+        return -value;
+    }
+
+    private void checkCurrency(Money other) {
+        if (currency != other.currency) {
+            throw currencyMismatch(other.currency, currency);
+        }
+    }
+
+    private static IllegalArgumentException currencyMismatch(Currency currency, Currency expected) {
+        return new IllegalArgumentException(String.format("Currency [%s] does not match [%s]", currency, expected));
+    }
+
+    private static long multiplyExact(long value, int factor, CharSequence amount) {
+        try {
+            return Math.multiplyExact(value, factor);
+        } catch (ArithmeticException e) {
+            throw tooLarge(amount);
+        }
+    }
+
+    private static long subtractExact(long value, int digit, CharSequence amount) {
+        try {
+            return Math.subtractExact(value, digit);
+        } catch (ArithmeticException e) {
+            throw tooLarge(amount);
+        }
+    }
+
+    private static NumberFormatException tooLarge(CharSequence amount) {
+        return new NumberFormatException(String.format("Amount [%s] is too large", amount));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Money money = (Money) o;
+        return minorUnits == money.minorUnits && currency == money.currency;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(minorUnits) + (currency == null ? 0 : currency.ordinal());
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder(28)).append(' ').append(currency).toString();
+    }
+}
@@ -0,0 +1,30 @@
+package com.study.springboottuttorialjpa.general;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+
+/**
+ * Writes the amount of a Money as a JSON number with the decimals of its currency, e.g. 10.50.
+ * The currency is left to a property of its own, as in the JSON of Payment; read the amount back with
+ * Money.parse(text, currency).
+ *
+ * The number is written from a reused buffer, without a BigDecimal or String in between.
+ */
+public class MoneyJsonSerializer extends JsonSerializer<Money> {
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(24));
+    private static final ThreadLocal<char[]> CHARS = ThreadLocal.withInitial(() -> new char[24]);
+
+    @Override
+    public void serialize(Money money, JsonGenerator generator, SerializerProvider serializers) throws IOException {
+        StringBuilder builder = BUFFER.get();
+        builder.setLength(0);
+        money.appendTo(builder);
+        char[] chars = CHARS.get();
+        builder.getChars(0, builder.length(), chars, 0);
+        generator.writeNumber(chars, 0, builder.length());
+    }
+}
@@ -0,0 +1,24 @@
+package com.study.springboottuttorialjpa.notification;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Local stand-in for an SMS provider: only logs the notification.
+ * Used unless notification.sender is set to another implementation.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(
+        value = "notification.sender",
+        havingValue = "log",
+        matchIfMissing = true
+)
+public class LoggingNotificationSender implements NotificationSender {
+
+    @Override
+    public void send(Notification notification) {
+        log.info("SMS to {}: {}", notification.getPhoneNumber(), notification.getMessage());
+    }
+}
@@ -0,0 +1,21 @@
+package com.study.springboottuttorialjpa.notification;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A claimed outbox row, ready to be sent to the phone number of the customer.
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class Notification {
+
+    private final long id;
+    private final long paymentId;
+    private final String phoneNumber;
+    private final String message;
+}
@@ -0,0 +1,103 @@
+package com.study.springboottuttorialjpa.notification;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends the notifications of the payment_notification outbox in the background, so the latency of a payment
+ * doesn't depend on the notification channel.
+ *
+ * Every notification.dispatcher.interval-ms the outbox is drained in batches of notification.dispatcher.batch-size.
+ * Per batch, in one transaction: the due notifications are claimed (SKIP LOCKED), sent one by one through the
+ * NotificationSender, and marked sent or failed with one update each.
+ * A notification is sent at least once: if the instance dies before the commit, the batch is sent again.
+ *
+ * Metrics: notification.dispatched, tagged outcome=sent/failed.
+ */
+@Component
+@Slf4j
+public class NotificationDispatcher implements MeterBinder {
+
+    private final NotificationOutboxRepository notificationOutboxRepository;
+    private final NotificationSender notificationSender;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maximumAttempts;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @Autowired
+    public NotificationDispatcher(
+            NotificationOutboxRepository notificationOutboxRepository
+            , NotificationSender notificationSender
+            , PlatformTransactionManager transactionManager
+            , @Value("${notification.dispatcher.batch-size:100}") int batchSize
+            , @Value("${notification.dispatcher.maximum-attempts:5}") int maximumAttempts) {
+        this.notificationOutboxRepository = notificationOutboxRepository;
+        this.notificationSender = notificationSender;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.maximumAttempts = maximumAttempts;
+    }
+
+    @Scheduled(
+            initialDelayString = "${notification.dispatcher.interval-ms:1000}",
+            fixedDelayString = "${notification.dispatcher.interval-ms:1000}"
+    )
+    public void dispatch() {
+        Integer claimed;
+        do {
+            claimed = transactionTemplate.execute(status -> dispatchBatch());
+        } while (claimed != null && claimed == batchSize);
+    }
+
+    /**
+     * @return the number of notifications claimed.
+     */
+    int dispatchBatch() {
+        List<Notification> notifications = notificationOutboxRepository.claimPending(batchSize);
+        if (notifications.isEmpty()) {
+            return 0;
+        }
+        List<Long> sentIds = new ArrayList<>(notifications.size());
+        List<Long> failedIds = new ArrayList<>();
+        for (Notification notification : notifications) {
+            try {
+                notificationSender.send(notification);
+                sentIds.add(notification.getId());
+            } catch (RuntimeException e) {
+                log.warn("Sending notification {} of payment {} failed",
+                        notification.getId(), notification.getPaymentId(), e);
+                failedIds.add(notification.getId());
+            }
+        }
+        notificationOutboxRepository.markSent(sentIds);
+        notificationOutboxRepository.markFailed(failedIds, maximumAttempts);
+        sent.add(sentIds.size());
+        failed.add(failedIds.size());
+        return notifications.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("notification.dispatched", sent, LongAdder::sum)
+                .tag("outcome", "sent")
+                .register(registry);
+        FunctionCounter.builder("notification.dispatched", failed, LongAdder::sum)
+                .tag("outcome", "failed")
+                .register(registry);
+    }
+}
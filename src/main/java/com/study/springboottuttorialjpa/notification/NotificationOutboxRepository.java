@@ -0,0 +1,107 @@
+package com.study.springboottuttorialjpa.notification;
+
+import com.study.springboottuttorialjpa.enums.NotificationStatus;
+import com.study.springboottuttorialjpa.payment.Payment;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plain JDBC access to the payment_notification outbox.
+ *
+ * None of the methods starts a transaction of its own: insertNotifications must join the transaction that writes
+ * the payments, and the rows claimed by claimPending stay locked until the transaction of the caller ends.
+ */
+@Repository
+public class NotificationOutboxRepository {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public NotificationOutboxRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Adds a PENDING notification for every payment, as one JDBC batch.
+     */
+    public void insertNotifications(List<Payment> payments) {
+        if (payments.isEmpty()) {
+            return;
+        }
+        SqlParameterSource[] batch = new SqlParameterSource[payments.size()];
+        for (int i = 0; i < batch.length; i++) {
+            Payment payment = payments.get(i);
+            batch[i] = new MapSqlParameterSource()
+                    .addValue("payment_id", payment.getPaymentId())
+                    .addValue("customer_id", payment.getCustomerId())
+                    .addValue("message", message(payment))
+                    .addValue("status", NotificationStatus.PENDING.name());
+        }
+        jdbcTemplate.batchUpdate(
+                "insert into payment_notification " +
+                        "(payment_id, customer_id, message, status, attempts, created_at, next_attempt_at) " +
+                        "values (:payment_id, :customer_id, :message, :status, 0, now(), now())",
+                batch);
+    }
+
+    /**
+     * Locks up to limit PENDING notifications that are due, oldest first.
+     * Rows locked by another dispatcher are skipped instead of waited for (SKIP LOCKED), so any number of
+     * instances can dispatch at the same time without sending a notification twice.
+     */
+    public List<Notification> claimPending(int limit) {
+        return jdbcTemplate.query(
+                "select n.id, n.payment_id, n.message, c.phone_number " +
+                        "from payment_notification n join customer c on c.id = n.customer_id " +
+                        "where n.status = :status and n.next_attempt_at <= now() " +
+                        "order by n.next_attempt_at, n.id " +
+                        "limit :limit " +
+                        "for update of n skip locked",
+                Map.of("status", NotificationStatus.PENDING.name(), "limit", limit),
+                (rs, rowNum) -> new Notification(
+                        rs.getLong("id"),
+                        rs.getLong("payment_id"),
+                        rs.getString("phone_number"),
+                        rs.getString("message")));
+    }
+
+    public int markSent(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update(
+                "update payment_notification " +
+                        "set status = :status, attempts = attempts + 1, sent_at = now() " +
+                        "where id in (:ids)",
+                Map.of("status", NotificationStatus.SENT.name(), "ids", ids));
+    }
+
+    /**
+     * Schedules another attempt with exponential backoff (2, 4, 8, ... seconds), or gives up after
+     * maximumAttempts attempts.
+     */
+    public int markFailed(Collection<Long> ids, int maximumAttempts) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update(
+                "update payment_notification " +
+                        "set attempts = attempts + 1, " +
+                        "status = case when attempts + 1 >= :maximum_attempts then :failed else status end, " +
+                        "next_attempt_at = now() + make_interval(secs => power(2, attempts + 1)) " +
+                        "where id in (:ids)",
+                Map.of("maximum_attempts", maximumAttempts, "failed", NotificationStatus.FAILED.name(), "ids", ids));
+    }
+
+    static String message(Payment payment) {
+        return String.format("Your payment of %s has been received (reference %d).",
+                payment.getAmount(), payment.getPaymentId());
+    }
+}
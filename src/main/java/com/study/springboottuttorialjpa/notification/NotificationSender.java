@@ -0,0 +1,13 @@
+package com.study.springboottuttorialjpa.notification;
+
+/**
+ * The channel the notifications go out on, e.g. an SMS provider.
+ * Only called by the NotificationDispatcher, never in the request path of a payment.
+ */
+public interface NotificationSender {
+
+    /**
+     * @throws RuntimeException if the notification could not be sent; it will be retried later.
+     */
+    void send(Notification notification);
+}
@@ -0,0 +1,64 @@
+package com.study.springboottuttorialjpa.notification;
+
+import com.study.springboottuttorialjpa.enums.NotificationStatus;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Outbox row: a notification to the customer about a payment, written in the same transaction as the payment
+ * (see PaymentRecorder) and sent afterwards by the NotificationDispatcher.
+ * The rows are written and read with plain JDBC, see NotificationOutboxRepository; the entity defines the table.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@ToString
+@Entity
+@Table(
+        name = "payment_notification",
+        indexes = @Index(name = "payment_notification_status_idx", columnList = "status, nextAttemptAt")
+)
+public class PaymentNotification {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long paymentId;
+
+    @Column(nullable = false)
+    private UUID customerId;
+
+    @Column(nullable = false)
+    private String message;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private NotificationStatus status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    @Column(nullable = false)
+    private Instant nextAttemptAt;
+
+    private Instant sentAt;
+}
@@ -0,0 +1,146 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Charges the cards of PENDING payments in the background, so the request threads don't wait for the card
+ * processor.
+ *
+ * The charges run on a fixed number of threads with a bounded queue in front of them. When the queue is full
+ * submit throws a RejectedExecutionException instead of queueing without limit.
+ * The queue is only in memory: the payments it holds when the instance goes down stay PENDING until the
+ * PendingPaymentSweeper charges them.
+ *
+ * Metrics:
+ * - payment.async.queue.size: the number of payments waiting to be charged.
+ * - payment.async.active: the number of charges in progress.
+ * - payment.charge: the latency of the charges, tagged with the outcome (SUCCEEDED, FAILED or UNKNOWN).
+ */
+@Component
+@Slf4j
+public class AsyncPaymentProcessor {
+
+    private final CardPaymentCharger cardPaymentCharger;
+    private final PaymentRecorder paymentRecorder;
+    private final ThreadPoolExecutor executor;
+    private final Timer succeeded;
+    private final Timer failed;
+    private final Timer unknown;
+
+    @Autowired
+    public AsyncPaymentProcessor(
+            CardPaymentCharger cardPaymentCharger
+            , PaymentRecorder paymentRecorder
+            , MeterRegistry meterRegistry
+            , @Value("${payment.async.threads:8}") int threads
+            , @Value("${payment.async.queue-capacity:1000}") int queueCapacity) {
+        this.cardPaymentCharger = cardPaymentCharger;
+        this.paymentRecorder = paymentRecorder;
+        this.executor = new ThreadPoolExecutor(
+                threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new PaymentThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("payment.async.queue.size", executor, e -> e.getQueue().size())
+                .register(meterRegistry);
+        Gauge.builder("payment.async.active", executor, ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+        this.succeeded = Timer.builder("payment.charge")
+                .tag("outcome", PaymentStatus.SUCCEEDED.name())
+                .register(meterRegistry);
+        this.failed = Timer.builder("payment.charge")
+                .tag("outcome", PaymentStatus.FAILED.name())
+                .register(meterRegistry);
+        this.unknown = Timer.builder("payment.charge")
+                .tag("outcome", PaymentStatus.UNKNOWN.name())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues the charge of a payment that has been stored as PENDING.
+     *
+     * @throws RejectedExecutionException if the queue is full.
+     */
+    public void submit(Payment payment) {
+        executor.execute(() -> charge(payment));
+    }
+
+    public int queueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Charges the card and stores the outcome. A failure of the charge leaves the payment FAILED when the card has
+     * certainly not been charged (see CardPaymentCharger.isDefiniteFailure); otherwise, e.g. after a timeout or a lost
+     * connection, the card may have been charged after all and the payment is UNKNOWN, for the reconciliation.
+     * The outcome is only stored while the payment is still PENDING: PendingPaymentSweeper may charge a payment that
+     * waited too long once more, with the same idempotency key, and the first outcome stored wins.
+     *
+     * @return whether the outcome has been stored.
+     */
+    boolean charge(Payment payment) {
+        long start = System.nanoTime();
+        PaymentStatus status = PaymentStatus.FAILED;
+        try {
+            CardPaymentCharge cardPaymentCharge = cardPaymentCharger.chargeCard(
+                    payment.getSource()
+                    , payment.getAmount()
+                    , payment.getDescription()
+                    , CardPaymentCharger.idempotencyKey(payment.getPaymentId()));
+            if (cardPaymentCharge != null) {
+                payment.setChargeId(cardPaymentCharge.getChargeId());
+                if (cardPaymentCharge.isCardDebited()) {
+                    status = PaymentStatus.SUCCEEDED;
+                }
+            }
+        } catch (Exception e) {
+            if (!CardPaymentCharger.isDefiniteFailure(e)) {
+                status = PaymentStatus.UNKNOWN;
+            }
+            log.warn("Charging payment {} failed", payment.getPaymentId(), e);
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            (status == PaymentStatus.SUCCEEDED ? succeeded : status == PaymentStatus.UNKNOWN ? unknown : failed)
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+        }
+        return paymentRecorder.updateStatus(payment, PaymentStatus.PENDING, status);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("{} payments are still PENDING after shutdown, for the PendingPaymentSweeper",
+                    executor.getQueue().size());
+            executor.shutdownNow();
+        }
+    }
+
+    private static final class PaymentThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "payment-charger-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.study.springboottuttorialjpa.payment;
 
+import com.study.springboottuttorialjpa.general.Money;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 
+/**
+ * A charge as the card processor has it: the outcome of CardPaymentCharger.chargeCard, or what
+ * CardPaymentCharger.lookupCharges reports afterwards.
+ * chargeId and amount are null if the processor doesn't report them.
+ */
 @Getter
 @Setter
 @ToString
@@ -11,8 +17,19 @@ public class CardPaymentCharge {
 
     private final boolean isCardDebited;
 
+    // The id of the charge at the card processor; stored with the payment, for the reconciliation.
+    private final String chargeId;
+
+    private final Money amount;
+
     public CardPaymentCharge(boolean isCardDebited) {
+        this(isCardDebited, null, null);
+    }
+
+    public CardPaymentCharge(boolean isCardDebited, String chargeId, Money amount) {
         this.isCardDebited = isCardDebited;
+        this.chargeId = chargeId;
+        this.amount = amount;
     }
 
     public boolean isCardDebited() {
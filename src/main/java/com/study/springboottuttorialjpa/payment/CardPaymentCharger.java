@@ -1,16 +1,70 @@
 package com.study.springboottuttorialjpa.payment;
 
+import com.stripe.exception.CardException;
+import com.stripe.exception.InvalidRequestException;
 import com.stripe.exception.StripeException;
-import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.general.Money;
 
-import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public interface CardPaymentCharger {
 
+    /**
+     * Qualifier of the implementations that actually call the card processor (StripeService, MockStripeService).
+     * Everything else gets the @Primary CircuitBreakingCardPaymentCharger in front of them.
+     */
+    String PROCESSOR = "cardPaymentProcessor";
+
+    /**
+     * @param idempotencyKey the card processor makes at most one charge per key: a call repeated with the same
+     *                       key, e.g. after a timeout, gets the charge of the first call instead of charging the
+     *                       card again. See idempotencyKey(Long).
+     */
     CardPaymentCharge chargeCard(
             String cardSource,
-            BigDecimal amount,
-            Currency currency,
-            String description
+            Money amount,
+            String description,
+            String idempotencyKey
     ) throws StripeException;
+
+    /**
+     * The idempotencyKey of the charge of a payment: derived from the paymentId, so every attempt to charge the
+     * card of a stored payment is the same charge for the card processor.
+     */
+    static String idempotencyKey(Long paymentId) {
+        return "payment-" + paymentId;
+    }
+
+    /**
+     * Whether a failure of chargeCard means that the card has certainly not been charged: the processor has not
+     * been called (CardPaymentChargerUnavailableException that is no timeout) or has refused the charge
+     * (CardPaymentRefusedException, or a CardException or InvalidRequestException). After any other failure, e.g. a
+     * lost connection or a 5xx of the processor, the charge may have gone through.
+     */
+    static boolean isDefiniteFailure(Throwable failure) {
+        if (failure instanceof CardPaymentChargerUnavailableException) {
+            return !((CardPaymentChargerUnavailableException) failure).isTimeout();
+        }
+        return failure instanceof CardPaymentRefusedException
+                || failure instanceof CardException
+                || failure instanceof InvalidRequestException;
+    }
+
+    /**
+     * Looks up charges made before, for the reconciliation (see PaymentReconciliationService).
+     *
+     * @return the charges the card processor knows, in any order; unknown ids are left out.
+     */
+    List<CardPaymentCharge> lookupCharges(Collection<String> chargeIds) throws StripeException;
+
+    /**
+     * Looks up the charges made by chargeCard with the given idempotency keys, for payments whose outcome is not
+     * known (see PaymentSettlementService): a payment that timed out has no charge id.
+     *
+     * @return the charges by their idempotency key; a key for which the card processor has no charge is left out.
+     */
+    Map<String, CardPaymentCharge> lookupChargesByIdempotencyKey(Collection<String> idempotencyKeys)
+            throws StripeException;
 }
@@ -0,0 +1,32 @@
+package com.study.springboottuttorialjpa.payment;
+
+/**
+ * The card processor has not been called, or its answer is not known: it did not answer in time, or the connection
+ * or the processor failed during the call. The card may or may not have been charged in the latter case, see
+ * isTimeout.
+ */
+public class CardPaymentChargerUnavailableException extends IllegalStateException {
+
+    private final boolean timeout;
+
+    public CardPaymentChargerUnavailableException(String message, boolean timeout) {
+        super(message);
+        this.timeout = timeout;
+    }
+
+    public CardPaymentChargerUnavailableException(String message, Throwable cause) {
+        this(message, cause, false);
+    }
+
+    public CardPaymentChargerUnavailableException(String message, Throwable cause, boolean timeout) {
+        super(message, cause);
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return whether the card processor may have been reached, so the card may have been charged.
+     */
+    public boolean isTimeout() {
+        return timeout;
+    }
+}
@@ -0,0 +1,12 @@
+package com.study.springboottuttorialjpa.payment;
+
+/**
+ * The card processor has refused the charge, e.g. a declined card or an invalid request: the card has not been
+ * charged, and a retry is a new charge.
+ */
+public class CardPaymentRefusedException extends IllegalStateException {
+
+    public CardPaymentRefusedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
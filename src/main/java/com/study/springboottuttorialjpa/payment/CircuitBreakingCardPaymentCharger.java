@@ -0,0 +1,451 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.stripe.exception.CardException;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.exception.StripeException;
+import com.study.springboottuttorialjpa.general.Money;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Protects the callers of the card processor (CardPaymentCharger.PROCESSOR) against a slow or failing processor.
+ *
+ * Circuit breaker, over a sliding window of the last window-size calls:
+ * - CLOSED: calls go through. When at least minimum-calls have been made and failure-rate-threshold percent of
+ *   them failed, the circuit opens.
+ * - OPEN: calls are rejected straight away with a CardPaymentChargerUnavailableException, without a thread or a
+ *   network call. After open-duration-ms the circuit goes half open.
+ * - HALF_OPEN: half-open-calls trial calls go through. When they all succeed the circuit closes; the first failure
+ *   opens it again.
+ * A failure is an exception or a timeout. A declined card or an invalid request is an answer, not a failure.
+ *
+ * Deadlines: every call gets the p99 of the latest successful calls times p99-multiplier, within minimum-ms and
+ * maximum-ms. Until there are enough samples the deadline is maximum-ms.
+ *
+ * Bulkhead: at most max-concurrent-calls calls are in progress; more are rejected instead of queued. A call that
+ * timed out keeps its place until the card processor has actually answered.
+ *
+ * Metrics: payment.charger.circuit.state (0 closed, 1 half open, 2 open), payment.charger.circuit.transitions
+ * per state, payment.charger.rejections per reason, payment.charger.timeouts, payment.charger.deadline and
+ * payment.charger.failure.rate.
+ */
+@Service
+@Primary
+@Slf4j
+public class CircuitBreakingCardPaymentCharger implements CardPaymentCharger, MeterBinder {
+
+    enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private static final int NO_OUTCOME = 0;
+    private static final int SUCCESS = 1;
+    private static final int FAILURE = 2;
+
+    private static final int LATENCY_SAMPLES = 1000;
+    private static final int MINIMUM_LATENCY_SAMPLES = 100;
+    // The deadline is recalculated every this many successful calls.
+    private static final int DEADLINE_INTERVAL = 100;
+
+    private final CardPaymentCharger delegate;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final double p99Multiplier;
+    private final long minimumDeadlineNanos;
+    private final long maximumDeadlineNanos;
+    private final LongSupplier nanoClock;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore bulkhead;
+
+    // Sliding window: the outcomes of the last calls, and their totals.
+    private final AtomicIntegerArray outcomes;
+    private final AtomicLong outcomeIndex = new AtomicLong();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private final AtomicReference<Circuit> circuit = new AtomicReference<>(new Circuit(State.CLOSED, 0L));
+    private final AtomicInteger halfOpenPermits = new AtomicInteger();
+    private final AtomicInteger halfOpenSuccesses = new AtomicInteger();
+
+    private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_SAMPLES);
+    private final AtomicLong latencyIndex = new AtomicLong();
+    private volatile long deadlineNanos;
+
+    private final Map<State, LongAdder> transitions = new EnumMap<>(State.class);
+    private final LongAdder openRejections = new LongAdder();
+    private final LongAdder saturatedRejections = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    @Autowired
+    public CircuitBreakingCardPaymentCharger(
+            @Qualifier(CardPaymentCharger.PROCESSOR) CardPaymentCharger delegate
+            , @Value("${payment.charger.circuit-breaker.window-size:100}") int windowSize
+            , @Value("${payment.charger.circuit-breaker.minimum-calls:20}") int minimumCalls
+            , @Value("${payment.charger.circuit-breaker.failure-rate-threshold:50}") int failureRateThreshold
+            , @Value("${payment.charger.circuit-breaker.open-duration-ms:10000}") long openDurationMillis
+            , @Value("${payment.charger.circuit-breaker.half-open-calls:5}") int halfOpenCalls
+            , @Value("${payment.charger.deadline.p99-multiplier:3}") double p99Multiplier
+            , @Value("${payment.charger.deadline.minimum-ms:200}") long minimumDeadlineMillis
+            , @Value("${payment.charger.deadline.maximum-ms:10000}") long maximumDeadlineMillis
+            , @Value("${payment.charger.max-concurrent-calls:64}") int maxConcurrentCalls) {
+        this(delegate, windowSize, minimumCalls, failureRateThreshold, openDurationMillis, halfOpenCalls,
+                p99Multiplier, minimumDeadlineMillis, maximumDeadlineMillis, maxConcurrentCalls, System::nanoTime);
+    }
+
+    CircuitBreakingCardPaymentCharger(
+            CardPaymentCharger delegate
+            , int windowSize
+            , int minimumCalls
+            , int failureRateThreshold
+            , long openDurationMillis
+            , int halfOpenCalls
+            , double p99Multiplier
+            , long minimumDeadlineMillis
+            , long maximumDeadlineMillis
+            , int maxConcurrentCalls
+            , LongSupplier nanoClock) {
+        this.delegate = delegate;
+        this.outcomes = new AtomicIntegerArray(windowSize);
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+        this.halfOpenCalls = halfOpenCalls;
+        this.p99Multiplier = p99Multiplier;
+        this.minimumDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(minimumDeadlineMillis);
+        this.maximumDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(maximumDeadlineMillis);
+        this.deadlineNanos = maximumDeadlineNanos;
+        this.nanoClock = nanoClock;
+        for (State state : State.values()) {
+            transitions.put(state, new LongAdder());
+        }
+        this.bulkhead = new Semaphore(maxConcurrentCalls);
+        AtomicInteger count = new AtomicInteger();
+        // The number of calls is limited by the bulkhead; a thread may just not be back in the pool yet.
+        this.executor = new ThreadPoolExecutor(
+                0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "card-payment-charger-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @Override
+    public CardPaymentCharge chargeCard(
+            String cardSource,
+            Money amount,
+            String description,
+            String idempotencyKey
+    ) throws StripeException {
+        if (!acquirePermission()) {
+            openRejections.increment();
+            throw new CardPaymentChargerUnavailableException("The card processor is unavailable (circuit open)", false);
+        }
+
+        if (!bulkhead.tryAcquire()) {
+            releasePermission();
+            saturatedRejections.increment();
+            throw new CardPaymentChargerUnavailableException("Too many calls to the card processor in progress", false);
+        }
+
+        long deadline = deadlineNanos;
+        long start = nanoClock.getAsLong();
+        // The permit is released as soon as the processor has answered, before the caller sees the outcome, so a
+        // caller that charges cards one after the other never finds its own previous call still holding a permit.
+        // The task's own finally releases it if the task has been cancelled before it started.
+        AtomicBoolean permitReleased = new AtomicBoolean();
+        Runnable releasePermit = () -> {
+            if (permitReleased.compareAndSet(false, true)) {
+                bulkhead.release();
+            }
+        };
+        FutureTask<CardPaymentCharge> future = new FutureTask<>(() -> {
+            try {
+                return delegate.chargeCard(cardSource, amount, description, idempotencyKey);
+            } finally {
+                releasePermit.run();
+            }
+        });
+        try {
+            executor.execute(() -> {
+                try {
+                    future.run();
+                } finally {
+                    releasePermit.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Only after shutdown.
+            bulkhead.release();
+            releasePermission();
+            throw new CardPaymentChargerUnavailableException("The card processor client has been shut down", e);
+        }
+
+        try {
+            CardPaymentCharge cardPaymentCharge = future.get(deadline, TimeUnit.NANOSECONDS);
+            onSuccess(nanoClock.getAsLong() - start);
+            return cardPaymentCharge;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeouts.increment();
+            onFailure();
+            throw new CardPaymentChargerUnavailableException(String.format(
+                    "The card processor did not answer within %d ms", TimeUnit.NANOSECONDS.toMillis(deadline)), true);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (isProcessorFailure(cause)) {
+                onFailure();
+            } else {
+                onSuccess(nanoClock.getAsLong() - start);
+            }
+            if (cause instanceof StripeException) {
+                throw (StripeException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Cannot charge card", cause);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            releasePermission();
+            Thread.currentThread().interrupt();
+            throw new CardPaymentChargerUnavailableException("Interrupted while charging the card", e);
+        }
+    }
+
+    /**
+     * Lookups come from the reconciliation, in the background; they neither count for the circuit nor take a place
+     * in the bulkhead. While the circuit is open they are refused, as the processor is known to be in trouble.
+     */
+    @Override
+    public List<CardPaymentCharge> lookupCharges(Collection<String> chargeIds) throws StripeException {
+        if (getState() == State.OPEN) {
+            openRejections.increment();
+            throw new CardPaymentChargerUnavailableException("The card processor is unavailable (circuit open)", false);
+        }
+        return delegate.lookupCharges(chargeIds);
+    }
+
+    /**
+     * Like lookupCharges.
+     */
+    @Override
+    public Map<String, CardPaymentCharge> lookupChargesByIdempotencyKey(Collection<String> idempotencyKeys)
+            throws StripeException {
+        if (getState() == State.OPEN) {
+            openRejections.increment();
+            throw new CardPaymentChargerUnavailableException("The card processor is unavailable (circuit open)", false);
+        }
+        return delegate.lookupChargesByIdempotencyKey(idempotencyKeys);
+    }
+
+    State getState() {
+        return circuit.get().state;
+    }
+
+    long getDeadlineMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(deadlineNanos);
+    }
+
+    private boolean acquirePermission() {
+        Circuit current = circuit.get();
+        switch (current.state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (nanoClock.getAsLong() - current.openedAt < openNanos) {
+                    return false;
+                }
+                if (transition(current, State.HALF_OPEN)) {
+                    halfOpenSuccesses.set(0);
+                    halfOpenPermits.set(halfOpenCalls);
+                }
+                return acquirePermission();
+            default:
+                return halfOpenPermits.getAndDecrement() > 0;
+        }
+    }
+
+    private void releasePermission() {
+        if (circuit.get().state == State.HALF_OPEN) {
+            halfOpenPermits.incrementAndGet();
+        }
+    }
+
+    private void onSuccess(long latencyNanos) {
+        long index = latencyIndex.getAndIncrement();
+        latencies.set((int) (index % LATENCY_SAMPLES), latencyNanos);
+        if ((index + 1) % DEADLINE_INTERVAL == 0 && index + 1 >= MINIMUM_LATENCY_SAMPLES) {
+            updateDeadline(Math.min(index + 1, LATENCY_SAMPLES));
+        }
+
+        Circuit current = circuit.get();
+        if (current.state == State.HALF_OPEN) {
+            if (halfOpenSuccesses.incrementAndGet() >= halfOpenCalls && transition(current, State.CLOSED)) {
+                resetWindow();
+            }
+            return;
+        }
+        record(SUCCESS);
+    }
+
+    private void onFailure() {
+        Circuit current = circuit.get();
+        if (current.state == State.HALF_OPEN) {
+            transition(current, State.OPEN);
+            return;
+        }
+        record(FAILURE);
+        int callCount = calls.get();
+        if (current.state == State.CLOSED
+                && callCount >= minimumCalls
+                && failures.get() * 100L >= (long) failureRateThreshold * callCount) {
+            transition(current, State.OPEN);
+        }
+    }
+
+    private void record(int outcome) {
+        int slot = (int) (outcomeIndex.getAndIncrement() % outcomes.length());
+        int previous = outcomes.getAndSet(slot, outcome);
+        if (previous == NO_OUTCOME) {
+            calls.incrementAndGet();
+        } else if (previous == FAILURE) {
+            failures.decrementAndGet();
+        }
+        if (outcome == FAILURE) {
+            failures.incrementAndGet();
+        }
+    }
+
+    private void resetWindow() {
+        for (int i = 0; i < outcomes.length(); i++) {
+            int previous = outcomes.getAndSet(i, NO_OUTCOME);
+            if (previous != NO_OUTCOME) {
+                calls.decrementAndGet();
+                if (previous == FAILURE) {
+                    failures.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private boolean transition(Circuit from, State to) {
+        if (!circuit.compareAndSet(from, new Circuit(to, nanoClock.getAsLong()))) {
+            return false;
+        }
+        transitions.get(to).increment();
+        if (to == State.OPEN) {
+            log.warn("Card processor circuit {} -> OPEN: failure rate {}% over the last {} calls",
+                    from.state, failureRate(), calls.get());
+        } else {
+            log.info("Card processor circuit {} -> {}", from.state, to);
+        }
+        return true;
+    }
+
+    private void updateDeadline(long samples) {
+        long[] sorted = new long[(int) samples];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = latencies.get(i);
+        }
+        Arrays.sort(sorted);
+        long p99 = sorted[(int) Math.ceil(sorted.length * 0.99) - 1];
+        deadlineNanos = Math.max(minimumDeadlineNanos, Math.min(maximumDeadlineNanos, (long) (p99 * p99Multiplier)));
+    }
+
+    private double failureRate() {
+        int callCount = calls.get();
+        return callCount == 0 ? 0.0 : failures.get() * 100.0 / callCount;
+    }
+
+    /**
+     * A declined card or an invalid request is an answer of the processor, not a sign that it is unavailable.
+     */
+    private static boolean isProcessorFailure(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CardException || cause instanceof InvalidRequestException) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("payment.charger.circuit.state", circuit, c -> c.get().state.ordinal())
+                .description("0: closed, 1: half open, 2: open")
+                .register(registry);
+        for (Map.Entry<State, LongAdder> entry : transitions.entrySet()) {
+            FunctionCounter.builder("payment.charger.circuit.transitions", entry.getValue(), LongAdder::sum)
+                    .tag("state", entry.getKey().name())
+                    .register(registry);
+        }
+        FunctionCounter.builder("payment.charger.rejections", openRejections, LongAdder::sum)
+                .tag("reason", "circuit_open")
+                .register(registry);
+        FunctionCounter.builder("payment.charger.rejections", saturatedRejections, LongAdder::sum)
+                .tag("reason", "saturated")
+                .register(registry);
+        FunctionCounter.builder("payment.charger.timeouts", timeouts, LongAdder::sum)
+                .register(registry);
+        Gauge.builder("payment.charger.deadline", this, c -> c.deadlineNanos / 1_000_000.0)
+                .baseUnit("milliseconds")
+                .register(registry);
+        Gauge.builder("payment.charger.failure.rate", this, CircuitBreakingCardPaymentCharger::failureRate)
+                .baseUnit("percent")
+                .register(registry);
+    }
+
+    private static final class Circuit {
+
+        private final State state;
+        // nanoClock time of the transition to this state.
+        private final long openedAt;
+
+        private Circuit(State state, long openedAt) {
+            this.state = state;
+            this.openedAt = openedAt;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.general.Money;
+import com.study.springboottuttorialjpa.general.MoneyJsonSerializer;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * The succeeded payments of a customer in one currency: how many, their total in minor units and the time of the
+ * last one.
+ * Kept up to date with every succeeded payment, in the same transaction (see PaymentRecorder), so reading the
+ * totals of a customer doesn't depend on the number of payments.
+ * The rows are written and read with plain JDBC, see CustomerPaymentTotalRepository; the entity defines the table.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+@Entity
+@IdClass(CustomerPaymentTotal.Key.class)
+// Hibernate orders the primary key columns by name, (currency, customer_id), so the lookup by customer needs an
+// index of its own.
+@Table(
+        name = "customer_payment_total",
+        indexes = @Index(name = "customer_payment_total_customer_id_idx", columnList = "customerId")
+)
+public class CustomerPaymentTotal {
+
+    @Id
+    private UUID customerId;
+
+    // Mapped as an ordinal, as the currency of Payment.
+    @Id
+    private Currency currency;
+
+    @Column(nullable = false)
+    private long paymentCount;
+
+    // In minor units of the currency.
+    @JsonIgnore
+    @Column(nullable = false)
+    private long amountTotal;
+
+    private Instant lastPaymentAt;
+
+    /**
+     * In JSON the total is a decimal number next to the currency, as the amount of a Payment.
+     */
+    @JsonSerialize(using = MoneyJsonSerializer.class)
+    public Money getAmount() {
+        return Money.ofMinorUnits(amountTotal, currency);
+    }
+
+    @Getter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+
+        private UUID customerId;
+        private Currency currency;
+    }
+}
@@ -0,0 +1,153 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Plain JDBC access to the customer_payment_total table.
+ *
+ * None of the methods starts a transaction of its own: addPayments must join the transaction that writes the
+ * payments, and rebuildChunk the transaction of CustomerPaymentTotalService.
+ */
+@Repository
+public class CustomerPaymentTotalRepository {
+
+    // The rows of a batch are locked in this order, so two batches of the same customers can't deadlock.
+    private static final Comparator<CustomerPaymentTotal.Key> LOCK_ORDER = Comparator
+            .comparing(CustomerPaymentTotal.Key::getCustomerId)
+            .thenComparing(CustomerPaymentTotal.Key::getCurrency);
+
+    private static final String TOTAL_COLUMNS = "customer_id, currency, payment_count, amount_total, last_payment_at";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public CustomerPaymentTotalRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Adds the payments, which must have SUCCEEDED, to the totals of their customers, as one JDBC batch with one
+     * upsert per customer and currency.
+     */
+    public void addPayments(List<Payment> payments) {
+        if (payments.isEmpty()) {
+            return;
+        }
+        Map<CustomerPaymentTotal.Key, CustomerPaymentTotal> totals = new TreeMap<>(LOCK_ORDER);
+        for (Payment payment : payments) {
+            CustomerPaymentTotal total = totals.computeIfAbsent(
+                    new CustomerPaymentTotal.Key(payment.getCustomerId(), payment.getCurrency()),
+                    key -> new CustomerPaymentTotal(key.getCustomerId(), key.getCurrency(), 0, 0, null));
+            total.setPaymentCount(total.getPaymentCount() + 1);
+            total.setAmountTotal(payment.getAmount().addTo(total.getAmountTotal(), total.getCurrency()));
+            total.setLastPaymentAt(latest(total.getLastPaymentAt(), payment.getCreatedAt()));
+        }
+        SqlParameterSource[] batch = new SqlParameterSource[totals.size()];
+        int i = 0;
+        for (CustomerPaymentTotal total : totals.values()) {
+            batch[i++] = new MapSqlParameterSource()
+                    .addValue("customer_id", total.getCustomerId())
+                    .addValue("currency", total.getCurrency().ordinal())
+                    .addValue("payment_count", total.getPaymentCount())
+                    .addValue("amount_total", total.getAmountTotal())
+                    .addValue("last_payment_at", total.getLastPaymentAt() == null
+                            ? null : Timestamp.from(total.getLastPaymentAt()));
+        }
+        jdbcTemplate.batchUpdate(
+                "insert into customer_payment_total as t (" + TOTAL_COLUMNS + ") " +
+                        "values (:customer_id, :currency, :payment_count, :amount_total, :last_payment_at) " +
+                        "on conflict (customer_id, currency) do update set " +
+                        "payment_count = t.payment_count + excluded.payment_count, " +
+                        "amount_total = t.amount_total + excluded.amount_total, " +
+                        "last_payment_at = greatest(t.last_payment_at, excluded.last_payment_at)",
+                batch);
+    }
+
+    /**
+     * One row per currency the customer has paid in; a primary key lookup.
+     */
+    public List<CustomerPaymentTotal> selectByCustomerId(UUID customerId) {
+        return jdbcTemplate.query(
+                "select " + TOTAL_COLUMNS + " from customer_payment_total " +
+                        "where customer_id = :customer_id order by currency",
+                Map.of("customer_id", customerId),
+                (rs, rowNum) -> new CustomerPaymentTotal(
+                        rs.getObject("customer_id", UUID.class),
+                        Currency.values()[rs.getInt("currency")],
+                        rs.getLong("payment_count"),
+                        rs.getLong("amount_total"),
+                        rs.getTimestamp("last_payment_at") == null
+                                ? null : rs.getTimestamp("last_payment_at").toInstant()));
+    }
+
+    /**
+     * Splits the customers into chunks of chunkSize, in the order of their ids.
+     *
+     * @return the id of the first customer of every chunk, in order.
+     */
+    public List<UUID> selectChunkBoundaries(int chunkSize) {
+        return jdbcTemplate.queryForList(
+                "select id from (select id, row_number() over (order by id) as position from customer) c " +
+                        "where (position - 1) % :chunk_size = 0 order by id",
+                Map.of("chunk_size", chunkSize),
+                UUID.class);
+    }
+
+    /**
+     * Recomputes the totals of the customers with an id from fromCustomerId (inclusive) to toCustomerId
+     * (exclusive) from their payments, and removes the totals that no longer have any payments.
+     *
+     * @param fromCustomerId null for no lower bound.
+     * @param toCustomerId   null for no upper bound.
+     * @return the number of totals written.
+     */
+    public int rebuildChunk(UUID fromCustomerId, UUID toCustomerId) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("status", PaymentStatus.SUCCEEDED.name())
+                .addValue("from", fromCustomerId)
+                .addValue("to", toCustomerId);
+        int written = jdbcTemplate.update(
+                "insert into customer_payment_total as t (" + TOTAL_COLUMNS + ") " +
+                        "select customer_id, currency, count(*), sum(amount), max(created_at) from payment " +
+                        "where status = :status" + range("customer_id", fromCustomerId, toCustomerId) + " " +
+                        "group by customer_id, currency " +
+                        "on conflict (customer_id, currency) do update set " +
+                        "payment_count = excluded.payment_count, " +
+                        "amount_total = excluded.amount_total, " +
+                        "last_payment_at = excluded.last_payment_at",
+                parameters);
+        jdbcTemplate.update(
+                "delete from customer_payment_total t " +
+                        "where not exists (select 1 from payment p where p.customer_id = t.customer_id " +
+                        "and p.currency = t.currency and p.status = :status)" +
+                        range("t.customer_id", fromCustomerId, toCustomerId),
+                parameters);
+        return written;
+    }
+
+    private static String range(String column, UUID from, UUID to) {
+        return (from == null ? "" : " and " + column + " >= :from")
+                + (to == null ? "" : " and " + column + " < :to");
+    }
+
+    private static Instant latest(Instant first, Instant second) {
+        if (first == null) {
+            return second;
+        }
+        return second == null || first.isAfter(second) ? first : second;
+    }
+}
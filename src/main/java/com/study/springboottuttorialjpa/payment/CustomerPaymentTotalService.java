@@ -0,0 +1,134 @@
+package com.study.springboottuttorialjpa.payment;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The payment totals per customer and currency, see CustomerPaymentTotal.
+ *
+ * The totals are maintained by PaymentRecorder. rebuild recomputes them from the payments, e.g. after a data fix:
+ * - the customers are split into chunks of payment.totals.rebuild.chunk-size, rebuilt in parallel by
+ *   payment.totals.rebuild.threads threads.
+ * - every chunk is rebuilt in a REPEATABLE READ transaction of its own. A payment that updates a total of the chunk
+ *   while it is rebuilt makes the rebuild fail with a serialization failure instead of being lost; the chunk is
+ *   then rebuilt again, up to payment.totals.rebuild.maximum-attempts times.
+ * Payments go on while the totals are rebuilt.
+ */
+@Service
+@Slf4j
+public class CustomerPaymentTotalService {
+
+    private final CustomerPaymentTotalRepository customerPaymentTotalRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int threads;
+    private final int maximumAttempts;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    @Autowired
+    public CustomerPaymentTotalService(
+            CustomerPaymentTotalRepository customerPaymentTotalRepository
+            , PlatformTransactionManager transactionManager
+            , @Value("${payment.totals.rebuild.chunk-size:1000}") int chunkSize
+            , @Value("${payment.totals.rebuild.threads:4}") int threads
+            , @Value("${payment.totals.rebuild.maximum-attempts:5}") int maximumAttempts) {
+        this.customerPaymentTotalRepository = customerPaymentTotalRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+        this.maximumAttempts = maximumAttempts;
+    }
+
+    /**
+     * @return one total per currency the customer has paid in; empty if the customer has no succeeded payments.
+     */
+    @Transactional(readOnly = true)
+    public List<CustomerPaymentTotal> getTotals(UUID customerId) {
+        return customerPaymentTotalRepository.selectByCustomerId(customerId);
+    }
+
+    /**
+     * Recomputes all totals from the payments.
+     *
+     * @return the number of totals written.
+     * @throws IllegalStateException if a rebuild is already running.
+     */
+    public int rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            throw new IllegalStateException("The payment totals are already being rebuilt");
+        }
+        long start = System.nanoTime();
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "payment-totals-rebuild-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<UUID> boundaries = customerPaymentTotalRepository.selectChunkBoundaries(chunkSize);
+            int chunkCount = Math.max(1, boundaries.size());
+            List<CompletableFuture<Integer>> chunks = new ArrayList<>(chunkCount);
+            // The first chunk has no lower bound and the last one no upper bound, so every payment is in a chunk.
+            for (int i = 0; i < chunkCount; i++) {
+                UUID from = i == 0 ? null : boundaries.get(i);
+                UUID to = i + 1 < boundaries.size() ? boundaries.get(i + 1) : null;
+                chunks.add(CompletableFuture.supplyAsync(() -> rebuildChunk(from, to), executor));
+            }
+            int written = 0;
+            for (CompletableFuture<Integer> chunk : chunks) {
+                written += join(chunk);
+            }
+            log.info("Payment totals rebuilt: {} totals in {} chunks, in {} ms",
+                    written, chunks.size(), (System.nanoTime() - start) / 1_000_000);
+            return written;
+        } finally {
+            executor.shutdownNow();
+            rebuilding.set(false);
+        }
+    }
+
+    private int rebuildChunk(UUID from, UUID to) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Integer written = transactionTemplate.execute(
+                        status -> customerPaymentTotalRepository.rebuildChunk(from, to));
+                return written == null ? 0 : written;
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= maximumAttempts) {
+                    throw e;
+                }
+                log.debug("Rebuilding the payment totals from {} to {} conflicted with a payment; retrying", from, to);
+            }
+        }
+    }
+
+    private static int join(CompletableFuture<Integer> chunk) {
+        try {
+            return chunk.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
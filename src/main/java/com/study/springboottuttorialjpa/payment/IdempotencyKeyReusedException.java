@@ -0,0 +1,11 @@
+package com.study.springboottuttorialjpa.payment;
+
+/**
+ * The Idempotency-Key has already been used for a different request: a retry with the same key will never succeed.
+ */
+public class IdempotencyKeyReusedException extends IllegalStateException {
+
+    public IdempotencyKeyReusedException(String message) {
+        super(message);
+    }
+}
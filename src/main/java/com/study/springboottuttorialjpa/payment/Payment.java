@@ -1,64 +1,154 @@
 package com.study.springboottuttorialjpa.payment;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import com.study.springboottuttorialjpa.general.Money;
+import com.study.springboottuttorialjpa.general.MoneyJsonSerializer;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.GenericGenerator;
 
+import javax.persistence.AttributeOverride;
+import javax.persistence.Column;
+import javax.persistence.Embedded;
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
-import java.math.BigDecimal;
+import javax.persistence.Index;
+import javax.persistence.PrePersist;
+import javax.persistence.Table;
+import java.time.Instant;
 import java.util.Objects;
 import java.util.UUID;
 
 @Getter
 @Setter
 @NoArgsConstructor
+// The id, the status and the time of creation are written in JSON, but only ever set by the service: from a request
+// they are ignored.
+@JsonIgnoreProperties(value = {"paymentId", "status", "createdAt"}, allowGetters = true)
 @Entity
+// For the per customer queries: the payment history (keyset on payment_id) and the rebuild of CustomerPaymentTotal.
+// For the few payments without an outcome yet, PENDING or UNKNOWN, by age; see PaymentSettlementService.
+@Table(indexes = {
+        @Index(name = "payment_customer_id_payment_id_idx", columnList = "customerId, paymentId"),
+        @Index(name = "payment_status_created_at_idx", columnList = "status, createdAt")
+})
 public class Payment {
 
+    // Generated in memory, see PaymentIdGenerator.
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "payment-id")
+    @GenericGenerator(name = "payment-id", strategy = "com.study.springboottuttorialjpa.payment.PaymentIdGenerator")
     private Long paymentId;
 
     private UUID customerId;
 
-    private BigDecimal amount = null;
+    // The amount and currency columns; amount in minor units (bigint).
+    // In JSON the amount is a decimal number next to the currency: "amount": 10.50, "currency": "EUR".
+    @Embedded
+    @JsonSerialize(using = MoneyJsonSerializer.class)
+    private Money amount;
 
-    private Currency currency;
+    // The amount converted into the settlement currency when the payment was accepted, see FxRateCache.
+    @Embedded
+    @AttributeOverride(name = "minorUnits", column = @Column(name = "settlement_amount"))
+    @AttributeOverride(name = "currency", column = @Column(name = "settlement_currency"))
+    @JsonIgnore
+    private Money settlementAmount;
 
     private String source;
 
+    // The id of the charge at the card processor (see CardPaymentCharge), checked by the reconciliation.
+    // Null for payments that never reached the processor, and for the payments from before it was stored.
+    @JsonIgnore
+    private String chargeId;
+
     private String description;
 
+    // Stored by name, so the column stays readable and new statuses can be added anywhere in the enum.
+    @Enumerated(EnumType.STRING)
+    private PaymentStatus status;
+
+    // When the payment was recorded; set on insert (see PaymentRecorder for the JDBC inserts).
+    // The partition key when the table is partitioned, see PaymentPartitionManager.
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    // Until when the PendingPaymentSweeper charges the payment, see PaymentJdbcRepository.claimPending; null if the
+    // payment has never been swept.
+    @JsonIgnore
+    private Instant claimedUntil;
+
     public Payment(
             Long paymentId,
             UUID customerId,
-            BigDecimal amount,
-            Currency currency,
+            Money amount,
             String source,
             String description
     ) {
         this.paymentId = paymentId;
         this.customerId = customerId;
         this.amount = amount;
-        this.currency = currency;
         this.source = source;
         this.description = description;
     }
 
+    /**
+     * From JSON: the amount is parsed straight into minor units of the currency, see Money.parse.
+     */
+    @JsonCreator
+    static Payment fromJson(
+            @JsonProperty("customerId") UUID customerId,
+            @JsonProperty("amount") String amount,
+            @JsonProperty("currency") Currency currency,
+            @JsonProperty("source") String source,
+            @JsonProperty("description") String description
+    ) {
+        if (amount != null && currency == null) {
+            throw new IllegalArgumentException("An amount needs a currency");
+        }
+        return new Payment(
+                null,
+                customerId,
+                amount == null ? null : Money.parse(amount, currency),
+                source,
+                description);
+    }
+
+    @PrePersist
+    void prePersist() {
+        if (createdAt == null) {
+            createdAt = Instant.now();
+        }
+    }
+
+    /**
+     * @return the currency of the amount; null if there is no amount.
+     */
+    public Currency getCurrency() {
+        return amount == null ? null : amount.getCurrency();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Payment payment = (Payment) o;
-        return paymentId.equals(payment.paymentId) && customerId.equals(payment.customerId) && amount.equals(payment.amount) && currency == payment.currency && source.equals(payment.source) && description.equals(payment.description);
+        return paymentId.equals(payment.paymentId) && customerId.equals(payment.customerId) && amount.equals(payment.amount) && source.equals(payment.source) && description.equals(payment.description) && status == payment.status;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(paymentId, customerId, amount, currency, source, description);
+        return Objects.hash(paymentId, customerId, amount, source, description, status);
     }
 
     @Override
@@ -67,9 +157,9 @@ public class Payment {
                 "paymentId=" + paymentId +
                 ", customerId=" + customerId +
                 ", amount=" + amount +
-                ", currency=" + currency +
                 ", source='" + source + '\'' +
                 ", description='" + description + '\'' +
+                ", status=" + status +
                 '}';
     }
 }
@@ -0,0 +1,23 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * A batch of payments, e.g. the nightly subscription billing. Every payment carries its own customerId.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+public class PaymentBatchRequest {
+
+    private final List<Payment> payments;
+
+    public PaymentBatchRequest(@JsonProperty("payments") List<Payment> payments) {
+        this.payments = payments;
+    }
+}
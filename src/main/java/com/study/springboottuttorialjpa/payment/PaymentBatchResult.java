@@ -0,0 +1,31 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.UUID;
+
+/**
+ * The outcome of one payment of a PaymentBatchRequest; index is its position in the request.
+ * Every payment that has been charged is stored and has a paymentId, whatever its status; a payment rejected before
+ * charging (unknown customer, currency) is FAILED and has none.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PaymentBatchResult {
+
+    private final int index;
+
+    private final Long paymentId;
+
+    private final UUID customerId;
+
+    private final PaymentStatus status;
+
+    private final String message;
+}
@@ -0,0 +1,208 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.study.springboottuttorialjpa.currency.CurrencyRegistry;
+import com.study.springboottuttorialjpa.currency.FxRateCache;
+import com.study.springboottuttorialjpa.customer.CustomerExistenceService;
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import com.study.springboottuttorialjpa.general.Money;
+import com.study.springboottuttorialjpa.utils.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Charges a batch of payments, e.g. the nightly subscription billing.
+ *
+ * - the customers of the whole batch are checked in one pass (at most one query), and the currencies in memory:
+ *   the accepted currencies and the exchange rates are cached, see CurrencyRegistry and FxRateCache.
+ * - the accepted payments get their ids in memory (see PaymentIdGenerator) and are inserted as PENDING, as one
+ *   JDBC batch, before the first card is charged.
+ * - the cards are charged in parallel, with at most payment.batch.concurrency charges at a time over all batches.
+ * - the outcomes are stored as one JDBC batch: SUCCEEDED, FAILED when the card has not been debited, or UNKNOWN
+ *   when the card processor did not answer in time or failed without a definite answer (the reconciliation
+ *   settles those).
+ * Every payment gets its own result; a failing payment doesn't fail the batch. A payment that has been rejected
+ * before charging (unknown customer, currency) is not stored and has no paymentId.
+ */
+@Service
+@Slf4j
+public class PaymentBatchService {
+
+    private final CustomerExistenceService customerExistenceService;
+    private final CardPaymentCharger cardPaymentCharger;
+    private final PaymentRecorder paymentRecorder;
+    private final CurrencyRegistry currencyRegistry;
+    private final FxRateCache fxRateCache;
+    private final SnowflakeIdGenerator paymentIdGenerator;
+    private final ExecutorService executor;
+
+    @Autowired
+    public PaymentBatchService(
+            CustomerExistenceService customerExistenceService
+            , CardPaymentCharger cardPaymentCharger
+            , PaymentRecorder paymentRecorder
+            , CurrencyRegistry currencyRegistry
+            , FxRateCache fxRateCache
+            , @Value("${payment.batch.concurrency:16}") int concurrency
+            , @Value("${spring.jpa.properties." + PaymentIdGenerator.NODE_ID_SETTING + ":0}") int nodeId) {
+        this.customerExistenceService = customerExistenceService;
+        this.cardPaymentCharger = cardPaymentCharger;
+        this.paymentRecorder = paymentRecorder;
+        this.currencyRegistry = currencyRegistry;
+        this.fxRateCache = fxRateCache;
+        // The same generator as the one Hibernate uses for Payment.paymentId.
+        this.paymentIdGenerator = SnowflakeIdGenerator.forNode(nodeId);
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "payment-batch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param payments must not be null, nor contain null.
+     * @return the result of every payment, in the order given.
+     */
+    public List<PaymentBatchResult> chargeCards(List<Payment> payments) {
+        long start = System.nanoTime();
+
+        // 1. Do the customers exist: one pass for the whole batch.
+        Set<UUID> customerIds = new HashSet<>();
+        for (Payment payment : payments) {
+            customerIds.add(payment.getCustomerId());
+        }
+        Set<UUID> existingCustomerIds = customerExistenceService.findExisting(customerIds);
+
+        // 2. Do we support the currencies (and convert the amounts).
+        String[] failures = new String[payments.size()];
+        boolean[] charged = new boolean[payments.size()];
+        List<Payment> accepted = new ArrayList<>(payments.size());
+        for (int i = 0; i < payments.size(); i++) {
+            Payment payment = payments.get(i);
+            if (!existingCustomerIds.contains(payment.getCustomerId())) {
+                failures[i] = String.format("Customer with id [%s] has not been found", payment.getCustomerId());
+            } else if (!currencyRegistry.isAccepted(payment.getCurrency())) {
+                failures[i] = String.format("Currency [%s] not supported", payment.getCurrency());
+            } else {
+                failures[i] = convert(payment);
+                if (failures[i] == null) {
+                    charged[i] = true;
+                    accepted.add(payment);
+                }
+            }
+        }
+
+        // 3. Insert the accepted payments as PENDING, as one batch, before any card is charged: a payment whose
+        //    card has been charged is never only in memory.
+        for (Payment payment : accepted) {
+            payment.setPaymentId(paymentIdGenerator.nextId());
+            payment.setStatus(PaymentStatus.PENDING);
+        }
+        if (!accepted.isEmpty()) {
+            paymentRecorder.insertPayments(accepted);
+        }
+
+        // 4. Charge the cards in parallel.
+        List<CompletableFuture<Void>> charges = new ArrayList<>(accepted.size());
+        for (int i = 0; i < payments.size(); i++) {
+            if (charged[i]) {
+                Payment payment = payments.get(i);
+                int index = i;
+                charges.add(CompletableFuture.runAsync(() -> failures[index] = charge(payment), executor));
+            }
+        }
+        // Joining makes the failures and statuses written by the charging threads visible here.
+        CompletableFuture.allOf(charges.toArray(new CompletableFuture<?>[0])).join();
+
+        // 5. Store the outcomes as one batch.
+        if (!accepted.isEmpty()) {
+            paymentRecorder.updateStatuses(accepted);
+        }
+
+        List<PaymentBatchResult> results = new ArrayList<>(payments.size());
+        int succeeded = 0;
+        // In minor units of the settlement currency, see Money.addTo.
+        Currency settlementCurrency = currencyRegistry.getSettlementCurrency();
+        long succeededTotal = 0;
+        for (int i = 0; i < payments.size(); i++) {
+            Payment payment = payments.get(i);
+            if (!charged[i]) {
+                results.add(new PaymentBatchResult(i, null, payment.getCustomerId(), PaymentStatus.FAILED, failures[i]));
+            } else {
+                if (payment.getStatus() == PaymentStatus.SUCCEEDED) {
+                    succeeded++;
+                    succeededTotal = payment.getSettlementAmount().addTo(succeededTotal, settlementCurrency);
+                }
+                results.add(new PaymentBatchResult(
+                        i, payment.getPaymentId(), payment.getCustomerId(), payment.getStatus(), failures[i]));
+            }
+        }
+        log.info("Payment batch finished: {} payments, {} succeeded for {}, in {} ms",
+                payments.size(), succeeded, Money.ofMinorUnits(succeededTotal, settlementCurrency),
+                (System.nanoTime() - start) / 1_000_000);
+        return results;
+    }
+
+    /**
+     * Sets the settlement amount of the payment, from the cached exchange rates.
+     *
+     * @return null if the amount has been converted; otherwise why not.
+     */
+    private String convert(Payment payment) {
+        try {
+            payment.setSettlementAmount(fxRateCache.toSettlementCurrency(payment.getAmount()));
+            return null;
+        } catch (IllegalStateException e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Charges the card and sets the status (and chargeId) of the payment.
+     *
+     * @return null if the card has been debited; otherwise why not.
+     */
+    private String charge(Payment payment) {
+        payment.setStatus(PaymentStatus.FAILED);
+        try {
+            CardPaymentCharge cardPaymentCharge = cardPaymentCharger.chargeCard(
+                    payment.getSource()
+                    , payment.getAmount()
+                    , payment.getDescription()
+                    , CardPaymentCharger.idempotencyKey(payment.getPaymentId()));
+            if (cardPaymentCharge != null && cardPaymentCharge.isCardDebited()) {
+                payment.setChargeId(cardPaymentCharge.getChargeId());
+                payment.setStatus(PaymentStatus.SUCCEEDED);
+                return null;
+            }
+            return String.format("The card is not debited for customer %s", payment.getCustomerId());
+        } catch (Exception e) {
+            log.warn("Charging a payment of customer {} failed", payment.getCustomerId(), e);
+            if (!CardPaymentCharger.isDefiniteFailure(e)) {
+                payment.setStatus(PaymentStatus.UNKNOWN);
+                return String.format("The outcome of the charge is not known yet for customer %s",
+                        payment.getCustomerId());
+            }
+            return String.format("The card could not be charged for customer %s", payment.getCustomerId());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
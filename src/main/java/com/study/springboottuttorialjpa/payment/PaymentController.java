@@ -1,28 +1,158 @@
 package com.study.springboottuttorialjpa.payment;
 
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping(path="api/v1/payment")
 @Slf4j
 public class PaymentController {
 
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final int MAXIMUM_HISTORY_LIMIT = 100;
+
     private final PaymentService paymentService;
+    private final PaymentBatchService paymentBatchService;
+    private final CustomerPaymentTotalService customerPaymentTotalService;
 
     @Autowired
-    public PaymentController(PaymentService paymentService) {
+    public PaymentController(
+            PaymentService paymentService
+            , PaymentBatchService paymentBatchService
+            , CustomerPaymentTotalService customerPaymentTotalService) {
         this.paymentService = paymentService;
+        this.paymentBatchService = paymentBatchService;
+        this.customerPaymentTotalService = customerPaymentTotalService;
+    }
+
+    /**
+     * Optionally with an Idempotency-Key header: a retry with the same key (within payment.idempotency.ttl-hours)
+     * gets the payment that has already been made, instead of charging the card again.
+     * Responds with 503 Service Unavailable when the card processor is unavailable, and with 504 Gateway Timeout
+     * when it did not answer in time: the payment is then kept as UNKNOWN, and a retry with the same key does not
+     * charge the card again.
+     * Responds with 409 Conflict when a payment with the same key is still in progress, and with 422 Unprocessable
+     * Entity when the key has been used for another payment.
+     */
+    @PostMapping
+    public PaymentStatusResponse makePayment(
+            @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+            @RequestBody PaymentRequest paymentRequest) throws IllegalAccessException {
+        Long paymentId;
+        try {
+            paymentId = paymentService.chargeCard(
+                    paymentRequest.getPayment().getCustomerId(), paymentRequest, idempotencyKey);
+        } catch (CardPaymentChargerUnavailableException e) {
+            throw new ResponseStatusException(
+                    e.isTimeout() ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), e);
+        } catch (PaymentInProgressException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        } catch (IdempotencyKeyReusedException e) {
+            throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, e.getMessage(), e);
+        }
+        return new PaymentStatusResponse(paymentId, PaymentStatus.SUCCEEDED);
+    }
+
+    /**
+     * The payments of a customer, newest first, limit at a time, e.g.:
+     * GET api/v1/payment?customerId=...&limit=50
+     * and for the next page, with the nextBefore of the response:
+     * GET api/v1/payment?customerId=...&limit=50&before=...
+     * Responds with 400 Bad Request when limit is not 1 - 100.
+     */
+    @GetMapping
+    public PaymentHistoryResponse getPaymentHistory(
+            @RequestParam("customerId") UUID customerId,
+            @RequestParam(name = "before", required = false) Long before,
+            @RequestParam(name = "limit", defaultValue = "50") int limit) {
+        if (limit < 1 || limit > MAXIMUM_HISTORY_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    String.format("limit must be 1 - %d", MAXIMUM_HISTORY_LIMIT));
+        }
+        return paymentService.getPaymentHistory(customerId, before, limit);
+    }
+
+    /**
+     * Accepts the payment without waiting for the card to be charged.
+     * Responds with 202 Accepted and the PENDING payment; the Location header points to its status.
+     * Responds with 503 Service Unavailable when too many payments are waiting to be charged.
+     */
+    @PostMapping(path = "async")
+    public ResponseEntity<PaymentStatusResponse> submitPayment(@RequestBody PaymentRequest paymentRequest)
+            throws IllegalAccessException {
+        Long paymentId;
+        try {
+            paymentId = paymentService.submitPayment(paymentRequest.getPayment().getCustomerId(), paymentRequest);
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many payments in progress", e);
+        }
+        return ResponseEntity
+                .accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentContextPath()
+                        .path("/api/v1/payment/{paymentId}/status")
+                        .buildAndExpand(paymentId)
+                        .toUri())
+                .body(new PaymentStatusResponse(paymentId, PaymentStatus.PENDING));
+    }
+
+    /**
+     * Charges a batch of payments; every payment carries its own customerId.
+     * Responds with the outcome of every payment, in the order of the request.
+     * Responds with 400 Bad Request when payments is missing or contains null.
+     */
+    @PostMapping(path = "batch")
+    public List<PaymentBatchResult> makePayments(@RequestBody PaymentBatchRequest paymentBatchRequest) {
+        List<Payment> payments = paymentBatchRequest.getPayments();
+        if (payments == null || payments.stream().anyMatch(Objects::isNull)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "payments must be a list of payments");
+        }
+        return paymentBatchService.chargeCards(payments);
+    }
+
+    @GetMapping(path = "{paymentId}/status")
+    public PaymentStatusResponse getPaymentStatus(@PathVariable("paymentId") Long paymentId) {
+        return paymentService.getPaymentStatus(paymentId)
+                .map(status -> new PaymentStatusResponse(paymentId, status))
+                .orElseThrow(() -> new ResponseStatusException(
+                        HttpStatus.NOT_FOUND, String.format("Payment [%s] has not been found", paymentId)));
+    }
+
+    /**
+     * The number, total amount and time of the last of the succeeded payments of the customer, per currency.
+     */
+    @GetMapping(path = "customer/{customerId}/totals")
+    public List<CustomerPaymentTotal> getPaymentTotals(@PathVariable("customerId") UUID customerId) {
+        return customerPaymentTotalService.getTotals(customerId);
     }
 
-    @RequestMapping
-    public void makePayment(@RequestBody PaymentRequest paymentRequest) throws IllegalAccessException {
-        paymentService.chargeCard(paymentRequest.getPayment().getCustomerId(), paymentRequest);
+    /**
+     * Recomputes the payment totals of all customers from their payments.
+     * Responds with the number of totals written, or with 409 Conflict when a rebuild is already running.
+     */
+    @PostMapping(path = "totals/rebuild")
+    public int rebuildPaymentTotals() {
+        try {
+            return customerPaymentTotalService.rebuild();
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        }
     }
 }
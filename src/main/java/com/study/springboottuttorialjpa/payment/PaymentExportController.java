@@ -0,0 +1,48 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.study.springboottuttorialjpa.general.ExportFormat;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.LocalDate;
+
+@RestController
+@RequestMapping(value = "api/v1/payment-export")
+@Slf4j
+public class PaymentExportController {
+
+    private final PaymentExportService paymentExportService;
+
+    @Autowired
+    public PaymentExportController(PaymentExportService paymentExportService) {
+        this.paymentExportService = paymentExportService;
+    }
+
+    /**
+     * Streams the payments of a day, e.g.:
+     * GET api/v1/payment-export?date=2021-11-01&format=CSV&gzip=true
+     * With gzip the response is sent with Content-Encoding gzip (curl --compressed decompresses it).
+     * The response is written while the payments are being read; the last line reports the rows per second.
+     */
+    @GetMapping
+    public void exportPayments(
+            @RequestParam(name = "date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(name = "format", defaultValue = "NDJSON") ExportFormat format,
+            @RequestParam(name = "gzip", defaultValue = "false") boolean gzip,
+            HttpServletResponse response) throws IOException {
+        response.setContentType(format.getContentType());
+        response.setCharacterEncoding("UTF-8");
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        paymentExportService.exportPayments(format, date, gzip, response.getOutputStream());
+    }
+}
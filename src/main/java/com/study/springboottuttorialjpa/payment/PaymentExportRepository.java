@@ -0,0 +1,59 @@
+package com.study.springboottuttorialjpa.payment;
+
+import org.hibernate.jpa.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.Instant;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Reads payments for the exports (see PaymentExportService) as a stream over a database cursor, instead of a list.
+ */
+@Repository
+public class PaymentExportRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * The payments created in [from, to), in paymentId order.
+     *
+     * The rows are fetched fetchSize at a time; Postgres only does so within a transaction, so call this in one and
+     * close the stream before it ends. Every payment is detached before it is handed out, so the persistence context
+     * never holds more than the payment being read, and the payments are loaded read-only: nothing is dirty checked.
+     * There is no index on created_at alone: the payments are read as a range of the primary key, from the payment
+     * ids that [from, to) implies (see PaymentIdGenerator.paymentIdFrom), which is already in paymentId order. The
+     * payments with ids from hibernate_sequence may have been created any time, so their ids are read first, as a
+     * range of their own; there is a fixed number of them. A day of payments is a range scan on a single partition
+     * when the table is partitioned (see PaymentPartitionManager).
+     */
+    public Stream<Payment> streamPayments(Instant from, Instant to, int fetchSize) {
+        return Stream.<Supplier<Stream<Payment>>>of(
+                        () -> streamPayments(from, to, Long.MIN_VALUE, PaymentIdGenerator.SEQUENCE_ID_LIMIT, fetchSize),
+                        () -> streamPayments(from, to,
+                                PaymentIdGenerator.paymentIdFrom(from), PaymentIdGenerator.paymentIdTo(to), fetchSize))
+                .flatMap(Supplier::get);
+    }
+
+    private Stream<Payment> streamPayments(Instant from, Instant to, long fromPaymentId, long toPaymentId,
+                                           int fetchSize) {
+        return entityManager.createQuery(
+                        "select p from Payment p where p.paymentId >= :fromPaymentId and p.paymentId < :toPaymentId " +
+                                "and p.createdAt >= :from and p.createdAt < :to " +
+                                "order by p.paymentId", Payment.class)
+                .setParameter("fromPaymentId", fromPaymentId)
+                .setParameter("toPaymentId", toPaymentId)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .setHint(QueryHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream()
+                .map(payment -> {
+                    entityManager.detach(payment);
+                    return payment;
+                });
+    }
+}
@@ -0,0 +1,241 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.study.springboottuttorialjpa.general.ExportFormat;
+import com.study.springboottuttorialjpa.general.Money;
+import com.study.springboottuttorialjpa.general.MoneyJsonSerializer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the payments of a day as NDJSON or CSV, for the reconciliation; optionally gzip compressed.
+ *
+ * The payments are streamed from a database cursor (see PaymentExportRepository.streamPayments) and written as they
+ * are read, so memory use doesn't depend on the number of payments: at most payment.export.fetch-size payments and
+ * the buffers of the output are held at any time.
+ * The day runs from midnight to midnight in the time zone of the application, as the partitions do.
+ *
+ * Every night (payment.export.cron) the payments of the previous day are written to payment.export.directory, if
+ * set, as payments-yyyy-MM-dd.ndjson.gz. The file is written under a temporary name and then renamed, so a file with
+ * the final name is always complete.
+ *
+ * As the customer export, the export ends with a summary line with the number of rows.
+ */
+@Service
+@Slf4j
+public class PaymentExportService {
+
+    private static final String CSV_HEADER =
+            "paymentId,customerId,amount,currency,settlementAmount,settlementCurrency,source,description,status,createdAt";
+    private static final MoneyJsonSerializer MONEY_SERIALIZER = new MoneyJsonSerializer();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final PaymentExportRepository paymentExportRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int fetchSize;
+    private final Path directory;
+    private final Clock clock;
+
+    @Autowired
+    public PaymentExportService(
+            PaymentExportRepository paymentExportRepository
+            , ObjectMapper objectMapper
+            , PlatformTransactionManager transactionManager
+            , @Value("${payment.export.fetch-size:1000}") int fetchSize
+            , @Value("${payment.export.directory:}") String directory) {
+        this(paymentExportRepository, objectMapper, transactionManager, fetchSize,
+                directory.isBlank() ? null : Paths.get(directory), Clock.systemDefaultZone());
+    }
+
+    PaymentExportService(
+            PaymentExportRepository paymentExportRepository
+            , ObjectMapper objectMapper
+            , PlatformTransactionManager transactionManager
+            , int fetchSize
+            , Path directory
+            , Clock clock) {
+        this.paymentExportRepository = paymentExportRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // Read-only: with read replicas the export runs on one of them (see ReplicaRoutingDataSource).
+        this.transactionTemplate.setReadOnly(true);
+        this.fetchSize = fetchSize;
+        this.directory = directory;
+        this.clock = clock;
+    }
+
+    /**
+     * @param gzip whether to gzip compress the output; the outputStream is then finished but not closed.
+     * @return the number of payments that have been exported.
+     */
+    public long exportPayments(ExportFormat format, LocalDate day, boolean gzip, OutputStream outputStream)
+            throws IOException {
+        GZIPOutputStream gzipOutputStream = gzip ? new GZIPOutputStream(outputStream, BUFFER_SIZE) : null;
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(gzip ? gzipOutputStream : outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        long rows;
+        try {
+            rows = transactionTemplate.execute(status -> {
+                try {
+                    return write(format, day, writer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        if (gzipOutputStream != null) {
+            gzipOutputStream.finish();
+        }
+        return rows;
+    }
+
+    /**
+     * Exports the payments of yesterday to payment.export.directory; does nothing if that is not set.
+     *
+     * @return the file; null if there is no directory.
+     */
+    @Scheduled(cron = "${payment.export.cron:0 30 1 * * *}")
+    public Path exportPreviousDay() throws IOException {
+        if (directory == null) {
+            return null;
+        }
+        LocalDate day = LocalDate.now(clock).minusDays(1);
+        Path file = directory.resolve(String.format("payments-%s.ndjson.gz", day));
+        Path temporaryFile = directory.resolve(file.getFileName() + ".tmp");
+        Files.createDirectories(directory);
+        try (OutputStream outputStream = Files.newOutputStream(temporaryFile)) {
+            exportPayments(ExportFormat.NDJSON, day, true, outputStream);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporaryFile);
+            throw e;
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    private long write(ExportFormat format, LocalDate day, Writer writer) throws IOException {
+        long start = System.nanoTime();
+        ZoneId zone = clock.getZone();
+        // Writes straight to the writer; the writer is flushed and closed by the caller.
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(writer)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM)
+                // The objects are separated by line breaks instead.
+                .setRootValueSeparator(null);
+        StringBuilder line = new StringBuilder(256);
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        long rows = 0;
+        try (Stream<Payment> payments = paymentExportRepository.streamPayments(
+                day.atStartOfDay(zone).toInstant(), day.plusDays(1).atStartOfDay(zone).toInstant(), fetchSize)) {
+            Iterator<Payment> iterator = payments.iterator();
+            while (iterator.hasNext()) {
+                Payment payment = iterator.next();
+                if (format == ExportFormat.CSV) {
+                    line.setLength(0);
+                    writer.append(appendCsv(payment, line)).write('\n');
+                } else {
+                    writeJson(payment, generator);
+                    generator.writeRaw('\n');
+                }
+                rows++;
+            }
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        long rowsPerSecond = elapsedNanos == 0 ? rows : rows * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        if (format == ExportFormat.CSV) {
+            writer.write(String.format("# rows=%d,elapsedMillis=%d,rowsPerSecond=%d", rows, elapsedMillis, rowsPerSecond));
+            writer.write('\n');
+        } else {
+            generator.writeStartObject();
+            generator.writeNumberField("rows", rows);
+            generator.writeNumberField("elapsedMillis", elapsedMillis);
+            generator.writeNumberField("rowsPerSecond", rowsPerSecond);
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+            generator.flush();
+        }
+        log.info("Payment export of {} finished: {} rows in {} ms ({} rows/s)", day, rows, elapsedMillis, rowsPerSecond);
+        return rows;
+    }
+
+    private static StringBuilder appendCsv(Payment payment, StringBuilder line) {
+        line.append(payment.getPaymentId()).append(',')
+                .append(payment.getCustomerId()).append(',');
+        appendCsv(payment.getAmount(), line);
+        line.append(',');
+        appendCsv(payment.getSettlementAmount(), line);
+        return line.append(',')
+                .append(ExportFormat.csvField(payment.getSource())).append(',')
+                .append(ExportFormat.csvField(payment.getDescription())).append(',')
+                .append(payment.getStatus()).append(',')
+                .append(payment.getCreatedAt());
+    }
+
+    // Amount and currency, as two fields.
+    private static void appendCsv(Money money, StringBuilder line) {
+        if (money != null) {
+            money.appendTo(line).append(',').append(money.getCurrency());
+        } else {
+            line.append(',');
+        }
+    }
+
+    private static void writeJson(Payment payment, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("paymentId", payment.getPaymentId());
+        generator.writeStringField("customerId", Objects.toString(payment.getCustomerId(), null));
+        writeJson("amount", "currency", payment.getAmount(), generator);
+        writeJson("settlementAmount", "settlementCurrency", payment.getSettlementAmount(), generator);
+        generator.writeStringField("source", payment.getSource());
+        generator.writeStringField("description", payment.getDescription());
+        generator.writeStringField("status", Objects.toString(payment.getStatus(), null));
+        generator.writeStringField("createdAt", Objects.toString(payment.getCreatedAt(), null));
+        generator.writeEndObject();
+    }
+
+    private static void writeJson(String amountField, String currencyField, Money money, JsonGenerator generator)
+            throws IOException {
+        if (money == null) {
+            return;
+        }
+        generator.writeFieldName(amountField);
+        MONEY_SERIALIZER.serialize(money, generator, null);
+        generator.writeStringField(currencyField, money.getCurrency().name());
+    }
+}
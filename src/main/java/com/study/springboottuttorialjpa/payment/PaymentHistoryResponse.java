@@ -0,0 +1,21 @@
+package com.study.springboottuttorialjpa.payment;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * A page of the payment history of a customer, newest first.
+ * nextBefore is the value of the before parameter for the next (older) page; null on the last page.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class PaymentHistoryResponse {
+
+    private final List<PaymentSummary> payments;
+
+    private final Long nextBefore;
+}
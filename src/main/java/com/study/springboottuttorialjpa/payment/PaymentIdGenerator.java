@@ -0,0 +1,95 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.study.springboottuttorialjpa.utils.SnowflakeIdGenerator;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Properties;
+
+/**
+ * Hibernate identifier generator for Payment.paymentId; see SnowflakeIdGenerator.
+ *
+ * The ids are generated in memory, so Hibernate doesn't need a round trip to a sequence before an insert, and
+ * inserts of several payments can be sent as one JDBC batch.
+ *
+ * The node id is read from the Hibernate setting payment.id-generator.node-id, i.e. the Spring property
+ * spring.jpa.properties.payment.id-generator.node-id. It defaults to 0 and must differ per application instance.
+ *
+ * The id also tells when the payment was created: created_at is set within CREATED_AT_MARGIN of the timestamp of
+ * the id (the ids may run ahead of the clock by a few seconds, see SnowflakeIdGenerator). createdAtFrom and
+ * createdAtTo bound a lookup by payment id on created_at, so a partitioned payment table (see
+ * PaymentPartitionManager) only reads the partitions of that range instead of all of them; the other way around,
+ * paymentIdFrom and paymentIdTo bound a lookup by created_at on the payment id, i.e. on the primary key.
+ */
+public class PaymentIdGenerator implements IdentifierGenerator, Configurable {
+
+    public static final String NODE_ID_SETTING = "payment.id-generator.node-id";
+
+    static final Duration CREATED_AT_MARGIN = Duration.ofHours(1);
+    // The ids from hibernate_sequence, from before the Snowflake ids, have timestamps just after EPOCH; their
+    // payments may have been created any time.
+    private static final long SEQUENCE_ID_TIMESTAMP_LIMIT = SnowflakeIdGenerator.EPOCH + CREATED_AT_MARGIN.toMillis();
+    // The ids below are from hibernate_sequence.
+    public static final long SEQUENCE_ID_LIMIT = SnowflakeIdGenerator.firstIdAt(SEQUENCE_ID_TIMESTAMP_LIMIT);
+    private static final Instant UNBOUNDED_FROM = Instant.EPOCH;
+    private static final Instant UNBOUNDED_TO = Instant.parse("9999-12-31T00:00:00Z");
+
+    private SnowflakeIdGenerator snowflakeIdGenerator;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) {
+        Object nodeId = serviceRegistry.getService(ConfigurationService.class).getSettings().get(NODE_ID_SETTING);
+        snowflakeIdGenerator = SnowflakeIdGenerator.forNode(nodeId == null ? 0 : Integer.parseInt(nodeId.toString()));
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        return snowflakeIdGenerator.nextId();
+    }
+
+    /**
+     * @return the lower bound (inclusive) of the created_at of the payment, and of the payments with larger ids.
+     */
+    public static Instant createdAtFrom(long paymentId) {
+        long timestamp = SnowflakeIdGenerator.timestampOf(paymentId);
+        if (timestamp < SEQUENCE_ID_TIMESTAMP_LIMIT) {
+            return UNBOUNDED_FROM;
+        }
+        return Instant.ofEpochMilli(timestamp).minus(CREATED_AT_MARGIN);
+    }
+
+    /**
+     * @return the upper bound (exclusive) of the created_at of the payment, and of the payments with smaller ids.
+     */
+    public static Instant createdAtTo(long paymentId) {
+        long timestamp = SnowflakeIdGenerator.timestampOf(paymentId);
+        if (timestamp < SEQUENCE_ID_TIMESTAMP_LIMIT) {
+            return UNBOUNDED_TO;
+        }
+        return Instant.ofEpochMilli(timestamp).plus(CREATED_AT_MARGIN);
+    }
+
+    /**
+     * @return the lower bound (inclusive) of the Snowflake ids of the payments created at or after createdAt; the
+     * ids from hibernate_sequence are not bounded, see SEQUENCE_ID_LIMIT.
+     */
+    public static long paymentIdFrom(Instant createdAt) {
+        return Math.max(SEQUENCE_ID_LIMIT,
+                SnowflakeIdGenerator.firstIdAt(createdAt.minus(CREATED_AT_MARGIN).toEpochMilli()));
+    }
+
+    /**
+     * @return the upper bound (exclusive) of the Snowflake ids of the payments created before createdAt.
+     */
+    public static long paymentIdTo(Instant createdAt) {
+        return Math.max(SEQUENCE_ID_LIMIT,
+                SnowflakeIdGenerator.firstIdAt(createdAt.plus(CREATED_AT_MARGIN).toEpochMilli() + 1));
+    }
+}
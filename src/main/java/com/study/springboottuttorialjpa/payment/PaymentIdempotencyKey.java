@@ -0,0 +1,38 @@
+package com.study.springboottuttorialjpa.payment;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.time.Instant;
+
+/**
+ * The durable record of an Idempotency-Key, see PaymentIdempotencyService.
+ * paymentId is null until the payment has been stored; completed is set once the payment has succeeded.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@ToString
+@Entity
+public class PaymentIdempotencyKey {
+
+    @Id
+    private String idempotencyKey;
+
+    // The SHA-256 of the request in hex, see PaymentIdempotencyService.requestHash.
+    @Column(nullable = false, length = 64)
+    private String requestHash;
+
+    private Long paymentId;
+
+    @Column(nullable = false)
+    private boolean completed;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+}
@@ -0,0 +1,96 @@
+package com.study.springboottuttorialjpa.payment;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Optional;
+
+@Repository
+public interface PaymentIdempotencyKeyRepository extends JpaRepository<PaymentIdempotencyKey, String> {
+
+    /**
+     * Read-write, so it is answered by the primary (see ReplicaRoutingDataSource): the key has typically been
+     * claimed a moment ago and may not be on a replica yet.
+     */
+    @Override
+    @Transactional
+    Optional<PaymentIdempotencyKey> findById(String idempotencyKey);
+
+    /**
+     * Claims the key for a new payment.
+     *
+     * @return 1 if the key has been claimed; 0 if it has been claimed before.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into payment_idempotency_key (idempotency_key, request_hash, completed, created_at) " +
+            "values (:idempotency_key, :request_hash, false, :created_at) on conflict (idempotency_key) do nothing",
+            nativeQuery = true)
+    int claim(
+            @Param("idempotency_key") String idempotencyKey,
+            @Param("request_hash") String requestHash,
+            @Param("created_at") Instant createdAt);
+
+    /**
+     * Ties the claim to the payment made for it, as soon as the payment has been stored: from then on the claim is
+     * no longer given up after the lease, as the card may be charged.
+     */
+    @Transactional
+    @Modifying
+    @Query("update PaymentIdempotencyKey k set k.paymentId = :paymentId " +
+            "where k.idempotencyKey = :idempotencyKey and k.paymentId is null")
+    int bind(@Param("idempotencyKey") String idempotencyKey, @Param("paymentId") Long paymentId);
+
+    @Transactional
+    @Modifying
+    @Query("update PaymentIdempotencyKey k set k.paymentId = :paymentId, k.completed = true " +
+            "where k.idempotencyKey = :idempotencyKey")
+    int complete(@Param("idempotencyKey") String idempotencyKey, @Param("paymentId") Long paymentId);
+
+    /**
+     * Records the outcome of a payment that was not known when its request ended, see PaymentSettlementService.
+     */
+    @Transactional
+    @Modifying
+    @Query("update PaymentIdempotencyKey k set k.completed = true where k.paymentId = :paymentId")
+    int completeByPaymentId(@Param("paymentId") Long paymentId);
+
+    /**
+     * Gives up the claim of a payment that turned out to have failed, so that a retry can make the payment after all.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from PaymentIdempotencyKey k where k.paymentId = :paymentId and k.completed = false")
+    int releaseByPaymentId(@Param("paymentId") Long paymentId);
+
+    /**
+     * Gives up a claim, so that a retry can make the payment after all.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from PaymentIdempotencyKey k where k.idempotencyKey = :idempotencyKey and k.completed = false")
+    int release(@Param("idempotencyKey") String idempotencyKey);
+
+    /**
+     * Removes a claim whose lease has run out before any payment was stored for it, e.g. because the instance that
+     * claimed it went down, so that it can be claimed again.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from PaymentIdempotencyKey k where k.idempotencyKey = :idempotencyKey " +
+            "and k.paymentId is null and k.createdAt < :claimedBefore")
+    int deleteStale(@Param("idempotencyKey") String idempotencyKey, @Param("claimedBefore") Instant claimedBefore);
+
+    /**
+     * Removes a key whose outcome has expired, so that it can be claimed again.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from PaymentIdempotencyKey k where k.idempotencyKey = :idempotencyKey and k.createdAt < :expiredBefore")
+    int deleteExpired(@Param("idempotencyKey") String idempotencyKey, @Param("expiredBefore") Instant expiredBefore);
+}
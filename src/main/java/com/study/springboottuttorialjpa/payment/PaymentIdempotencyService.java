@@ -0,0 +1,318 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.study.springboottuttorialjpa.utils.SizeBoundedEviction;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Makes a payment at most once per Idempotency-Key.
+ *
+ * - The outcomes are kept in a size bounded ConcurrentHashMap, for ttl, so replays are answered from memory.
+ * - A duplicate that arrives while the payment is still in progress waits for the outcome of that payment.
+ * - Every key is also claimed in the payment_idempotency_key table before the payment is made. This keeps the
+ *   outcome over restarts and evictions, and makes a duplicate on another instance fail instead of paying twice.
+ *   The claim is tied to the payment as soon as the payment has been stored, before its card is charged.
+ * - A claim to which no payment has been tied yet is a lease of lease-seconds: when it runs out, e.g. because the
+ *   instance went down right after claiming, the key can be claimed again instead of being blocked for the ttl.
+ * - A payment that definitely failed is not remembered: a retry with the same key makes the payment after all.
+ *   That is a payment that was refused before it was stored (e.g. unknown customer), a card that has not been
+ *   debited (IllegalAccessException), or a charge the card processor refused or never got (see
+ *   CardPaymentCharger.isDefiniteFailure). After any other failure, e.g. a timeout or a lost connection
+ *   (PaymentOutcomeUnknownException), the card may have been charged: the key stays claimed and a retry is refused
+ *   as in progress (PaymentInProgressException).
+ * - A key can only be used for one request; a different request with the same key is rejected
+ *   (IdempotencyKeyReusedException).
+ */
+@Service
+@Slf4j
+public class PaymentIdempotencyService implements MeterBinder {
+
+    private final PaymentIdempotencyKeyRepository paymentIdempotencyKeyRepository;
+    private final Duration ttl;
+    private final Duration lease;
+    private final Clock clock;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // Evicts the completed entries: first the expired ones, then arbitrary ones. Payments in progress stay.
+    private final SizeBoundedEviction eviction;
+
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+
+    @Autowired
+    public PaymentIdempotencyService(
+            PaymentIdempotencyKeyRepository paymentIdempotencyKeyRepository
+            , @Value("${payment.idempotency.maximum-size:100000}") int maximumSize
+            , @Value("${payment.idempotency.ttl-hours:24}") long ttlHours
+            , @Value("${payment.idempotency.lease-seconds:60}") long leaseSeconds) {
+        this(paymentIdempotencyKeyRepository, maximumSize, Duration.ofHours(ttlHours), Duration.ofSeconds(leaseSeconds),
+                Clock.systemUTC());
+    }
+
+    PaymentIdempotencyService(
+            PaymentIdempotencyKeyRepository paymentIdempotencyKeyRepository
+            , int maximumSize
+            , Duration ttl
+            , Duration lease
+            , Clock clock) {
+        this.paymentIdempotencyKeyRepository = paymentIdempotencyKeyRepository;
+        this.eviction = new SizeBoundedEviction(maximumSize);
+        this.ttl = ttl;
+        this.lease = lease;
+        this.clock = clock;
+    }
+
+    /**
+     * @param requestHash identifies the request (see requestHash); the same key with another requestHash is
+     *                    rejected.
+     * @param payment makes the payment and returns its id. Called at most once per key, unless it definitely fails.
+     * @return the id of the payment made for this key.
+     */
+    public Long execute(String idempotencyKey, String requestHash, PaymentAction payment)
+            throws IllegalAccessException {
+        Instant now = clock.instant();
+        Entry mine = new Entry(requestHash, now);
+        for (;;) {
+            Entry entry = entries.get(idempotencyKey);
+            if (entry != null && !isExpired(entry.createdAt, now)) {
+                checkRequestHash(idempotencyKey, entry.requestHash, requestHash);
+                if (entry.result.isDone()) {
+                    replays.increment();
+                } else {
+                    waits.increment();
+                }
+                return await(entry.result);
+            }
+            boolean added = entry == null
+                    ? entries.putIfAbsent(idempotencyKey, mine) == null
+                    : entries.replace(idempotencyKey, entry, mine);
+            if (added) {
+                break;
+            }
+        }
+        eviction.evictIfFull(entries.values(),
+                entry -> entry.result.isDone() && isExpired(entry.createdAt, now), entry -> entry.result.isDone());
+
+        try {
+            Long paymentId = claimAndPay(idempotencyKey, requestHash, now, payment);
+            mine.result.complete(paymentId);
+            return paymentId;
+        } catch (IllegalAccessException | RuntimeException e) {
+            // Failures are not remembered; the waiting duplicates get the same failure.
+            entries.remove(idempotencyKey, mine);
+            mine.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Settles the key of a payment whose outcome was not known when its request ended (its key stayed claimed):
+     * a replay gets the payment if it succeeded; if it failed, a retry makes the payment after all.
+     */
+    public void settle(Long paymentId, boolean succeeded) {
+        if (succeeded) {
+            paymentIdempotencyKeyRepository.completeByPaymentId(paymentId);
+        } else {
+            paymentIdempotencyKeyRepository.releaseByPaymentId(paymentId);
+        }
+    }
+
+    public long size() {
+        return entries.size();
+    }
+
+    public long replayCount() {
+        return replays.sum();
+    }
+
+    private Long claimAndPay(String idempotencyKey, String requestHash, Instant now, PaymentAction payment)
+            throws IllegalAccessException {
+        if (paymentIdempotencyKeyRepository.claim(idempotencyKey, requestHash, now) == 0) {
+            Optional<Long> paymentId = replay(idempotencyKey, requestHash, now);
+            if (paymentId.isPresent()) {
+                replays.increment();
+                return paymentId.get();
+            }
+            // The stored key had been released, had expired, or its lease had run out, and has been removed.
+            if (paymentIdempotencyKeyRepository.claim(idempotencyKey, requestHash, now) == 0) {
+                throw inProgress(idempotencyKey);
+            }
+        }
+
+        AtomicBoolean stored = new AtomicBoolean();
+        Long paymentId;
+        try {
+            paymentId = payment.pay(storedPaymentId -> {
+                paymentIdempotencyKeyRepository.bind(idempotencyKey, storedPaymentId);
+                stored.set(true);
+            });
+        } catch (IllegalAccessException | RuntimeException e) {
+            if (isDefiniteFailure(e, stored.get())) {
+                paymentIdempotencyKeyRepository.release(idempotencyKey);
+            } else {
+                log.warn("The outcome of the payment with Idempotency-Key [{}] is unknown; the key stays claimed",
+                        idempotencyKey);
+            }
+            throw e;
+        }
+        paymentIdempotencyKeyRepository.complete(idempotencyKey, paymentId);
+        return paymentId;
+    }
+
+    /**
+     * @param stored whether the payment has been stored, so its card may have been charged.
+     * @return whether the card has certainly not been charged.
+     */
+    private static boolean isDefiniteFailure(Exception e, boolean stored) {
+        if (e instanceof CardPaymentChargerUnavailableException
+                && ((CardPaymentChargerUnavailableException) e).isTimeout()) {
+            return false;
+        }
+        if (!stored) {
+            // Refused before the payment was stored, e.g. an unknown customer; a card is only charged after that.
+            return true;
+        }
+        // IllegalAccessException: the card has not been debited.
+        return e instanceof IllegalAccessException || CardPaymentCharger.isDefiniteFailure(e);
+    }
+
+    /**
+     * @return the stored outcome of the key; empty if it has been released, if it has expired, or if its lease has
+     * run out.
+     */
+    private Optional<Long> replay(String idempotencyKey, String requestHash, Instant now) {
+        Optional<PaymentIdempotencyKey> stored = paymentIdempotencyKeyRepository.findById(idempotencyKey);
+        if (stored.isEmpty()) {
+            // Released in the meantime by a failed payment; the key can be claimed again.
+            return Optional.empty();
+        }
+        if (isExpired(stored.get().getCreatedAt(), now)) {
+            paymentIdempotencyKeyRepository.deleteExpired(idempotencyKey, now.minus(ttl));
+            return Optional.empty();
+        }
+        checkRequestHash(idempotencyKey, stored.get().getRequestHash(), requestHash);
+        if (stored.get().getPaymentId() == null && !stored.get().getCreatedAt().plus(lease).isAfter(now)) {
+            log.warn("The lease of Idempotency-Key [{}] has run out before a payment was stored", idempotencyKey);
+            paymentIdempotencyKeyRepository.deleteStale(idempotencyKey, now.minus(lease));
+            return Optional.empty();
+        }
+        if (!stored.get().isCompleted()) {
+            throw inProgress(idempotencyKey);
+        }
+        return Optional.of(stored.get().getPaymentId());
+    }
+
+    private boolean isExpired(Instant createdAt, Instant now) {
+        return !createdAt.plus(ttl).isAfter(now);
+    }
+
+    /**
+     * The SHA-256 (hex) of the fields of a request, each as its length and its string form, so that no two
+     * different lists of fields have the same encoding; null is encoded apart from any string.
+     */
+    public static String requestHash(Object... fields) {
+        StringBuilder encoded = new StringBuilder();
+        for (Object field : fields) {
+            if (field == null) {
+                encoded.append("-;");
+            } else {
+                String value = field.toString();
+                encoded.append(value.length()).append(':').append(value).append(';');
+            }
+        }
+        byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(encoded.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256.
+            throw new IllegalStateException(e);
+        }
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void checkRequestHash(String idempotencyKey, String expected, String actual) {
+        if (!expected.equals(actual)) {
+            throw new IdempotencyKeyReusedException(String.format(
+                    "Idempotency-Key [%s] has already been used for another payment", idempotencyKey));
+        }
+    }
+
+    private static PaymentInProgressException inProgress(String idempotencyKey) {
+        return new PaymentInProgressException(String.format(
+                "A payment with Idempotency-Key [%s] is in progress", idempotencyKey));
+    }
+
+    private static Long await(CompletableFuture<Long> result) throws IllegalAccessException {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IllegalAccessException) {
+                throw (IllegalAccessException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("payment.idempotency.replays", replays, LongAdder::sum)
+                .description("Payments answered with the outcome of an earlier request with the same key")
+                .register(registry);
+        FunctionCounter.builder("payment.idempotency.waits", waits, LongAdder::sum)
+                .description("Duplicates that waited for the payment in progress")
+                .register(registry);
+        Gauge.builder("payment.idempotency.size", entries, Map::size)
+                .register(registry);
+    }
+
+    @FunctionalInterface
+    public interface PaymentAction {
+
+        /**
+         * @param stored to be called with the id of the payment as soon as it has been stored, before the card is
+         *               charged. A failure before that call is taken as definite: nothing has been charged.
+         */
+        Long pay(Consumer<Long> stored) throws IllegalAccessException;
+    }
+
+    private static final class Entry {
+
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+        private final String requestHash;
+        private final Instant createdAt;
+
+        private Entry(String requestHash, Instant createdAt) {
+            this.requestHash = requestHash;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.study.springboottuttorialjpa.payment;
+
+/**
+ * A payment with the same Idempotency-Key is still in progress, or its outcome is not known yet: a retry may get
+ * its outcome later.
+ */
+public class PaymentInProgressException extends IllegalStateException {
+
+    public PaymentInProgressException(String message) {
+        super(message);
+    }
+}
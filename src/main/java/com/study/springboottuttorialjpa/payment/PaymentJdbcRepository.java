@@ -0,0 +1,136 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import com.study.springboottuttorialjpa.general.Money;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Plain JDBC access to the payment table for the batch payments and the PendingPaymentSweeper.
+ * The payments are not kept in a persistence context and are inserted as one JDBC batch.
+ */
+@Repository
+public class PaymentJdbcRepository {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public PaymentJdbcRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Inserts the payments, which must have their paymentId, as one JDBC batch in one transaction.
+     */
+    @Transactional
+    public int[] insertPayments(List<Payment> payments) {
+        if (payments.isEmpty()) {
+            return new int[0];
+        }
+        SqlParameterSource[] batch = new SqlParameterSource[payments.size()];
+        for (int i = 0; i < batch.length; i++) {
+            Payment payment = payments.get(i);
+            batch[i] = new MapSqlParameterSource()
+                    .addValue("payment_id", payment.getPaymentId())
+                    .addValue("customer_id", payment.getCustomerId())
+                    // In minor units, see Money.
+                    .addValue("amount", payment.getAmount() == null ? null : payment.getAmount().getMinorUnits())
+                    // The currency is mapped by JPA as an ordinal.
+                    .addValue("currency", payment.getCurrency() == null ? null : payment.getCurrency().ordinal())
+                    .addValue("settlement_amount", payment.getSettlementAmount() == null
+                            ? null : payment.getSettlementAmount().getMinorUnits())
+                    .addValue("settlement_currency", payment.getSettlementAmount() == null
+                            ? null : payment.getSettlementAmount().getCurrency().ordinal())
+                    .addValue("source", payment.getSource())
+                    .addValue("charge_id", payment.getChargeId())
+                    .addValue("description", payment.getDescription())
+                    .addValue("status", payment.getStatus() == null ? null : payment.getStatus().name())
+                    .addValue("created_at", payment.getCreatedAt() == null
+                            ? null : Timestamp.from(payment.getCreatedAt()));
+        }
+        return jdbcTemplate.batchUpdate(
+                "insert into payment (payment_id, customer_id, amount, currency, settlement_amount, settlement_currency, " +
+                        "source, charge_id, description, status, created_at) " +
+                        "values (:payment_id, :customer_id, :amount, :currency, :settlement_amount, " +
+                        ":settlement_currency, :source, :charge_id, :description, :status, :created_at)",
+                batch);
+    }
+
+    /**
+     * Stores the status and chargeId of payments inserted before by insertPayments, as one JDBC batch in one
+     * transaction, while they are still PENDING: the PendingPaymentSweeper may have stored an outcome first.
+     * The created_at range of the payment id (see PaymentIdGenerator.createdAtFrom) is part of the condition so that
+     * a partitioned payment table (see PaymentPartitionManager) only reads the partition of the payment.
+     *
+     * @return the number of rows updated per payment: 0 for a payment that was no longer PENDING.
+     */
+    @Transactional
+    public int[] updateStatuses(List<Payment> payments) {
+        if (payments.isEmpty()) {
+            return new int[0];
+        }
+        SqlParameterSource[] batch = new SqlParameterSource[payments.size()];
+        for (int i = 0; i < batch.length; i++) {
+            Payment payment = payments.get(i);
+            batch[i] = new MapSqlParameterSource()
+                    .addValue("payment_id", payment.getPaymentId())
+                    .addValue("created_from", Timestamp.from(PaymentIdGenerator.createdAtFrom(payment.getPaymentId())))
+                    .addValue("created_to", Timestamp.from(PaymentIdGenerator.createdAtTo(payment.getPaymentId())))
+                    .addValue("pending", PaymentStatus.PENDING.name())
+                    .addValue("status", payment.getStatus().name())
+                    .addValue("charge_id", payment.getChargeId());
+        }
+        return jdbcTemplate.batchUpdate(
+                "update payment set status = :status, charge_id = :charge_id " +
+                        "where payment_id = :payment_id and created_at >= :created_from and created_at < :created_to " +
+                        "and status = :pending",
+                batch);
+    }
+
+    /**
+     * Claims up to limit PENDING payments created before createdBefore, oldest first, on the (status, created_at)
+     * index, until claimedUntil: the payments claimed by another sweeper before now are left alone until their claim
+     * ends. Rows being claimed by another sweeper are skipped instead of waited for (SKIP LOCKED), so any number of
+     * instances can sweep at the same time without charging a payment twice at once.
+     * One short transaction: the payments are charged after the claim has been committed.
+     */
+    @Transactional
+    public List<Payment> claimPending(Instant createdBefore, Instant now, Instant claimedUntil, int limit) {
+        return jdbcTemplate.query(
+                "update payment set claimed_until = :claimed_until " +
+                        "where (payment_id, created_at) in (select payment_id, created_at from payment " +
+                        "where status = :status and created_at < :created_before " +
+                        "and (claimed_until is null or claimed_until <= :now) " +
+                        "order by created_at " +
+                        "limit :limit " +
+                        "for update skip locked) " +
+                        "returning payment_id, customer_id, amount, currency, source, description, created_at",
+                new MapSqlParameterSource()
+                        .addValue("status", PaymentStatus.PENDING.name())
+                        .addValue("created_before", Timestamp.from(createdBefore))
+                        .addValue("now", Timestamp.from(now))
+                        .addValue("claimed_until", Timestamp.from(claimedUntil))
+                        .addValue("limit", limit),
+                (rs, rowNum) -> {
+                    Payment payment = new Payment(
+                            rs.getLong("payment_id"),
+                            rs.getObject("customer_id", UUID.class),
+                            Money.ofMinorUnits(rs.getLong("amount"), Currency.values()[rs.getInt("currency")]),
+                            rs.getString("source"),
+                            rs.getString("description"));
+                    payment.setStatus(PaymentStatus.PENDING);
+                    payment.setCreatedAt(rs.getTimestamp("created_at").toInstant());
+                    return payment;
+                });
+    }
+}
@@ -0,0 +1,21 @@
+package com.study.springboottuttorialjpa.payment;
+
+/**
+ * The charge failed after the payment had been stored, without a definite answer of the card processor (see
+ * CardPaymentCharger.isDefiniteFailure): the card may or may not have been charged. The payment is kept as UNKNOWN
+ * for the reconciliation, and its Idempotency-Key stays claimed.
+ */
+public class PaymentOutcomeUnknownException extends CardPaymentChargerUnavailableException {
+
+    private final Long paymentId;
+
+    public PaymentOutcomeUnknownException(Long paymentId, Throwable cause) {
+        super(String.format("%s; the outcome of payment [%s] is not known yet", cause.getMessage(), paymentId),
+                cause, true);
+        this.paymentId = paymentId;
+    }
+
+    public Long getPaymentId() {
+        return paymentId;
+    }
+}
@@ -0,0 +1,157 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.study.springboottuttorialjpa.utils.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Clock;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Schema mode payment.partitioning.enabled=true: the payment table is partitioned by month of created_at, so old
+ * months can be detached or dropped as a whole instead of being deleted row by row, and vacuum and index
+ * maintenance only deal with the months that still change.
+ *
+ * - at startup the (empty) payment table created by Hibernate is replaced with a partitioned one.
+ * - at startup and every day (payment.partitioning.cron) the partitions of the current month and the
+ *   payment.partitioning.months-ahead next months are created, and the partitions older than
+ *   payment.partitioning.retention-months are detached or dropped (payment.partitioning.retention-action).
+ * There is no default partition: a payment outside the created months fails instead of ending up in a partition
+ * that would block creating the partition of its month later.
+ * The primary key becomes (payment_id, created_at), so the database no longer catches two instances handing out the
+ * same payment ids: the node id of PaymentIdGenerator must be set per instance, and the default node id 0 is refused
+ * at startup.
+ *
+ * Months are in the time zone of the application, as created_at is stored in it. A query with a range on
+ * created_at only reads the partitions of the months in that range.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(
+        value = "payment.partitioning.enabled",
+        havingValue = "true"
+)
+// Hibernate creates the payment table that is replaced.
+@DependsOn("entityManagerFactory")
+public class PaymentPartitionManager {
+
+    static final String PARTITION_PREFIX = "payment_p";
+    private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyyMM");
+
+    public enum RetentionAction {
+        DETACH,
+        DROP
+    }
+
+    private final PaymentPartitionRepository paymentPartitionRepository;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final RetentionAction retentionAction;
+    private final int nodeId;
+    private final Clock clock;
+
+    /**
+     * @param retentionMonths the number of months kept, including the current one; 0 keeps all partitions.
+     */
+    @Autowired
+    public PaymentPartitionManager(
+            PaymentPartitionRepository paymentPartitionRepository
+            , @Value("${payment.partitioning.months-ahead:3}") int monthsAhead
+            , @Value("${payment.partitioning.retention-months:0}") int retentionMonths
+            , @Value("${payment.partitioning.retention-action:DETACH}") RetentionAction retentionAction
+            , @Value("${spring.jpa.properties." + PaymentIdGenerator.NODE_ID_SETTING + ":0}") int nodeId) {
+        this(paymentPartitionRepository, monthsAhead, retentionMonths, retentionAction, nodeId,
+                Clock.systemDefaultZone());
+    }
+
+    PaymentPartitionManager(
+            PaymentPartitionRepository paymentPartitionRepository
+            , int monthsAhead
+            , int retentionMonths
+            , RetentionAction retentionAction
+            , int nodeId
+            , Clock clock) {
+        this.paymentPartitionRepository = paymentPartitionRepository;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.retentionAction = retentionAction;
+        this.nodeId = nodeId;
+        this.clock = clock;
+    }
+
+    /**
+     * @throws IllegalStateException if the node id is left at the default 0, or if the payment table is a plain
+     *                               table that already has payments; those have to be migrated first.
+     */
+    @PostConstruct
+    public void initialize() {
+        if (nodeId == 0) {
+            throw new IllegalStateException(
+                    "payment.partitioning needs a node id per instance; set spring.jpa.properties." +
+                            PaymentIdGenerator.NODE_ID_SETTING + " to 1 - " + SnowflakeIdGenerator.MAXIMUM_NODE_ID);
+        }
+        if (!paymentPartitionRepository.isPartitioned()) {
+            if (!paymentPartitionRepository.isEmpty()) {
+                throw new IllegalStateException(
+                        "The payment table is not partitioned and has payments; migrate them before enabling " +
+                                "payment.partitioning");
+            }
+            paymentPartitionRepository.replaceWithPartitionedTable();
+            log.info("The payment table has been replaced with a table partitioned by month");
+        }
+        maintain();
+    }
+
+    @Scheduled(cron = "${payment.partitioning.cron:0 0 3 * * *}")
+    public void maintain() {
+        YearMonth current = YearMonth.now(clock);
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            paymentPartitionRepository.createPartition(partitionName(month), month.atDay(1), month.plusMonths(1).atDay(1));
+        }
+
+        if (retentionMonths <= 0) {
+            return;
+        }
+        YearMonth oldestRetained = current.minusMonths(retentionMonths - 1L);
+        for (String partition : paymentPartitionRepository.selectPartitionNames()) {
+            YearMonth month = monthOf(partition);
+            if (month == null || !month.isBefore(oldestRetained)) {
+                continue;
+            }
+            if (retentionAction == RetentionAction.DROP) {
+                paymentPartitionRepository.dropPartition(partition);
+            } else {
+                paymentPartitionRepository.detachPartition(partition);
+            }
+            log.info("Payment partition {} is past the retention of {} months: {}",
+                    partition, retentionMonths, retentionAction);
+        }
+    }
+
+    static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + MONTH_FORMAT.format(month);
+    }
+
+    /**
+     * @return the month of a partition created by this manager; null for any other table.
+     */
+    static YearMonth monthOf(String partitionName) {
+        if (!partitionName.startsWith(PARTITION_PREFIX)) {
+            return null;
+        }
+        try {
+            return YearMonth.parse(partitionName.substring(PARTITION_PREFIX.length()), MONTH_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.study.springboottuttorialjpa.payment;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * The DDL behind PaymentPartitionManager: Postgres declarative partitioning of the payment table by range of
+ * created_at.
+ * Partition names come from PaymentPartitionManager and are never user input.
+ */
+@Repository
+public class PaymentPartitionRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public PaymentPartitionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @return whether the payment table is a partitioned table; false if it is a plain table or doesn't exist.
+     */
+    public boolean isPartitioned() {
+        Boolean partitioned = jdbcTemplate.queryForObject(
+                "select exists (select 1 from pg_partitioned_table pt join pg_class c on c.oid = pt.partrelid " +
+                        "where c.relname = 'payment' and c.relnamespace = current_schema()::regnamespace)",
+                Boolean.class);
+        return Boolean.TRUE.equals(partitioned);
+    }
+
+    public boolean isEmpty() {
+        Boolean empty = jdbcTemplate.queryForObject("select not exists (select 1 from payment)", Boolean.class);
+        return Boolean.TRUE.equals(empty);
+    }
+
+    /**
+     * Replaces the (empty) payment table, as created by Hibernate, with a table with the same columns that is
+     * partitioned by range of created_at.
+     * The primary key of a partitioned table must contain the partition key, so it becomes (payment_id, created_at).
+     */
+    @Transactional
+    public void replaceWithPartitionedTable() {
+        jdbcTemplate.execute("create table payment_partitioned " +
+                "(like payment including defaults including constraints) partition by range (created_at)");
+        jdbcTemplate.execute("drop table payment");
+        jdbcTemplate.execute("alter table payment_partitioned rename to payment");
+        jdbcTemplate.execute("alter table payment add constraint payment_pkey primary key (payment_id, created_at)");
+        jdbcTemplate.execute("create index payment_customer_id_payment_id_idx on payment (customer_id, payment_id)");
+        jdbcTemplate.execute("create index payment_status_created_at_idx on payment (status, created_at)");
+    }
+
+    /**
+     * @return the names of the partitions of the payment table.
+     */
+    public List<String> selectPartitionNames() {
+        return jdbcTemplate.queryForList(
+                "select c.relname from pg_inherits i " +
+                        "join pg_class c on c.oid = i.inhrelid " +
+                        "join pg_class p on p.oid = i.inhparent " +
+                        "where p.relname = 'payment' and p.relnamespace = current_schema()::regnamespace " +
+                        "order by c.relname",
+                String.class);
+    }
+
+    /**
+     * Creates the partition for created_at from (inclusive) to (exclusive), unless it already exists.
+     * The indexes of the payment table are created on the partition as well.
+     */
+    public void createPartition(String name, LocalDate from, LocalDate to) {
+        jdbcTemplate.execute(String.format(
+                "create table if not exists %s partition of payment for values from ('%s') to ('%s')",
+                name, from, to));
+    }
+
+    /**
+     * The partition becomes a table of its own, e.g. to be archived, and is no longer part of payment.
+     */
+    public void detachPartition(String name) {
+        jdbcTemplate.execute(String.format("alter table payment detach partition %s", name));
+    }
+
+    public void dropPartition(String name) {
+        jdbcTemplate.execute(String.format("drop table %s", name));
+    }
+}
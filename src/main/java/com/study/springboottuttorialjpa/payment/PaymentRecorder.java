@@ -0,0 +1,133 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import com.study.springboottuttorialjpa.notification.NotificationOutboxRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the outcome of payments together with their notifications and totals: a SUCCEEDED payment, its row in
+ * the payment_notification outbox and the update of its CustomerPaymentTotal are committed in the same
+ * transaction, or not at all.
+ * Sending the notifications is left to the NotificationDispatcher.
+ */
+@Component
+@Slf4j
+public class PaymentRecorder {
+
+    private final PaymentRepository paymentRepository;
+    private final PaymentJdbcRepository paymentJdbcRepository;
+    private final NotificationOutboxRepository notificationOutboxRepository;
+    private final CustomerPaymentTotalRepository customerPaymentTotalRepository;
+
+    @Autowired
+    public PaymentRecorder(
+            PaymentRepository paymentRepository
+            , PaymentJdbcRepository paymentJdbcRepository
+            , NotificationOutboxRepository notificationOutboxRepository
+            , CustomerPaymentTotalRepository customerPaymentTotalRepository) {
+        this.paymentRepository = paymentRepository;
+        this.paymentJdbcRepository = paymentJdbcRepository;
+        this.notificationOutboxRepository = notificationOutboxRepository;
+        this.customerPaymentTotalRepository = customerPaymentTotalRepository;
+    }
+
+    @Transactional
+    public Payment save(Payment payment) {
+        Payment saved = paymentRepository.save(payment);
+        if (saved.getStatus() == PaymentStatus.SUCCEEDED) {
+            recordSucceeded(List.of(saved));
+        }
+        return saved;
+    }
+
+    /**
+     * Stores the outcome of a payment that has been saved before, e.g. as PENDING: the status, and the chargeId of
+     * the payment.
+     *
+     * @throws IllegalStateException if the payment is not stored; nothing is written then.
+     */
+    @Transactional
+    public void updateStatus(Payment payment, PaymentStatus status) {
+        if (paymentRepository.updateStatusAndChargeId(payment.getPaymentId(), status, payment.getChargeId()) == 0) {
+            throw new IllegalStateException(String.format(
+                    "Cannot store outcome %s of payment %d: the payment is not stored",
+                    status, payment.getPaymentId()));
+        }
+        if (status == PaymentStatus.SUCCEEDED) {
+            recordSucceeded(List.of(payment));
+        }
+    }
+
+    /**
+     * Like updateStatus, but only while the payment still has the expected status; the status of the payment is
+     * set to status only if it has been stored.
+     *
+     * @return whether the outcome has been stored; false if the status of the payment has changed in the meantime.
+     */
+    @Transactional
+    public boolean updateStatus(Payment payment, PaymentStatus expected, PaymentStatus status) {
+        if (paymentRepository.updateStatusAndChargeIdIfStatus(
+                payment.getPaymentId(), expected, status, payment.getChargeId()) == 0) {
+            return false;
+        }
+        payment.setStatus(status);
+        if (status == PaymentStatus.SUCCEEDED) {
+            recordSucceeded(List.of(payment));
+        }
+        return true;
+    }
+
+    /**
+     * Inserts the payments, which must have their paymentId, as one JDBC batch; see PaymentJdbcRepository.
+     */
+    @Transactional
+    public void insertPayments(List<Payment> payments) {
+        Instant now = Instant.now();
+        for (Payment payment : payments) {
+            if (payment.getCreatedAt() == null) {
+                payment.setCreatedAt(now);
+            }
+        }
+        paymentJdbcRepository.insertPayments(payments);
+        List<Payment> succeeded = new ArrayList<>(payments.size());
+        for (Payment payment : payments) {
+            if (payment.getStatus() == PaymentStatus.SUCCEEDED) {
+                succeeded.add(payment);
+            }
+        }
+        recordSucceeded(succeeded);
+    }
+
+    /**
+     * Stores the outcome of payments inserted before by insertPayments, e.g. as PENDING: the status and chargeId
+     * every payment carries, as one JDBC batch. Only the payments that are still PENDING are updated (see
+     * PaymentJdbcRepository.updateStatuses); the notifications and totals are only written for those.
+     */
+    @Transactional
+    public void updateStatuses(List<Payment> payments) {
+        int[] updated = paymentJdbcRepository.updateStatuses(payments);
+        List<Payment> succeeded = new ArrayList<>(payments.size());
+        for (int i = 0; i < payments.size(); i++) {
+            Payment payment = payments.get(i);
+            if (updated[i] == 0) {
+                log.warn("Outcome {} of payment {} not stored: the payment is no longer PENDING",
+                        payment.getStatus(), payment.getPaymentId());
+            } else if (payment.getStatus() == PaymentStatus.SUCCEEDED) {
+                succeeded.add(payment);
+            }
+        }
+        recordSucceeded(succeeded);
+    }
+
+    private void recordSucceeded(List<Payment> payments) {
+        notificationOutboxRepository.insertNotifications(payments);
+        customerPaymentTotalRepository.addPayments(payments);
+    }
+}
@@ -1,8 +1,128 @@
 package com.study.springboottuttorialjpa.payment;
 
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * The lookups and updates by payment id are also bounded by the created_at range the id implies (see
+ * PaymentIdGenerator.createdAtFrom), so that on a partitioned payment table (see PaymentPartitionManager) they only
+ * read the partitions of that range; the payment_id alone is not even unique there.
+ */
 @Repository
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
+
+    default Optional<PaymentStatus> selectStatusByPaymentId(Long paymentId) {
+        return selectStatusByPaymentId(
+                paymentId, PaymentIdGenerator.createdAtFrom(paymentId), PaymentIdGenerator.createdAtTo(paymentId));
+    }
+
+    @Query("select p.status from Payment p where p.paymentId = :paymentId " +
+            "and p.createdAt >= :createdFrom and p.createdAt < :createdTo")
+    Optional<PaymentStatus> selectStatusByPaymentId(
+            @Param("paymentId") Long paymentId,
+            @Param("createdFrom") Instant createdFrom,
+            @Param("createdTo") Instant createdTo);
+
+    /**
+     * Keyset pagination over the payments of a customer, newest (highest paymentId) first, starting before the
+     * given paymentId. Every page is a range scan on the (customer_id, payment_id) index of at most
+     * pageable.pageSize rows, however long the history is; only the columns of PaymentSummary are read.
+     *
+     * @param beforePaymentId the paymentId of the last payment of the previous page; Long.MAX_VALUE for the first
+     *                        page.
+     * @param pageable        only the page size is used; pass page 0.
+     */
+    @Query("select new com.study.springboottuttorialjpa.payment.PaymentSummary(" +
+            "p.paymentId, p.amount.minorUnits, p.amount.currency, p.description, p.status, p.createdAt) " +
+            "from Payment p where p.customerId = :customerId and p.paymentId < :beforePaymentId " +
+            "order by p.paymentId desc")
+    List<PaymentSummary> selectHistory(
+            @Param("customerId") UUID customerId,
+            @Param("beforePaymentId") long beforePaymentId,
+            Pageable pageable);
+
+    /**
+     * The payments with one of the statuses that were created before createdBefore, in the order of their ids,
+     * from after afterPaymentId; on the (status, created_at) index.
+     *
+     * @param pageable only the page size is used; pass page 0.
+     */
+    @Query("select p from Payment p where p.status in :statuses and p.createdAt < :createdBefore " +
+            "and p.paymentId > :afterPaymentId order by p.paymentId")
+    List<Payment> selectByStatusCreatedBefore(
+            @Param("statuses") Collection<PaymentStatus> statuses,
+            @Param("createdBefore") Instant createdBefore,
+            @Param("afterPaymentId") long afterPaymentId,
+            Pageable pageable);
+
+    // A single update statement; the payment doesn't have to be loaded first.
+    default int updateStatus(Long paymentId, PaymentStatus status) {
+        return updateStatus(
+                paymentId, PaymentIdGenerator.createdAtFrom(paymentId), PaymentIdGenerator.createdAtTo(paymentId),
+                status);
+    }
+
+    @Transactional
+    @Modifying
+    @Query("update Payment p set p.status = :status where p.paymentId = :paymentId " +
+            "and p.createdAt >= :createdFrom and p.createdAt < :createdTo")
+    int updateStatus(
+            @Param("paymentId") Long paymentId,
+            @Param("createdFrom") Instant createdFrom,
+            @Param("createdTo") Instant createdTo,
+            @Param("status") PaymentStatus status);
+
+    default int updateStatusAndChargeId(Long paymentId, PaymentStatus status, String chargeId) {
+        return updateStatusAndChargeId(
+                paymentId, PaymentIdGenerator.createdAtFrom(paymentId), PaymentIdGenerator.createdAtTo(paymentId),
+                status, chargeId);
+    }
+
+    @Transactional
+    @Modifying
+    @Query("update Payment p set p.status = :status, p.chargeId = :chargeId where p.paymentId = :paymentId " +
+            "and p.createdAt >= :createdFrom and p.createdAt < :createdTo")
+    int updateStatusAndChargeId(
+            @Param("paymentId") Long paymentId,
+            @Param("createdFrom") Instant createdFrom,
+            @Param("createdTo") Instant createdTo,
+            @Param("status") PaymentStatus status,
+            @Param("chargeId") String chargeId);
+
+    /**
+     * Like updateStatusAndChargeId, but only while the payment still has the expected status.
+     *
+     * @return 0 if the status of the payment has changed in the meantime.
+     */
+    default int updateStatusAndChargeIdIfStatus(
+            Long paymentId, PaymentStatus expected, PaymentStatus status, String chargeId) {
+        return updateStatusAndChargeIdIfStatus(
+                paymentId, PaymentIdGenerator.createdAtFrom(paymentId), PaymentIdGenerator.createdAtTo(paymentId),
+                expected, status, chargeId);
+    }
+
+    @Transactional
+    @Modifying
+    @Query("update Payment p set p.status = :status, p.chargeId = :chargeId " +
+            "where p.paymentId = :paymentId and p.createdAt >= :createdFrom and p.createdAt < :createdTo " +
+            "and p.status = :expected")
+    int updateStatusAndChargeIdIfStatus(
+            @Param("paymentId") Long paymentId,
+            @Param("createdFrom") Instant createdFrom,
+            @Param("createdTo") Instant createdTo,
+            @Param("expected") PaymentStatus expected,
+            @Param("status") PaymentStatus status,
+            @Param("chargeId") String chargeId);
 }
@@ -1,71 +1,218 @@
 package com.study.springboottuttorialjpa.payment;
 
 import com.stripe.exception.StripeException;
-import com.study.springboottuttorialjpa.customer.CustomerRepository;
+import com.study.springboottuttorialjpa.currency.CurrencyRegistry;
+import com.study.springboottuttorialjpa.currency.FxRateCache;
+import com.study.springboottuttorialjpa.customer.CustomerExistenceService;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
-
-import static com.study.springboottuttorialjpa.general.Constants.ACCEPTED_CURRENCIES;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
 public class PaymentService {
 
-    private final CustomerRepository customerRepository;
+    private final CustomerExistenceService customerExistenceService;
     private final PaymentRepository paymentRepository;
+    private final PaymentRecorder paymentRecorder;
     private final CardPaymentCharger cardPaymentCharger;
+    private final AsyncPaymentProcessor asyncPaymentProcessor;
+    private final PaymentIdempotencyService paymentIdempotencyService;
+    private final CurrencyRegistry currencyRegistry;
+    private final FxRateCache fxRateCache;
 
     @Autowired
     public PaymentService(
-            CustomerRepository customerRepository
+            CustomerExistenceService customerExistenceService
             , PaymentRepository paymentRepository
-            , CardPaymentCharger cardPaymentCharger) {
-        this.customerRepository = customerRepository;
+            , PaymentRecorder paymentRecorder
+            , CardPaymentCharger cardPaymentCharger
+            , AsyncPaymentProcessor asyncPaymentProcessor
+            , PaymentIdempotencyService paymentIdempotencyService
+            , CurrencyRegistry currencyRegistry
+            , FxRateCache fxRateCache) {
+        this.customerExistenceService = customerExistenceService;
         this.paymentRepository = paymentRepository;
+        this.paymentRecorder = paymentRecorder;
         this.cardPaymentCharger = cardPaymentCharger;
+        this.asyncPaymentProcessor = asyncPaymentProcessor;
+        this.paymentIdempotencyService = paymentIdempotencyService;
+        this.currencyRegistry = currencyRegistry;
+        this.fxRateCache = fxRateCache;
     }
 
-    public void chargeCard(UUID customerId, PaymentRequest paymentRequest) throws IllegalAccessException {
-        // 1. Does customer exist if not throw
-        if (!customerRepository.findById(customerId).isPresent()) {
-            throw new IllegalAccessException(String.format("Customer with id [%s] has not been found", customerId));
+    /**
+     * chargeCard for requests with an Idempotency-Key: a retry with the same key gets the id of the payment
+     * that has already been made, without charging the card again. See PaymentIdempotencyService.
+     *
+     * @param idempotencyKey may be null; then every request is a new payment.
+     * @return the id of the payment.
+     */
+    public Long chargeCard(UUID customerId, PaymentRequest paymentRequest, String idempotencyKey)
+            throws IllegalAccessException {
+        if (idempotencyKey == null) {
+            return chargeCard(customerId, paymentRequest);
         }
+        Payment payment = paymentRequest.getPayment();
+        String requestHash = PaymentIdempotencyService.requestHash(
+                customerId,
+                payment.getAmount() == null ? null : payment.getAmount().getMinorUnits(),
+                payment.getCurrency(),
+                payment.getSource(),
+                payment.getDescription());
+        return paymentIdempotencyService.execute(
+                idempotencyKey, requestHash, stored -> charge(customerId, paymentRequest, stored));
+    }
+
+    /**
+     * The payment is stored as PENDING before the card is charged, and the card is charged with the idempotency key
+     * of the payment (see CardPaymentCharger.idempotencyKey), so the charge can always be traced back to a payment.
+     * A payment whose card has not been debited is kept as FAILED.
+     *
+     * @return the id of the payment.
+     * @throws PaymentOutcomeUnknownException if the card processor did not answer in time, or failed without a
+     *         definite answer; the payment is UNKNOWN.
+     */
+    public Long chargeCard(UUID customerId, PaymentRequest paymentRequest) throws IllegalAccessException {
+        return charge(customerId, paymentRequest, paymentId -> { });
+    }
 
+    /**
+     * @param stored called with the id of the payment once it has been stored as PENDING, before the card is charged.
+     */
+    private Long charge(UUID customerId, PaymentRequest paymentRequest, Consumer<Long> stored)
+            throws IllegalAccessException {
+        // 1. Does customer exist if not throw
         // 2. Do we support the currency if not throw
-        boolean isCurrencySupported = ACCEPTED_CURRENCIES.contains(paymentRequest.getPayment().getCurrency());
+        validate(customerId, paymentRequest.getPayment());
 
-        if (!isCurrencySupported) {
-            String message = String.format(
-                    "Currency [%s] not supported",
-                    paymentRequest.getPayment().getCurrency());
-            throw new IllegalStateException(message);
+        // 3. Store the payment as PENDING, which gives it its id.
+        paymentRequest.getPayment().setCustomerId(customerId);
+        paymentRequest.getPayment().setStatus(PaymentStatus.PENDING);
+        Payment payment = paymentRepository.save(paymentRequest.getPayment());
+        try {
+            stored.accept(payment.getPaymentId());
+        } catch (RuntimeException e) {
+            // Not charged, and never to be charged.
+            paymentRecorder.updateStatus(payment, PaymentStatus.FAILED);
+            throw e;
         }
 
-        // 3. Charge card
+        // 4. Charge card
         // At the moment there is no implementation of CardPaymentCharge with these properties yet.
         // But the interface makes this possible.
-        CardPaymentCharge cardPaymentCharge = null;
+        // A failure without a definite answer of the card processor (see CardPaymentCharger.isDefiniteFailure),
+        // e.g. a timeout or a lost connection, leaves the payment UNKNOWN instead of FAILED.
+        CardPaymentCharge cardPaymentCharge;
         try {
             cardPaymentCharge = cardPaymentCharger.chargeCard(
-                    paymentRequest.getPayment().getSource()
-                    , paymentRequest.getPayment().getAmount()
-                    , paymentRequest.getPayment().getCurrency()
-                    , paymentRequest.getPayment().getDescription());
-        } catch (StripeException e) {
-            e.printStackTrace();
+                    payment.getSource()
+                    , payment.getAmount()
+                    , payment.getDescription()
+                    , CardPaymentCharger.idempotencyKey(payment.getPaymentId()));
+        } catch (StripeException | RuntimeException e) {
+            if (!CardPaymentCharger.isDefiniteFailure(e)) {
+                // The charge may still go through: the reconciliation settles the payment.
+                paymentRecorder.updateStatus(payment, PaymentStatus.UNKNOWN);
+                throw new PaymentOutcomeUnknownException(payment.getPaymentId(), e);
+            }
+            paymentRecorder.updateStatus(payment, PaymentStatus.FAILED);
+            if (e instanceof StripeException) {
+                throw new CardPaymentRefusedException(
+                        String.format("Cannot charge the card for customer %s", customerId), e);
+            }
+            throw (RuntimeException) e;
         }
 
-        // 4. If not debited throw
-        if (!cardPaymentCharge.isCardDebited()) {
+        // 5. If not debited throw
+        if (cardPaymentCharge == null || !cardPaymentCharge.isCardDebited()) {
+            paymentRecorder.updateStatus(payment, PaymentStatus.FAILED);
             throw new IllegalAccessException(String.format("The card is not debited for customer %s", customerId));
         }
-        // 5. Insert payment
+        // 6. Store the outcome
+        // 7. Send sms: the notification is written to the outbox in the same transaction as the outcome and is
+        //    sent by the NotificationDispatcher; the request doesn't wait for it.
+        payment.setChargeId(cardPaymentCharge.getChargeId());
+        paymentRecorder.updateStatus(payment, PaymentStatus.SUCCEEDED);
+        return payment.getPaymentId();
+    }
+
+    /**
+     * Asynchronous variant of chargeCard: the payment is stored as PENDING and the card is charged in the
+     * background by AsyncPaymentProcessor. Use getPaymentStatus to follow the payment.
+     *
+     * @return the id of the payment.
+     * @throws RejectedExecutionException if too many payments are waiting to be charged; the payment is FAILED.
+     */
+    public Long submitPayment(UUID customerId, PaymentRequest paymentRequest) throws IllegalAccessException {
+        validate(customerId, paymentRequest.getPayment());
+
         paymentRequest.getPayment().setCustomerId(customerId);
-        paymentRepository.save(paymentRequest.getPayment());
-        // 6. TODO: send sms
+        paymentRequest.getPayment().setStatus(PaymentStatus.PENDING);
+        Payment payment = paymentRepository.save(paymentRequest.getPayment());
+        try {
+            asyncPaymentProcessor.submit(payment);
+        } catch (RejectedExecutionException e) {
+            paymentRepository.updateStatus(payment.getPaymentId(), PaymentStatus.FAILED);
+            throw e;
+        }
+        return payment.getPaymentId();
+    }
+
+    /**
+     * Read-only, so with a replica (see ReplicaRoutingDataSource) the status may briefly lag behind.
+     */
+    @Transactional(readOnly = true)
+    public Optional<PaymentStatus> getPaymentStatus(Long paymentId) {
+        return paymentRepository.selectStatusByPaymentId(paymentId);
+    }
+
+    /**
+     * A page of the payments of the customer, newest first; see PaymentRepository.selectHistory.
+     *
+     * @param beforePaymentId null for the first page; otherwise the nextBefore of the previous page.
+     */
+    @Transactional(readOnly = true)
+    public PaymentHistoryResponse getPaymentHistory(UUID customerId, Long beforePaymentId, int limit) {
+        // One row more than asked for tells whether there is a next page, without a count query.
+        List<PaymentSummary> payments = paymentRepository.selectHistory(
+                customerId,
+                beforePaymentId == null ? Long.MAX_VALUE : beforePaymentId,
+                PageRequest.of(0, limit + 1));
+        if (payments.size() <= limit) {
+            return new PaymentHistoryResponse(payments, null);
+        }
+        List<PaymentSummary> page = payments.subList(0, limit);
+        return new PaymentHistoryResponse(page, page.get(limit - 1).getPaymentId());
+    }
+
+    private void validate(UUID customerId, Payment payment) throws IllegalAccessException {
+        // 1. Does customer exist if not throw
+        if (!customerExistenceService.exists(customerId)) {
+            throw new IllegalAccessException(String.format("Customer with id [%s] has not been found", customerId));
+        }
+
+        // 2. Do we support the currency if not throw
+        boolean isCurrencySupported = currencyRegistry.isAccepted(payment.getCurrency());
+
+        if (!isCurrencySupported) {
+            String message = String.format(
+                    "Currency [%s] not supported",
+                    payment.getCurrency());
+            throw new IllegalStateException(message);
+        }
+
+        // 2b. Convert into the settlement currency, from the cached rates; throws if there is no (fresh) rate.
+        payment.setSettlementAmount(fxRateCache.toSettlementCurrency(payment.getAmount()));
     }
 
 }
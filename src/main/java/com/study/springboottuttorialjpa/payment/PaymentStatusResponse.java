@@ -0,0 +1,16 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@AllArgsConstructor
+@ToString
+public class PaymentStatusResponse {
+
+    private final Long paymentId;
+
+    private final PaymentStatus status;
+}
@@ -0,0 +1,54 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import com.study.springboottuttorialjpa.general.Money;
+import com.study.springboottuttorialjpa.general.MoneyJsonSerializer;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Instant;
+
+/**
+ * A payment in the history of a customer: only the columns the history shows, read as a projection
+ * (see PaymentRepository.selectHistory) instead of as a managed Payment.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class PaymentSummary {
+
+    private final Long paymentId;
+
+    // In JSON a decimal number next to the currency, as in Payment.
+    @JsonSerialize(using = MoneyJsonSerializer.class)
+    private final Money amount;
+
+    private final String description;
+
+    private final PaymentStatus status;
+
+    private final Instant createdAt;
+
+    // For the JPQL constructor expression: the amount comes as its columns.
+    public PaymentSummary(
+            Long paymentId,
+            Long amountMinorUnits,
+            Currency currency,
+            String description,
+            PaymentStatus status,
+            Instant createdAt
+    ) {
+        this.paymentId = paymentId;
+        this.amount = Money.ofMinorUnits(amountMinorUnits, currency);
+        this.description = description;
+        this.status = status;
+        this.createdAt = createdAt;
+    }
+
+    public Currency getCurrency() {
+        return amount.getCurrency();
+    }
+}
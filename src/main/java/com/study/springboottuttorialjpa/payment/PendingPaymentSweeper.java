@@ -0,0 +1,109 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Charges the payments that are still PENDING payment.sweeper.stale-after-minutes after they were created: the
+ * queue of AsyncPaymentProcessor is only in memory, so a crash or a shutdown loses the payments waiting in it, and a
+ * failure to store an outcome leaves the payment PENDING as well.
+ *
+ * Every payment.sweeper.interval-ms the stale payments are swept in batches of payment.sweeper.batch-size. Per
+ * batch: the payments are claimed for payment.sweeper.stale-after-minutes in one short transaction (see
+ * PaymentJdbcRepository.claimPending), then charged again one by one, outside of any transaction, with the same
+ * idempotency key (see CardPaymentCharger.idempotencyKey), so a card that has been charged before is not charged
+ * twice. The outcome is only stored while the payment is still PENDING (see AsyncPaymentProcessor.charge); the
+ * Idempotency-Key of a payment that SUCCEEDED or FAILED is completed or released, see
+ * PaymentIdempotencyService.settle. A payment whose outcome could not be stored is swept again once its claim
+ * has ended.
+ *
+ * Metrics: payment.sweeper.charged, the number of stale payments charged.
+ */
+@Component
+@Slf4j
+public class PendingPaymentSweeper implements MeterBinder {
+
+    private final PaymentJdbcRepository paymentJdbcRepository;
+    private final AsyncPaymentProcessor asyncPaymentProcessor;
+    private final PaymentIdempotencyService paymentIdempotencyService;
+    private final Duration staleAfter;
+    private final int batchSize;
+    private final Clock clock;
+
+    private final LongAdder charged = new LongAdder();
+
+    @Autowired
+    public PendingPaymentSweeper(
+            PaymentJdbcRepository paymentJdbcRepository
+            , AsyncPaymentProcessor asyncPaymentProcessor
+            , PaymentIdempotencyService paymentIdempotencyService
+            , @Value("${payment.sweeper.stale-after-minutes:5}") long staleAfterMinutes
+            , @Value("${payment.sweeper.batch-size:50}") int batchSize) {
+        this(paymentJdbcRepository, asyncPaymentProcessor, paymentIdempotencyService,
+                Duration.ofMinutes(staleAfterMinutes), batchSize, Clock.systemUTC());
+    }
+
+    PendingPaymentSweeper(
+            PaymentJdbcRepository paymentJdbcRepository
+            , AsyncPaymentProcessor asyncPaymentProcessor
+            , PaymentIdempotencyService paymentIdempotencyService
+            , Duration staleAfter
+            , int batchSize
+            , Clock clock) {
+        this.paymentJdbcRepository = paymentJdbcRepository;
+        this.asyncPaymentProcessor = asyncPaymentProcessor;
+        this.paymentIdempotencyService = paymentIdempotencyService;
+        this.staleAfter = staleAfter;
+        this.batchSize = batchSize;
+        this.clock = clock;
+    }
+
+    @Scheduled(
+            initialDelayString = "${payment.sweeper.interval-ms:60000}",
+            fixedDelayString = "${payment.sweeper.interval-ms:60000}"
+    )
+    public void sweep() {
+        Instant createdBefore = clock.instant().minus(staleAfter);
+        int claimed;
+        do {
+            claimed = sweepBatch(createdBefore);
+        } while (claimed == batchSize);
+    }
+
+    /**
+     * @return the number of payments claimed.
+     */
+    int sweepBatch(Instant createdBefore) {
+        Instant now = clock.instant();
+        List<Payment> payments = paymentJdbcRepository.claimPending(
+                createdBefore, now, now.plus(staleAfter), batchSize);
+        for (Payment payment : payments) {
+            log.info("Payment {} is still PENDING, charging it again", payment.getPaymentId());
+            if (asyncPaymentProcessor.charge(payment) && payment.getStatus() != PaymentStatus.UNKNOWN) {
+                paymentIdempotencyService.settle(
+                        payment.getPaymentId(), payment.getStatus() == PaymentStatus.SUCCEEDED);
+            }
+        }
+        charged.add(payments.size());
+        return payments.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("payment.sweeper.charged", charged, LongAdder::sum)
+                .register(registry);
+    }
+}
@@ -0,0 +1,10 @@
+package com.study.springboottuttorialjpa.payment.stripe;
+
+import com.stripe.model.Charge;
+import com.stripe.model.StripeSearchResult;
+
+/**
+ * A page of the charges found by StripeApi.search; the library has no such class for Charge in this version.
+ */
+public class ChargeSearchResult extends StripeSearchResult<Charge> {
+}
@@ -1,13 +1,24 @@
 package com.study.springboottuttorialjpa.payment.stripe;
 
-import com.stripe.exception.StripeException;
 import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.general.Money;
 import com.study.springboottuttorialjpa.payment.CardPaymentCharge;
 import com.study.springboottuttorialjpa.payment.CardPaymentCharger;
+import com.study.springboottuttorialjpa.utils.SizeBoundedEviction;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
 /**
  * Annotation Type ConditionalOnProperty
@@ -25,16 +36,136 @@ import java.math.BigDecimal;
  *     @Conditional that checks if the specified properties have a specific value.
  */
 @Service
+@Qualifier(CardPaymentCharger.PROCESSOR)
 @ConditionalOnProperty(
         value = "stripe.enabled",
         havingValue = "false"
 )
 public class MockStripeService implements CardPaymentCharger {
+
+    // The mock keeps no charges: the id of a charge carries its amount, ch_mock_<currency>_<minor units>_<random>,
+    // so lookupCharges can answer for any charge this mock has made, also after a restart.
+    private static final String CHARGE_ID_PREFIX = "ch_mock_";
+
+    // Stripe keeps an idempotency key for 24 hours.
+    private static final long IDEMPOTENCY_KEY_TTL_NANOS = TimeUnit.HOURS.toNanos(24);
+
+    // The charges by idempotency key, for lookupChargesByIdempotencyKey, and so a repeated call with the same key
+    // gets the same charge, as with Stripe. Only kept in memory, for IDEMPOTENCY_KEY_TTL_NANOS and at most
+    // stripe.mock.idempotency-keys.maximum-size of them: a restart, or an eviction, forgets them.
+    private final Map<String, IdempotentCharge> chargesByIdempotencyKey = new ConcurrentHashMap<>();
+    private final SizeBoundedEviction eviction;
+    private final LongSupplier nanoClock;
+
+    // Simulated latency of a charge, e.g. to see how the batch payments scale with payment.batch.concurrency.
+    private final long latencyMillis;
+
+    public MockStripeService(
+            @Value("${stripe.mock.latency-ms:0}") long latencyMillis
+            , @Value("${stripe.mock.idempotency-keys.maximum-size:100000}") int maximumIdempotencyKeys) {
+        this(latencyMillis, maximumIdempotencyKeys, System::nanoTime);
+    }
+
+    MockStripeService(long latencyMillis, int maximumIdempotencyKeys, LongSupplier nanoClock) {
+        this.latencyMillis = latencyMillis;
+        this.eviction = new SizeBoundedEviction(maximumIdempotencyKeys);
+        this.nanoClock = nanoClock;
+    }
+
     @Override
     public CardPaymentCharge chargeCard(String cardSource,
-                                        BigDecimal amount,
-                                        Currency currency,
-                                        String description) {
-        return new CardPaymentCharge(true);
+                                        Money amount,
+                                        String description,
+                                        String idempotencyKey) {
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new CardPaymentCharge(false);
+            }
+        }
+        if (idempotencyKey == null) {
+            return charge(amount);
+        }
+        long now = nanoClock.getAsLong();
+        IdempotentCharge charge = chargesByIdempotencyKey.compute(idempotencyKey,
+                (key, existing) -> existing != null && !existing.isExpired(now)
+                        ? existing
+                        : new IdempotentCharge(charge(amount), now));
+        eviction.evictIfFull(chargesByIdempotencyKey.values(), existing -> existing.isExpired(now), existing -> true);
+        return charge.charge;
+    }
+
+    private static CardPaymentCharge charge(Money amount) {
+        String chargeId = CHARGE_ID_PREFIX + amount.getCurrency() + "_" + amount.getMinorUnits() + "_"
+                + UUID.randomUUID().toString().replace("-", "");
+        return new CardPaymentCharge(true, chargeId, amount);
+    }
+
+    @Override
+    public List<CardPaymentCharge> lookupCharges(Collection<String> chargeIds) {
+        List<CardPaymentCharge> charges = new ArrayList<>(chargeIds.size());
+        for (String chargeId : chargeIds) {
+            Money amount = amountOf(chargeId);
+            if (amount != null) {
+                charges.add(new CardPaymentCharge(true, chargeId, amount));
+            }
+        }
+        return charges;
+    }
+
+    @Override
+    public Map<String, CardPaymentCharge> lookupChargesByIdempotencyKey(Collection<String> idempotencyKeys) {
+        Map<String, CardPaymentCharge> charges = new HashMap<>();
+        long now = nanoClock.getAsLong();
+        for (String idempotencyKey : idempotencyKeys) {
+            IdempotentCharge charge = chargesByIdempotencyKey.get(idempotencyKey);
+            if (charge != null && !charge.isExpired(now)) {
+                charges.put(idempotencyKey, charge.charge);
+            }
+        }
+        return charges;
+    }
+
+    int idempotencyKeyCount() {
+        return chargesByIdempotencyKey.size();
+    }
+
+    /**
+     * @return null if the id is not one of a charge of this mock.
+     */
+    private static Money amountOf(String chargeId) {
+        if (chargeId == null || !chargeId.startsWith(CHARGE_ID_PREFIX)) {
+            return null;
+        }
+        String[] parts = chargeId.substring(CHARGE_ID_PREFIX.length()).split("_");
+        if (parts.length != 3) {
+            return null;
+        }
+        Currency currency = Currency.fromCode(parts[0]);
+        if (currency == null) {
+            return null;
+        }
+        try {
+            return Money.ofMinorUnits(Long.parseLong(parts[1]), currency);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static final class IdempotentCharge {
+
+        private final CardPaymentCharge charge;
+        private final long createdAt;
+
+        private IdempotentCharge(CardPaymentCharge charge, long createdAt) {
+            this.charge = charge;
+            this.createdAt = createdAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - createdAt >= IDEMPOTENCY_KEY_TTL_NANOS;
+        }
     }
 }
@@ -0,0 +1,170 @@
+package com.study.springboottuttorialjpa.payment.stripe;
+
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.net.HttpClient;
+import com.stripe.net.HttpContent;
+import com.stripe.net.HttpHeaders;
+import com.stripe.net.StripeRequest;
+import com.stripe.net.StripeResponse;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport of stripe-java on a pool of keep-alive connections (Apache HttpClient), instead of the default
+ * HttpURLConnectionClient which gives no control over connection reuse, pool size or timeouts.
+ *
+ * - stripe.http.max-connections: the maximum number of connections, and so of requests in progress.
+ * - stripe.http.connection-request-timeout-ms: how long a request waits for a free connection.
+ * - stripe.http.connect-timeout-ms / stripe.http.read-timeout-ms: replace the timeouts of the RequestOptions.
+ * - stripe.http.keep-alive-ms: how long an idle connection is kept, unless the server asks for less.
+ * Retries are left to stripe-java (RequestOptions.maxNetworkRetries), so they honour its idempotency keys.
+ *
+ * Metrics: stripe.http.connections tagged state=leased/available, and stripe.http.connections.pending.
+ */
+@Component
+@ConditionalOnProperty(
+        value = "stripe.enabled",
+        havingValue = "true"
+)
+public class PooledStripeHttpClient extends HttpClient implements MeterBinder {
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+
+    @Autowired
+    public PooledStripeHttpClient(
+            @Value("${stripe.http.max-connections:64}") int maxConnections
+            , @Value("${stripe.http.connection-request-timeout-ms:1000}") int connectionRequestTimeoutMillis
+            , @Value("${stripe.http.connect-timeout-ms:5000}") int connectTimeoutMillis
+            , @Value("${stripe.http.read-timeout-ms:30000}") int readTimeoutMillis
+            , @Value("${stripe.http.keep-alive-ms:30000}") long keepAliveMillis) {
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        // All requests go to the same host.
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        // Check a connection that has been idle for a while before reusing it; the server may have closed it.
+        connectionManager.setValidateAfterInactivity(2000);
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(connectionRequestTimeoutMillis)
+                        .setConnectTimeout(connectTimeoutMillis)
+                        .setSocketTimeout(readTimeoutMillis)
+                        .build())
+                .setKeepAliveStrategy((response, context) -> Math.min(serverKeepAliveMillis(response), keepAliveMillis))
+                .evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS)
+                .evictExpiredConnections()
+                .disableAutomaticRetries()
+                .disableCookieManagement()
+                .disableRedirectHandling()
+                .build();
+    }
+
+    @Override
+    public StripeResponse request(StripeRequest request) throws ApiConnectionException {
+        RequestBuilder requestBuilder = RequestBuilder.create(request.method().name())
+                .setUri(request.url().toString())
+                .setHeader("User-Agent", buildUserAgentString())
+                .setHeader("X-Stripe-Client-User-Agent", buildXStripeClientUserAgentString());
+        for (Map.Entry<String, List<String>> header : request.headers().map().entrySet()) {
+            requestBuilder.setHeader(header.getKey(), String.join(",", header.getValue()));
+        }
+        HttpContent content = request.content();
+        if (content != null) {
+            requestBuilder.setEntity(
+                    new ByteArrayEntity(content.byteArrayContent(), ContentType.parse(content.contentType())));
+        }
+
+        try (CloseableHttpResponse response = httpClient.execute(requestBuilder.build())) {
+            // Reading the body completely hands the connection back to the pool.
+            String body = response.getEntity() == null
+                    ? ""
+                    : EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            return new StripeResponse(response.getStatusLine().getStatusCode(), headers(response), body);
+        } catch (IOException e) {
+            throw new ApiConnectionException(String.format(
+                    "IOException during API request to Stripe (%s): %s", request.url(), e.getMessage()), e);
+        }
+    }
+
+    int leasedConnections() {
+        return connectionManager.getTotalStats().getLeased();
+    }
+
+    int availableConnections() {
+        return connectionManager.getTotalStats().getAvailable();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("stripe.http.connections", this, PooledStripeHttpClient::leasedConnections)
+                .tag("state", "leased")
+                .register(registry);
+        Gauge.builder("stripe.http.connections", this, PooledStripeHttpClient::availableConnections)
+                .tag("state", "available")
+                .register(registry);
+        Gauge.builder("stripe.http.connections.pending", connectionManager, cm -> cm.getTotalStats().getPending())
+                .register(registry);
+    }
+
+    private static HttpHeaders headers(HttpResponse response) {
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Header header : response.getAllHeaders()) {
+            headers.computeIfAbsent(header.getName(), name -> new ArrayList<>()).add(header.getValue());
+        }
+        return HttpHeaders.of(headers);
+    }
+
+    /**
+     * @return the timeout of the Keep-Alive response header in milliseconds; Long.MAX_VALUE if there is none.
+     */
+    private static long serverKeepAliveMillis(HttpResponse response) {
+        BasicHeaderElementIterator iterator =
+                new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+        while (iterator.hasNext()) {
+            HeaderElement element = iterator.nextElement();
+            if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                try {
+                    return TimeUnit.SECONDS.toMillis(Long.parseLong(element.getValue()));
+                } catch (NumberFormatException e) {
+                    // Ignore; use our own keep-alive.
+                }
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -2,15 +2,66 @@ package com.study.springboottuttorialjpa.payment.stripe;
 
 import com.stripe.exception.StripeException;
 import com.stripe.model.Charge;
+import com.stripe.net.ApiResource;
+import com.stripe.net.LiveStripeResponseGetter;
 import com.stripe.net.RequestOptions;
+import com.stripe.net.StripeResponseGetter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Does what the static Charge.create, Charge.retrieve and Charge.search do, but on PooledStripeHttpClient and
+ * against stripe.api-base, instead of the library wide (static) transport and base URL.
+ * stripe.api-base can point to a local stripe-mock compatible stub.
+ */
 @Service
+@ConditionalOnProperty(
+        value = "stripe.enabled",
+        havingValue = "true"
+)
 public class StripeApi {
 
+    private final StripeResponseGetter responseGetter;
+    private final String chargesUrl;
+
+    @Autowired
+    public StripeApi(
+            PooledStripeHttpClient httpClient
+            , @Value("${stripe.api-base:https://api.stripe.com}") String apiBase) {
+        this(new LiveStripeResponseGetter(httpClient), apiBase);
+    }
+
+    StripeApi(StripeResponseGetter responseGetter, String apiBase) {
+        this.responseGetter = responseGetter;
+        this.chargesUrl = apiBase + "/v1/charges";
+    }
+
     public Charge create(Map<String, Object> requestMap, RequestOptions requestOptions) throws StripeException {
-        return Charge.create(requestMap, requestOptions);
+        return responseGetter.request(
+                ApiResource.RequestMethod.POST, chargesUrl, requestMap, Charge.class, requestOptions);
+    }
+
+    public Charge retrieve(String chargeId, RequestOptions requestOptions) throws StripeException {
+        return responseGetter.request(
+                ApiResource.RequestMethod.GET, chargesUrl + "/" + ApiResource.urlEncodeId(chargeId), null,
+                Charge.class, requestOptions);
+    }
+
+    /**
+     * @param query in the Stripe search query language, e.g. metadata['idempotency_key']:'payment-42'.
+     * @return the first page, of at most limit charges.
+     */
+    public ChargeSearchResult search(String query, int limit, RequestOptions requestOptions) throws StripeException {
+        Map<String, Object> params = new HashMap<>();
+        params.put("query", query);
+        params.put("limit", limit);
+        return responseGetter.request(
+                ApiResource.RequestMethod.GET, chargesUrl + "/search", params, ChargeSearchResult.class,
+                requestOptions);
     }
 }
@@ -1,18 +1,27 @@
 package com.study.springboottuttorialjpa.payment.stripe;
 
+import com.stripe.exception.CardException;
+import com.stripe.exception.InvalidRequestException;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Charge;
 import com.stripe.net.RequestOptions;
 import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.general.Money;
 import com.study.springboottuttorialjpa.payment.CardPaymentCharge;
 import com.study.springboottuttorialjpa.payment.CardPaymentCharger;
+import com.study.springboottuttorialjpa.payment.CardPaymentChargerUnavailableException;
+import com.study.springboottuttorialjpa.payment.CardPaymentRefusedException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -25,6 +34,7 @@ import java.util.Map;
  *  will be called and not StripeService.
  */
 @Service
+@Qualifier(CardPaymentCharger.PROCESSOR)
 @Slf4j
 @ConditionalOnProperty(
         value = "stripe.enabled",
@@ -32,6 +42,10 @@ import java.util.Map;
 )
 public class StripeService implements CardPaymentCharger {
 
+    // Stripe search takes at most 10 clauses per query.
+    private static final int SEARCH_CLAUSES = 10;
+    private static final String IDEMPOTENCY_KEY_METADATA = "idempotency_key";
+
     @Autowired
     private final StripeApi stripeApi;
 
@@ -44,18 +58,26 @@ public class StripeService implements CardPaymentCharger {
         this.stripeApi = stripeApi;
     }
 
+    /**
+     * @throws CardPaymentRefusedException if Stripe refused the charge (declined card, invalid request).
+     * @throws CardPaymentChargerUnavailableException with isTimeout if Stripe could not be reached or failed
+     *         (connection, API, rate limit errors): the charge may have gone through.
+     */
     @Override
     public CardPaymentCharge chargeCard(
             String cardSource,
-            BigDecimal amount,
-            Currency currency,
-            String description
+            Money amount,
+            String description,
+            String idempotencyKey
     ) {
+        // Stripe takes the amount as an integer in the smallest currency unit, and a lowercase ISO currency code.
         Map<String, Object> params = new HashMap<>();
-        params.put("amount", amount);
-        params.put("currency", currency);
+        params.put("amount", amount.getMinorUnits());
+        params.put("currency", amount.getCurrency().name().toLowerCase(Locale.ROOT));
         params.put("source", cardSource);
         params.put("description", description);
+        // For lookupChargesByIdempotencyKey: Stripe cannot look a charge up by its Idempotency-Key.
+        params.put("metadata", Map.of(IDEMPOTENCY_KEY_METADATA, idempotencyKey));
 
         try {
             // Charge.create is a static method.
@@ -68,10 +90,79 @@ public class StripeService implements CardPaymentCharger {
              *   - Can deal with static methods.
              * - Create a separate StripeAPI class.
              */
-            Charge charge = stripeApi.create(params, requestOptions);
-            return new CardPaymentCharge(charge.getPaid());
+            // Stripe answers a repeated request with the same Idempotency-Key with the charge of the first request.
+            Charge charge = stripeApi.create(params, requestOptions.toBuilder()
+                    .setIdempotencyKey(idempotencyKey)
+                    .build());
+            return new CardPaymentCharge(Boolean.TRUE.equals(charge.getPaid()), charge.getId(), amount);
+        } catch (CardException | InvalidRequestException e) {
+            throw new CardPaymentRefusedException("Cannot make stripe charge", e);
         } catch (StripeException e) {
-            throw new IllegalStateException("Cannot make stripe charge", e);
+            throw new CardPaymentChargerUnavailableException(
+                    "Cannot make stripe charge; the outcome is not known", e, true);
+        }
+    }
+
+    /**
+     * Stripe has no lookup of several charges at once: the charges are retrieved one by one, over the pooled
+     * connections of PooledStripeHttpClient. A refunded charge counts as not debited.
+     */
+    @Override
+    public List<CardPaymentCharge> lookupCharges(Collection<String> chargeIds) throws StripeException {
+        List<CardPaymentCharge> charges = new ArrayList<>(chargeIds.size());
+        for (String chargeId : chargeIds) {
+            Charge charge;
+            try {
+                charge = stripeApi.retrieve(chargeId, requestOptions);
+            } catch (InvalidRequestException e) {
+                if (e.getStatusCode() != null && e.getStatusCode() == 404) {
+                    continue;
+                }
+                throw e;
+            }
+            charges.add(toCardPaymentCharge(charge));
         }
+        return charges;
+    }
+
+    /**
+     * Searches the charges on the idempotency key that chargeCard stores in their metadata, 10 keys per query.
+     * Stripe search is eventually consistent: a charge can take up to a minute to be found, so only look up keys
+     * of charges that have been made well before.
+     */
+    @Override
+    public Map<String, CardPaymentCharge> lookupChargesByIdempotencyKey(Collection<String> idempotencyKeys)
+            throws StripeException {
+        Map<String, CardPaymentCharge> charges = new HashMap<>();
+        List<String> keys = new ArrayList<>(idempotencyKeys);
+        for (int from = 0; from < keys.size(); from += SEARCH_CLAUSES) {
+            StringBuilder query = new StringBuilder();
+            for (String key : keys.subList(from, Math.min(from + SEARCH_CLAUSES, keys.size()))) {
+                if (query.length() > 0) {
+                    query.append(" OR ");
+                }
+                query.append("metadata['").append(IDEMPOTENCY_KEY_METADATA).append("']:'").append(key).append('\'');
+            }
+            for (Charge charge : stripeApi.search(query.toString(), 100, requestOptions).getData()) {
+                String key = charge.getMetadata() == null ? null : charge.getMetadata().get(IDEMPOTENCY_KEY_METADATA);
+                CardPaymentCharge found = toCardPaymentCharge(charge);
+                // One charge per key; should there be more, a debited one wins.
+                if (key != null && (found.isCardDebited() || !charges.containsKey(key))) {
+                    charges.put(key, found);
+                }
+            }
+        }
+        return charges;
+    }
+
+    private static CardPaymentCharge toCardPaymentCharge(Charge charge) {
+        Currency currency = charge.getCurrency() == null
+                ? null : Currency.fromCode(charge.getCurrency().toUpperCase(Locale.ROOT));
+        Money amount = currency == null || charge.getAmount() == null
+                ? null : Money.ofMinorUnits(charge.getAmount(), currency);
+        return new CardPaymentCharge(
+                Boolean.TRUE.equals(charge.getPaid()) && !Boolean.TRUE.equals(charge.getRefunded()),
+                charge.getId(),
+                amount);
     }
 }
@@ -0,0 +1,49 @@
+package com.study.springboottuttorialjpa.ratelimit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+
+import java.util.List;
+
+/**
+ * With rate-limit.enabled (the default) the payment and customer registration endpoints are rate limited per
+ * client, see RateLimitFilter. Every endpoint allows a burst of rate-limit.<endpoint>.capacity requests, refilled at
+ * rate-limit.<endpoint>.refill-per-second. The reads of the payments (GET: status, history, totals) have a limit of
+ * their own, payment-read, so polling the status of a payment doesn't use up the limit for making payments.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "rate-limit.enabled", havingValue = "true", matchIfMissing = true)
+public class RateLimitConfiguration {
+
+    @Bean
+    public RateLimitFilter rateLimitFilter(
+            @Value("${rate-limit.payment-read.capacity:100}") int paymentReadCapacity
+            , @Value("${rate-limit.payment-read.refill-per-second:50}") double paymentReadRefillPerSecond
+            , @Value("${rate-limit.payment.capacity:50}") int paymentCapacity
+            , @Value("${rate-limit.payment.refill-per-second:25}") double paymentRefillPerSecond
+            , @Value("${rate-limit.customer-registration.capacity:10}") int registrationCapacity
+            , @Value("${rate-limit.customer-registration.refill-per-second:5}") double registrationRefillPerSecond) {
+        return new RateLimitFilter(List.of(
+                new RateLimitFilter.Endpoint(HttpMethod.GET.name(), "/api/v1/payment",
+                        new TokenBucketRateLimiter("payment-read", paymentReadCapacity, paymentReadRefillPerSecond)),
+                new RateLimitFilter.Endpoint("/api/v1/payment",
+                        new TokenBucketRateLimiter("payment", paymentCapacity, paymentRefillPerSecond)),
+                new RateLimitFilter.Endpoint("/api/v1/customer-registration",
+                        new TokenBucketRateLimiter(
+                                "customer-registration", registrationCapacity, registrationRefillPerSecond))));
+    }
+
+    /**
+     * Only in front of the rate limited endpoints, so the other requests don't pass through the filter at all.
+     */
+    @Bean
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilterRegistration(RateLimitFilter rateLimitFilter) {
+        FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(rateLimitFilter);
+        registration.addUrlPatterns("/api/v1/payment/*", "/api/v1/customer-registration/*");
+        return registration;
+    }
+}
@@ -0,0 +1,148 @@
+package com.study.springboottuttorialjpa.ratelimit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.security.Principal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits the requests per client, with a TokenBucketRateLimiter per endpoint (see RateLimitConfiguration).
+ *
+ * Every request takes a token from the bucket of its client IP (behind a proxy that needs
+ * server.forward-headers-strategy). A request of an authenticated user also takes one from the bucket of that user,
+ * so the user is limited across IPs too; a request refused by either bucket takes a token from neither.
+ * The customer a request names (the customerId parameter, a customer/{customerId} path, the body) is up to the
+ * client, so it never gets a bucket: rotating it would give a client a fresh bucket per request.
+ * A request over either limit is refused with 429 Too Many Requests and a Retry-After in seconds.
+ */
+@Slf4j
+public class RateLimitFilter extends OncePerRequestFilter implements MeterBinder {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final List<Endpoint> endpoints;
+
+    public RateLimitFilter(List<Endpoint> endpoints) {
+        this.endpoints = List.copyOf(endpoints);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        TokenBucketRateLimiter limiter = limiterOf(request.getMethod(), path);
+        if (limiter == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String user = userOf(request);
+        long waitNanos = user == null
+                ? limiter.tryAcquire(ipOf(request))
+                : limiter.tryAcquire(ipOf(request), user);
+        if (waitNanos == 0) {
+            chain.doFilter(request, response);
+            return;
+        }
+        // Rounded up, so a client that waits as told gets in.
+        long retryAfterSeconds = (waitNanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND;
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Rate limit of " + limiter.getName() + " exceeded");
+    }
+
+    /**
+     * @return null if the path is not rate limited.
+     */
+    private TokenBucketRateLimiter limiterOf(String method, String path) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.matches(method, path)) {
+                return endpoint.limiter;
+            }
+        }
+        return null;
+    }
+
+    static String ipOf(HttpServletRequest request) {
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    /**
+     * @return null if the request is not authenticated.
+     */
+    static String userOf(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        return principal == null ? null : "user:" + principal.getName();
+    }
+
+    @Scheduled(fixedDelayString = "${rate-limit.eviction-interval-ms:60000}")
+    public void evictIdleBuckets() {
+        for (Endpoint endpoint : endpoints) {
+            int evicted = endpoint.limiter.evictIdle();
+            if (evicted > 0) {
+                log.debug("Evicted {} idle rate limit buckets of {}", evicted, endpoint.limiter.getName());
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Endpoint endpoint : endpoints) {
+            TokenBucketRateLimiter limiter = endpoint.limiter;
+            FunctionCounter.builder("rate.limit.requests", limiter, TokenBucketRateLimiter::allowedCount)
+                    .tag("limit", limiter.getName()).tag("outcome", "allowed")
+                    .register(registry);
+            FunctionCounter.builder("rate.limit.requests", limiter, TokenBucketRateLimiter::rejectedCount)
+                    .tag("limit", limiter.getName()).tag("outcome", "rejected")
+                    .register(registry);
+            FunctionCounter.builder("rate.limit.evictions", limiter, TokenBucketRateLimiter::evictionCount)
+                    .tag("limit", limiter.getName())
+                    .register(registry);
+            Gauge.builder("rate.limit.buckets", limiter, TokenBucketRateLimiter::size)
+                    .tag("limit", limiter.getName())
+                    .register(registry);
+        }
+    }
+
+    /**
+     * The requests to pathPrefix and the paths below it (after the context path), with the method if one is given,
+     * share the limiter; the first matching endpoint applies.
+     */
+    public static final class Endpoint {
+
+        private final String method;
+        private final String pathPrefix;
+        private final TokenBucketRateLimiter limiter;
+
+        public Endpoint(String pathPrefix, TokenBucketRateLimiter limiter) {
+            this(null, pathPrefix, limiter);
+        }
+
+        /**
+         * @param method null for any method.
+         */
+        public Endpoint(String method, String pathPrefix, TokenBucketRateLimiter limiter) {
+            this.method = method;
+            this.pathPrefix = pathPrefix;
+            this.limiter = limiter;
+        }
+
+        private boolean matches(String method, String path) {
+            return (this.method == null || this.method.equals(method))
+                    && path.startsWith(pathPrefix)
+                    && (path.length() == pathPrefix.length() || path.charAt(pathPrefix.length()) == '/');
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.study.springboottuttorialjpa.ratelimit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket per key: up to capacity requests at once, refilled at refillPerSecond.
+ *
+ * A bucket is a single AtomicLong in a ConcurrentHashMap, updated with a compare-and-set and never locked. It holds
+ * the time at which the bucket is full again (the generic cell rate algorithm, which behaves exactly like a token
+ * bucket): taking a token moves that time one refill interval ahead, and the request is refused when the time gets
+ * further ahead than capacity intervals.
+ *
+ * A request may take a token from two buckets, e.g. of its client IP and of its user: it only takes them if both
+ * buckets have one, otherwise the token taken from the first bucket is put back.
+ *
+ * A bucket that is full again holds nothing a new bucket wouldn't, so evictIdle can remove it without changing
+ * any outcome. An evicted bucket is marked first, so a request racing with the eviction starts a new one instead
+ * of updating the removed one.
+ */
+public class TokenBucketRateLimiter {
+
+    // Marks an evicted bucket.
+    private static final long EVICTED = Long.MIN_VALUE;
+
+    private final String name;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final LongSupplier nanoClock;
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public TokenBucketRateLimiter(String name, int capacity, double refillPerSecond) {
+        this(name, capacity, refillPerSecond, System::nanoTime);
+    }
+
+    TokenBucketRateLimiter(String name, int capacity, double refillPerSecond, LongSupplier nanoClock) {
+        if (capacity < 1 || !(refillPerSecond > 0)) {
+            throw new IllegalArgumentException(String.format(
+                    "Rate limit %s needs a capacity and a refill rate above 0, not %d and %s",
+                    name, capacity, refillPerSecond));
+        }
+        this.name = name;
+        this.intervalNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / refillPerSecond));
+        this.burstNanos = capacity * intervalNanos;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Takes a token from the bucket of the key.
+     *
+     * @return 0 if the request is allowed; otherwise the nanoseconds until the bucket has a token again.
+     */
+    public long tryAcquire(String key) {
+        long waitNanos = acquire(key, nanoClock.getAsLong());
+        count(waitNanos);
+        return waitNanos;
+    }
+
+    /**
+     * Takes a token from the buckets of both keys, or from neither.
+     *
+     * @return 0 if the request is allowed; otherwise the nanoseconds until the bucket that refused it has a token
+     * again.
+     */
+    public long tryAcquire(String key, String otherKey) {
+        long now = nanoClock.getAsLong();
+        long waitNanos = acquire(key, now);
+        if (waitNanos == 0) {
+            waitNanos = acquire(otherKey, now);
+            if (waitNanos > 0) {
+                release(key);
+            }
+        }
+        count(waitNanos);
+        return waitNanos;
+    }
+
+    private long acquire(String key, long now) {
+        while (true) {
+            AtomicLong bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new AtomicLong(now);
+                AtomicLong existing = buckets.putIfAbsent(key, bucket);
+                if (existing != null) {
+                    bucket = existing;
+                }
+            }
+            long fullAt = bucket.get();
+            if (fullAt == EVICTED) {
+                buckets.remove(key, bucket);
+                continue;
+            }
+            long nextFullAt = Math.max(fullAt, now) + intervalNanos;
+            long excessNanos = nextFullAt - now - burstNanos;
+            if (excessNanos > 0) {
+                return excessNanos;
+            }
+            if (bucket.compareAndSet(fullAt, nextFullAt)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Puts back a token just taken from the bucket of the key.
+     */
+    private void release(String key) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.getAndUpdate(fullAt -> fullAt == EVICTED ? fullAt : fullAt - intervalNanos);
+        }
+    }
+
+    private void count(long waitNanos) {
+        if (waitNanos == 0) {
+            allowed.increment();
+        } else {
+            rejected.increment();
+        }
+    }
+
+    /**
+     * Removes the buckets that are full again; to be called regularly, so the buckets of past clients don't pile up.
+     *
+     * @return the number of buckets removed.
+     */
+    public int evictIdle() {
+        long now = nanoClock.getAsLong();
+        int evicted = 0;
+        for (Map.Entry<String, AtomicLong> entry : buckets.entrySet()) {
+            AtomicLong bucket = entry.getValue();
+            long fullAt = bucket.get();
+            // Only remove this bucket; a racing request may already have put a new one under the key.
+            if (fullAt != EVICTED && fullAt - now <= 0 && bucket.compareAndSet(fullAt, EVICTED)
+                    && buckets.remove(entry.getKey(), bucket)) {
+                evicted++;
+            }
+        }
+        evictions.add(evicted);
+        return evicted;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    public long allowedCount() {
+        return allowed.sum();
+    }
+
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+}
@@ -0,0 +1,57 @@
+package com.study.springboottuttorialjpa.reconciliation;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+
+/**
+ * The checkpoint of a reconciliation run: the payment ids of the run in chunks, from fromPaymentId (inclusive) to
+ * toPaymentId (exclusive). A chunk is completed in the same transaction that writes its mismatches, so a run that
+ * has been interrupted is resumed from the chunks that are not completed yet, without reporting a mismatch twice.
+ * The rows are written and read with plain JDBC, see PaymentReconciliationRepository; the entity defines the table.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@Entity
+@Table(
+        name = "payment_reconciliation_chunk",
+        indexes = @Index(name = "payment_reconciliation_chunk_run_id_idx", columnList = "runId, completedAt")
+)
+public class PaymentReconciliationChunk {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long chunkId;
+
+    @Column(nullable = false)
+    private long runId;
+
+    @Column(nullable = false)
+    private long fromPaymentId;
+
+    @Column(nullable = false)
+    private long toPaymentId;
+
+    // Null until the chunk has been reconciled.
+    private Instant completedAt;
+
+    @Column(nullable = false)
+    private int paymentCount;
+
+    @Column(nullable = false)
+    private int mismatchCount;
+}
@@ -0,0 +1,31 @@
+package com.study.springboottuttorialjpa.reconciliation;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping(value = "api/v1/payment-reconciliation")
+public class PaymentReconciliationController {
+
+    private final PaymentReconciliationService paymentReconciliationService;
+
+    @Autowired
+    public PaymentReconciliationController(PaymentReconciliationService paymentReconciliationService) {
+        this.paymentReconciliationService = paymentReconciliationService;
+    }
+
+    /**
+     * Reconciles the payments with the card processor, resuming the unfinished run if there is one.
+     * Responds with the counts of the run, or with 409 Conflict when a reconciliation is already running.
+     * The mismatches are in the payment_reconciliation_mismatch table.
+     */
+    @PostMapping
+    public PaymentReconciliationResult reconcile() {
+        return paymentReconciliationService.reconcile().orElseThrow(() -> new ResponseStatusException(
+                HttpStatus.CONFLICT, "The payments are already being reconciled"));
+    }
+}
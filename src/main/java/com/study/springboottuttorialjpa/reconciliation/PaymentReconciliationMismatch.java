@@ -0,0 +1,62 @@
+package com.study.springboottuttorialjpa.reconciliation;
+
+import com.study.springboottuttorialjpa.enums.ReconciliationMismatchReason;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+
+/**
+ * Report row: a payment that doesn't match its charge at the card processor, found by reconciliation run runId.
+ * payment and charge describe both sides as text, e.g. "SUCCEEDED 10.50 USD" and "debited 10.00 USD"; charge is
+ * null when the processor doesn't know the charge.
+ * The rows are written with plain JDBC, see PaymentReconciliationRepository; the entity defines the table.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+@Entity
+@Table(
+        name = "payment_reconciliation_mismatch",
+        indexes = @Index(name = "payment_reconciliation_mismatch_run_id_idx", columnList = "runId, paymentId")
+)
+public class PaymentReconciliationMismatch {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long mismatchId;
+
+    @Column(nullable = false)
+    private long runId;
+
+    @Column(nullable = false)
+    private long paymentId;
+
+    private String chargeId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ReconciliationMismatchReason reason;
+
+    @Column(nullable = false)
+    private String payment;
+
+    private String charge;
+
+    @Column(nullable = false)
+    private Instant detectedAt;
+}
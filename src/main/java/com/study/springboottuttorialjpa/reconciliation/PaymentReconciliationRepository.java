@@ -0,0 +1,187 @@
+package com.study.springboottuttorialjpa.reconciliation;
+
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import com.study.springboottuttorialjpa.general.Money;
+import com.study.springboottuttorialjpa.payment.Payment;
+import com.study.springboottuttorialjpa.payment.PaymentIdGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plain JDBC access to the payment_reconciliation_chunk and payment_reconciliation_mismatch tables, and to the
+ * payments to reconcile.
+ *
+ * None of the methods starts a transaction of its own: completeChunk and insertMismatches must run in one
+ * transaction of PaymentReconciliationService.
+ * The payment id ranges are also bounded by the created_at range they imply (see PaymentIdGenerator.createdAtFrom),
+ * so that a partitioned payment table only reads the partitions of that range.
+ */
+@Repository
+public class PaymentReconciliationRepository {
+
+    private static final String CHUNK_COLUMNS =
+            "chunk_id, run_id, from_payment_id, to_payment_id, completed_at, payment_count, mismatch_count";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public PaymentReconciliationRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @return the oldest run that still has chunks to reconcile; null if all runs are complete.
+     */
+    public Long selectUnfinishedRunId() {
+        return jdbcTemplate.queryForObject(
+                "select min(run_id) from payment_reconciliation_chunk where completed_at is null",
+                Map.of(),
+                Long.class);
+    }
+
+    /**
+     * @return the upper bound (exclusive) of the payment ids of all runs so far; null before the first run.
+     */
+    public Long selectReconciledUpTo() {
+        return jdbcTemplate.queryForObject(
+                "select max(to_payment_id) from payment_reconciliation_chunk", Map.of(), Long.class);
+    }
+
+    /**
+     * Splits the payments with an id from fromPaymentId (inclusive) to toPaymentId (exclusive) into chunks of
+     * chunkSize, in the order of their ids. Payment ids are far apart (see PaymentIdGenerator), so the chunks are
+     * counted in payments rather than in ids.
+     *
+     * @return the id of the first payment of every chunk, in order.
+     */
+    public List<Long> selectChunkBoundaries(int chunkSize, long fromPaymentId, long toPaymentId) {
+        return jdbcTemplate.queryForList(
+                "select payment_id from (select payment_id, row_number() over (order by payment_id) as position " +
+                        "from payment where payment_id >= :from and payment_id < :to " +
+                        "and created_at >= :created_from and created_at < :created_to) p " +
+                        "where (position - 1) % :chunk_size = 0 order by payment_id",
+                new MapSqlParameterSource()
+                        .addValue("chunk_size", chunkSize)
+                        .addValue("from", fromPaymentId)
+                        .addValue("to", toPaymentId)
+                        .addValue("created_from", Timestamp.from(PaymentIdGenerator.createdAtFrom(fromPaymentId)))
+                        .addValue("created_to", Timestamp.from(PaymentIdGenerator.createdAtTo(toPaymentId))),
+                Long.class);
+    }
+
+    public void insertChunks(List<PaymentReconciliationChunk> chunks) {
+        SqlParameterSource[] batch = new SqlParameterSource[chunks.size()];
+        for (int i = 0; i < batch.length; i++) {
+            PaymentReconciliationChunk chunk = chunks.get(i);
+            batch[i] = new MapSqlParameterSource()
+                    .addValue("run_id", chunk.getRunId())
+                    .addValue("from_payment_id", chunk.getFromPaymentId())
+                    .addValue("to_payment_id", chunk.getToPaymentId());
+        }
+        jdbcTemplate.batchUpdate(
+                "insert into payment_reconciliation_chunk " +
+                        "(run_id, from_payment_id, to_payment_id, payment_count, mismatch_count) " +
+                        "values (:run_id, :from_payment_id, :to_payment_id, 0, 0)",
+                batch);
+    }
+
+    /**
+     * @return the chunks of the run that are not completed yet, in the order of their payment ids.
+     */
+    public List<PaymentReconciliationChunk> selectPendingChunks(long runId) {
+        return jdbcTemplate.query(
+                "select " + CHUNK_COLUMNS + " from payment_reconciliation_chunk " +
+                        "where run_id = :run_id and completed_at is null order by from_payment_id",
+                Map.of("run_id", runId),
+                (rs, rowNum) -> new PaymentReconciliationChunk(
+                        rs.getLong("chunk_id"),
+                        rs.getLong("run_id"),
+                        rs.getLong("from_payment_id"),
+                        rs.getLong("to_payment_id"),
+                        rs.getTimestamp("completed_at") == null ? null : rs.getTimestamp("completed_at").toInstant(),
+                        rs.getInt("payment_count"),
+                        rs.getInt("mismatch_count")));
+    }
+
+    /**
+     * The payments from fromPaymentId (inclusive) to toPaymentId (exclusive) that have an outcome at the card
+     * processor: the SUCCEEDED ones, and the FAILED ones that have a charge id.
+     * Only paymentId, amount, chargeId and status are filled in.
+     */
+    public List<Payment> selectPayments(long fromPaymentId, long toPaymentId) {
+        return jdbcTemplate.query(
+                "select payment_id, amount, currency, charge_id, status from payment " +
+                        "where payment_id >= :from and payment_id < :to " +
+                        "and created_at >= :created_from and created_at < :created_to " +
+                        "and (status = :succeeded or (status <> :pending and charge_id is not null)) " +
+                        "order by payment_id",
+                new MapSqlParameterSource()
+                        .addValue("from", fromPaymentId)
+                        .addValue("to", toPaymentId)
+                        .addValue("created_from", Timestamp.from(PaymentIdGenerator.createdAtFrom(fromPaymentId)))
+                        .addValue("created_to", Timestamp.from(PaymentIdGenerator.createdAtTo(toPaymentId)))
+                        .addValue("succeeded", PaymentStatus.SUCCEEDED.name())
+                        .addValue("pending", PaymentStatus.PENDING.name()),
+                (rs, rowNum) -> {
+                    Payment payment = new Payment(
+                            rs.getLong("payment_id"),
+                            null,
+                            Money.ofMinorUnits(rs.getLong("amount"), Currency.values()[rs.getInt("currency")]),
+                            null,
+                            null);
+                    payment.setChargeId(rs.getString("charge_id"));
+                    payment.setStatus(PaymentStatus.valueOf(rs.getString("status")));
+                    return payment;
+                });
+    }
+
+    /**
+     * Marks the chunk as completed, unless it has been completed already (by a run that overlapped).
+     *
+     * @return 1 if the chunk has been completed by this call, 0 otherwise.
+     */
+    public int completeChunk(long chunkId, int paymentCount, int mismatchCount, Instant completedAt) {
+        return jdbcTemplate.update(
+                "update payment_reconciliation_chunk " +
+                        "set completed_at = :completed_at, payment_count = :payment_count, " +
+                        "mismatch_count = :mismatch_count " +
+                        "where chunk_id = :chunk_id and completed_at is null",
+                new MapSqlParameterSource()
+                        .addValue("chunk_id", chunkId)
+                        .addValue("payment_count", paymentCount)
+                        .addValue("mismatch_count", mismatchCount)
+                        .addValue("completed_at", Timestamp.from(completedAt)));
+    }
+
+    public void insertMismatches(List<PaymentReconciliationMismatch> mismatches) {
+        if (mismatches.isEmpty()) {
+            return;
+        }
+        SqlParameterSource[] batch = new SqlParameterSource[mismatches.size()];
+        for (int i = 0; i < batch.length; i++) {
+            PaymentReconciliationMismatch mismatch = mismatches.get(i);
+            batch[i] = new MapSqlParameterSource()
+                    .addValue("run_id", mismatch.getRunId())
+                    .addValue("payment_id", mismatch.getPaymentId())
+                    .addValue("charge_id", mismatch.getChargeId())
+                    .addValue("reason", mismatch.getReason().name())
+                    .addValue("payment", mismatch.getPayment())
+                    .addValue("charge", mismatch.getCharge())
+                    .addValue("detected_at", Timestamp.from(mismatch.getDetectedAt()));
+        }
+        jdbcTemplate.batchUpdate(
+                "insert into payment_reconciliation_mismatch " +
+                        "(run_id, payment_id, charge_id, reason, payment, charge, detected_at) " +
+                        "values (:run_id, :payment_id, :charge_id, :reason, :payment, :charge, :detected_at)",
+                batch);
+    }
+}
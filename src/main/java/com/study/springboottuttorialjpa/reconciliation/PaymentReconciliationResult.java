@@ -0,0 +1,26 @@
+package com.study.springboottuttorialjpa.reconciliation;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The outcome of PaymentReconciliationService.reconcile. The counts only cover the chunks reconciled by that call;
+ * the chunks of a resumed run that were completed before are not included.
+ * failedChunks is the number of chunks that could not be reconciled; they are retried by the next call.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class PaymentReconciliationResult {
+
+    private final long runId;
+
+    private final int chunks;
+
+    private final int failedChunks;
+
+    private final long payments;
+
+    private final long mismatches;
+}
@@ -0,0 +1,336 @@
+package com.study.springboottuttorialjpa.reconciliation;
+
+import com.stripe.exception.StripeException;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import com.study.springboottuttorialjpa.enums.ReconciliationMismatchReason;
+import com.study.springboottuttorialjpa.payment.CardPaymentCharge;
+import com.study.springboottuttorialjpa.payment.CardPaymentCharger;
+import com.study.springboottuttorialjpa.payment.Payment;
+import com.study.springboottuttorialjpa.utils.SnowflakeIdGenerator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks the stored payments against the charges at the card processor, and reports the differences in the
+ * payment_reconciliation_mismatch table (see ReconciliationMismatchReason).
+ * The payments whose outcome is not known (UNKNOWN, or PENDING for long) are settled on their own schedule, see
+ * PaymentSettlementService; a payment that is still UNKNOWN is compared as not SUCCEEDED.
+ *
+ * A run goes on from the payment ids of the previous run, up to the payments created
+ * payment.reconciliation.run-delay-minutes before it starts, so the payments still in progress get their outcome
+ * first; the payment ids tell when the payments have been created (see PaymentIdGenerator). So every payment is
+ * reconciled by one run, and a run doesn't go over the payments of the earlier runs again:
+ * - the payments are split into chunks of payment.reconciliation.chunk-size payments, stored as the checkpoint of
+ *   the run (see PaymentReconciliationChunk).
+ * - the chunks are reconciled on a ForkJoinPool of payment.reconciliation.parallelism threads (by default one per
+ *   core). A chunk reads its payments, looks their charges up payment.reconciliation.lookup-batch-size at a time,
+ *   outside of any transaction, and then writes its mismatches and completes itself in one short transaction.
+ * - a chunk that fails (e.g. because the processor is unavailable) is logged and left pending; the other chunks
+ *   go on.
+ * The next call resumes the oldest run that still has pending chunks, and only starts a new run when all chunks
+ * are completed. Runs every payment.reconciliation.cron, which is disabled ("-") by default; a scheduled call is
+ * skipped while a reconciliation is running.
+ */
+@Service
+@Slf4j
+public class PaymentReconciliationService implements MeterBinder {
+
+    private final PaymentReconciliationRepository paymentReconciliationRepository;
+    private final CardPaymentCharger cardPaymentCharger;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int parallelism;
+    private final int lookupBatchSize;
+    private final Duration runDelay;
+    private final Clock clock;
+
+    private final AtomicBoolean reconciling = new AtomicBoolean();
+
+    private final LongAdder reconciledPayments = new LongAdder();
+    private final LongAdder mismatches = new LongAdder();
+    private final LongAdder failedChunks = new LongAdder();
+
+    @Autowired
+    public PaymentReconciliationService(
+            PaymentReconciliationRepository paymentReconciliationRepository
+            , CardPaymentCharger cardPaymentCharger
+            , PlatformTransactionManager transactionManager
+            , @Value("${payment.reconciliation.chunk-size:1000}") int chunkSize
+            , @Value("${payment.reconciliation.parallelism:0}") int parallelism
+            , @Value("${payment.reconciliation.lookup-batch-size:100}") int lookupBatchSize
+            , @Value("${payment.reconciliation.run-delay-minutes:60}") long runDelayMinutes) {
+        this(paymentReconciliationRepository, cardPaymentCharger, transactionManager,
+                chunkSize, parallelism, lookupBatchSize, Duration.ofMinutes(runDelayMinutes), Clock.systemUTC());
+    }
+
+    /**
+     * @param parallelism 0 for one thread per core.
+     */
+    PaymentReconciliationService(
+            PaymentReconciliationRepository paymentReconciliationRepository
+            , CardPaymentCharger cardPaymentCharger
+            , PlatformTransactionManager transactionManager
+            , int chunkSize
+            , int parallelism
+            , int lookupBatchSize
+            , Duration runDelay
+            , Clock clock) {
+        this.paymentReconciliationRepository = paymentReconciliationRepository;
+        this.cardPaymentCharger = cardPaymentCharger;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.lookupBatchSize = lookupBatchSize;
+        this.runDelay = runDelay;
+        this.clock = clock;
+    }
+
+    /**
+     * Resumes the unfinished run, or starts a new one, and reconciles its pending chunks.
+     *
+     * @return empty if a reconciliation is already running.
+     */
+    @Scheduled(cron = "${payment.reconciliation.cron:-}")
+    public Optional<PaymentReconciliationResult> reconcile() {
+        if (!reconciling.compareAndSet(false, true)) {
+            log.info("The payments are already being reconciled; skipping");
+            return Optional.empty();
+        }
+        long start = System.nanoTime();
+        ForkJoinPool pool = null;
+        try {
+            Long runId = paymentReconciliationRepository.selectUnfinishedRunId();
+            if (runId == null) {
+                runId = startRun();
+            } else {
+                log.info("Resuming payment reconciliation run {}", runId);
+            }
+            List<PaymentReconciliationChunk> chunks = paymentReconciliationRepository.selectPendingChunks(runId);
+            Totals totals = new Totals();
+            if (!chunks.isEmpty()) {
+                pool = new ForkJoinPool(parallelism, new ReconciliationThreadFactory(), null, false);
+                totals = pool.invoke(new ReconcileChunks(chunks, 0, chunks.size()));
+            }
+            PaymentReconciliationResult result = new PaymentReconciliationResult(
+                    runId, totals.chunks, totals.failedChunks, totals.payments, totals.mismatches);
+            log.info("Payment reconciliation run {}: {} payments in {} chunks ({} failed), {} mismatches, in {} ms",
+                    runId, result.getPayments(), result.getChunks(), result.getFailedChunks(),
+                    result.getMismatches(), (System.nanoTime() - start) / 1_000_000);
+            return Optional.of(result);
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+            reconciling.set(false);
+        }
+    }
+
+    /**
+     * Stores the chunks of a new run; a run without payments has no chunks and is complete straight away.
+     *
+     * @return the id of the run.
+     */
+    private long startRun() {
+        long runId = clock.millis();
+        Long reconciledUpTo = paymentReconciliationRepository.selectReconciledUpTo();
+        long from = reconciledUpTo == null ? 0L : reconciledUpTo;
+        long to = SnowflakeIdGenerator.firstIdAt(clock.instant().minus(runDelay).toEpochMilli());
+        if (to <= from) {
+            return runId;
+        }
+        List<Long> boundaries = paymentReconciliationRepository.selectChunkBoundaries(chunkSize, from, to);
+        List<PaymentReconciliationChunk> chunks = new ArrayList<>(boundaries.size());
+        for (int i = 0; i < boundaries.size(); i++) {
+            // The last chunk ends at the bound of the run, where the next run starts.
+            long chunkTo = i + 1 < boundaries.size() ? boundaries.get(i + 1) : to;
+            chunks.add(new PaymentReconciliationChunk(null, runId, boundaries.get(i), chunkTo, null, 0, 0));
+        }
+        if (!chunks.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> paymentReconciliationRepository.insertChunks(chunks));
+        }
+        log.info("Payment reconciliation run {} started: {} chunks from payment {} up to payment {}",
+                runId, chunks.size(), from, to);
+        return runId;
+    }
+
+    private Totals reconcileChunk(PaymentReconciliationChunk chunk) {
+        Totals totals = new Totals();
+        totals.chunks = 1;
+        try {
+            List<Payment> payments = paymentReconciliationRepository.selectPayments(
+                    chunk.getFromPaymentId(), chunk.getToPaymentId());
+            Map<String, CardPaymentCharge> charges = lookupCharges(payments);
+            Instant now = clock.instant();
+            List<PaymentReconciliationMismatch> chunkMismatches = new ArrayList<>();
+            for (Payment payment : payments) {
+                PaymentReconciliationMismatch mismatch = compare(chunk.getRunId(), payment,
+                        payment.getChargeId() == null ? null : charges.get(payment.getChargeId()), now);
+                if (mismatch != null) {
+                    chunkMismatches.add(mismatch);
+                }
+            }
+            Integer completed = transactionTemplate.execute(status -> {
+                int updated = paymentReconciliationRepository.completeChunk(
+                        chunk.getChunkId(), payments.size(), chunkMismatches.size(), now);
+                // 0 if an overlapping run has completed the chunk, and reported its mismatches, in the meantime.
+                if (updated == 1) {
+                    paymentReconciliationRepository.insertMismatches(chunkMismatches);
+                }
+                return updated;
+            });
+            if (completed != null && completed == 1) {
+                totals.payments = payments.size();
+                totals.mismatches = chunkMismatches.size();
+                reconciledPayments.add(payments.size());
+                mismatches.add(chunkMismatches.size());
+            }
+        } catch (Exception e) {
+            totals.failedChunks = 1;
+            failedChunks.increment();
+            log.warn("Cannot reconcile the payments from {} to {} of run {}",
+                    chunk.getFromPaymentId(), chunk.getToPaymentId(), chunk.getRunId(), e);
+        }
+        return totals;
+    }
+
+    private Map<String, CardPaymentCharge> lookupCharges(List<Payment> payments) throws StripeException {
+        Map<String, CardPaymentCharge> charges = new HashMap<>(payments.size() * 2);
+        List<String> batch = new ArrayList<>(lookupBatchSize);
+        for (int i = 0; i < payments.size(); i++) {
+            String chargeId = payments.get(i).getChargeId();
+            if (chargeId != null) {
+                batch.add(chargeId);
+            }
+            if (batch.size() == lookupBatchSize || (i == payments.size() - 1 && !batch.isEmpty())) {
+                for (CardPaymentCharge charge : cardPaymentCharger.lookupCharges(batch)) {
+                    charges.put(charge.getChargeId(), charge);
+                }
+                batch.clear();
+            }
+        }
+        return charges;
+    }
+
+    /**
+     * @param charge null if the payment has no charge id, or the processor doesn't know it.
+     * @return null if the payment matches the charge.
+     */
+    static PaymentReconciliationMismatch compare(
+            long runId, Payment payment, CardPaymentCharge charge, Instant detectedAt) {
+        boolean succeeded = payment.getStatus() == PaymentStatus.SUCCEEDED;
+        ReconciliationMismatchReason reason;
+        if (payment.getChargeId() == null) {
+            reason = succeeded ? ReconciliationMismatchReason.MISSING_CHARGE_ID : null;
+        } else if (charge == null) {
+            reason = ReconciliationMismatchReason.CHARGE_NOT_FOUND;
+        } else if (succeeded && !charge.isCardDebited()) {
+            reason = ReconciliationMismatchReason.NOT_DEBITED;
+        } else if (!succeeded && charge.isCardDebited()) {
+            reason = ReconciliationMismatchReason.DEBITED_NOT_SUCCEEDED;
+        } else if (succeeded && charge.getAmount() != null && !charge.getAmount().equals(payment.getAmount())) {
+            reason = ReconciliationMismatchReason.AMOUNT_DIFFERS;
+        } else {
+            reason = null;
+        }
+        if (reason == null) {
+            return null;
+        }
+        return new PaymentReconciliationMismatch(
+                null,
+                runId,
+                payment.getPaymentId(),
+                payment.getChargeId(),
+                reason,
+                payment.getStatus() + " " + payment.getAmount(),
+                charge == null ? null : (charge.isCardDebited() ? "debited " : "not debited ") + charge.getAmount(),
+                detectedAt);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("payment.reconciliation.payments", reconciledPayments, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("payment.reconciliation.mismatches", mismatches, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("payment.reconciliation.failed.chunks", failedChunks, LongAdder::sum)
+                .register(registry);
+    }
+
+    /**
+     * Reconciles chunks from (inclusive) to (exclusive) of the list, by splitting the range in halves down to single
+     * chunks.
+     */
+    private final class ReconcileChunks extends RecursiveTask<Totals> {
+
+        private final List<PaymentReconciliationChunk> chunks;
+        private final int from;
+        private final int to;
+
+        private ReconcileChunks(List<PaymentReconciliationChunk> chunks, int from, int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (to - from == 1) {
+                return reconcileChunk(chunks.get(from));
+            }
+            int middle = (from + to) >>> 1;
+            ReconcileChunks left = new ReconcileChunks(chunks, from, middle);
+            left.fork();
+            Totals right = new ReconcileChunks(chunks, middle, to).compute();
+            return left.join().plus(right);
+        }
+    }
+
+    private static final class Totals {
+
+        private int chunks;
+        private int failedChunks;
+        private long payments;
+        private long mismatches;
+
+        private Totals plus(Totals other) {
+            chunks += other.chunks;
+            failedChunks += other.failedChunks;
+            payments += other.payments;
+            mismatches += other.mismatches;
+            return this;
+        }
+    }
+
+    private static final class ReconciliationThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("payment-reconciliation-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
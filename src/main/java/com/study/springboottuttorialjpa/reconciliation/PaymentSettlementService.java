@@ -0,0 +1,181 @@
+package com.study.springboottuttorialjpa.reconciliation;
+
+import com.stripe.exception.StripeException;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import com.study.springboottuttorialjpa.payment.CardPaymentCharge;
+import com.study.springboottuttorialjpa.payment.CardPaymentCharger;
+import com.study.springboottuttorialjpa.payment.Payment;
+import com.study.springboottuttorialjpa.payment.PaymentIdempotencyService;
+import com.study.springboottuttorialjpa.payment.PaymentRecorder;
+import com.study.springboottuttorialjpa.payment.PaymentRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Settles the payments whose outcome is not known: UNKNOWN (the card processor did not answer), or still PENDING
+ * long after they were created (e.g. the instance went down while charging). A payment that timed out has no
+ * charge id, so its charge is looked up by the idempotency key of the payment (see CardPaymentCharger.idempotencyKey):
+ * - a charge is found: the payment becomes SUCCEEDED if the card has been debited, FAILED otherwise.
+ * - no charge is found: an UNKNOWN payment never got to the processor and becomes FAILED. A PENDING payment has not
+ *   been charged yet and is left to the PendingPaymentSweeper, which charges it.
+ * The Idempotency-Key of a settled payment is completed or released in the same transaction, see
+ * PaymentIdempotencyService.settle.
+ *
+ * Only payments created more than payment.reconciliation.settle-after-minutes ago are settled: the charge of a call
+ * that timed out may still be in progress, and the processor may need a while before a lookup finds a new charge.
+ * Runs every payment.reconciliation.settle-interval-ms, independent of the reconciliation: until its payment is
+ * settled, a retry with the same Idempotency-Key is refused as in progress.
+ *
+ * Metrics: payment.settlement.settled, the number of payments settled.
+ */
+@Service
+@Slf4j
+public class PaymentSettlementService implements MeterBinder {
+
+    private static final List<PaymentStatus> UNSETTLED = List.of(PaymentStatus.UNKNOWN, PaymentStatus.PENDING);
+
+    private final PaymentRepository paymentRepository;
+    private final PaymentRecorder paymentRecorder;
+    private final PaymentIdempotencyService paymentIdempotencyService;
+    private final CardPaymentCharger cardPaymentCharger;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration settleAfter;
+    private final int batchSize;
+    private final Clock clock;
+
+    private final LongAdder settledPayments = new LongAdder();
+
+    @Autowired
+    public PaymentSettlementService(
+            PaymentRepository paymentRepository
+            , PaymentRecorder paymentRecorder
+            , PaymentIdempotencyService paymentIdempotencyService
+            , CardPaymentCharger cardPaymentCharger
+            , PlatformTransactionManager transactionManager
+            , @Value("${payment.reconciliation.settle-after-minutes:10}") long settleAfterMinutes
+            , @Value("${payment.reconciliation.lookup-batch-size:100}") int batchSize) {
+        this(paymentRepository, paymentRecorder, paymentIdempotencyService, cardPaymentCharger, transactionManager,
+                Duration.ofMinutes(settleAfterMinutes), batchSize, Clock.systemUTC());
+    }
+
+    PaymentSettlementService(
+            PaymentRepository paymentRepository
+            , PaymentRecorder paymentRecorder
+            , PaymentIdempotencyService paymentIdempotencyService
+            , CardPaymentCharger cardPaymentCharger
+            , PlatformTransactionManager transactionManager
+            , Duration settleAfter
+            , int batchSize
+            , Clock clock) {
+        this.paymentRepository = paymentRepository;
+        this.paymentRecorder = paymentRecorder;
+        this.paymentIdempotencyService = paymentIdempotencyService;
+        this.cardPaymentCharger = cardPaymentCharger;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.settleAfter = settleAfter;
+        this.batchSize = batchSize;
+        this.clock = clock;
+    }
+
+    /**
+     * A failure (e.g. the processor is unavailable) is logged; the payments are settled by the next call.
+     */
+    @Scheduled(
+            initialDelayString = "${payment.reconciliation.settle-interval-ms:60000}",
+            fixedDelayString = "${payment.reconciliation.settle-interval-ms:60000}"
+    )
+    public void settleScheduled() {
+        try {
+            settle();
+        } catch (Exception e) {
+            log.warn("Cannot settle the payments whose outcome is not known", e);
+        }
+    }
+
+    /**
+     * Settles the payments, batchSize at a time, one lookup at the card processor per batch.
+     *
+     * @return the number of payments settled.
+     */
+    public int settle() throws StripeException {
+        Instant createdBefore = clock.instant().minus(settleAfter);
+        int settled = 0;
+        long afterPaymentId = Long.MIN_VALUE;
+        List<Payment> payments;
+        do {
+            payments = paymentRepository.selectByStatusCreatedBefore(
+                    UNSETTLED, createdBefore, afterPaymentId, PageRequest.of(0, batchSize));
+            if (payments.isEmpty()) {
+                break;
+            }
+            List<String> idempotencyKeys = new ArrayList<>(payments.size());
+            for (Payment payment : payments) {
+                idempotencyKeys.add(CardPaymentCharger.idempotencyKey(payment.getPaymentId()));
+            }
+            Map<String, CardPaymentCharge> charges = cardPaymentCharger.lookupChargesByIdempotencyKey(idempotencyKeys);
+            for (Payment payment : payments) {
+                if (settle(payment, charges.get(CardPaymentCharger.idempotencyKey(payment.getPaymentId())))) {
+                    settled++;
+                }
+            }
+            afterPaymentId = payments.get(payments.size() - 1).getPaymentId();
+        } while (payments.size() == batchSize);
+        if (settled > 0) {
+            log.info("Settled {} payments whose outcome was not known", settled);
+        }
+        return settled;
+    }
+
+    /**
+     * @param charge null if the card processor has no charge for the payment.
+     * @return whether the payment has been settled.
+     */
+    private boolean settle(Payment payment, CardPaymentCharge charge) {
+        PaymentStatus expected = payment.getStatus();
+        if (charge == null && expected == PaymentStatus.PENDING) {
+            return false;
+        }
+        PaymentStatus status = charge != null && charge.isCardDebited()
+                ? PaymentStatus.SUCCEEDED : PaymentStatus.FAILED;
+        if (charge != null) {
+            payment.setChargeId(charge.getChargeId());
+        }
+        Boolean settled = transactionTemplate.execute(transaction -> {
+            // Not if the payment got its outcome in the meantime.
+            if (!paymentRecorder.updateStatus(payment, expected, status)) {
+                return false;
+            }
+            paymentIdempotencyService.settle(payment.getPaymentId(), status == PaymentStatus.SUCCEEDED);
+            return true;
+        });
+        if (Boolean.TRUE.equals(settled)) {
+            settledPayments.increment();
+            log.info("Payment {} was {}, is {}", payment.getPaymentId(), expected, status);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("payment.settlement.settled", settledPayments, LongAdder::sum)
+                .register(registry);
+    }
+}
@@ -0,0 +1,136 @@
+package com.study.springboottuttorialjpa.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe Bloom filter for strings.
+ *
+ * A Bloom filter answers "definitely not present" or "might be present" in constant time and memory.
+ * It never gives a false negative. The probability of a false positive grows with the number of elements added.
+ *
+ * Bits are set with compare-and-set on an AtomicLongArray, so concurrent adds and lookups don't need a lock.
+ * The k bit positions are derived from two 64 bit hashes (Kirsch and Mitzenmacher double hashing).
+ *
+ * See: https://en.wikipedia.org/wiki/Bloom_filter
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashFunctions;
+    private final AtomicLong bitsSet = new AtomicLong();
+
+    /**
+     * @param expectedInsertions        the number of elements the filter is sized for.
+     * @param falsePositiveProbability  the false positive probability once expectedInsertions elements are added.
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveProbability) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("expectedInsertions must be positive");
+        }
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("falsePositiveProbability must be between 0 and 1");
+        }
+        // m = -n * ln(p) / (ln 2)^2 and k = m / n * ln 2
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) / 64);
+        this.words = new AtomicLongArray(words);
+        this.bitSize = (long) words * 64;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * @return true if the filter changed, i.e. the value was definitely not present before.
+     */
+    public boolean put(CharSequence value) {
+        long hash1 = hash(value);
+        long hash2 = mix(hash1 ^ 0x9e3779b97f4a7c15L);
+        boolean changed = false;
+        for (int i = 1; i <= hashFunctions; i++) {
+            changed |= setBit(index(hash1 + i * hash2));
+        }
+        return changed;
+    }
+
+    /**
+     * @return false if the value has definitely not been added; true if it might have been.
+     */
+    public boolean mightContain(CharSequence value) {
+        long hash1 = hash(value);
+        long hash2 = mix(hash1 ^ 0x9e3779b97f4a7c15L);
+        for (int i = 1; i <= hashFunctions; i++) {
+            long index = index(hash1 + i * hash2);
+            if ((words.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long bitSize() {
+        return bitSize;
+    }
+
+    public int hashFunctions() {
+        return hashFunctions;
+    }
+
+    public long bitsSet() {
+        return bitsSet.get();
+    }
+
+    /**
+     * Estimate of the number of distinct elements added, derived from the number of bits set.
+     */
+    public long approximateElementCount() {
+        double fractionOfBitsSet = (double) bitsSet.get() / bitSize;
+        return Math.round(-Math.log1p(-fractionOfBitsSet) * bitSize / hashFunctions);
+    }
+
+    /**
+     * The probability that mightContain returns true for a value that has not been added, given the current fill.
+     */
+    public double expectedFalsePositiveProbability() {
+        return Math.pow((double) bitsSet.get() / bitSize, hashFunctions);
+    }
+
+    private long index(long combinedHash) {
+        return (combinedHash & Long.MAX_VALUE) % bitSize;
+    }
+
+    private boolean setBit(long index) {
+        int wordIndex = (int) (index >>> 6);
+        long mask = 1L << index;
+        long word;
+        do {
+            word = words.get(wordIndex);
+            if ((word & mask) != 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(wordIndex, word, word | mask));
+        bitsSet.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 64 bit FNV-1a over the characters, followed by the murmur3 finalizer to spread the bits.
+     */
+    private static long hash(CharSequence value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
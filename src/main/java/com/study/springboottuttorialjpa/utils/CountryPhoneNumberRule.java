@@ -0,0 +1,80 @@
+package com.study.springboottuttorialjpa.utils;
+
+/**
+ * Per country rules for phone numbers in international format.
+ *
+ * - countryCode: the E.164 country calling code.
+ * - trunkPrefix: the digit dialled in front of a national number within the country (e.g. the 0 in 06-...).
+ *   Partners regularly leave it in after the country code ("+31 (0)6 ..."); it is dropped when normalizing.
+ *   -1 when the country has no trunk prefix that can be dropped.
+ * - minimum / maximum length of the national significant number (the digits after the country code).
+ *
+ * Resource:
+ * - https://www.itu.int/rec/T-REC-E.164
+ */
+public enum CountryPhoneNumberRule {
+
+    US_CA(1, -1, 10, 10),
+    NL(31, 0, 9, 9),
+    BE(32, 0, 8, 9),
+    FR(33, 0, 9, 9),
+    ES(34, -1, 9, 9),
+    IT(39, -1, 6, 11),
+    CH(41, 0, 9, 9),
+    AT(43, 0, 4, 13),
+    GB(44, 0, 9, 10),
+    DK(45, -1, 8, 8),
+    SE(46, 0, 7, 13),
+    NO(47, -1, 8, 8),
+    PL(48, -1, 9, 9),
+    DE(49, 0, 6, 13),
+    IE(353, 0, 7, 9),
+    LU(352, -1, 4, 11),
+    PT(351, -1, 9, 9);
+
+    private static final CountryPhoneNumberRule[] BY_COUNTRY_CODE = new CountryPhoneNumberRule[1000];
+
+    static {
+        for (CountryPhoneNumberRule rule : values()) {
+            BY_COUNTRY_CODE[rule.countryCode] = rule;
+        }
+    }
+
+    private final int countryCode;
+    private final int trunkPrefix;
+    private final int minimumNationalLength;
+    private final int maximumNationalLength;
+
+    CountryPhoneNumberRule(int countryCode, int trunkPrefix, int minimumNationalLength, int maximumNationalLength) {
+        this.countryCode = countryCode;
+        this.trunkPrefix = trunkPrefix;
+        this.minimumNationalLength = minimumNationalLength;
+        this.maximumNationalLength = maximumNationalLength;
+    }
+
+    /**
+     * Country codes are prefix free: no country code is the start of another one.
+     * So while reading digits the first code with a rule is the country code.
+     *
+     * @return the rule for the country code; null if the code is not supported.
+     */
+    public static CountryPhoneNumberRule forCountryCode(int countryCode) {
+        return countryCode >= 0 && countryCode < BY_COUNTRY_CODE.length ? BY_COUNTRY_CODE[countryCode] : null;
+    }
+
+    public int getCountryCode() {
+        return countryCode;
+    }
+
+    public int getTrunkPrefix() {
+        return trunkPrefix;
+    }
+
+    public int getMinimumNationalLength() {
+        return minimumNationalLength;
+    }
+
+    public int getMaximumNationalLength() {
+        return maximumNationalLength;
+    }
+}
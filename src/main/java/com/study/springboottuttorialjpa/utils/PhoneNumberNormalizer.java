@@ -0,0 +1,137 @@
+package com.study.springboottuttorialjpa.utils;
+
+import java.util.List;
+
+/**
+ * Validates phone numbers in international format and normalizes them to E.164: '+' followed by digits only.
+ *
+ * Accepted input:
+ * - starts with '+' or the international prefix "00", optionally preceded by whitespace.
+ * - digits, separated by any of: space - . / ( )
+ * - a trunk prefix directly after the country code is dropped: "+31 (0)6 12345678" becomes "+31612345678".
+ * The country code must be in the table of CountryPhoneNumberRule, and the number of remaining digits must fit the
+ * rule of that country.
+ *
+ * The input is read once, character by character, without creating intermediate Strings.
+ * - isValid doesn't allocate at all.
+ * - normalize only allocates the resulting String, and not even that when the input is already in E.164.
+ *
+ * Instances are stateless and thread safe.
+ */
+public class PhoneNumberNormalizer {
+
+    // E.164: at most 15 digits, plus the '+'.
+    private static final int MAXIMUM_LENGTH = 16;
+    private static final int INVALID = -1;
+
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[MAXIMUM_LENGTH]);
+
+    public boolean isValid(CharSequence phoneNumber) {
+        return phoneNumber != null && parse(phoneNumber, null) != INVALID;
+    }
+
+    /**
+     * @return the phone number in E.164 format; null if it is not valid.
+     */
+    public String normalize(CharSequence phoneNumber) {
+        if (phoneNumber == null) {
+            return null;
+        }
+        char[] buffer = BUFFER.get();
+        int length = parse(phoneNumber, buffer);
+        if (length == INVALID) {
+            return null;
+        }
+        if (phoneNumber instanceof String && length == phoneNumber.length()) {
+            // Same length means nothing was dropped or replaced: the input already is in E.164.
+            return (String) phoneNumber;
+        }
+        return new String(buffer, 0, length);
+    }
+
+    /**
+     * Batch variant for bulk imports.
+     *
+     * @return the normalized phone numbers in the order given; null for the ones that are not valid.
+     */
+    public String[] normalizeAll(List<? extends CharSequence> phoneNumbers) {
+        String[] normalized = new String[phoneNumbers.size()];
+        for (int i = 0; i < normalized.length; i++) {
+            normalized[i] = normalize(phoneNumbers.get(i));
+        }
+        return normalized;
+    }
+
+    /**
+     * Single pass over the input.
+     *
+     * @param output receives the E.164 characters; may be null when only validating.
+     * @return the length of the E.164 number; INVALID if the input is not a valid phone number.
+     */
+    private static int parse(CharSequence input, char[] output) {
+        int length = input.length();
+        int i = 0;
+        while (i < length && input.charAt(i) == ' ') {
+            i++;
+        }
+        if (i < length && input.charAt(i) == '+') {
+            i++;
+        } else if (i + 1 < length && input.charAt(i) == '0' && input.charAt(i + 1) == '0') {
+            i += 2;
+        } else {
+            return INVALID;
+        }
+
+        int written = 0;
+        if (output != null) {
+            output[written] = '+';
+        }
+        written++;
+
+        int countryCode = 0;
+        int countryCodeLength = 0;
+        CountryPhoneNumberRule rule = null;
+        int nationalLength = 0;
+        boolean trunkPrefixChecked = false;
+
+        for (; i < length; i++) {
+            char c = input.charAt(i);
+            if (c >= '0' && c <= '9') {
+                int digit = c - '0';
+                if (rule == null) {
+                    countryCode = countryCode * 10 + digit;
+                    countryCodeLength++;
+                    rule = CountryPhoneNumberRule.forCountryCode(countryCode);
+                    if (rule == null && countryCodeLength == 3) {
+                        return INVALID;
+                    }
+                } else {
+                    if (!trunkPrefixChecked) {
+                        trunkPrefixChecked = true;
+                        if (digit == rule.getTrunkPrefix()) {
+                            continue;
+                        }
+                    }
+                    if (++nationalLength > rule.getMaximumNationalLength()) {
+                        return INVALID;
+                    }
+                }
+                if (output != null) {
+                    output[written] = c;
+                }
+                written++;
+            } else if (!isSeparator(c)) {
+                return INVALID;
+            }
+        }
+
+        if (rule == null || nationalLength < rule.getMinimumNationalLength()) {
+            return INVALID;
+        }
+        return written;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '-' || c == '.' || c == '/' || c == '(' || c == ')';
+    }
+}
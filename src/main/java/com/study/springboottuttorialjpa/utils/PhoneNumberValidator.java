@@ -2,17 +2,38 @@ package com.study.springboottuttorialjpa.utils;
 
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 import java.util.function.Predicate;
 
 /**
  * For real-life purposes use available validator libraries. e.g. from Google.
  * The following is intended for instructive purposes.
+ *
+ * The actual rules are in PhoneNumberNormalizer and CountryPhoneNumberRule.
+ * Phone numbers are stored in their normalized (E.164) form, so always use normalize before storing or
+ * looking up a phone number.
  */
 @Service
 public class PhoneNumberValidator implements Predicate<String> {
 
+    private final PhoneNumberNormalizer phoneNumberNormalizer = new PhoneNumberNormalizer();
+
     @Override
     public boolean test(String phoneNumber) {
-        return phoneNumber.startsWith("+31") && phoneNumber.length() == 12;
+        return phoneNumberNormalizer.isValid(phoneNumber);
+    }
+
+    /**
+     * @return the phone number in E.164 format; null if it is not valid.
+     */
+    public String normalize(String phoneNumber) {
+        return phoneNumberNormalizer.normalize(phoneNumber);
+    }
+
+    /**
+     * @return the normalized phone numbers in the order given; null for the ones that are not valid.
+     */
+    public String[] normalizeAll(List<String> phoneNumbers) {
+        return phoneNumberNormalizer.normalizeAll(phoneNumbers);
     }
 }
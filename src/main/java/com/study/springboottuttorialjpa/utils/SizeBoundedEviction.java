@@ -0,0 +1,70 @@
+package com.study.springboottuttorialjpa.utils;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Keeps an in-memory cache - a view of a ConcurrentHashMap, or a concurrent set - under its maximum size.
+ *
+ * Once the cache has grown over its maximum size, first the expired elements are removed, then arbitrary evictable
+ * ones until the cache is 10% under its maximum size, so the next puts don't end up evicting again straight away.
+ * Only one thread evicts at a time; the others just carry on, so the cache may briefly exceed its maximum size.
+ */
+public class SizeBoundedEviction {
+
+    private final int maximumSize;
+    private final int targetSize;
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final LongAdder evictions = new LongAdder();
+
+    public SizeBoundedEviction(int maximumSize) {
+        this.maximumSize = maximumSize;
+        this.targetSize = maximumSize - Math.max(1, maximumSize / 10);
+    }
+
+    /**
+     * To be called after a put.
+     *
+     * @param elements  the cache; its iterator must support remove.
+     * @param expired   the elements that are removed in any case.
+     * @param evictable the elements that may be removed to get back under the maximum size.
+     */
+    public <T> void evictIfFull(Collection<T> elements, Predicate<? super T> expired, Predicate<? super T> evictable) {
+        if (elements.size() <= maximumSize || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Iterator<T> iterator = elements.iterator();
+            while (iterator.hasNext()) {
+                if (expired.test(iterator.next())) {
+                    iterator.remove();
+                    evictions.increment();
+                }
+            }
+            iterator = elements.iterator();
+            while (elements.size() > targetSize && iterator.hasNext()) {
+                if (evictable.test(iterator.next())) {
+                    iterator.remove();
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Counts an element removed by the cache itself, e.g. an expired one found by a lookup.
+     */
+    public void evicted() {
+        evictions.increment();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+}
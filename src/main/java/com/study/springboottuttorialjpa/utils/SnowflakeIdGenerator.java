@@ -0,0 +1,104 @@
+package com.study.springboottuttorialjpa.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Snowflake style 64-bit ids: unique over all nodes, increasing per node, and generated in memory.
+ *
+ * Layout (most significant bit first):
+ * - 1 bit: 0, so the ids are positive.
+ * - 41 bits: milliseconds since EPOCH (2021-01-01T00:00:00Z); enough for 69 years.
+ * - 10 bits: node id, 0 - 1023. Every instance of the application needs its own node id.
+ * - 12 bits: sequence within the millisecond.
+ *
+ * Nothing about the last id is stored, so uniqueness over restarts rests on the clock: a restarted node starts at
+ * the current millisecond again. That is why an id handed out ahead of the clock - after a burst of more than 4096
+ * ids in a millisecond, or after the clock went backwards (e.g. an NTP correction) - is a risk here, and why nextId
+ * throws an IllegalStateException rather than get ahead of the clock by more than maximumDriftMillis. Every id
+ * handed out ahead of the clock is counted, see clockRegressionCount.
+ *
+ * Use forNode to get the generator of a node, so that everything on one node shares the same sequence.
+ */
+public class SnowflakeIdGenerator {
+
+    public static final long EPOCH = 1_609_459_200_000L;
+    public static final int NODE_ID_BITS = 10;
+    public static final int MAXIMUM_NODE_ID = (1 << NODE_ID_BITS) - 1;
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final long DEFAULT_MAXIMUM_DRIFT_MILLIS = 5_000L;
+
+    private static final ConcurrentHashMap<Integer, SnowflakeIdGenerator> NODES = new ConcurrentHashMap<>();
+
+    private final long nodeBits;
+    private final LongSupplier clock;
+    private final long maximumDriftMillis;
+    // ((timestamp - EPOCH) << SEQUENCE_BITS) | sequence of the last id handed out.
+    private final AtomicLong lastTimestampAndSequence = new AtomicLong();
+    private final AtomicLong clockRegressions = new AtomicLong();
+
+    SnowflakeIdGenerator(int nodeId, LongSupplier clock, long maximumDriftMillis) {
+        if (nodeId < 0 || nodeId > MAXIMUM_NODE_ID) {
+            throw new IllegalArgumentException(String.format("Node id %d is not within 0 - %d", nodeId, MAXIMUM_NODE_ID));
+        }
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+        this.clock = clock;
+        this.maximumDriftMillis = maximumDriftMillis;
+    }
+
+    public static SnowflakeIdGenerator forNode(int nodeId) {
+        return NODES.computeIfAbsent(nodeId,
+                id -> new SnowflakeIdGenerator(id, System::currentTimeMillis, DEFAULT_MAXIMUM_DRIFT_MILLIS));
+    }
+
+    public long nextId() {
+        long timestampAndSequence;
+        long last;
+        do {
+            last = lastTimestampAndSequence.get();
+            long now = clock.getAsLong() - EPOCH;
+            timestampAndSequence = now << SEQUENCE_BITS;
+            if (timestampAndSequence <= last) {
+                long lastTimestamp = last >>> SEQUENCE_BITS;
+                if (now < lastTimestamp) {
+                    if (lastTimestamp - now > maximumDriftMillis) {
+                        throw new IllegalStateException(String.format(
+                                "The clock is %d ms behind the last id; refusing to generate ids", lastTimestamp - now));
+                    }
+                    clockRegressions.incrementAndGet();
+                }
+                timestampAndSequence = last + 1;
+            }
+        } while (!lastTimestampAndSequence.compareAndSet(last, timestampAndSequence));
+
+        long timestamp = timestampAndSequence >>> SEQUENCE_BITS;
+        long sequence = timestampAndSequence & ((1L << SEQUENCE_BITS) - 1);
+        return (timestamp << (NODE_ID_BITS + SEQUENCE_BITS)) | nodeBits | sequence;
+    }
+
+    /**
+     * @return the number of ids that have been generated while the clock was behind the last id: after the clock went
+     * backwards, or after a millisecond ran out of sequence numbers.
+     */
+    public long clockRegressionCount() {
+        return clockRegressions.get();
+    }
+
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_ID_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    /**
+     * @return the smallest id that any node generates at the timestamp, so the ids from it on are those generated at
+     * or after the timestamp (barring ids handed out ahead of the clock).
+     */
+    public static long firstIdAt(long timestamp) {
+        return (timestamp - EPOCH) << (NODE_ID_BITS + SEQUENCE_BITS);
+    }
+
+    public static int nodeIdOf(long id) {
+        return (int) (id >>> SEQUENCE_BITS) & MAXIMUM_NODE_ID;
+    }
+}
@@ -0,0 +1,90 @@
+package com.study.springboottuttorialjpa.currency;
+
+import com.study.springboottuttorialjpa.enums.Currency;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CurrencyRegistryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testShouldAcceptConfiguredCurrencies() {
+        // Given
+        CurrencyRegistry currencyRegistry = new CurrencyRegistry(" USD, GBP ", "USD", "");
+
+        // Then
+        assertThat(currencyRegistry.isAccepted(Currency.USD)).isTrue();
+        assertThat(currencyRegistry.isAccepted(Currency.GBP)).isTrue();
+        assertThat(currencyRegistry.isAccepted(Currency.EUR)).isFalse();
+        assertThat(currencyRegistry.isAccepted(null)).isFalse();
+        assertThat(currencyRegistry.getSettlementCurrency()).isEqualTo(Currency.USD);
+    }
+
+    @Test
+    void testShouldRejectUnknownCurrencyInConfiguration() {
+        assertThatThrownBy(() -> new CurrencyRegistry("USD,YEN", "USD", ""))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("YEN");
+    }
+
+    @Test
+    void testShouldReplaceSnapshotAsAWhole() {
+        // Given
+        CurrencyRegistry currencyRegistry = new CurrencyRegistry("USD", "USD", "");
+        Set<Currency> before = currencyRegistry.getAcceptedCurrencies();
+
+        // When
+        currencyRegistry.setAcceptedCurrencies(List.of(Currency.EUR, Currency.GBP));
+
+        // Then
+        assertThat(before).containsExactly(Currency.USD);
+        assertThat(currencyRegistry.getAcceptedCurrencies()).containsExactly(Currency.GBP, Currency.EUR);
+        assertThatThrownBy(() -> currencyRegistry.getAcceptedCurrencies().add(Currency.USD))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void testShouldReloadModifiedFile() throws IOException {
+        // Given
+        Path file = directory.resolve("currencies.properties");
+        Files.writeString(file, "currency.accepted=USD,GBP\n");
+        CurrencyRegistry currencyRegistry = new CurrencyRegistry("USD", "USD", file.toString());
+        assertThat(currencyRegistry.getAcceptedCurrencies()).containsExactly(Currency.USD, Currency.GBP);
+
+        // When
+        Files.writeString(file, "currency.accepted=EUR\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+        currencyRegistry.reload();
+
+        // Then
+        assertThat(currencyRegistry.getAcceptedCurrencies()).containsExactly(Currency.EUR);
+    }
+
+    @Test
+    void testShouldKeepCurrenciesWhenFileIsInvalid() throws IOException {
+        // Given
+        Path file = directory.resolve("currencies.properties");
+        Files.writeString(file, "currency.accepted=USD,GBP\n");
+        CurrencyRegistry currencyRegistry = new CurrencyRegistry("USD", "USD", file.toString());
+
+        // When
+        Files.writeString(file, "currency.accepted=USD,YEN\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+        currencyRegistry.reload();
+
+        // Then
+        assertThat(currencyRegistry.getAcceptedCurrencies()).containsExactly(Currency.USD, Currency.GBP);
+    }
+}
@@ -0,0 +1,140 @@
+package com.study.springboottuttorialjpa.currency;
+
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.general.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FxRateCacheTest {
+
+    private static final long MAXIMUM_AGE_SECONDS = 900;
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final AtomicReference<Map<Currency, BigDecimal>> sourceRates = new AtomicReference<>(
+            Map.of(Currency.EUR, new BigDecimal("1.0833"), Currency.GBP, new BigDecimal("1.25")));
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // Class to be tested.
+    private FxRateCache fxRateCache;
+
+    @BeforeEach
+    void setUp() {
+        FxRateSource fxRateSource = target -> {
+            fetches.incrementAndGet();
+            Map<Currency, BigDecimal> rates = sourceRates.get();
+            if (rates == null) {
+                throw new IOException("Rates provider down");
+            }
+            return rates;
+        };
+        fxRateCache = new FxRateCache(fxRateSource, Currency.USD, MAXIMUM_AGE_SECONDS, now::get);
+        fxRateCache.bindTo(meterRegistry);
+    }
+
+    @Test
+    void testShouldConvertFromCachedRatesRoundingHalfEven() {
+        // Given
+        fxRateCache.refresh();
+
+        // When
+        // 10.00 EUR * 1.0833 = 10.833 USD, 0.10 EUR * 1.25 = 0.125 GBP
+        Money fromEuros = fxRateCache.toSettlementCurrency(Money.parse("10.00", Currency.EUR));
+        Money fromPounds = fxRateCache.toSettlementCurrency(Money.parse("0.10", Currency.GBP));
+        Money fromDollars = fxRateCache.toSettlementCurrency(Money.parse("10.00", Currency.USD));
+
+        // Then
+        assertThat(fromEuros).isEqualTo(Money.parse("10.83", Currency.USD));
+        assertThat(fromPounds).isEqualTo(Money.parse("0.12", Currency.USD));
+        assertThat(fromDollars).isEqualTo(Money.parse("10.00", Currency.USD));
+        // Only the refresh called the source.
+        assertThat(fetches.get()).isEqualTo(1);
+    }
+
+    @Test
+    void testShouldThrowWithoutRate() {
+        // Given
+        sourceRates.set(Map.of(Currency.GBP, new BigDecimal("1.25")));
+        fxRateCache.refresh();
+
+        // Then
+        assertThatThrownBy(() -> fxRateCache.toSettlementCurrency(Money.parse("10.00", Currency.EUR)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("No exchange rate from [EUR] to [USD]");
+    }
+
+    @Test
+    void testShouldKeepRatesWhenRefreshFailsUntilTheyAreStale() {
+        // Given
+        fxRateCache.refresh();
+        sourceRates.set(null);
+
+        // When
+        now.addAndGet(TimeUnit.SECONDS.toNanos(MAXIMUM_AGE_SECONDS - 1));
+        fxRateCache.refresh();
+
+        // Then
+        assertThat(fxRateCache.toSettlementCurrency(Money.parse("1.00", Currency.GBP)))
+                .isEqualTo(Money.parse("1.25", Currency.USD));
+
+        // When
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        // Then
+        assertThatThrownBy(() -> fxRateCache.toSettlementCurrency(Money.parse("1.00", Currency.GBP)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(meterRegistry.get("currency.fx.evictions").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("currency.fx.refreshes").tag("outcome", "failure").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("currency.fx.age").gauge().value()).isNaN();
+
+        // When
+        sourceRates.set(Map.of(Currency.GBP, new BigDecimal("1.30")));
+        fxRateCache.refresh();
+
+        // Then
+        assertThat(fxRateCache.toSettlementCurrency(Money.parse("1.00", Currency.GBP)))
+                .isEqualTo(Money.parse("1.30", Currency.USD));
+    }
+
+    @Test
+    void testShouldRejectNonPositiveRates() {
+        // Given
+        fxRateCache.refresh();
+        sourceRates.set(Map.of(Currency.GBP, BigDecimal.ZERO));
+
+        // When
+        fxRateCache.refresh();
+
+        // Then
+        assertThat(fxRateCache.toSettlementCurrency(Money.parse("1.00", Currency.GBP)))
+                .isEqualTo(Money.parse("1.25", Currency.USD));
+    }
+
+    @Test
+    void testShouldReadRatesFromFile() throws IOException {
+        // Given
+        FileFxRateSource fileFxRateSource = new FileFxRateSource(
+                new ClassPathResource("fx-rates.properties"));
+
+        // When
+        Map<Currency, BigDecimal> rates = fileFxRateSource.fetchRates(Currency.USD);
+
+        // Then
+        assertThat(rates).containsOnlyKeys(Currency.EUR, Currency.GBP);
+        assertThat(fileFxRateSource.fetchRates(Currency.EUR)).isEmpty();
+    }
+}
@@ -0,0 +1,250 @@
+package com.study.springboottuttorialjpa.customer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.study.springboottuttorialjpa.utils.PhoneNumberValidator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.times;
+
+class CustomerBulkRegistrationServiceTest {
+
+    @Mock
+    private CustomerJdbcRepository customerJdbcRepository;
+
+    @Mock
+    private CustomerPhoneNumberCache customerPhoneNumberCache;
+
+    @Mock
+    private CustomerPhoneNumberFilter customerPhoneNumberFilter;
+
+    @Mock
+    private CustomerExistenceService customerExistenceService;
+
+    private final PhoneNumberValidator phoneNumberValidator = new PhoneNumberValidator();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Class to be tested.
+    private CustomerBulkRegistrationService customerBulkRegistrationService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        customerBulkRegistrationService = new CustomerBulkRegistrationService(
+                customerJdbcRepository, customerPhoneNumberCache, customerPhoneNumberFilter, customerExistenceService,
+                phoneNumberValidator,
+                new TimeOrderedCustomerIdGenerator(), objectMapper, 2);
+        given(customerPhoneNumberFilter.mightBeRegistered(anyString())).willReturn(true);
+        given(customerJdbcRepository.insertCustomers(anyList()))
+                .willAnswer(invocation -> invocation.<List<Customer>>getArgument(0).stream()
+                        .map(Customer::getId)
+                        .collect(Collectors.toSet()));
+    }
+
+    @Test
+    void testShouldRegisterNewCustomersPerChunk() throws Exception {
+        // Given
+        given(customerJdbcRepository.selectCustomersByPhoneNumbers(anyCollection())).willReturn(Map.of());
+        String upload = "{\"name\":\"Rob\",\"phoneNumber\":\"+31464332051\"}\n"
+                + "{\"name\":\"Alice\",\"phoneNumber\":\"+31464332052\"}\n"
+                + "\n"
+                + "{\"name\":\"James\",\"phoneNumber\":\"+31464332053\"}\n";
+
+        // When
+        List<JsonNode> results = register(upload);
+
+        // Then
+        assertThat(results).hasSize(3);
+        assertThat(results).allSatisfy(result -> {
+            assertThat(result.get("status").asText()).isEqualTo("REGISTERED");
+            assertThat(result.get("customerId")).isNotNull();
+        });
+        assertThat(results.get(2).get("line").asLong()).isEqualTo(4L);
+        then(customerPhoneNumberFilter).should().registered("+31464332053");
+        then(customerPhoneNumberCache).should().invalidate("+31464332053");
+        // Every phone number might have been registered, but none was found.
+        then(customerPhoneNumberFilter).should(times(3)).falsePositive();
+        // Chunk size 2: two chunks, each resolved with one query and inserted with one batch.
+        then(customerJdbcRepository).should(times(2)).selectCustomersByPhoneNumbers(anyCollection());
+        then(customerJdbcRepository).should(times(2)).insertCustomers(anyList());
+    }
+
+    @Test
+    void testShouldIgnoreIdInUpload() throws Exception {
+        // Given
+        UUID uploadedId = UUID.randomUUID();
+        given(customerJdbcRepository.selectCustomersByPhoneNumbers(anyCollection())).willReturn(Map.of());
+        String upload = "{\"id\":\"" + uploadedId + "\",\"name\":\"Rob\",\"phoneNumber\":\"+31464332051\"}\n";
+
+        // When
+        List<JsonNode> results = register(upload);
+
+        // Then
+        ArgumentCaptor<List<Customer>> insertCaptor = ArgumentCaptor.forClass(List.class);
+        then(customerJdbcRepository).should().insertCustomers(insertCaptor.capture());
+        assertThat(insertCaptor.getValue()).extracting(Customer::getId).doesNotContain(uploadedId);
+        assertThat(results.get(0).get("customerId").asText()).isNotEqualTo(uploadedId.toString());
+    }
+
+    @Test
+    void testShouldRejectChunkSizeOverBindParameterLimit() {
+        assertThatThrownBy(() -> new CustomerBulkRegistrationService(
+                customerJdbcRepository, customerPhoneNumberCache, customerPhoneNumberFilter, customerExistenceService,
+                phoneNumberValidator, new TimeOrderedCustomerIdGenerator(), objectMapper,
+                CustomerJdbcRepository.MAXIMUM_INSERT_SIZE + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testShouldResolveExistingAndDuplicatePhoneNumbers() throws Exception {
+        // Given
+        UUID robId = UUID.randomUUID();
+        given(customerJdbcRepository.selectCustomersByPhoneNumbers(anyCollection()))
+                .willReturn(Map.of("+31464332051", new Customer(robId, "Rob", "+31464332051")));
+        customerBulkRegistrationService = new CustomerBulkRegistrationService(
+                customerJdbcRepository, customerPhoneNumberCache, customerPhoneNumberFilter, customerExistenceService,
+                phoneNumberValidator,
+                new TimeOrderedCustomerIdGenerator(), objectMapper, 10);
+        String upload = "{\"name\":\"Rob\",\"phoneNumber\":\"+31464332051\"}\n"
+                + "{\"name\":\"Alice\",\"phoneNumber\":\"+31464332051\"}\n"
+                + "{\"name\":\"James\",\"phoneNumber\":\"+31464332053\"}\n"
+                // Same phone number as James once normalized.
+                + "{\"name\":\"Jim\",\"phoneNumber\":\"0031 (0)46-433 2053\"}\n";
+
+        // When
+        List<JsonNode> results = register(upload);
+
+        // Then
+        assertThat(results).extracting(result -> result.get("status").asText())
+                .containsExactly("ALREADY_REGISTERED", "PHONE_NUMBER_TAKEN", "REGISTERED", "PHONE_NUMBER_TAKEN");
+        assertThat(results.get(0).get("customerId").asText()).isEqualTo(robId.toString());
+
+        ArgumentCaptor<List<Customer>> insertCaptor = ArgumentCaptor.forClass(List.class);
+        then(customerJdbcRepository).should().insertCustomers(insertCaptor.capture());
+        assertThat(insertCaptor.getValue()).extracting(Customer::getName).containsExactly("James");
+    }
+
+    @Test
+    void testShouldReportInvalidRecordsWithoutInsertingThem() throws Exception {
+        // Given
+        given(customerJdbcRepository.selectCustomersByPhoneNumbers(anyCollection())).willReturn(Map.of());
+        String upload = "{\"name\":\"Rob\",\"phoneNumber\":\"000099\"}\n"
+                + "not json\n";
+
+        // When
+        List<JsonNode> results = register(upload);
+
+        // Then
+        assertThat(results).extracting(result -> result.get("status").asText())
+                .containsExactly("INVALID_PHONE_NUMBER", "INVALID_RECORD");
+        then(customerJdbcRepository).should().insertCustomers(List.of());
+    }
+
+    @Test
+    void testShouldNotLookUpPhoneNumbersRuledOutByFilter() throws Exception {
+        // Given
+        given(customerPhoneNumberFilter.mightBeRegistered(anyString())).willReturn(false);
+        given(customerJdbcRepository.selectCustomersByPhoneNumbers(anyCollection())).willReturn(Map.of());
+
+        // When
+        List<JsonNode> results = register("{\"name\":\"Rob\",\"phoneNumber\":\"+31464332051\"}\n");
+
+        // Then
+        assertThat(results.get(0).get("status").asText()).isEqualTo("REGISTERED");
+        then(customerJdbcRepository).should().selectCustomersByPhoneNumbers(Set.of());
+    }
+
+    @Test
+    void testShouldReportPhoneNumberConcurrentlyRegisteredToOtherCustomerAsTaken() throws Exception {
+        // Given
+        given(customerJdbcRepository.selectCustomersByPhoneNumbers(anyCollection())).willReturn(
+                Map.of(),
+                Map.of("+31464332051", new Customer(UUID.randomUUID(), "Bob", "+31464332051")));
+        given(customerJdbcRepository.insertCustomers(any())).willReturn(Set.of());
+        String upload = "{\"name\":\"Rob\",\"phoneNumber\":\"+31464332051\"}\n"
+                // Duplicate of a record that lost the race.
+                + "{\"name\":\"Rob\",\"phoneNumber\":\"+31464332051\"}\n";
+
+        // When
+        List<JsonNode> results = register(upload);
+
+        // Then
+        assertThat(results).extracting(result -> result.get("status").asText())
+                .containsExactly("PHONE_NUMBER_TAKEN", "PHONE_NUMBER_TAKEN");
+        assertThat(results).allSatisfy(result -> assertThat(result.get("customerId")).isNull());
+        then(customerJdbcRepository).should(times(2)).selectCustomersByPhoneNumbers(Set.of("+31464332051"));
+        then(customerExistenceService).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void testShouldReportPhoneNumberConcurrentlyRegisteredToSameCustomerAsAlreadyRegistered() throws Exception {
+        // Given
+        UUID winnerId = UUID.randomUUID();
+        given(customerJdbcRepository.selectCustomersByPhoneNumbers(anyCollection())).willReturn(
+                Map.of(),
+                Map.of("+31464332051", new Customer(winnerId, "Rob", "+31464332051")));
+        given(customerJdbcRepository.insertCustomers(any())).willReturn(Set.of());
+        String upload = "{\"name\":\"Rob\",\"phoneNumber\":\"+31464332051\"}\n"
+                + "{\"name\":\"Rob\",\"phoneNumber\":\"+31464332051\"}\n";
+
+        // When
+        List<JsonNode> results = register(upload);
+
+        // Then
+        assertThat(results).extracting(result -> result.get("status").asText())
+                .containsExactly("ALREADY_REGISTERED", "ALREADY_REGISTERED");
+        assertThat(results).allSatisfy(
+                result -> assertThat(result.get("customerId").asText()).isEqualTo(winnerId.toString()));
+        then(customerExistenceService).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void testShouldResolveDuplicateOfInsertedCustomerAfterInsert() throws Exception {
+        // Given
+        given(customerJdbcRepository.selectCustomersByPhoneNumbers(anyCollection())).willReturn(Map.of());
+        String upload = "{\"name\":\"Rob\",\"phoneNumber\":\"+31464332051\"}\n"
+                + "{\"name\":\"Rob\",\"phoneNumber\":\"+31464332051\"}\n";
+
+        // When
+        List<JsonNode> results = register(upload);
+
+        // Then
+        assertThat(results).extracting(result -> result.get("status").asText())
+                .containsExactly("REGISTERED", "ALREADY_REGISTERED");
+        assertThat(results.get(1).get("customerId")).isEqualTo(results.get(0).get("customerId"));
+    }
+
+    private List<JsonNode> register(String upload) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        customerBulkRegistrationService.registerNewCustomers(
+                new ByteArrayInputStream(upload.getBytes(StandardCharsets.UTF_8)), outputStream);
+        List<JsonNode> results = new ArrayList<>();
+        for (String line : outputStream.toString(StandardCharsets.UTF_8).split("\n")) {
+            results.add(objectMapper.readTree(line));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,107 @@
+package com.study.springboottuttorialjpa.customer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+class CustomerExistenceServiceTest {
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    @Mock
+    private CustomerJdbcRepository customerJdbcRepository;
+
+    // Class to be tested.
+    private CustomerExistenceService customerExistenceService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        customerExistenceService = new CustomerExistenceService(customerRepository, customerJdbcRepository, 10);
+    }
+
+    @Test
+    void testShouldQueryOnlyOnceForExistingCustomer() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsCustomerById(customerId)).willReturn(true);
+
+        // When
+        // Then
+        assertThat(customerExistenceService.exists(customerId)).isTrue();
+        assertThat(customerExistenceService.exists(customerId)).isTrue();
+        then(customerRepository).should(times(1)).existsCustomerById(customerId);
+        assertThat(customerExistenceService.hitCount()).isEqualTo(1);
+        assertThat(customerExistenceService.missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testShouldNotRememberUnknownCustomer() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerRepository.existsCustomerById(customerId)).willReturn(false);
+
+        // When
+        // Then
+        assertThat(customerExistenceService.exists(customerId)).isFalse();
+        assertThat(customerExistenceService.exists(customerId)).isFalse();
+        then(customerRepository).should(times(2)).existsCustomerById(customerId);
+    }
+
+    @Test
+    void testShouldNotQueryRegisteredCustomer() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+
+        // When
+        customerExistenceService.registered(customerId);
+
+        // Then
+        assertThat(customerExistenceService.exists(customerId)).isTrue();
+        then(customerRepository).should(never()).existsCustomerById(any());
+    }
+
+    @Test
+    void testShouldStayWithinMaximumSize() {
+        // When
+        for (int i = 0; i < 100; i++) {
+            customerExistenceService.registered(UUID.randomUUID());
+        }
+
+        // Then
+        assertThat(customerExistenceService.size()).isLessThanOrEqualTo(10);
+    }
+
+    @Test
+    void testShouldResolveUnknownCustomersWithOneQuery() {
+        // Given
+        UUID known = UUID.randomUUID();
+        UUID existing = UUID.randomUUID();
+        UUID missing = UUID.randomUUID();
+        customerExistenceService.registered(known);
+        given(customerJdbcRepository.selectExistingCustomerIds(Set.of(existing, missing))).willReturn(Set.of(existing));
+
+        // When
+        Set<UUID> found = customerExistenceService.findExisting(List.of(known, existing, missing, existing));
+
+        // Then
+        assertThat(found).containsExactlyInAnyOrder(known, existing);
+        then(customerJdbcRepository).should(times(1)).selectExistingCustomerIds(any());
+        // The customer that has been found is known from now on.
+        assertThat(customerExistenceService.exists(existing)).isTrue();
+        then(customerRepository).should(never()).existsCustomerById(any());
+    }
+}
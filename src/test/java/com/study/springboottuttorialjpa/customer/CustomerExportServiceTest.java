@@ -0,0 +1,99 @@
+package com.study.springboottuttorialjpa.customer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.study.springboottuttorialjpa.general.ExportFormat;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.times;
+
+class CustomerExportServiceTest {
+
+    @Mock
+    private CustomerJdbcRepository customerJdbcRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Class to be tested.
+    private CustomerExportService customerExportService;
+
+    private final Customer rob = new Customer(UUID.fromString("00000000-0000-7000-8000-000000000001"), "Rob", "+31464332059");
+    private final Customer alice = new Customer(UUID.fromString("00000000-0000-7000-8000-000000000002"), "Alice, \"Al\"", "+31464332060");
+    private final Customer bob = new Customer(UUID.fromString("00000000-0000-7000-8000-000000000003"), "Bob", "+31464332061");
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        // Pages of 2 customers.
+        customerExportService = new CustomerExportService(customerJdbcRepository, objectMapper, 2);
+        given(customerJdbcRepository.selectCustomersAfter(null, 2)).willReturn(List.of(rob, alice));
+        given(customerJdbcRepository.selectCustomersAfter(alice.getId(), 2)).willReturn(List.of(bob));
+    }
+
+    @Test
+    void testShouldExportNdjsonPageByPage() throws Exception {
+        // Given
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // When
+        long rows = customerExportService.exportCustomers(ExportFormat.NDJSON, outputStream);
+
+        // Then
+        assertThat(rows).isEqualTo(3);
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(4);
+        assertThat(objectMapper.readValue(lines[0], Customer.class)).isEqualTo(rob);
+        assertThat(objectMapper.readValue(lines[1], Customer.class)).isEqualTo(alice);
+        assertThat(objectMapper.readValue(lines[2], Customer.class)).isEqualTo(bob);
+        JsonNode summary = objectMapper.readTree(lines[3]);
+        assertThat(summary.get("rows").asLong()).isEqualTo(3);
+        assertThat(summary.has("rowsPerSecond")).isTrue();
+        // A page smaller than the page size is the last one.
+        then(customerJdbcRepository).should(times(2)).selectCustomersAfter(any(), anyInt());
+    }
+
+    @Test
+    void testShouldExportCsv() throws Exception {
+        // Given
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // When
+        customerExportService.exportCustomers(ExportFormat.CSV, outputStream);
+
+        // Then
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(5);
+        assertThat(lines[0]).isEqualTo("id,name,phoneNumber");
+        assertThat(lines[1]).isEqualTo("00000000-0000-7000-8000-000000000001,Rob,+31464332059");
+        assertThat(lines[2]).isEqualTo("00000000-0000-7000-8000-000000000002,\"Alice, \"\"Al\"\"\",+31464332060");
+        assertThat(lines[4]).startsWith("# rows=3,");
+    }
+
+    @Test
+    void testShouldExportEmptyTable() throws Exception {
+        // Given
+        given(customerJdbcRepository.selectCustomersAfter(null, 2)).willReturn(List.of());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // When
+        long rows = customerExportService.exportCustomers(ExportFormat.NDJSON, outputStream);
+
+        // Then
+        assertThat(rows).isZero();
+        assertThat(outputStream.toString(StandardCharsets.UTF_8)).startsWith("{\"rows\":0,");
+        then(customerJdbcRepository).should(times(1)).selectCustomersAfter(any(), anyInt());
+    }
+}
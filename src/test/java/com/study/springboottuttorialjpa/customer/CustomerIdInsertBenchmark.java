@@ -0,0 +1,119 @@
+package com.study.springboottuttorialjpa.customer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Insert throughput of random (v4) versus time ordered (v7) customer ids.
+ *
+ * Needs the local Postgres database of application.properties; override with -Dbenchmark.jdbc.url, -user, -password.
+ * Every benchmark run starts on a copy of the customer table that is pre-filled with benchmark.preload rows.
+ * The difference shows once the primary key index no longer fits in shared_buffers, so use a large preload
+ * (or a small shared_buffers) for meaningful numbers.
+ *
+ * Run via the main method, e.g. from the IDE, or:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) com.study.springboottuttorialjpa.customer.CustomerIdInsertBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustomerIdInsertBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"random", "time-ordered"})
+    private String generator;
+
+    @Param({"1000000"})
+    private int preload;
+
+    private CustomerIdGenerator customerIdGenerator;
+    private Connection connection;
+    private PreparedStatement insert;
+    private final AtomicLong phoneNumbers = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        customerIdGenerator = "random".equals(generator)
+                ? new RandomCustomerIdGenerator()
+                : new TimeOrderedCustomerIdGenerator();
+        connection = DriverManager.getConnection(
+                System.getProperty("benchmark.jdbc.url", "jdbc:postgresql://localhost:5432/jpatest"),
+                System.getProperty("benchmark.jdbc.user", "rkremers"),
+                System.getProperty("benchmark.jdbc.password", "rkremers"));
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists customer_id_benchmark");
+            statement.execute("create table customer_id_benchmark (" +
+                    "id uuid primary key, name varchar(255) not null, phone_number varchar(255) not null unique)");
+        }
+        insert = connection.prepareStatement(
+                "insert into customer_id_benchmark (id, name, phone_number) values (?, ?, ?)");
+        connection.setAutoCommit(false);
+        for (int i = 0; i < preload; i += BATCH_SIZE) {
+            insertBatch();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists customer_id_benchmark");
+        }
+        connection.close();
+    }
+
+    /**
+     * Operations are rows: one batch of BATCH_SIZE inserts per transaction.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void insertCustomers() throws SQLException {
+        insertBatch();
+    }
+
+    private void insertBatch() throws SQLException {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            insert.setObject(1, customerIdGenerator.nextId());
+            insert.setString(2, "Benchmark");
+            insert.setString(3, "+31" + phoneNumbers.incrementAndGet());
+            insert.addBatch();
+        }
+        insert.executeBatch();
+        connection.commit();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CustomerIdInsertBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
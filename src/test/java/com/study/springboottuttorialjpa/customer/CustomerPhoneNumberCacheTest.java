@@ -0,0 +1,121 @@
+package com.study.springboottuttorialjpa.customer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.times;
+
+class CustomerPhoneNumberCacheTest {
+
+    @Mock
+    private CustomerRepository customerRepository;
+
+    // Class to be tested.
+    private CustomerPhoneNumberCache customerPhoneNumberCache;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        customerPhoneNumberCache = new CustomerPhoneNumberCache(customerRepository, 10, 60);
+    }
+
+    @Test
+    void testShouldServeRepeatedLookupsFromCache() {
+        // Given
+        String phoneNumber = "+31464332059";
+        Customer customer = new Customer(UUID.randomUUID(), "Rob", phoneNumber);
+        given(customerRepository.selectCustomerByPhoneNumber(phoneNumber)).willReturn(Optional.of(customer));
+
+        // When
+        Optional<Customer> first = customerPhoneNumberCache.selectCustomerByPhoneNumber(phoneNumber);
+        Optional<Customer> second = customerPhoneNumberCache.selectCustomerByPhoneNumber(phoneNumber);
+
+        // Then
+        assertThat(first).contains(customer);
+        assertThat(second).contains(customer);
+        then(customerRepository).should(times(1)).selectCustomerByPhoneNumber(phoneNumber);
+        assertThat(customerPhoneNumberCache.hitCount()).isEqualTo(1);
+        assertThat(customerPhoneNumberCache.missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testShouldCacheAbsentPhoneNumberUntilRegistered() {
+        // Given
+        String phoneNumber = "+31464332059";
+        Customer customer = new Customer(UUID.randomUUID(), "Rob", phoneNumber);
+        given(customerRepository.selectCustomerByPhoneNumber(phoneNumber)).willReturn(Optional.empty());
+        given(customerRepository.insertOrMatchCustomer(customer)).willReturn(CustomerRegistrationStatus.REGISTERED);
+
+        // When
+        assertThat(customerPhoneNumberCache.selectCustomerByPhoneNumber(phoneNumber)).isEmpty();
+        assertThat(customerPhoneNumberCache.selectCustomerByPhoneNumber(phoneNumber)).isEmpty();
+        customerPhoneNumberCache.registerCustomer(customer);
+
+        // Then
+        // The registered customer is cached straight away.
+        assertThat(customerPhoneNumberCache.selectCustomerByPhoneNumber(phoneNumber)).contains(customer);
+        then(customerRepository).should(times(1)).selectCustomerByPhoneNumber(phoneNumber);
+        then(customerRepository).should().insertOrMatchCustomer(customer);
+    }
+
+    @Test
+    void testShouldInvalidateWhenPhoneNumberTaken() {
+        // Given
+        String phoneNumber = "+31464332059";
+        Customer customerRob = new Customer(UUID.randomUUID(), "Rob", phoneNumber);
+        Customer customerAlice = new Customer(UUID.randomUUID(), "Alice", phoneNumber);
+        given(customerRepository.selectCustomerByPhoneNumber(phoneNumber))
+                .willReturn(Optional.empty())
+                .willReturn(Optional.of(customerRob));
+        given(customerRepository.insertOrMatchCustomer(customerAlice))
+                .willReturn(CustomerRegistrationStatus.PHONE_NUMBER_TAKEN);
+
+        // When
+        assertThat(customerPhoneNumberCache.selectCustomerByPhoneNumber(phoneNumber)).isEmpty();
+        CustomerRegistrationStatus status = customerPhoneNumberCache.registerCustomer(customerAlice);
+
+        // Then
+        assertThat(status).isEqualTo(CustomerRegistrationStatus.PHONE_NUMBER_TAKEN);
+        assertThat(customerPhoneNumberCache.selectCustomerByPhoneNumber(phoneNumber)).contains(customerRob);
+        then(customerRepository).should(times(2)).selectCustomerByPhoneNumber(phoneNumber);
+    }
+
+    @Test
+    void testShouldExpireEntriesAfterTtl() {
+        // Given
+        customerPhoneNumberCache = new CustomerPhoneNumberCache(customerRepository, 10, 0);
+        given(customerRepository.selectCustomerByPhoneNumber(anyString())).willReturn(Optional.empty());
+
+        // When
+        customerPhoneNumberCache.selectCustomerByPhoneNumber("+31464332059");
+        customerPhoneNumberCache.selectCustomerByPhoneNumber("+31464332059");
+
+        // Then
+        then(customerRepository).should(times(2)).selectCustomerByPhoneNumber("+31464332059");
+        assertThat(customerPhoneNumberCache.evictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testShouldStayWithinMaximumSize() {
+        // Given
+        given(customerRepository.selectCustomerByPhoneNumber(anyString())).willReturn(Optional.empty());
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            customerPhoneNumberCache.selectCustomerByPhoneNumber("+3146433" + (2000 + i));
+        }
+
+        // Then
+        assertThat(customerPhoneNumberCache.size()).isLessThanOrEqualTo(10);
+        assertThat(customerPhoneNumberCache.evictionCount()).isGreaterThanOrEqualTo(90);
+    }
+}
@@ -17,6 +17,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 
 /**
  * An instance variable can be mocked / initiated via:
@@ -39,9 +40,17 @@ class CustomerRegistrationServiceTest {
     @Mock
     private CustomerRepository customerRepository;
 
+    @Mock
+    private CustomerJdbcRepository customerJdbcRepository;
+
     @Mock
     private PhoneNumberValidator phoneNumberValidator;
 
+    private CustomerPhoneNumberFilter customerPhoneNumberFilter;
+
+    @Mock
+    private CustomerExistenceService customerExistenceService;
+
     @Captor
     private ArgumentCaptor<Customer> customerArgumentCaptor;
 
@@ -51,7 +60,13 @@ class CustomerRegistrationServiceTest {
     @BeforeEach()
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        customerRegistrationService = new CustomerRegistrationService(customerRepository, phoneNumberValidator);
+        // The real cache and filter, in front of the mocked repositories.
+        // The filter is built from an empty customer table: no phone number is looked up unless registered here.
+        customerPhoneNumberFilter = new CustomerPhoneNumberFilter(customerJdbcRepository, 1000, 0.01);
+        customerPhoneNumberFilter.build();
+        customerRegistrationService = new CustomerRegistrationService(
+                new CustomerPhoneNumberCache(customerRepository, 100, 60),
+                customerPhoneNumberFilter, customerExistenceService, phoneNumberValidator, new TimeOrderedCustomerIdGenerator());
     }
 
     @Test
@@ -62,13 +77,12 @@ class CustomerRegistrationServiceTest {
 
         CustomerRegistrationRequest customerRegistrationRequest = new CustomerRegistrationRequest(customer);
 
-        // ... No customer with phone number present so the new customer will be saved.
-        given(customerRepository
-                .selectCustomerByPhoneNumber(phoneNumber))
-                .willReturn(Optional.empty());
+        // ... No customer with phone number present so the new customer will be inserted.
+        given(customerRepository.insertOrMatchCustomer(any()))
+                .willReturn(CustomerRegistrationStatus.REGISTERED);
 
         //... Valid phone number
-        given(phoneNumberValidator.test(phoneNumber)).willReturn(true);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(phoneNumber);
 
         // When
         /**
@@ -80,12 +94,15 @@ class CustomerRegistrationServiceTest {
          * We want to ensure that the mock receives the correct arguments.
          * In order to do this we will use an argument capture.
          * In the following we are capturing the request.getCustomer() from
-         * customerRepository.save(request.getCustomer());
-         * in class CustomerRegistrationService.java.
+         * customerRepository.insertOrMatchCustomer(request.getCustomer());
+         * in class CustomerPhoneNumberCache.java.
          */
-        then(customerRepository).should().save(customerArgumentCaptor.capture());
+        then(customerRepository).should().insertOrMatchCustomer(customerArgumentCaptor.capture());
         Customer customerArgumentCaptorValue = customerArgumentCaptor.getValue();
         assertThat(customerArgumentCaptorValue).isEqualTo(customer);
+        then(customerExistenceService).should().registered(customer.getId());
+        // The registration is the only round trip.
+        then(customerRepository).shouldHaveNoMoreInteractions();
     }
 
     @Test
@@ -96,18 +113,17 @@ class CustomerRegistrationServiceTest {
 
         CustomerRegistrationRequest customerRegistrationRequest = new CustomerRegistrationRequest(customer);
 
-        // ... No customer with phone number present so the new customer will be saved.
-        given(customerRepository
-                .selectCustomerByPhoneNumber(phoneNumber))
-                .willReturn(Optional.empty());
+        // ... No customer with phone number present so the new customer will be inserted.
+        given(customerRepository.insertOrMatchCustomer(any()))
+                .willReturn(CustomerRegistrationStatus.REGISTERED);
 
         //... Valid phone number
-        given(phoneNumberValidator.test(phoneNumber)).willReturn(true);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(phoneNumber);
 
         // When
         customerRegistrationService.registerNewCustomer(customerRegistrationRequest);
         // Then
-        then(customerRepository).should().save(customerArgumentCaptor.capture());
+        then(customerRepository).should().insertOrMatchCustomer(customerArgumentCaptor.capture());
         Customer customerArgumentCaptorValue = customerArgumentCaptor.getValue();
 
         assertThat(customerArgumentCaptorValue.getName()).isEqualTo(customer.getName());
@@ -124,20 +140,17 @@ class CustomerRegistrationServiceTest {
 
         CustomerRegistrationRequest Request = new CustomerRegistrationRequest(customer);
 
-        // A customer has been saved (mocked situation).
-        given(customerRepository
-                .selectCustomerByPhoneNumber(phoneNumber))
-                .willReturn(Optional.of(customer));
+        // A customer with the same name has been saved (mocked situation).
+        given(customerRepository.insertOrMatchCustomer(any()))
+                .willReturn(CustomerRegistrationStatus.ALREADY_REGISTERED);
 
         //... Valid phone number
-        given(phoneNumberValidator.test(phoneNumber)).willReturn(true);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(phoneNumber);
 
         // When
         customerRegistrationService.registerNewCustomer(Request);
         // Then
-        then(customerRepository).should(never()).save(any());
-        // or...
-        then(customerRepository).should().selectCustomerByPhoneNumber(phoneNumber);
+        then(customerRepository).should().insertOrMatchCustomer(customer);
         then(customerRepository).shouldHaveNoMoreInteractions();
     }
 
@@ -146,27 +159,72 @@ class CustomerRegistrationServiceTest {
         // Given
         final String phoneNumber = "1234567890";
         UUID id = UUID.randomUUID();
-        Customer customerRob = new Customer(id, "Rob", phoneNumber);
         // Different customer; same phonenumber.
         Customer customerAlice = new Customer(id, "Alice", phoneNumber);
 
         CustomerRegistrationRequest requestAlice = new CustomerRegistrationRequest(customerAlice);
 
-        // Saving customerRob is mocked enabling a return of customerRob.
-        given(customerRepository
-                .selectCustomerByPhoneNumber(phoneNumber))
-                .willReturn(Optional.of(customerRob));
+        // The phone number belongs to Rob (mocked situation).
+        given(customerRepository.insertOrMatchCustomer(any()))
+                .willReturn(CustomerRegistrationStatus.PHONE_NUMBER_TAKEN);
 
         //... Valid phone number
-        given(phoneNumberValidator.test(phoneNumber)).willReturn(true);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(phoneNumber);
 
         // When
         // Then
         assertThatThrownBy(() -> customerRegistrationService.registerNewCustomer(requestAlice))
                 .isInstanceOf(IllegalAccessException.class)
                 .hasMessageContaining(String.format("phone number [%s] has been taken", phoneNumber));
-        // finally
-        then(customerRepository).should(never()).save(any());
+        assertThat(customerPhoneNumberFilter.mightBeRegistered(phoneNumber)).isTrue();
+    }
+
+    @Test
+    void testShouldAnswerRetryFromCache() throws IllegalAccessException {
+        // Given
+        final String phoneNumber = "1234567890";
+        Customer customerRob = new Customer(UUID.randomUUID(), "Rob", phoneNumber);
+        Customer customerAlice = new Customer(UUID.randomUUID(), "Alice", phoneNumber);
+        given(customerRepository.insertOrMatchCustomer(any()))
+                .willReturn(CustomerRegistrationStatus.REGISTERED);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(phoneNumber);
+        customerRegistrationService.registerNewCustomer(new CustomerRegistrationRequest(customerRob));
+
+        // When
+        customerRegistrationService.registerNewCustomer(
+                new CustomerRegistrationRequest(new Customer(null, "Rob", phoneNumber)));
+
+        // Then
+        assertThatThrownBy(() -> customerRegistrationService.registerNewCustomer(
+                new CustomerRegistrationRequest(customerAlice)))
+                .isInstanceOf(IllegalAccessException.class)
+                .hasMessageContaining(String.format("phone number [%s] has been taken", phoneNumber));
+        then(customerRepository).should(times(1)).insertOrMatchCustomer(any());
+        then(customerRepository).shouldHaveNoMoreInteractions();
+    }
+
+    @Test
+    void testShouldLookUpPhoneNumberThatMightBeRegisteredThroughCache() throws IllegalAccessException {
+        // Given
+        final String phoneNumber = "1234567890";
+        Customer customerRob = new Customer(UUID.randomUUID(), "Rob", phoneNumber);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(phoneNumber);
+        given(customerRepository.selectCustomerByPhoneNumber(phoneNumber)).willReturn(Optional.of(customerRob));
+        // As long as the filter has not been built every phone number might be registered.
+        customerRegistrationService = new CustomerRegistrationService(
+                new CustomerPhoneNumberCache(customerRepository, 100, 60),
+                new CustomerPhoneNumberFilter(customerJdbcRepository, 1000, 0.01), customerExistenceService,
+                phoneNumberValidator, new TimeOrderedCustomerIdGenerator());
+
+        // When
+        customerRegistrationService.registerNewCustomer(
+                new CustomerRegistrationRequest(new Customer(null, "Rob", phoneNumber)));
+        customerRegistrationService.registerNewCustomer(
+                new CustomerRegistrationRequest(new Customer(null, "Rob", phoneNumber)));
+
+        // Then
+        then(customerRepository).should(times(1)).selectCustomerByPhoneNumber(phoneNumber);
+        then(customerRepository).shouldHaveNoMoreInteractions();
     }
 
     @Test
@@ -178,7 +236,7 @@ class CustomerRegistrationServiceTest {
         CustomerRegistrationRequest customerRegistrationRequest = new CustomerRegistrationRequest(customer);
 
         // Invalid phone number
-        given(phoneNumberValidator.test(phoneNumber)).willReturn(false);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(null);
 
         // When
         assertThatThrownBy(() -> customerRegistrationService.registerNewCustomer(customerRegistrationRequest))
@@ -189,4 +247,20 @@ class CustomerRegistrationServiceTest {
         then(customerRepository).shouldHaveNoInteractions();
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void testShouldAddRegisteredPhoneNumberToFilter() throws IllegalAccessException {
+        // Given
+        final String phoneNumber = "1234567890";
+        Customer customer = new Customer(UUID.randomUUID(), "Rob", phoneNumber);
+        given(phoneNumberValidator.normalize(phoneNumber)).willReturn(phoneNumber);
+        given(customerRepository.insertOrMatchCustomer(any()))
+                .willReturn(CustomerRegistrationStatus.REGISTERED);
+        // When
+        customerRegistrationService.registerNewCustomer(new CustomerRegistrationRequest(customer));
+
+        // Then
+        then(customerRepository).should(never()).selectCustomerByPhoneNumber(any());
+        assertThat(customerPhoneNumberFilter.mightBeRegistered(phoneNumber)).isTrue();
+    }
+}
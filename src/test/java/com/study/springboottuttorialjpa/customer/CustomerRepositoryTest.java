@@ -109,4 +109,32 @@ class CustomerRepositoryTest {
                 .hasMessageContaining("not-null property references a null or transient value : com.study.springboottuttorialjpa.customer.Customer.phoneNumber")
                 .isInstanceOf(DataIntegrityViolationException.class);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testInsertOrMatchCustomer() {
+        // Given
+        String phoneNumber = "+31464332059";
+        Customer customerRob = new Customer(UUID.randomUUID(), "Rob", phoneNumber);
+        // Same name and phone number; a retry of the same registration.
+        Customer customerRobAgain = new Customer(UUID.randomUUID(), "Rob", phoneNumber);
+        Customer customerAlice = new Customer(UUID.randomUUID(), "Alice", phoneNumber);
+        // When
+        // Then
+        assertThat(customerRepository.insertOrMatchCustomer(customerRob)).isEqualTo(CustomerRegistrationStatus.REGISTERED);
+        assertThat(customerRepository.insertOrMatchCustomer(customerRobAgain)).isEqualTo(CustomerRegistrationStatus.ALREADY_REGISTERED);
+        assertThat(customerRepository.insertOrMatchCustomer(customerAlice)).isEqualTo(CustomerRegistrationStatus.PHONE_NUMBER_TAKEN);
+        assertThat(customerRepository.selectCustomerByPhoneNumber(phoneNumber))
+                .hasValueSatisfying(c -> assertThat(c).isEqualTo(customerRob));
+    }
+
+    @Test
+    void testExistsCustomerById() {
+        // Given
+        Customer customer = new Customer(UUID.randomUUID(), "Rob", "+31464332059");
+        // When
+        customerRepository.save(customer);
+        // Then
+        assertThat(customerRepository.existsCustomerById(customer.getId())).isTrue();
+        assertThat(customerRepository.existsCustomerById(UUID.randomUUID())).isFalse();
+    }
+}
@@ -0,0 +1,81 @@
+package com.study.springboottuttorialjpa.customer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeOrderedCustomerIdGeneratorTest {
+
+    @Test
+    void testShouldGenerateVersion7Uuids() {
+        // Given
+        long now = 1_700_000_000_000L;
+        TimeOrderedCustomerIdGenerator generator = new TimeOrderedCustomerIdGenerator(() -> now);
+
+        // When
+        UUID id = generator.nextId();
+
+        // Then
+        assertThat(id.version()).isEqualTo(7);
+        assertThat(id.variant()).isEqualTo(2);
+        assertThat(id.getMostSignificantBits() >>> 16).isEqualTo(now);
+    }
+
+    @Test
+    void testShouldGenerateIncreasingIdsWithinSameMillisecondAndWhenClockGoesBack() {
+        // Given
+        AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+        TimeOrderedCustomerIdGenerator generator = new TimeOrderedCustomerIdGenerator(clock::get);
+
+        // When
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            ids.add(generator.nextId());
+            if (i == 5_000) {
+                clock.addAndGet(-1_000);
+            }
+        }
+
+        // Then
+        for (int i = 1; i < ids.size(); i++) {
+            // Unsigned comparison of the most significant bits is what Postgres does for the uuid type.
+            assertThat(Long.compareUnsigned(
+                    ids.get(i - 1).getMostSignificantBits(), ids.get(i).getMostSignificantBits())).isNegative();
+        }
+    }
+
+    @Test
+    void testShouldGenerateUniqueIdsConcurrently() throws Exception {
+        // Given
+        TimeOrderedCustomerIdGenerator generator = new TimeOrderedCustomerIdGenerator();
+        Set<UUID> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+
+        // When
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            futures.add(executorService.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    ids.add(generator.nextId());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executorService.shutdown();
+
+        // Then
+        assertThat(ids).hasSize(80_000);
+    }
+}
@@ -0,0 +1,116 @@
+package com.study.springboottuttorialjpa.datasource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+class ReplicaRoutingDataSourceTest {
+
+    @Mock
+    private DataSource primary;
+    @Mock
+    private DataSource replica1;
+    @Mock
+    private DataSource replica2;
+    @Mock
+    private Connection primaryConnection;
+    @Mock
+    private Connection replica1Connection;
+    @Mock
+    private Connection replica2Connection;
+
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+    private TransactionTemplate transactionTemplate;
+    private DataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        given(primary.getConnection()).willReturn(primaryConnection);
+        given(replica1.getConnection()).willReturn(replica1Connection);
+        given(replica2.getConnection()).willReturn(replica2Connection);
+        given(primaryConnection.getAutoCommit()).willReturn(true);
+
+        replicaRoutingDataSource = new ReplicaRoutingDataSource(primary, List.of(replica1, replica2));
+        dataSource = new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @Test
+    void testShouldSendReadOnlyTransactionsToReplicasRoundRobin() throws SQLException {
+        // Given
+        transactionTemplate.setReadOnly(true);
+
+        // When
+        for (int i = 0; i < 4; i++) {
+            transactionTemplate.executeWithoutResult(status -> query());
+        }
+
+        // Then
+        then(replica1Connection).should(times(2)).createStatement();
+        then(replica2Connection).should(times(2)).createStatement();
+        then(primaryConnection).should(never()).createStatement();
+        assertThat(replicaRoutingDataSource.replicaConnectionCount()).isEqualTo(4);
+    }
+
+    @Test
+    void testShouldSendReadWriteTransactionsToPrimary() throws SQLException {
+        // When
+        transactionTemplate.executeWithoutResult(status -> query());
+
+        // Then
+        then(primaryConnection).should().createStatement();
+        then(replica1Connection).should(never()).createStatement();
+        then(replica2Connection).should(never()).createStatement();
+    }
+
+    @Test
+    void testShouldSendConnectionsOutsideTransactionsToPrimary() throws SQLException {
+        // When
+        try (Connection connection = dataSource.getConnection()) {
+            connection.createStatement();
+        }
+
+        // Then
+        then(primaryConnection).should().createStatement();
+        assertThat(replicaRoutingDataSource.replicaConnectionCount()).isZero();
+    }
+
+    @Test
+    void testShouldUsePrimaryWithoutReplicas() throws SQLException {
+        // Given
+        dataSource = new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, List.of()));
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transactionTemplate.setReadOnly(true);
+
+        // When
+        transactionTemplate.executeWithoutResult(status -> query());
+
+        // Then
+        then(primaryConnection).should().createStatement();
+    }
+
+    private void query() {
+        try {
+            DataSourceUtils.getConnection(dataSource).createStatement();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
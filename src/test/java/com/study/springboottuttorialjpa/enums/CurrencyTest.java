@@ -18,4 +18,10 @@ class CurrencyTest {
     void testDoesNotExist() {
         assertThat(Currency.doesExist("Yen")).isFalse();
     }
-}
\ No newline at end of file
+
+    @Test
+    void testFromCode() {
+        assertThat(Currency.fromCode("EUR")).isEqualTo(Currency.EUR);
+        assertThat(Currency.fromCode("Yen")).isNull();
+    }
+}
@@ -0,0 +1,108 @@
+package com.study.springboottuttorialjpa.general;
+
+import com.study.springboottuttorialjpa.enums.Currency;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a payment does with its amount - parse it from the request, hash and compare it, total it, and put it in
+ * the Stripe params - with BigDecimal versus Money.
+ * Run with the gc profiler to see the allocation per operation (gc.alloc.rate.norm).
+ *
+ * Run via the main method, e.g. from the IDE, or:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) com.study.springboottuttorialjpa.general.MoneyBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MoneyBenchmark {
+
+    private String text = "100.50";
+    private BigDecimal otherDecimal = new BigDecimal("100.50");
+    private Money otherMoney = Money.parse("100.50", Currency.EUR);
+    private Money[] amounts = {
+            Money.ofMinorUnits(1050, Currency.EUR), Money.ofMinorUnits(250, Currency.EUR),
+            Money.ofMinorUnits(99_999, Currency.EUR), Money.ofMinorUnits(1, Currency.EUR),
+            Money.ofMinorUnits(100_000, Currency.EUR)};
+    private BigDecimal[] decimals = {
+            new BigDecimal("10.50"), new BigDecimal("2.50"), new BigDecimal("999.99"),
+            new BigDecimal("0.01"), new BigDecimal("1000.00")};
+
+    @Benchmark
+    public long parseBigDecimal() {
+        BigDecimal amount = new BigDecimal(text);
+        // What Stripe needs: the amount in cents.
+        return amount.movePointRight(2).longValueExact();
+    }
+
+    @Benchmark
+    public long parseMoney() {
+        return Money.parseMinorUnits(text, Currency.EUR.getFractionDigits());
+    }
+
+    @Benchmark
+    public boolean equalsAndHashBigDecimal() {
+        BigDecimal amount = new BigDecimal(text);
+        return amount.equals(otherDecimal) && Objects.hash(amount, Currency.EUR) == Objects.hash(otherDecimal, Currency.EUR);
+    }
+
+    @Benchmark
+    public boolean equalsAndHashMoney() {
+        Money amount = Money.parse(text, Currency.EUR);
+        return amount.equals(otherMoney) && amount.hashCode() == otherMoney.hashCode();
+    }
+
+    @Benchmark
+    public int compareBigDecimal() {
+        return new BigDecimal(text).compareTo(otherDecimal);
+    }
+
+    @Benchmark
+    public int compareMoney() {
+        return Money.parse(text, Currency.EUR).compareTo(otherMoney);
+    }
+
+    @Benchmark
+    public BigDecimal totalBigDecimal() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (BigDecimal decimal : decimals) {
+            total = total.add(decimal);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long totalMoney() {
+        long total = 0;
+        for (Money amount : amounts) {
+            total = amount.addTo(total, Currency.EUR);
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MoneyBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,67 @@
+package com.study.springboottuttorialjpa.general;
+
+import com.study.springboottuttorialjpa.enums.Currency;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MoneyTest {
+
+    @ParameterizedTest
+    @CsvSource(value = {
+            "10, 1000, 10.00",
+            "10.5, 1050, 10.50",
+            "10.50, 1050, 10.50",
+            "0.05, 5, 0.05",
+            ".5, 50, 0.50",
+            "-0.05, -5, -0.05",
+            "+1.00, 100, 1.00",
+            "92233720368547758.07, 9223372036854775807, 92233720368547758.07",
+            "-92233720368547758.08, -9223372036854775808, -92233720368547758.08"
+    })
+    void testShouldParseIntoMinorUnits(String amount, long minorUnits, String decimal) {
+        // When
+        Money money = Money.parse(amount, Currency.EUR);
+        // Then
+        assertThat(money.getMinorUnits()).isEqualTo(minorUnits);
+        assertThat(money.toDecimalString()).isEqualTo(decimal);
+        assertThat(money.toBigDecimal()).isEqualByComparingTo(new BigDecimal(amount));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "-", ".", "1.005", "1.2.3", "1,00", "1e2", " 1", "92233720368547758.08"})
+    void testShouldRejectInvalidAmounts(String amount) {
+        assertThatThrownBy(() -> Money.parse(amount, Currency.EUR)).isInstanceOf(NumberFormatException.class);
+    }
+
+    @Test
+    void testShouldCalculateInMinorUnits() {
+        // Given
+        Money ten = Money.parse("10.00", Currency.USD);
+        Money cent = Money.ofMinorUnits(1, Currency.USD);
+
+        // When
+        // Then
+        assertThat(cent.addTo(ten.addTo(0, Currency.USD), Currency.USD)).isEqualTo(1001);
+        assertThat(ten.compareTo(cent)).isPositive();
+        assertThat(ten).isEqualTo(Money.of(new BigDecimal("10"), Currency.USD)).hasSameHashCodeAs(
+                Money.ofMinorUnits(cent.addTo(999, Currency.USD), Currency.USD));
+    }
+
+    @Test
+    void testShouldThrowOnOverflowAndCurrencyMismatch() {
+        assertThatThrownBy(() -> Money.ofMinorUnits(1, Currency.USD).addTo(Long.MAX_VALUE, Currency.USD))
+                .isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Money.ofMinorUnits(1, Currency.EUR).addTo(0, Currency.USD))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("EUR");
+        assertThatThrownBy(() -> Money.of(new BigDecimal("1.001"), Currency.USD))
+                .isInstanceOf(ArithmeticException.class);
+    }
+}
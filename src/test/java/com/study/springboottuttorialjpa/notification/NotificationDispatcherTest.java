@@ -0,0 +1,98 @@
+package com.study.springboottuttorialjpa.notification;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+class NotificationDispatcherTest {
+
+    private static final int BATCH_SIZE = 2;
+    private static final int MAXIMUM_ATTEMPTS = 5;
+
+    @Mock
+    private NotificationOutboxRepository notificationOutboxRepository;
+    @Mock
+    private NotificationSender notificationSender;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // Class to be tested.
+    private NotificationDispatcher notificationDispatcher;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        notificationDispatcher = new NotificationDispatcher(
+                notificationOutboxRepository, notificationSender, transactionManager, BATCH_SIZE, MAXIMUM_ATTEMPTS);
+        notificationDispatcher.bindTo(meterRegistry);
+    }
+
+    @Test
+    void testShouldSendClaimedNotificationsAndMarkThemInBulk() {
+        // Given
+        Notification first = new Notification(1L, 11L, "+31464332059", "Payment 11");
+        Notification second = new Notification(2L, 12L, "+31464332060", "Payment 12");
+        given(notificationOutboxRepository.claimPending(BATCH_SIZE)).willReturn(List.of(first, second));
+        willThrow(new IllegalStateException("Provider down")).given(notificationSender).send(second);
+
+        // When
+        int claimed = notificationDispatcher.dispatchBatch();
+
+        // Then
+        assertThat(claimed).isEqualTo(2);
+        then(notificationSender).should().send(first);
+        then(notificationOutboxRepository).should().markSent(List.of(1L));
+        then(notificationOutboxRepository).should().markFailed(List.of(2L), MAXIMUM_ATTEMPTS);
+        assertThat(meterRegistry.get("notification.dispatched").tag("outcome", "sent")
+                .functionCounter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("notification.dispatched").tag("outcome", "failed")
+                .functionCounter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void testShouldDrainOutboxUntilBatchIsNotFull() {
+        // Given
+        given(notificationOutboxRepository.claimPending(BATCH_SIZE)).willReturn(
+                List.of(new Notification(1L, 11L, "+31464332059", "1"), new Notification(2L, 12L, "+31464332059", "2")),
+                List.of(new Notification(3L, 13L, "+31464332059", "3")));
+
+        // When
+        notificationDispatcher.dispatch();
+
+        // Then
+        then(notificationOutboxRepository).should(times(2)).claimPending(BATCH_SIZE);
+        then(notificationSender).should(times(3)).send(any());
+        // One transaction per batch.
+        then(transactionManager).should(times(2)).commit(any());
+    }
+
+    @Test
+    void testShouldNotSendAnythingWhenOutboxIsEmpty() {
+        // Given
+        given(notificationOutboxRepository.claimPending(anyInt())).willReturn(Collections.emptyList());
+
+        // When
+        notificationDispatcher.dispatch();
+
+        // Then
+        then(notificationSender).shouldHaveNoInteractions();
+        then(notificationOutboxRepository).should(never()).markSent(any());
+    }
+}
@@ -0,0 +1,138 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.StripeException;
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.general.Money;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.timeout;
+
+class AsyncPaymentProcessorTest {
+
+    @Mock
+    private CardPaymentCharger cardPaymentCharger;
+    @Mock
+    private PaymentRecorder paymentRecorder;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // Class to be tested.
+    private AsyncPaymentProcessor asyncPaymentProcessor;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        // One thread and room for one waiting payment.
+        asyncPaymentProcessor = new AsyncPaymentProcessor(cardPaymentCharger, paymentRecorder, meterRegistry, 1, 1);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        asyncPaymentProcessor.shutdown();
+    }
+
+    @Test
+    void testShouldChargeInBackgroundAndStoreOutcome() throws StripeException {
+        // Given
+        Payment payment = payment(1L);
+        given(cardPaymentCharger.chargeCard(any(), any(), any(), any())).willReturn(new CardPaymentCharge(true));
+
+        // When
+        asyncPaymentProcessor.submit(payment);
+
+        // Then
+        then(paymentRecorder).should(timeout(5000)).updateStatus(payment, PaymentStatus.PENDING, PaymentStatus.SUCCEEDED);
+        assertThat(meterRegistry.get("payment.charge").tag("outcome", "SUCCEEDED").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testShouldFailPaymentWhenChargeIsRefused() throws StripeException {
+        // Given
+        given(cardPaymentCharger.chargeCard(any(), any(), any(), any()))
+                .willThrow(new CardPaymentRefusedException("declined", null));
+
+        // When
+        Payment payment = payment(2L);
+        asyncPaymentProcessor.charge(payment);
+
+        // Then
+        then(paymentRecorder).should().updateStatus(payment, PaymentStatus.PENDING, PaymentStatus.FAILED);
+        assertThat(meterRegistry.get("payment.charge").tag("outcome", "FAILED").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testShouldKeepPaymentAsUnknownWhenCardProcessorTimesOut() throws StripeException {
+        // Given
+        Payment payment = payment(3L);
+        given(cardPaymentCharger.chargeCard(any(), any(), any(), eq("payment-3")))
+                .willThrow(new CardPaymentChargerUnavailableException("The card processor did not answer", true));
+
+        // When
+        asyncPaymentProcessor.charge(payment);
+
+        // Then
+        then(paymentRecorder).should().updateStatus(payment, PaymentStatus.PENDING, PaymentStatus.UNKNOWN);
+        assertThat(meterRegistry.get("payment.charge").tag("outcome", "UNKNOWN").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testShouldKeepPaymentAsUnknownWhenConnectionFails() throws StripeException {
+        // Given
+        Payment payment = payment(4L);
+        given(cardPaymentCharger.chargeCard(any(), any(), any(), any()))
+                .willThrow(new IllegalStateException("Cannot make stripe charge", new ApiConnectionException("reset")));
+
+        // When
+        asyncPaymentProcessor.charge(payment);
+
+        // Then
+        then(paymentRecorder).should().updateStatus(payment, PaymentStatus.PENDING, PaymentStatus.UNKNOWN);
+    }
+
+    @Test
+    void testShouldRejectWhenQueueIsFull() throws Exception {
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        given(cardPaymentCharger.chargeCard(any(), any(), any(), any())).willAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new CardPaymentCharge(true);
+        });
+        asyncPaymentProcessor.submit(payment(1L));
+        started.await(5, TimeUnit.SECONDS);
+        asyncPaymentProcessor.submit(payment(2L));
+
+        // When
+        // Then
+        assertThat(asyncPaymentProcessor.queueSize()).isEqualTo(1);
+        assertThat(meterRegistry.get("payment.async.queue.size").gauge().value()).isEqualTo(1);
+        assertThatThrownBy(() -> asyncPaymentProcessor.submit(payment(3L)))
+                .isInstanceOf(RejectedExecutionException.class);
+        release.countDown();
+    }
+
+    private static Payment payment(Long paymentId) {
+        Payment payment = new Payment(paymentId, UUID.randomUUID(), Money.parse("10.00", Currency.USD), "card123", "Donation");
+        payment.setStatus(PaymentStatus.PENDING);
+        return payment;
+    }
+}
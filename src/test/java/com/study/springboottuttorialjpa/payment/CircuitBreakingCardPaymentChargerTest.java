@@ -0,0 +1,239 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.stripe.exception.CardException;
+import com.stripe.exception.StripeException;
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.general.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.times;
+
+class CircuitBreakingCardPaymentChargerTest {
+
+    @Mock
+    private CardPaymentCharger delegate;
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private SimpleMeterRegistry meterRegistry;
+
+    // Class to be tested.
+    private CircuitBreakingCardPaymentCharger circuitBreakingCardPaymentCharger;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        // Window of 10 calls, opens at 50% failures after at least 4 calls, open for 1 second, 2 trial calls.
+        use(create(1, 5000, 4));
+    }
+
+    @AfterEach
+    void tearDown() {
+        circuitBreakingCardPaymentCharger.shutdown();
+    }
+
+    @Test
+    void testShouldOpenAfterFailuresAndRejectWithoutCallingProcessor() throws StripeException {
+        // Given
+        given(delegate.chargeCard(any(), any(), any(), any()))
+                .willReturn(new CardPaymentCharge(true))
+                .willReturn(new CardPaymentCharge(true))
+                .willThrow(new IllegalStateException("Connection refused"));
+        charge();
+        charge();
+        assertThatThrownBy(this::charge).hasMessage("Connection refused");
+        assertThat(circuitBreakingCardPaymentCharger.getState())
+                .isEqualTo(CircuitBreakingCardPaymentCharger.State.CLOSED);
+
+        // When
+        // 2 failures out of 4 calls.
+        assertThatThrownBy(this::charge).hasMessage("Connection refused");
+
+        // Then
+        assertThat(circuitBreakingCardPaymentCharger.getState())
+                .isEqualTo(CircuitBreakingCardPaymentCharger.State.OPEN);
+        assertThatThrownBy(this::charge)
+                .isInstanceOf(CardPaymentChargerUnavailableException.class)
+                .hasMessageContaining("circuit open");
+        then(delegate).should(times(4)).chargeCard(any(), any(), any(), any());
+        assertThat(meterRegistry.get("payment.charger.rejections").tag("reason", "circuit_open")
+                .functionCounter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("payment.charger.circuit.state").gauge().value()).isEqualTo(2.0);
+    }
+
+    @Test
+    void testShouldCloseAfterSuccessfulTrialCalls() throws StripeException {
+        // Given
+        openCircuit();
+        willReturn(new CardPaymentCharge(true)).given(delegate).chargeCard(any(), any(), any(), any());
+
+        // When
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        charge();
+
+        // Then
+        assertThat(circuitBreakingCardPaymentCharger.getState())
+                .isEqualTo(CircuitBreakingCardPaymentCharger.State.HALF_OPEN);
+        charge();
+        assertThat(circuitBreakingCardPaymentCharger.getState())
+                .isEqualTo(CircuitBreakingCardPaymentCharger.State.CLOSED);
+        assertThat(meterRegistry.get("payment.charger.circuit.transitions").tag("state", "CLOSED")
+                .functionCounter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void testShouldReopenWhenTrialCallFails() throws StripeException {
+        // Given
+        openCircuit();
+
+        // When
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThatThrownBy(this::charge).hasMessage("Connection refused");
+
+        // Then
+        assertThat(circuitBreakingCardPaymentCharger.getState())
+                .isEqualTo(CircuitBreakingCardPaymentCharger.State.OPEN);
+        assertThatThrownBy(this::charge).isInstanceOf(CardPaymentChargerUnavailableException.class);
+        assertThat(meterRegistry.get("payment.charger.circuit.transitions").tag("state", "OPEN")
+                .functionCounter().count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void testShouldNotCountDeclinedCardsAsFailures() throws StripeException {
+        // Given
+        given(delegate.chargeCard(any(), any(), any(), any())).willThrow(new IllegalStateException(
+                "Cannot make stripe charge",
+                new CardException("Your card was declined.", null, "card_declined", null, null, null, 402, null)));
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            assertThatThrownBy(this::charge).hasRootCauseInstanceOf(CardException.class);
+        }
+
+        // Then
+        assertThat(circuitBreakingCardPaymentCharger.getState())
+                .isEqualTo(CircuitBreakingCardPaymentCharger.State.CLOSED);
+    }
+
+    @Test
+    void testShouldTimeOutSlowCalls() throws StripeException {
+        // Given
+        use(create(50, 50, 4));
+        CountDownLatch release = new CountDownLatch(1);
+        given(delegate.chargeCard(any(), any(), any(), any())).willAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return new CardPaymentCharge(true);
+        });
+
+        // When
+        // Then
+        try {
+            assertThatThrownBy(this::charge)
+                    .isInstanceOfSatisfying(CardPaymentChargerUnavailableException.class,
+                            e -> assertThat(e.isTimeout()).isTrue())
+                    .hasMessageContaining("50 ms");
+            assertThat(meterRegistry.get("payment.charger.timeouts").functionCounter().count()).isEqualTo(1.0);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void testShouldRejectCallsBeyondMaximumConcurrency() throws Exception {
+        // Given
+        use(create(5000, 5000, 1));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        given(delegate.chargeCard(any(), any(), any(), any())).willAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new CardPaymentCharge(true);
+        });
+        CompletableFuture<CardPaymentCharge> first = CompletableFuture.supplyAsync(() -> {
+            try {
+                return charge();
+            } catch (StripeException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // When
+        // Then
+        try {
+            assertThatThrownBy(this::charge)
+                    .isInstanceOf(CardPaymentChargerUnavailableException.class)
+                    .hasMessageContaining("Too many calls");
+        } finally {
+            release.countDown();
+        }
+        assertThat(first.get(5, TimeUnit.SECONDS).isCardDebited()).isTrue();
+        assertThat(meterRegistry.get("payment.charger.rejections").tag("reason", "saturated")
+                .functionCounter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void testShouldDeriveDeadlineFromP99Latency() throws StripeException {
+        // Given
+        given(delegate.chargeCard(any(), any(), any(), any())).willAnswer(invocation -> {
+            // Every call takes 10 ms.
+            nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+            return new CardPaymentCharge(true);
+        });
+        assertThat(circuitBreakingCardPaymentCharger.getDeadlineMillis()).isEqualTo(5000);
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            charge();
+        }
+
+        // Then
+        // 3 x p99.
+        assertThat(circuitBreakingCardPaymentCharger.getDeadlineMillis()).isEqualTo(30);
+    }
+
+    private void use(CircuitBreakingCardPaymentCharger charger) {
+        if (circuitBreakingCardPaymentCharger != null) {
+            circuitBreakingCardPaymentCharger.shutdown();
+        }
+        circuitBreakingCardPaymentCharger = charger;
+        meterRegistry = new SimpleMeterRegistry();
+        circuitBreakingCardPaymentCharger.bindTo(meterRegistry);
+    }
+
+    private CircuitBreakingCardPaymentCharger create(long minimumDeadlineMillis, long maximumDeadlineMillis,
+                                                     int maxConcurrentCalls) {
+        return new CircuitBreakingCardPaymentCharger(
+                delegate, 10, 4, 50, 1000, 2, 3.0,
+                minimumDeadlineMillis, maximumDeadlineMillis, maxConcurrentCalls, nanoTime::get);
+    }
+
+    private void openCircuit() throws StripeException {
+        given(delegate.chargeCard(any(), any(), any(), any())).willThrow(new IllegalStateException("Connection refused"));
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(this::charge).hasMessage("Connection refused");
+        }
+        assertThat(circuitBreakingCardPaymentCharger.getState())
+                .isEqualTo(CircuitBreakingCardPaymentCharger.State.OPEN);
+    }
+
+    private CardPaymentCharge charge() throws StripeException {
+        return circuitBreakingCardPaymentCharger.chargeCard(
+                "card123xx", Money.parse("10.00", Currency.EUR), "Donation", "payment-1");
+    }
+}
@@ -0,0 +1,105 @@
+package com.study.springboottuttorialjpa.payment;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.CannotSerializeTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.times;
+
+class CustomerPaymentTotalServiceTest {
+
+    private static final int CHUNK_SIZE = 2;
+    private static final int MAXIMUM_ATTEMPTS = 3;
+
+    @Mock
+    private CustomerPaymentTotalRepository customerPaymentTotalRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    // Class to be tested.
+    private CustomerPaymentTotalService customerPaymentTotalService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        customerPaymentTotalService = new CustomerPaymentTotalService(
+                customerPaymentTotalRepository, transactionManager, CHUNK_SIZE, 2, MAXIMUM_ATTEMPTS);
+    }
+
+    @Test
+    void testShouldRebuildEveryChunkWithOpenEnds() {
+        // Given
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+        given(customerPaymentTotalRepository.selectChunkBoundaries(CHUNK_SIZE)).willReturn(List.of(first, second, third));
+        given(customerPaymentTotalRepository.rebuildChunk(any(), any())).willReturn(2);
+        given(customerPaymentTotalRepository.rebuildChunk(third, null)).willReturn(1);
+
+        // When
+        int written = customerPaymentTotalService.rebuild();
+
+        // Then
+        assertThat(written).isEqualTo(5);
+        then(customerPaymentTotalRepository).should().rebuildChunk(null, second);
+        then(customerPaymentTotalRepository).should().rebuildChunk(second, third);
+        then(customerPaymentTotalRepository).should().rebuildChunk(third, null);
+    }
+
+    @Test
+    void testShouldRebuildEverythingInOneChunkWithoutCustomers() {
+        // Given
+        given(customerPaymentTotalRepository.selectChunkBoundaries(anyInt())).willReturn(List.of());
+
+        // When
+        customerPaymentTotalService.rebuild();
+
+        // Then
+        then(customerPaymentTotalRepository).should().rebuildChunk(isNull(), isNull());
+    }
+
+    @Test
+    void testShouldRetryChunkThatConflictsWithPayment() {
+        // Given
+        given(customerPaymentTotalRepository.selectChunkBoundaries(anyInt())).willReturn(List.of());
+        given(customerPaymentTotalRepository.rebuildChunk(null, null))
+                .willThrow(new CannotSerializeTransactionException("could not serialize access"))
+                .willReturn(3);
+
+        // When
+        int written = customerPaymentTotalService.rebuild();
+
+        // Then
+        assertThat(written).isEqualTo(3);
+        then(customerPaymentTotalRepository).should(times(2)).rebuildChunk(null, null);
+    }
+
+    @Test
+    void testShouldGiveUpAfterMaximumAttemptsAndAllowNextRebuild() {
+        // Given
+        given(customerPaymentTotalRepository.selectChunkBoundaries(anyInt())).willReturn(List.of());
+        given(customerPaymentTotalRepository.rebuildChunk(null, null))
+                .willThrow(new CannotSerializeTransactionException("could not serialize access"));
+
+        // When
+        // Then
+        assertThatThrownBy(() -> customerPaymentTotalService.rebuild())
+                .isInstanceOf(CannotSerializeTransactionException.class);
+        then(customerPaymentTotalRepository).should(times(MAXIMUM_ATTEMPTS)).rebuildChunk(null, null);
+        assertThatThrownBy(() -> customerPaymentTotalService.rebuild())
+                .isInstanceOf(CannotSerializeTransactionException.class);
+    }
+}
@@ -0,0 +1,191 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.stripe.exception.StripeException;
+import com.study.springboottuttorialjpa.currency.CurrencyRegistry;
+import com.study.springboottuttorialjpa.currency.FxRateCache;
+import com.study.springboottuttorialjpa.customer.CustomerExistenceService;
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.general.Money;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+
+class PaymentBatchServiceTest {
+
+    private static final int CONCURRENCY = 4;
+
+    @Mock
+    private CustomerExistenceService customerExistenceService;
+    @Mock
+    private CardPaymentCharger cardPaymentCharger;
+    @Mock
+    private PaymentRecorder paymentRecorder;
+
+    // Class to be tested.
+    private PaymentBatchService paymentBatchService;
+
+    private final UUID customerId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        // EUR is not accepted; GBP is, and is converted into USD.
+        CurrencyRegistry currencyRegistry = new CurrencyRegistry("USD,GBP", "USD", "");
+        FxRateCache fxRateCache = new FxRateCache(
+                target -> Map.of(Currency.GBP, new BigDecimal("1.25")), currencyRegistry, 900);
+        paymentBatchService = new PaymentBatchService(customerExistenceService, cardPaymentCharger, paymentRecorder,
+                currencyRegistry, fxRateCache, CONCURRENCY, 0);
+        given(customerExistenceService.findExisting(anyCollection())).willReturn(Set.of(customerId));
+    }
+
+    @AfterEach
+    void tearDown() {
+        paymentBatchService.shutdown();
+    }
+
+    @Test
+    void testShouldReturnResultPerPaymentAndStoreChargedPaymentsOnly() throws StripeException {
+        // Given
+        UUID unknownCustomerId = UUID.randomUUID();
+        given(cardPaymentCharger.chargeCard(eq("card-ok"), any(), any(), any())).willReturn(new CardPaymentCharge(true));
+        given(cardPaymentCharger.chargeCard(eq("card-declined"), any(), any(), any())).willReturn(new CardPaymentCharge(false));
+        List<Payment> payments = List.of(
+                payment(customerId, Currency.USD, "card-ok"),
+                payment(unknownCustomerId, Currency.USD, "card-ok"),
+                payment(customerId, Currency.EUR, "card-ok"),
+                payment(customerId, Currency.GBP, "card-declined"),
+                payment(customerId, Currency.GBP, "card-ok"));
+
+        // When
+        List<PaymentBatchResult> results = paymentBatchService.chargeCards(payments);
+
+        // Then
+        assertThat(results).extracting(PaymentBatchResult::getStatus).containsExactly(
+                PaymentStatus.SUCCEEDED, PaymentStatus.FAILED, PaymentStatus.FAILED, PaymentStatus.FAILED,
+                PaymentStatus.SUCCEEDED);
+        assertThat(results.get(1).getMessage()).contains("has not been found");
+        assertThat(results.get(2).getMessage()).contains("Currency [EUR] not supported");
+        assertThat(results.get(3).getMessage()).contains("not debited");
+        assertThat(results.get(0).getPaymentId()).isNotNull();
+        assertThat(results.get(3).getPaymentId()).isGreaterThan(results.get(0).getPaymentId());
+        assertThat(results.get(4).getPaymentId()).isGreaterThan(results.get(3).getPaymentId());
+        assertThat(results.get(1).getPaymentId()).isNull();
+        assertThat(results.get(2).getPaymentId()).isNull();
+
+        // One existence check, one insert and one update for the whole batch.
+        then(customerExistenceService).should(times(1)).findExisting(anyCollection());
+        then(paymentRecorder).should(times(1)).insertPayments(List.of(payments.get(0), payments.get(3), payments.get(4)));
+        then(paymentRecorder).should(times(1)).updateStatuses(List.of(payments.get(0), payments.get(3), payments.get(4)));
+        assertThat(payments.get(3).getStatus()).isEqualTo(PaymentStatus.FAILED);
+        assertThat(payments.get(4).getStatus()).isEqualTo(PaymentStatus.SUCCEEDED);
+        assertThat(payments.get(0).getSettlementAmount()).isEqualTo(Money.parse("10.00", Currency.USD));
+        assertThat(payments.get(4).getSettlementAmount()).isEqualTo(Money.parse("12.50", Currency.USD));
+    }
+
+    @Test
+    void testShouldInsertPaymentsAsPendingBeforeCharging() throws StripeException {
+        // Given
+        List<PaymentStatus> statusesWhenInserted = new ArrayList<>();
+        willAnswer(invocation -> {
+            List<Payment> inserted = invocation.getArgument(0);
+            inserted.forEach(p -> statusesWhenInserted.add(p.getStatus()));
+            return null;
+        }).given(paymentRecorder).insertPayments(any());
+        given(cardPaymentCharger.chargeCard(any(), any(), any(), any())).willReturn(new CardPaymentCharge(true));
+        Payment payment = payment(customerId, Currency.USD, "card");
+
+        // When
+        paymentBatchService.chargeCards(List.of(payment));
+
+        // Then
+        assertThat(statusesWhenInserted).containsExactly(PaymentStatus.PENDING);
+        InOrder inOrder = inOrder(paymentRecorder, cardPaymentCharger);
+        inOrder.verify(paymentRecorder).insertPayments(List.of(payment));
+        inOrder.verify(cardPaymentCharger).chargeCard(any(), any(), any(), any());
+        inOrder.verify(paymentRecorder).updateStatuses(List.of(payment));
+    }
+
+    @Test
+    void testShouldChargeInParallelUpToConcurrency() throws StripeException {
+        // Given
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maximumInFlight = new AtomicInteger();
+        given(cardPaymentCharger.chargeCard(any(), any(), any(), any())).willAnswer(invocation -> {
+            maximumInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            return new CardPaymentCharge(true);
+        });
+        List<Payment> payments = new ArrayList<>();
+        for (int i = 0; i < 5 * CONCURRENCY; i++) {
+            payments.add(payment(customerId, Currency.USD, "card-" + i));
+        }
+
+        // When
+        List<PaymentBatchResult> results = paymentBatchService.chargeCards(payments);
+
+        // Then
+        assertThat(results).allMatch(r -> r.getStatus() == PaymentStatus.SUCCEEDED);
+        assertThat(maximumInFlight.get()).isGreaterThan(1).isLessThanOrEqualTo(CONCURRENCY);
+    }
+
+    @Test
+    void testShouldFailPaymentWhenChargeIsRefused() throws StripeException {
+        // Given
+        given(cardPaymentCharger.chargeCard(any(), any(), any(), any()))
+                .willThrow(new CardPaymentRefusedException("declined", null));
+
+        // When
+        List<Payment> payments = List.of(payment(customerId, Currency.USD, "card"));
+        List<PaymentBatchResult> results = paymentBatchService.chargeCards(payments);
+
+        // Then
+        assertThat(results.get(0).getStatus()).isEqualTo(PaymentStatus.FAILED);
+        assertThat(results.get(0).getPaymentId()).isNotNull();
+        then(paymentRecorder).should(times(1)).updateStatuses(List.of(payments.get(0)));
+    }
+
+    @Test
+    void testShouldKeepPaymentAsUnknownWhenCardProcessorTimesOut() throws StripeException {
+        // Given
+        given(cardPaymentCharger.chargeCard(any(), any(), any(), any()))
+                .willThrow(new CardPaymentChargerUnavailableException("The card processor did not answer", true));
+        List<Payment> payments = List.of(payment(customerId, Currency.USD, "card"));
+
+        // When
+        List<PaymentBatchResult> results = paymentBatchService.chargeCards(payments);
+
+        // Then
+        assertThat(results.get(0).getStatus()).isEqualTo(PaymentStatus.UNKNOWN);
+        then(cardPaymentCharger).should().chargeCard(
+                any(), any(), any(), eq("payment-" + results.get(0).getPaymentId()));
+        then(paymentRecorder).should(times(1)).updateStatuses(payments);
+        assertThat(payments.get(0).getStatus()).isEqualTo(PaymentStatus.UNKNOWN);
+    }
+
+    private static Payment payment(UUID customerId, Currency currency, String source) {
+        return new Payment(null, customerId, Money.parse("10.00", currency), source, "Subscription");
+    }
+}
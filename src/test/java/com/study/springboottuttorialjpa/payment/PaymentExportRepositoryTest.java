@@ -0,0 +1,68 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.general.Money;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(
+        properties = {
+                "spring.jpa.properties.javax.persistence.validation.mode=none"
+        }
+)
+@AutoConfigureTestDatabase(
+        replace = AutoConfigureTestDatabase.Replace.NONE
+)
+@ActiveProfiles("test")
+@Import(PaymentExportRepository.class)
+class PaymentExportRepositoryTest {
+
+    @Autowired
+    private PaymentExportRepository paymentExportRepository;
+
+    @Autowired
+    private TestEntityManager testEntityManager;
+
+    @Test
+    void testShouldStreamPaymentsOfPeriodDetached() {
+        // Given
+        Instant now = Instant.now();
+        Payment first = payment(now);
+        Payment second = payment(now.plusSeconds(1));
+        payment(now.minus(Duration.ofDays(2)));
+        testEntityManager.flush();
+        testEntityManager.clear();
+
+        // When
+        List<Payment> payments;
+        try (Stream<Payment> stream = paymentExportRepository.streamPayments(
+                now.minus(Duration.ofHours(1)), now.plus(Duration.ofHours(1)), 1)) {
+            payments = stream.collect(Collectors.toList());
+        }
+
+        // Then
+        assertThat(payments).extracting(Payment::getPaymentId)
+                .containsExactly(first.getPaymentId(), second.getPaymentId());
+        assertThat(payments).noneMatch(testEntityManager.getEntityManager()::contains);
+    }
+
+    private Payment payment(Instant createdAt) {
+        Payment payment = new Payment(null, UUID.randomUUID(), Money.parse("10.00", Currency.USD), "card123", "Donation");
+        payment.setCreatedAt(createdAt);
+        return testEntityManager.persist(payment);
+    }
+}
@@ -0,0 +1,188 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import com.study.springboottuttorialjpa.general.ExportFormat;
+import com.study.springboottuttorialjpa.general.Money;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+
+class PaymentExportServiceTest {
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/Amsterdam");
+    private static final LocalDate DAY = LocalDate.of(2026, 10, 17);
+
+    @Mock
+    private PaymentExportRepository paymentExportRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Class to be tested.
+    private PaymentExportService paymentExportService;
+
+    private Payment donation;
+    private Payment refund;
+    private final AtomicBoolean streamClosed = new AtomicBoolean();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        paymentExportService = paymentExportService(null);
+
+        donation = payment(1L, Money.parse("10.50", Currency.USD), "Donation");
+        donation.setSettlementAmount(Money.parse("10.50", Currency.USD));
+        refund = payment(2L, Money.parse("8.00", Currency.GBP), "Refund, \"partial\"");
+        refund.setSettlementAmount(Money.parse("10.00", Currency.USD));
+        given(paymentExportRepository.streamPayments(any(), any(), anyInt()))
+                .willAnswer(invocation -> Stream.of(donation, refund).onClose(() -> streamClosed.set(true)));
+    }
+
+    @Test
+    void testShouldExportNdjsonOfDay() throws Exception {
+        // Given
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // When
+        long rows = paymentExportService.exportPayments(ExportFormat.NDJSON, DAY, false, outputStream);
+
+        // Then
+        assertThat(rows).isEqualTo(2);
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(3);
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertThat(first.get("paymentId").asLong()).isEqualTo(1L);
+        assertThat(first.get("amount").decimalValue()).isEqualByComparingTo("10.50");
+        assertThat(first.get("currency").asText()).isEqualTo("USD");
+        assertThat(first.get("status").asText()).isEqualTo("SUCCEEDED");
+        JsonNode second = objectMapper.readTree(lines[1]);
+        assertThat(second.get("description").asText()).isEqualTo("Refund, \"partial\"");
+        assertThat(second.get("settlementAmount").decimalValue()).isEqualByComparingTo("10.00");
+        assertThat(second.get("settlementCurrency").asText()).isEqualTo("USD");
+        assertThat(objectMapper.readTree(lines[2]).get("rows").asLong()).isEqualTo(2);
+        // Midnight to midnight in the time zone of the application, fetched 100 rows at a time.
+        then(paymentExportRepository).should().streamPayments(
+                Instant.parse("2026-10-16T22:00:00Z"), Instant.parse("2026-10-17T22:00:00Z"), 100);
+        assertThat(streamClosed).isTrue();
+    }
+
+    @Test
+    void testShouldExportCsv() throws Exception {
+        // Given
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // When
+        paymentExportService.exportPayments(ExportFormat.CSV, DAY, false, outputStream);
+
+        // Then
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(4);
+        assertThat(lines[0]).isEqualTo(
+                "paymentId,customerId,amount,currency,settlementAmount,settlementCurrency,source,description,status,createdAt");
+        assertThat(lines[1]).isEqualTo(
+                "1,00000000-0000-7000-8000-000000000001,10.50,USD,10.50,USD,card123,Donation,SUCCEEDED,2026-10-17T08:00:00Z");
+        assertThat(lines[2]).isEqualTo(
+                "2,00000000-0000-7000-8000-000000000001,8.00,GBP,10.00,USD,card123,\"Refund, \"\"partial\"\"\",SUCCEEDED,"
+                        + "2026-10-17T08:00:00Z");
+        assertThat(lines[3]).startsWith("# rows=2,");
+    }
+
+    @Test
+    void testShouldGzipExport() throws Exception {
+        // Given
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        // When
+        paymentExportService.exportPayments(ExportFormat.NDJSON, DAY, true, outputStream);
+
+        // Then
+        String[] lines = new String(
+                new GZIPInputStream(new ByteArrayInputStream(outputStream.toByteArray())).readAllBytes(),
+                StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(3);
+        assertThat(objectMapper.readTree(lines[0]).get("paymentId").asLong()).isEqualTo(1L);
+    }
+
+    @Test
+    void testShouldStreamWithoutCollectingPayments() throws Exception {
+        // Given
+        // The payments are generated one at a time, as the cursor reads them; nothing holds on to them once written.
+        given(paymentExportRepository.streamPayments(any(), any(), anyInt()))
+                .willAnswer(invocation -> LongStream.rangeClosed(1, 200_000)
+                        .mapToObj(id -> payment(id, Money.ofMinorUnits(id, Currency.USD), "Donation")));
+
+        // When
+        long rows = paymentExportService.exportPayments(ExportFormat.CSV, DAY, true, OutputStream.nullOutputStream());
+
+        // Then
+        assertThat(rows).isEqualTo(200_000);
+    }
+
+    @Test
+    void testShouldWritePreviousDayToFile(@TempDir Path directory) throws Exception {
+        // Given
+        paymentExportService = paymentExportService(directory);
+
+        // When
+        Path file = paymentExportService.exportPreviousDay();
+
+        // Then
+        assertThat(file).isEqualTo(directory.resolve("payments-2026-10-17.ndjson.gz"));
+        try (GZIPInputStream inputStream = new GZIPInputStream(Files.newInputStream(file))) {
+            assertThat(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8).split("\n")).hasSize(3);
+        }
+        // Only the complete file; no temporary one.
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files).containsExactly(file);
+        }
+    }
+
+    @Test
+    void testShouldSkipFileExportWithoutDirectory() throws Exception {
+        assertThat(paymentExportService.exportPreviousDay()).isNull();
+        then(paymentExportRepository).shouldHaveNoInteractions();
+    }
+
+    private PaymentExportService paymentExportService(Path directory) {
+        return new PaymentExportService(paymentExportRepository, objectMapper, transactionManager, 100, directory,
+                Clock.fixed(Instant.parse("2026-10-18T06:00:00Z"), ZONE));
+    }
+
+    private static Payment payment(long paymentId, Money amount, String description) {
+        Payment payment = new Payment(
+                paymentId, UUID.fromString("00000000-0000-7000-8000-000000000001"), amount, "card123", description);
+        payment.setStatus(PaymentStatus.SUCCEEDED);
+        payment.setCreatedAt(Instant.parse("2026-10-17T08:00:00Z"));
+        return payment;
+    }
+}
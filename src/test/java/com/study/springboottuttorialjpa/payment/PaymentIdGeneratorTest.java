@@ -0,0 +1,57 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.study.springboottuttorialjpa.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PaymentIdGeneratorTest {
+
+    private static final Instant CREATED_AT = Instant.parse("2026-10-18T12:00:00Z");
+
+    @Test
+    void testShouldBoundCreatedAtAroundTimestampOfId() {
+        // Given
+        long paymentId = (CREATED_AT.toEpochMilli() - SnowflakeIdGenerator.EPOCH)
+                << (SnowflakeIdGenerator.NODE_ID_BITS + 12);
+
+        // When
+        // Then
+        assertThat(PaymentIdGenerator.createdAtFrom(paymentId))
+                .isEqualTo(CREATED_AT.minus(PaymentIdGenerator.CREATED_AT_MARGIN));
+        assertThat(PaymentIdGenerator.createdAtTo(paymentId))
+                .isEqualTo(CREATED_AT.plus(PaymentIdGenerator.CREATED_AT_MARGIN));
+    }
+
+    @Test
+    void testShouldBoundPaymentIdsAroundCreatedAt() {
+        // Given
+        SnowflakeIdGenerator generator = SnowflakeIdGenerator.forNode(7);
+        long paymentId = generator.nextId();
+        Instant createdAt = Instant.ofEpochMilli(SnowflakeIdGenerator.timestampOf(paymentId));
+
+        // When
+        // Then
+        // created_at may be up to CREATED_AT_MARGIN away from the timestamp of the id, either way.
+        for (Instant at : new Instant[]{
+                createdAt.minus(PaymentIdGenerator.CREATED_AT_MARGIN).plusMillis(1),
+                createdAt,
+                createdAt.plus(PaymentIdGenerator.CREATED_AT_MARGIN)}) {
+            assertThat(paymentId).isGreaterThanOrEqualTo(PaymentIdGenerator.paymentIdFrom(at));
+            assertThat(paymentId).isLessThan(PaymentIdGenerator.paymentIdTo(at.plusMillis(1)));
+        }
+        Instant tooLate = createdAt.plus(PaymentIdGenerator.CREATED_AT_MARGIN).plusSeconds(1);
+        assertThat(PaymentIdGenerator.paymentIdFrom(tooLate)).isGreaterThan(paymentId);
+        assertThat(PaymentIdGenerator.paymentIdFrom(Instant.EPOCH)).isEqualTo(PaymentIdGenerator.SEQUENCE_ID_LIMIT);
+    }
+
+    @Test
+    void testShouldNotBoundCreatedAtOfSequenceIds() {
+        // When
+        // Then
+        assertThat(PaymentIdGenerator.createdAtFrom(1_000L)).isBefore(CREATED_AT.minusSeconds(365L * 24 * 3600));
+        assertThat(PaymentIdGenerator.createdAtTo(1_000L)).isAfter(CREATED_AT.plusSeconds(365L * 24 * 3600));
+    }
+}
@@ -0,0 +1,136 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.study.springboottuttorialjpa.utils.SnowflakeIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert throughput of payments with ids from a sequence versus ids from PaymentIdGenerator.
+ *
+ * - sequence: what Hibernate does for a bare @GeneratedValue: a round trip to fetch nextval before every insert,
+ *   and the inserts one by one.
+ * - snowflake: the ids are generated in memory, so the inserts of a transaction are sent as one JDBC batch.
+ *
+ * Needs the local Postgres database of application.properties; override with -Dbenchmark.jdbc.url, -user, -password.
+ *
+ * Run via the main method, e.g. from the IDE, or:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) com.study.springboottuttorialjpa.payment.PaymentIdInsertBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaymentIdInsertBenchmark {
+
+    private static final int BATCH_SIZE = 50;
+
+    @Param({"sequence", "snowflake"})
+    private String generator;
+
+    private final SnowflakeIdGenerator snowflakeIdGenerator = SnowflakeIdGenerator.forNode(0);
+    private final UUID customerId = UUID.randomUUID();
+    private Connection connection;
+    private PreparedStatement nextval;
+    private PreparedStatement insert;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(
+                System.getProperty("benchmark.jdbc.url", "jdbc:postgresql://localhost:5432/jpatest?reWriteBatchedInserts=true"),
+                System.getProperty("benchmark.jdbc.user", "rkremers"),
+                System.getProperty("benchmark.jdbc.password", "rkremers"));
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists payment_id_benchmark");
+            statement.execute("drop sequence if exists payment_id_benchmark_sequence");
+            statement.execute("create sequence payment_id_benchmark_sequence");
+            statement.execute("create table payment_id_benchmark (" +
+                    "payment_id bigint primary key, customer_id uuid, amount bigint, currency integer, " +
+                    "source varchar(255), description varchar(255), status varchar(255))");
+        }
+        nextval = connection.prepareStatement("select nextval('payment_id_benchmark_sequence')");
+        insert = connection.prepareStatement("insert into payment_id_benchmark " +
+                "(payment_id, customer_id, amount, currency, source, description, status) values (?, ?, ?, ?, ?, ?, ?)");
+        connection.setAutoCommit(false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists payment_id_benchmark");
+            statement.execute("drop sequence if exists payment_id_benchmark_sequence");
+        }
+        connection.close();
+    }
+
+    /**
+     * Operations are rows: BATCH_SIZE inserts per transaction.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void insertPayments() throws SQLException {
+        boolean sequence = "sequence".equals(generator);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            long paymentId;
+            if (sequence) {
+                try (ResultSet resultSet = nextval.executeQuery()) {
+                    resultSet.next();
+                    paymentId = resultSet.getLong(1);
+                }
+            } else {
+                paymentId = snowflakeIdGenerator.nextId();
+            }
+            insert.setLong(1, paymentId);
+            insert.setObject(2, customerId);
+            // 10.00 in cents, see Money.
+            insert.setLong(3, 1000L);
+            insert.setInt(4, 0);
+            insert.setString(5, "card123");
+            insert.setString(6, "Benchmark");
+            insert.setString(7, "SUCCEEDED");
+            if (sequence) {
+                insert.executeUpdate();
+            } else {
+                insert.addBatch();
+            }
+        }
+        if (!sequence) {
+            insert.executeBatch();
+        }
+        connection.commit();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PaymentIdInsertBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
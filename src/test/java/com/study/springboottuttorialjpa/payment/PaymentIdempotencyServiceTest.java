@@ -0,0 +1,308 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.stripe.exception.ApiConnectionException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+
+class PaymentIdempotencyServiceTest {
+
+    @Mock
+    private PaymentIdempotencyKeyRepository paymentIdempotencyKeyRepository;
+
+    private final Clock clock = Clock.fixed(Instant.parse("2021-10-01T12:00:00Z"), ZoneOffset.UTC);
+
+    // Class to be tested.
+    private PaymentIdempotencyService paymentIdempotencyService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        paymentIdempotencyService = new PaymentIdempotencyService(
+                paymentIdempotencyKeyRepository, 100, Duration.ofHours(24), Duration.ofSeconds(60), clock);
+        given(paymentIdempotencyKeyRepository.claim(anyString(), anyString(), any())).willReturn(1);
+    }
+
+    @Test
+    void testShouldReplayOutcomeWithoutPayingAgain() throws Exception {
+        // Given
+        AtomicInteger payments = new AtomicInteger();
+
+        // When
+        Long first = paymentIdempotencyService.execute("key-1", "hash-7", stored -> 100L + payments.incrementAndGet());
+        Long second = paymentIdempotencyService.execute("key-1", "hash-7", stored -> 100L + payments.incrementAndGet());
+
+        // Then
+        assertThat(first).isEqualTo(101L);
+        assertThat(second).isEqualTo(101L);
+        assertThat(payments.get()).isEqualTo(1);
+        assertThat(paymentIdempotencyService.replayCount()).isEqualTo(1);
+        then(paymentIdempotencyKeyRepository).should().complete("key-1", 101L);
+    }
+
+    @Test
+    void testShouldLetConcurrentDuplicatesWaitForPaymentInProgress() throws Exception {
+        // Given
+        CountDownLatch paying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger payments = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // When
+        Future<Long> first = executor.submit(() -> paymentIdempotencyService.execute("key-1", "hash-7", stored -> {
+            payments.incrementAndGet();
+            paying.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 42L;
+        }));
+        paying.await(5, TimeUnit.SECONDS);
+        Future<Long> duplicate1 = executor.submit(() -> paymentIdempotencyService.execute("key-1", "hash-7", stored -> (long) payments.incrementAndGet()));
+        Future<Long> duplicate2 = executor.submit(() -> paymentIdempotencyService.execute("key-1", "hash-7", stored -> (long) payments.incrementAndGet()));
+        release.countDown();
+
+        // Then
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(42L);
+        assertThat(duplicate1.get(5, TimeUnit.SECONDS)).isEqualTo(42L);
+        assertThat(duplicate2.get(5, TimeUnit.SECONDS)).isEqualTo(42L);
+        assertThat(payments.get()).isEqualTo(1);
+        executor.shutdown();
+    }
+
+    @Test
+    void testShouldNotRememberFailedPayment() throws Exception {
+        // Given
+        // When
+        assertThatThrownBy(() -> paymentIdempotencyService.execute("key-1", "hash-7", stored -> {
+            throw new IllegalAccessException("The card is not debited");
+        })).isInstanceOf(IllegalAccessException.class);
+        Long retry = paymentIdempotencyService.execute("key-1", "hash-7", stored -> 42L);
+
+        // Then
+        assertThat(retry).isEqualTo(42L);
+        then(paymentIdempotencyKeyRepository).should().release("key-1");
+    }
+
+    @Test
+    void testShouldKeepKeyClaimedWhenOutcomeIsUnknown() {
+        // Given
+        PaymentOutcomeUnknownException unknown = new PaymentOutcomeUnknownException(
+                42L, new CardPaymentChargerUnavailableException("The card processor did not answer", true));
+
+        // When
+        assertThatThrownBy(() -> paymentIdempotencyService.execute("key-1", "hash-7", stored -> {
+            throw unknown;
+        })).isSameAs(unknown);
+
+        // Then
+        then(paymentIdempotencyKeyRepository).should(never()).release(any());
+        then(paymentIdempotencyKeyRepository).should(never()).complete(any(), any());
+    }
+
+    @Test
+    void testShouldTieClaimToPaymentOnceStored() throws Exception {
+        // When
+        paymentIdempotencyService.execute("key-1", "hash-7", stored -> {
+            stored.accept(42L);
+            return 42L;
+        });
+
+        // Then
+        InOrder inOrder = inOrder(paymentIdempotencyKeyRepository);
+        inOrder.verify(paymentIdempotencyKeyRepository).bind("key-1", 42L);
+        inOrder.verify(paymentIdempotencyKeyRepository).complete("key-1", 42L);
+    }
+
+    @Test
+    void testShouldReleaseKeyWhenCircuitIsOpen() {
+        // When
+        assertThatThrownBy(() -> paymentIdempotencyService.execute("key-1", "hash-7", stored -> {
+            throw new CardPaymentChargerUnavailableException("circuit open", false);
+        })).isInstanceOf(CardPaymentChargerUnavailableException.class);
+
+        // Then
+        then(paymentIdempotencyKeyRepository).should().release("key-1");
+    }
+
+    @Test
+    void testShouldKeepKeyClaimedWhenFailureIsNotDefinite() {
+        // Given
+        // E.g. the database failed after the card had been charged.
+        RuntimeException failure = new QueryTimeoutException("timeout");
+
+        // When
+        assertThatThrownBy(() -> paymentIdempotencyService.execute("key-1", "hash-7", stored -> {
+            stored.accept(42L);
+            throw failure;
+        })).isSameAs(failure);
+
+        // Then
+        then(paymentIdempotencyKeyRepository).should(never()).release(any());
+    }
+
+    @Test
+    void testShouldKeepKeyClaimedWhenConnectionToCardProcessorFails() {
+        // Given
+        RuntimeException failure = new IllegalStateException(
+                "Cannot make stripe charge", new ApiConnectionException("Connection reset"));
+
+        // When
+        assertThatThrownBy(() -> paymentIdempotencyService.execute("key-1", "hash-7", stored -> {
+            stored.accept(42L);
+            throw failure;
+        })).isSameAs(failure);
+
+        // Then
+        then(paymentIdempotencyKeyRepository).should(never()).release(any());
+    }
+
+    @Test
+    void testShouldReleaseKeyWhenChargeIsRefused() throws Exception {
+        // When
+        assertThatThrownBy(() -> paymentIdempotencyService.execute("key-1", "hash-7", stored -> {
+            stored.accept(42L);
+            throw new CardPaymentRefusedException("declined", null);
+        })).isInstanceOf(CardPaymentRefusedException.class);
+
+        // Then
+        then(paymentIdempotencyKeyRepository).should().release("key-1");
+    }
+
+    @Test
+    void testShouldReclaimKeyWhoseLeaseHasRunOut() throws Exception {
+        // Given
+        // Claimed two minutes ago, by an instance that went down before it stored a payment.
+        given(paymentIdempotencyKeyRepository.claim(anyString(), anyString(), any())).willReturn(0, 1);
+        PaymentIdempotencyKey stale = new PaymentIdempotencyKey();
+        stale.setIdempotencyKey("key-1");
+        stale.setRequestHash("hash-7");
+        stale.setCreatedAt(clock.instant().minus(Duration.ofMinutes(2)));
+        given(paymentIdempotencyKeyRepository.findById("key-1")).willReturn(Optional.of(stale));
+
+        // When
+        Long paymentId = paymentIdempotencyService.execute("key-1", "hash-7", stored -> 42L);
+
+        // Then
+        assertThat(paymentId).isEqualTo(42L);
+        then(paymentIdempotencyKeyRepository).should().deleteStale("key-1", clock.instant().minus(Duration.ofSeconds(60)));
+        then(paymentIdempotencyKeyRepository).should().complete("key-1", 42L);
+    }
+
+    @Test
+    void testShouldClaimKeyAgainWhenReleasedInTheMeantime() throws Exception {
+        // Given
+        // Claimed by a payment that definitely failed and released the key before it could be read.
+        given(paymentIdempotencyKeyRepository.claim(anyString(), anyString(), any())).willReturn(0, 1);
+        given(paymentIdempotencyKeyRepository.findById("key-1")).willReturn(Optional.empty());
+
+        // When
+        Long paymentId = paymentIdempotencyService.execute("key-1", "hash-7", stored -> 42L);
+
+        // Then
+        assertThat(paymentId).isEqualTo(42L);
+        then(paymentIdempotencyKeyRepository).should().complete("key-1", 42L);
+    }
+
+    @Test
+    void testShouldRefuseKeyInProgressWithinLeaseOrOncePaymentIsStored() {
+        // Given
+        given(paymentIdempotencyKeyRepository.claim(anyString(), anyString(), any())).willReturn(0);
+        PaymentIdempotencyKey recent = new PaymentIdempotencyKey();
+        recent.setIdempotencyKey("key-1");
+        recent.setRequestHash("hash-7");
+        recent.setCreatedAt(clock.instant().minus(Duration.ofSeconds(10)));
+        PaymentIdempotencyKey bound = new PaymentIdempotencyKey();
+        bound.setIdempotencyKey("key-2");
+        bound.setRequestHash("hash-7");
+        bound.setPaymentId(42L);
+        bound.setCreatedAt(clock.instant().minus(Duration.ofHours(1)));
+        given(paymentIdempotencyKeyRepository.findById("key-1")).willReturn(Optional.of(recent));
+        given(paymentIdempotencyKeyRepository.findById("key-2")).willReturn(Optional.of(bound));
+
+        // When
+        // Then
+        assertThatThrownBy(() -> paymentIdempotencyService.execute("key-1", "hash-7", stored -> 43L))
+                .isInstanceOf(PaymentInProgressException.class)
+                .hasMessageContaining("is in progress");
+        assertThatThrownBy(() -> paymentIdempotencyService.execute("key-2", "hash-7", stored -> 43L))
+                .isInstanceOf(PaymentInProgressException.class)
+                .hasMessageContaining("is in progress");
+        then(paymentIdempotencyKeyRepository).should(never()).deleteStale(any(), any());
+    }
+
+    @Test
+    void testShouldRejectKeyReusedForAnotherRequest() throws Exception {
+        // Given
+        paymentIdempotencyService.execute("key-1", "hash-7", stored -> 42L);
+
+        // When
+        // Then
+        assertThatThrownBy(() -> paymentIdempotencyService.execute("key-1", "hash-8", stored -> 43L))
+                .isInstanceOf(IdempotencyKeyReusedException.class)
+                .hasMessageContaining("has already been used for another payment");
+    }
+
+    @Test
+    void testShouldReplayStoredOutcomeAfterRestart() throws Exception {
+        // Given
+        // The key has been claimed and completed before, e.g. by another instance or before a restart.
+        given(paymentIdempotencyKeyRepository.claim(anyString(), anyString(), any())).willReturn(0);
+        PaymentIdempotencyKey stored = new PaymentIdempotencyKey();
+        stored.setIdempotencyKey("key-1");
+        stored.setRequestHash("hash-7");
+        stored.setPaymentId(42L);
+        stored.setCompleted(true);
+        stored.setCreatedAt(clock.instant().minus(Duration.ofHours(1)));
+        given(paymentIdempotencyKeyRepository.findById("key-1")).willReturn(Optional.of(stored));
+        AtomicInteger payments = new AtomicInteger();
+
+        // When
+        Long paymentId = paymentIdempotencyService.execute("key-1", "hash-7", paid -> (long) payments.incrementAndGet());
+
+        // Then
+        assertThat(paymentId).isEqualTo(42L);
+        assertThat(payments.get()).isZero();
+        then(paymentIdempotencyKeyRepository).should(never()).complete(any(), any());
+    }
+
+    @Test
+    void testShouldHashRequestFieldsUnambiguously() {
+        // When
+        // Then
+        assertThat(PaymentIdempotencyService.requestHash("customer", 1000L, "EUR", "card", "Donation"))
+                .hasSize(64)
+                .isEqualTo(PaymentIdempotencyService.requestHash("customer", 1000L, "EUR", "card", "Donation"))
+                // Another currency.
+                .isNotEqualTo(PaymentIdempotencyService.requestHash("customer", 1000L, "USD", "card", "Donation"))
+                // The same characters, split otherwise.
+                .isNotEqualTo(PaymentIdempotencyService.requestHash("customer", 1000L, "EUR", "cardD", "onation"))
+                .isNotEqualTo(PaymentIdempotencyService.requestHash("customer", 1000L, "EUR", "card", null));
+    }
+}
@@ -6,22 +6,28 @@ import com.study.springboottuttorialjpa.customer.Customer;
 import com.study.springboottuttorialjpa.customer.CustomerRegistrationController;
 import com.study.springboottuttorialjpa.customer.CustomerRegistrationRequest;
 import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.general.Money;
+import com.study.springboottuttorialjpa.enums.NotificationStatus;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import com.study.springboottuttorialjpa.notification.NotificationDispatcher;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.ResultActions;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-import java.math.BigDecimal;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -44,10 +50,8 @@ class PaymentIntegrationTest {
 
     /**
      * Using @Autowired should normally not be done in an integration test.
-     * But in this case the rule is broken, because there is endpoint for given a list of payments.
-     *
-     * What should actually be done is to create an endpoint in PaymentController, in order to give a
-     * list of payments for a specific user.
+     * Only used to wait for the asynchronous payment; the payments of a customer are read through
+     * GET api/v1/payment.
      */
     @Autowired
     private PaymentRepository paymentRepository;
@@ -55,6 +59,12 @@ class PaymentIntegrationTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private NotificationDispatcher notificationDispatcher;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @Test
     void testShouldCreatePaymentSuccessfully() throws Exception {
         // Given
@@ -71,11 +81,10 @@ class PaymentIntegrationTest {
         log.info("customerRegResultActions = {}", customerRegResultActions);
 
         // Payment.
-        long paymentId = 1L;
-        Payment payment = new Payment(paymentId,
+        // The paymentId is generated, see PaymentIdGenerator.
+        Payment payment = new Payment(null,
                 customerId,
-                new BigDecimal("100.00"),
-                Currency.GBP,
+                Money.parse("100.00", Currency.GBP),
                 "0x0x0x",
                 "Zakat");
 
@@ -90,13 +99,61 @@ class PaymentIntegrationTest {
         // Then both customer registration and payment requests are 200 http status code.
         customerRegResultActions.andExpect(status().isOk());
         paymentResultActions.andExpect(status().isOk());
-        // Payment is stored in db.
-        // TODO: Do not use paymentRepository instead create an endpoint to retrieve payments for customers.
-        assertThat(paymentRepository.findById(paymentId))
-                .isPresent()
-                .hasValueSatisfying( payment1 -> assertThat(payment1).isEqualToComparingFieldByField(payment));
+        // Payment is stored in db, and is in the history of the customer.
+        mockMvc.perform(get("/api/v1/payment").param("customerId", customerId.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.payments.length()").value(1))
+                .andExpect(jsonPath("$.payments[0].amount").value(100.00))
+                .andExpect(jsonPath("$.payments[0].currency").value("GBP"))
+                .andExpect(jsonPath("$.payments[0].description").value("Zakat"))
+                .andExpect(jsonPath("$.payments[0].status").value("SUCCEEDED"))
+                .andExpect(jsonPath("$.nextBefore").isEmpty());
+
+        // The totals of the customer have been updated with the payment.
+        mockMvc.perform(get("/api/v1/payment/customer/{customerId}/totals", customerId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].currency").value("GBP"))
+                .andExpect(jsonPath("$[0].paymentCount").value(1))
+                .andExpect(jsonPath("$[0].amount").value(100.00));
 
-        // TODO: Ensure sms is delivered.
+        // The sms has been written to the outbox with the payment, and is sent by the dispatcher.
+        notificationDispatcher.dispatch();
+        assertThat(jdbcTemplate.queryForObject(
+                "select status from payment_notification where customer_id = ?", String.class, customerId))
+                .isEqualTo(NotificationStatus.SENT.name());
+    }
+
+    @Test
+    void testShouldAcceptAsyncPaymentAndReportStatus() throws Exception {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        Customer customer = new Customer(customerId, "Alice", "+31464332060");
+        mockMvc.perform(put("/api/v1/customer-registration")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(Objects.requireNonNull(objectToJson(new CustomerRegistrationRequest(customer)))))
+                .andExpect(status().isOk());
+        Payment payment = new Payment(null,
+                customerId,
+                Money.parse("100.00", Currency.GBP),
+                "0x0x0x",
+                "Zakat");
+
+        // When
+        String response = mockMvc.perform(post("/api/v1/payment/async")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(Objects.requireNonNull(objectToJson(new PaymentRequest(payment)))))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.status").value("PENDING"))
+                .andReturn().getResponse().getContentAsString();
+        long paymentId = new ObjectMapper().readTree(response).get("paymentId").asLong();
+
+        // Then the MockStripeService charges the card in the background.
+        for (int i = 0; i < 50 && paymentRepository.selectStatusByPaymentId(paymentId).orElseThrow() == PaymentStatus.PENDING; i++) {
+            Thread.sleep(100);
+        }
+        mockMvc.perform(get("/api/v1/payment/{paymentId}/status", paymentId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("SUCCEEDED"));
     }
 
     private String objectToJson(Object object) {
@@ -0,0 +1,73 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.ValueInstantiationException;
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.general.Money;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PaymentJsonTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testShouldReadAmountIntoMinorUnits() throws Exception {
+        // Given
+        String json = "{\"customerId\": \"" + UUID.randomUUID() + "\", \"amount\": 100.5, " +
+                "\"currency\": \"GBP\", \"source\": \"card123xx\", \"description\": \"Donation\"}";
+
+        // When
+        Payment payment = objectMapper.readValue(json, Payment.class);
+
+        // Then
+        assertThat(payment.getAmount()).isEqualTo(Money.ofMinorUnits(10050, Currency.GBP));
+        assertThat(payment.getCurrency()).isEqualTo(Currency.GBP);
+    }
+
+    @Test
+    void testShouldAcceptAmountAsStringAndCurrencyAfterAmount() throws Exception {
+        // When
+        Payment payment = objectMapper.readValue("{\"amount\": \"7.25\", \"currency\": \"USD\"}", Payment.class);
+        // Then
+        assertThat(payment.getAmount().getMinorUnits()).isEqualTo(725);
+    }
+
+    @Test
+    void testShouldWriteAmountAsDecimalNextToCurrency() throws Exception {
+        // Given
+        Payment payment = new Payment(1L, UUID.randomUUID(), Money.parse("100", Currency.EUR), "card123xx", "Donation");
+
+        // When
+        String json = objectMapper.writeValueAsString(payment);
+
+        // Then
+        assertThat(json).contains("\"amount\":100.00", "\"currency\":\"EUR\"");
+        assertThat(objectMapper.readValue(json, Payment.class).getAmount()).isEqualTo(payment.getAmount());
+    }
+
+    @Test
+    void testShouldIgnorePaymentIdStatusAndCreatedAtFromClient() throws Exception {
+        // Given
+        String json = "{\"paymentId\": 42, \"status\": \"SUCCEEDED\", \"createdAt\": \"2021-01-01T00:00:00Z\", " +
+                "\"amount\": 1.00, \"currency\": \"EUR\"}";
+
+        // When
+        Payment payment = objectMapper.readValue(json, Payment.class);
+
+        // Then
+        assertThat(payment.getPaymentId()).isNull();
+        assertThat(payment.getStatus()).isNull();
+        assertThat(payment.getCreatedAt()).isNull();
+    }
+
+    @Test
+    void testShouldRejectAmountWithoutCurrency() {
+        assertThatThrownBy(() -> objectMapper.readValue("{\"amount\": 1.00}", Payment.class))
+                .isInstanceOf(ValueInstantiationException.class);
+    }
+}
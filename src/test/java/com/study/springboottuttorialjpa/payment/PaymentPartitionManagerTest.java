@@ -0,0 +1,139 @@
+package com.study.springboottuttorialjpa.payment;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+class PaymentPartitionManagerTest {
+
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2026-10-18T12:00:00Z"), ZoneOffset.UTC);
+
+    @Mock
+    private PaymentPartitionRepository paymentPartitionRepository;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testShouldCreateCurrentAndNextMonths() {
+        // Given
+        PaymentPartitionManager manager = manager(2, 0, PaymentPartitionManager.RetentionAction.DETACH);
+
+        // When
+        manager.maintain();
+
+        // Then
+        then(paymentPartitionRepository).should()
+                .createPartition("payment_p202610", LocalDate.of(2026, 10, 1), LocalDate.of(2026, 11, 1));
+        then(paymentPartitionRepository).should()
+                .createPartition("payment_p202611", LocalDate.of(2026, 11, 1), LocalDate.of(2026, 12, 1));
+        then(paymentPartitionRepository).should()
+                .createPartition("payment_p202612", LocalDate.of(2026, 12, 1), LocalDate.of(2027, 1, 1));
+        // Retention 0 keeps everything.
+        then(paymentPartitionRepository).should(never()).selectPartitionNames();
+    }
+
+    @Test
+    void testShouldDetachPartitionsPastRetention() {
+        // Given
+        PaymentPartitionManager manager = manager(0, 12, PaymentPartitionManager.RetentionAction.DETACH);
+        given(paymentPartitionRepository.selectPartitionNames()).willReturn(List.of(
+                "payment_p202510", "payment_p202511", "payment_p202610", "payment_archive"));
+
+        // When
+        manager.maintain();
+
+        // Then
+        then(paymentPartitionRepository).should().detachPartition("payment_p202510");
+        then(paymentPartitionRepository).should(never()).detachPartition("payment_p202511");
+        then(paymentPartitionRepository).should(never()).detachPartition("payment_p202610");
+        then(paymentPartitionRepository).should(never()).detachPartition("payment_archive");
+        then(paymentPartitionRepository).should(never()).dropPartition(anyString());
+    }
+
+    @Test
+    void testShouldDropPartitionsPastRetention() {
+        // Given
+        PaymentPartitionManager manager = manager(0, 1, PaymentPartitionManager.RetentionAction.DROP);
+        given(paymentPartitionRepository.selectPartitionNames()).willReturn(List.of("payment_p202609", "payment_p202610"));
+
+        // When
+        manager.maintain();
+
+        // Then
+        then(paymentPartitionRepository).should().dropPartition("payment_p202609");
+        then(paymentPartitionRepository).should(never()).dropPartition("payment_p202610");
+    }
+
+    @Test
+    void testShouldReplaceEmptyPlainTableAtStartup() {
+        // Given
+        given(paymentPartitionRepository.isPartitioned()).willReturn(false);
+        given(paymentPartitionRepository.isEmpty()).willReturn(true);
+
+        // When
+        manager(0, 0, PaymentPartitionManager.RetentionAction.DETACH).initialize();
+
+        // Then
+        then(paymentPartitionRepository).should().replaceWithPartitionedTable();
+        then(paymentPartitionRepository).should().createPartition(any(), any(), any());
+    }
+
+    @Test
+    void testShouldRefusePlainTableWithPayments() {
+        // Given
+        given(paymentPartitionRepository.isPartitioned()).willReturn(false);
+        given(paymentPartitionRepository.isEmpty()).willReturn(false);
+
+        // When
+        // Then
+        assertThatThrownBy(() -> manager(0, 0, PaymentPartitionManager.RetentionAction.DETACH).initialize())
+                .isInstanceOf(IllegalStateException.class);
+        then(paymentPartitionRepository).should(never()).replaceWithPartitionedTable();
+    }
+
+    @Test
+    void testShouldRefuseDefaultNodeId() {
+        // Given
+        PaymentPartitionManager manager = new PaymentPartitionManager(
+                paymentPartitionRepository, 0, 0, PaymentPartitionManager.RetentionAction.DETACH, 0, CLOCK);
+
+        // When
+        // Then
+        assertThatThrownBy(manager::initialize)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(PaymentIdGenerator.NODE_ID_SETTING);
+        then(paymentPartitionRepository).should(never()).replaceWithPartitionedTable();
+    }
+
+    @Test
+    void testShouldParseOnlyOwnPartitionNames() {
+        assertThat(PaymentPartitionManager.monthOf("payment_p202610")).isEqualTo(YearMonth.of(2026, 10));
+        assertThat(PaymentPartitionManager.monthOf("payment_pold")).isNull();
+        assertThat(PaymentPartitionManager.monthOf("payment_notification")).isNull();
+    }
+
+    private PaymentPartitionManager manager(
+            int monthsAhead, int retentionMonths, PaymentPartitionManager.RetentionAction retentionAction) {
+        return new PaymentPartitionManager(
+                paymentPartitionRepository, monthsAhead, retentionMonths, retentionAction, 1, CLOCK);
+    }
+}
@@ -0,0 +1,65 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import com.study.springboottuttorialjpa.general.Money;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Against the local Postgres, with the payment table partitioned by month (see PaymentPartitionManager).
+ */
+@SpringBootTest(properties = {
+        "payment.partitioning.enabled=true",
+        "spring.jpa.properties.payment.id-generator.node-id=1"
+})
+class PaymentPartitioningIntegrationTest {
+
+    @Autowired
+    private PaymentRecorder paymentRecorder;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testShouldStorePaymentInPartitionOfItsMonth() {
+        // Given
+        Payment payment = new Payment(null, UUID.randomUUID(), Money.parse("10.00", Currency.USD), "card123", "Donation");
+        payment.setStatus(PaymentStatus.SUCCEEDED);
+
+        // When
+        paymentRecorder.save(payment);
+
+        // Then
+        assertThat(jdbcTemplate.queryForObject(
+                "select tableoid::regclass::text from payment where payment_id = ?", String.class, payment.getPaymentId()))
+                .isEqualTo(PaymentPartitionManager.partitionName(YearMonth.now()));
+    }
+
+    @Test
+    void testShouldOnlyScanPartitionsOfQueriedMonths() {
+        // Given
+        YearMonth month = YearMonth.now();
+
+        // When
+        String plan = String.join("\n", jdbcTemplate.queryForList(
+                "explain select count(*) from payment where created_at >= ? and created_at < ?",
+                String.class,
+                Timestamp.valueOf(month.atDay(1).atStartOfDay()),
+                Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay())));
+
+        // Then
+        assertThat(plan)
+                .contains(PaymentPartitionManager.partitionName(month))
+                .doesNotContain(PaymentPartitionManager.partitionName(month.plusMonths(1)))
+                .doesNotContain(PaymentPartitionManager.partitionName(month.plusMonths(2)));
+    }
+}
@@ -0,0 +1,152 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.general.Money;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import com.study.springboottuttorialjpa.notification.NotificationOutboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+
+class PaymentRecorderTest {
+
+    @Mock
+    private PaymentRepository paymentRepository;
+    @Mock
+    private PaymentJdbcRepository paymentJdbcRepository;
+    @Mock
+    private NotificationOutboxRepository notificationOutboxRepository;
+    @Mock
+    private CustomerPaymentTotalRepository customerPaymentTotalRepository;
+
+    // Class to be tested.
+    private PaymentRecorder paymentRecorder;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        paymentRecorder = new PaymentRecorder(
+                paymentRepository, paymentJdbcRepository, notificationOutboxRepository, customerPaymentTotalRepository);
+        given(paymentRepository.save(any())).willAnswer(returnsFirstArg());
+        given(paymentRepository.updateStatusAndChargeId(any(), any(), any())).willReturn(1);
+    }
+
+    @Test
+    void testShouldWriteNotificationAndTotalWithSucceededPayment() {
+        // Given
+        Payment payment = payment(1L, PaymentStatus.SUCCEEDED);
+
+        // When
+        paymentRecorder.save(payment);
+
+        // Then
+        then(paymentRepository).should().save(payment);
+        then(notificationOutboxRepository).should().insertNotifications(List.of(payment));
+        then(customerPaymentTotalRepository).should().addPayments(List.of(payment));
+    }
+
+    @Test
+    void testShouldAddPaymentToTotalWhenPendingPaymentSucceeds() {
+        // Given
+        Payment payment = payment(1L, PaymentStatus.PENDING);
+
+        // When
+        paymentRecorder.updateStatus(payment, PaymentStatus.SUCCEEDED);
+
+        // Then
+        then(customerPaymentTotalRepository).should().addPayments(List.of(payment));
+    }
+
+    @Test
+    void testShouldRefuseOutcomeOfPaymentThatIsNotStored() {
+        // Given
+        Payment payment = payment(1L, PaymentStatus.PENDING);
+        given(paymentRepository.updateStatusAndChargeId(1L, PaymentStatus.SUCCEEDED, null)).willReturn(0);
+
+        // When
+        // Then
+        assertThatThrownBy(() -> paymentRecorder.updateStatus(payment, PaymentStatus.SUCCEEDED))
+                .isInstanceOf(IllegalStateException.class);
+        then(notificationOutboxRepository).shouldHaveNoInteractions();
+        then(customerPaymentTotalRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void testShouldNotWriteNotificationWithPendingOrFailedPayment() {
+        // When
+        paymentRecorder.save(payment(1L, PaymentStatus.PENDING));
+        paymentRecorder.updateStatus(payment(2L, PaymentStatus.PENDING), PaymentStatus.FAILED);
+
+        // Then
+        then(paymentRepository).should().updateStatusAndChargeId(2L, PaymentStatus.FAILED, null);
+        then(notificationOutboxRepository).shouldHaveNoInteractions();
+        then(customerPaymentTotalRepository).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void testShouldWriteNotificationsOfSucceededBatchPayments() {
+        // Given
+        Payment succeeded = payment(1L, PaymentStatus.SUCCEEDED);
+        Payment failed = payment(2L, PaymentStatus.FAILED);
+
+        // When
+        paymentRecorder.insertPayments(List.of(succeeded, failed));
+
+        // Then
+        then(paymentJdbcRepository).should().insertPayments(List.of(succeeded, failed));
+        then(notificationOutboxRepository).should().insertNotifications(List.of(succeeded));
+        then(customerPaymentTotalRepository).should().addPayments(List.of(succeeded));
+        assertThat(succeeded.getCreatedAt()).isNotNull();
+    }
+
+    @Test
+    void testShouldWriteNotificationsOfBatchPaymentsThatSucceededAfterPending() {
+        // Given
+        Payment succeeded = payment(1L, PaymentStatus.SUCCEEDED);
+        Payment failed = payment(2L, PaymentStatus.FAILED);
+
+        given(paymentJdbcRepository.updateStatuses(List.of(succeeded, failed))).willReturn(new int[]{1, 1});
+
+        // When
+        paymentRecorder.updateStatuses(List.of(succeeded, failed));
+
+        // Then
+        then(paymentJdbcRepository).should().updateStatuses(List.of(succeeded, failed));
+        then(notificationOutboxRepository).should().insertNotifications(List.of(succeeded));
+        then(customerPaymentTotalRepository).should().addPayments(List.of(succeeded));
+    }
+
+    @Test
+    void testShouldOnlyWriteNotificationsOfBatchPaymentsThatHaveBeenUpdated() {
+        // Given
+        Payment updated = payment(1L, PaymentStatus.SUCCEEDED);
+        // Charged by the PendingPaymentSweeper in the meantime.
+        Payment swept = payment(2L, PaymentStatus.SUCCEEDED);
+        given(paymentJdbcRepository.updateStatuses(List.of(updated, swept))).willReturn(new int[]{1, 0});
+
+        // When
+        paymentRecorder.updateStatuses(List.of(updated, swept));
+
+        // Then
+        then(notificationOutboxRepository).should().insertNotifications(List.of(updated));
+        then(customerPaymentTotalRepository).should().addPayments(List.of(updated));
+    }
+
+    private static Payment payment(Long paymentId, PaymentStatus status) {
+        Payment payment = new Payment(
+                paymentId, UUID.randomUUID(), Money.parse("10.00", Currency.EUR), "card123xx", "Donation");
+        payment.setStatus(status);
+        return payment;
+    }
+}
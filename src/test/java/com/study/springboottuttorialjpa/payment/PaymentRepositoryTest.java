@@ -2,14 +2,18 @@ package com.study.springboottuttorialjpa.payment;
 
 import com.study.springboottuttorialjpa.payment.Payment;
 import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.general.Money;
 import com.study.springboottuttorialjpa.payment.PaymentRepository;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ActiveProfiles;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -32,18 +36,18 @@ class PaymentRepositoryTest {
     @Test
     void testShouldInsertPayment() {
         // Given
+        // The paymentId is generated, see PaymentIdGenerator.
         Payment payment = new Payment(
-                1L
+                null
                 , UUID.randomUUID()
-                , new BigDecimal("10.00")
-                , Currency.USD
+                , Money.parse("10.00", Currency.USD)
                 , "card123"
                 , "Donation");
 
         // When
         paymentRepository.save(payment);
         // Then
-        Optional<Payment> paymentOptional = paymentRepository.findById(1L);
+        Optional<Payment> paymentOptional = paymentRepository.findById(payment.getPaymentId());
 
         assertThat(paymentOptional)
                 .isPresent()
@@ -62,4 +66,28 @@ class PaymentRepositoryTest {
 
                 });
     }
-}
\ No newline at end of file
+
+    @Test
+    void testShouldPageThroughHistoryOfCustomerNewestFirst() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        List<Long> paymentIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Payment payment = new Payment(null, customerId, Money.parse(i + ".00", Currency.USD), "card123", "Donation");
+            paymentIds.add(paymentRepository.save(payment).getPaymentId());
+        }
+        paymentRepository.save(new Payment(null, UUID.randomUUID(), Money.parse("1.00", Currency.USD), "card123", "Other"));
+        Collections.reverse(paymentIds);
+
+        // When
+        List<PaymentSummary> firstPage = paymentRepository.selectHistory(customerId, Long.MAX_VALUE, PageRequest.of(0, 3));
+        List<PaymentSummary> secondPage = paymentRepository.selectHistory(
+                customerId, firstPage.get(2).getPaymentId(), PageRequest.of(0, 3));
+
+        // Then
+        assertThat(firstPage).extracting(PaymentSummary::getPaymentId).containsExactlyElementsOf(paymentIds.subList(0, 3));
+        assertThat(secondPage).extracting(PaymentSummary::getPaymentId).containsExactlyElementsOf(paymentIds.subList(3, 5));
+        assertThat(secondPage.get(1).getAmount()).isEqualTo(Money.parse("0.00", Currency.USD));
+        assertThat(secondPage.get(1).getDescription()).isEqualTo("Donation");
+    }
+}
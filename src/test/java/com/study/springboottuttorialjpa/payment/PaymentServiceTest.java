@@ -1,64 +1,89 @@
 package com.study.springboottuttorialjpa.payment;
 
+import com.stripe.exception.ApiConnectionException;
 import com.stripe.exception.StripeException;
-import com.study.springboottuttorialjpa.customer.Customer;
-import com.study.springboottuttorialjpa.customer.CustomerRepository;
+import com.study.springboottuttorialjpa.currency.CurrencyRegistry;
+import com.study.springboottuttorialjpa.currency.FxRateCache;
+import com.study.springboottuttorialjpa.customer.CustomerExistenceService;
 import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.general.Money;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.PageRequest;
 
 import java.math.BigDecimal;
-import java.util.Optional;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
-import static org.mockito.Mockito.mock;
+import static org.mockito.BDDMockito.willThrow;
 import static org.mockito.Mockito.never;
 
 @Slf4j
 class PaymentServiceTest {
 
+    private static final Long PAYMENT_ID = 42L;
+
     @Mock
-    private CustomerRepository customerRepository;
+    private CustomerExistenceService customerExistenceService;
     @Mock
     private PaymentRepository paymentRepository;
     @Mock
+    private PaymentRecorder paymentRecorder;
+    @Mock
     private CardPaymentCharger cardPaymentCharger;
+    @Mock
+    private AsyncPaymentProcessor asyncPaymentProcessor;
+    @Mock
+    private PaymentIdempotencyService paymentIdempotencyService;
 
     private PaymentService paymentService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        paymentService = new PaymentService(customerRepository, paymentRepository, cardPaymentCharger);
+        // EUR is not accepted; GBP is, and is converted into USD.
+        CurrencyRegistry currencyRegistry = new CurrencyRegistry("USD,GBP", "USD", "");
+        FxRateCache fxRateCache = new FxRateCache(
+                target -> Map.of(Currency.GBP, new BigDecimal("1.25")), currencyRegistry, 900);
+        paymentService = new PaymentService(customerExistenceService, paymentRepository, paymentRecorder, cardPaymentCharger,
+                asyncPaymentProcessor, paymentIdempotencyService, currencyRegistry, fxRateCache);
+        // The saved payment is returned with its generated id, as JPA does for a new entity.
+        given(paymentRepository.save(any())).willAnswer(invocation -> {
+            Payment payment = invocation.getArgument(0);
+            if (payment.getPaymentId() == null) {
+                payment.setPaymentId(PAYMENT_ID);
+            }
+            return payment;
+        });
     }
 
     @Test
     void testChargeCardSuccessfully() throws IllegalAccessException, StripeException {
         // Given
         UUID customerId = UUID.randomUUID();
-        // Could have used Optional.of(new Customer()))
         // Customer exists
-        given(customerRepository
-                .findById(customerId)
-        )
-                .willReturn(Optional.of(mock(Customer.class)));
+        given(customerExistenceService.exists(customerId)).willReturn(true);
 
         // In PaymentService customerId is set in Step 5. Not during the initialization of the Payment.
         PaymentRequest paymentRequest = new PaymentRequest(
                 new Payment(
                         null,
                         null,
-                        new BigDecimal("100.00"),
-                        Currency.USD,
+                        Money.parse("100.00", Currency.USD),
                         "card123xx",
                         "Donation"
                 )
@@ -69,8 +94,8 @@ class PaymentServiceTest {
         given(cardPaymentCharger.chargeCard(
                 paymentRequest.getPayment().getSource()
                 , paymentRequest.getPayment().getAmount()
-                , paymentRequest.getPayment().getCurrency()
                 , paymentRequest.getPayment().getDescription()
+                , "payment-" + PAYMENT_ID
         )).willReturn(new CardPaymentCharge(true));
         // When
         paymentService.chargeCard(customerId, paymentRequest);
@@ -79,6 +104,7 @@ class PaymentServiceTest {
         // Then
         ArgumentCaptor<Payment> paymentArgumentCaptor = ArgumentCaptor.forClass(Payment.class);
         then(paymentRepository).should().save(paymentArgumentCaptor.capture());
+        then(paymentRecorder).should().updateStatus(paymentArgumentCaptor.getValue(), PaymentStatus.SUCCEEDED);
 
         Payment paymentArgumentCaptorValue = paymentArgumentCaptor.getValue();
         // The deprecated methoud should be replaced by a set of checks on the methods of the Payment properties.
@@ -99,22 +125,40 @@ class PaymentServiceTest {
         assertThat(paymentArgumentCaptorValue.getCustomerId()).isEqualTo(customerId);
     }
 
+    @Test
+    void testShouldChargeInPaymentCurrencyAndRecordSettlementAmount() throws IllegalAccessException, StripeException {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerExistenceService.exists(customerId)).willReturn(true);
+        PaymentRequest paymentRequest = new PaymentRequest(
+                new Payment(null, null, Money.parse("100.00", Currency.GBP), "card123xx", "Donation"));
+        given(cardPaymentCharger.chargeCard(any(), any(), any(), any())).willReturn(new CardPaymentCharge(true));
+
+        // When
+        paymentService.chargeCard(customerId, paymentRequest);
+
+        // Then
+        then(cardPaymentCharger).should().chargeCard(
+                "card123xx", Money.parse("100.00", Currency.GBP), "Donation", "payment-" + PAYMENT_ID);
+        ArgumentCaptor<Payment> paymentArgumentCaptor = ArgumentCaptor.forClass(Payment.class);
+        then(paymentRepository).should().save(paymentArgumentCaptor.capture());
+        assertThat(paymentArgumentCaptor.getValue().getSettlementAmount())
+                .isEqualTo(Money.parse("125.00", Currency.USD));
+    }
+
     @Test
     void testShouldThrowWhenCardIsNotCharged() throws IllegalAccessException, StripeException {
         // Given
         UUID customerId = UUID.randomUUID();
         // Customer exists
-        given(customerRepository
-                .findById(customerId))
-                .willReturn(Optional.of(mock(Customer.class)));
+        given(customerExistenceService.exists(customerId)).willReturn(true);
 
         // In PaymentService customerId is set in Step 5. Not during the initialization of the Payment.
         PaymentRequest paymentRequest = new PaymentRequest(
                 new Payment(
                         null,
                         null,
-                        new BigDecimal("100.00"),
-                        Currency.USD,
+                        Money.parse("100.00", Currency.USD),
                         "card123xx",
                         "Donation"
                 )
@@ -125,15 +169,78 @@ class PaymentServiceTest {
         given(cardPaymentCharger.chargeCard(
                 paymentRequest.getPayment().getSource()
                 , paymentRequest.getPayment().getAmount()
-                , paymentRequest.getPayment().getCurrency()
                 , paymentRequest.getPayment().getDescription()
+                , "payment-" + PAYMENT_ID
         )).willReturn(new CardPaymentCharge(false));
         // When
         assertThatThrownBy(() -> paymentService.chargeCard(customerId, paymentRequest))
                 .isInstanceOf(IllegalAccessException.class)
                 .hasMessageContaining(String.format("The card is not debited for customer %s", customerId));
         // Then
-        then(paymentRepository).shouldHaveNoInteractions();
+        then(paymentRecorder).should().updateStatus(paymentRequest.getPayment(), PaymentStatus.FAILED);
+        then(paymentRecorder).shouldHaveNoMoreInteractions();
+    }
+
+    @Test
+    void testShouldKeepPaymentAsUnknownWhenCardProcessorTimesOut() throws StripeException {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerExistenceService.exists(customerId)).willReturn(true);
+        PaymentRequest paymentRequest = new PaymentRequest(
+                new Payment(null, null, Money.parse("100.00", Currency.USD), "card123xx", "Donation"));
+        given(cardPaymentCharger.chargeCard(any(), any(), any(), any()))
+                .willThrow(new CardPaymentChargerUnavailableException("The card processor did not answer", true));
+
+        // When
+        assertThatThrownBy(() -> paymentService.chargeCard(customerId, paymentRequest))
+                .isInstanceOfSatisfying(PaymentOutcomeUnknownException.class, e -> {
+                    assertThat(e.getPaymentId()).isEqualTo(PAYMENT_ID);
+                    assertThat(e.isTimeout()).isTrue();
+                });
+
+        // Then
+        then(paymentRecorder).should().updateStatus(paymentRequest.getPayment(), PaymentStatus.UNKNOWN);
+        then(paymentRecorder).shouldHaveNoMoreInteractions();
+    }
+
+    @Test
+    void testShouldKeepPaymentAsUnknownWhenConnectionToCardProcessorFails() throws StripeException {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerExistenceService.exists(customerId)).willReturn(true);
+        PaymentRequest paymentRequest = new PaymentRequest(
+                new Payment(null, null, Money.parse("100.00", Currency.USD), "card123xx", "Donation"));
+        // The connection broke after the request had been sent: the charge may have gone through.
+        given(cardPaymentCharger.chargeCard(any(), any(), any(), any())).willThrow(new IllegalStateException(
+                "Cannot make stripe charge", new ApiConnectionException("Connection reset")));
+
+        // When
+        assertThatThrownBy(() -> paymentService.chargeCard(customerId, paymentRequest))
+                .isInstanceOfSatisfying(PaymentOutcomeUnknownException.class,
+                        e -> assertThat(e.getPaymentId()).isEqualTo(PAYMENT_ID))
+                .hasRootCauseInstanceOf(ApiConnectionException.class);
+
+        // Then
+        then(paymentRecorder).should().updateStatus(paymentRequest.getPayment(), PaymentStatus.UNKNOWN);
+        then(paymentRecorder).shouldHaveNoMoreInteractions();
+    }
+
+    @Test
+    void testShouldFailPaymentWhenCircuitIsOpen() throws StripeException {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerExistenceService.exists(customerId)).willReturn(true);
+        PaymentRequest paymentRequest = new PaymentRequest(
+                new Payment(null, null, Money.parse("100.00", Currency.USD), "card123xx", "Donation"));
+        given(cardPaymentCharger.chargeCard(any(), any(), any(), any()))
+                .willThrow(new CardPaymentChargerUnavailableException("circuit open", false));
+
+        // When
+        assertThatThrownBy(() -> paymentService.chargeCard(customerId, paymentRequest))
+                .isExactlyInstanceOf(CardPaymentChargerUnavailableException.class);
+
+        // Then
+        then(paymentRecorder).should().updateStatus(paymentRequest.getPayment(), PaymentStatus.FAILED);
     }
 
     @Test
@@ -141,17 +248,14 @@ class PaymentServiceTest {
         // Given
         UUID customerId = UUID.randomUUID();
         // Customer exists
-        given(customerRepository
-                .findById(customerId))
-                .willReturn(Optional.of(mock(Customer.class)));
+        given(customerExistenceService.exists(customerId)).willReturn(true);
 
         // In PaymentService customerId is set in Step 5. Not during the initialization of the Payment.
         PaymentRequest paymentRequest = new PaymentRequest(
                 new Payment(
                         null,
                         null,
-                        new BigDecimal("100.00"),
-                        Currency.EUR,
+                        Money.parse("100.00", Currency.EUR),
                         "card123xx",
                         "Donation"
                 )
@@ -165,16 +269,15 @@ class PaymentServiceTest {
         // Then
         then(cardPaymentCharger).shouldHaveNoInteractions();
         then(paymentRepository).shouldHaveNoInteractions();
+        then(paymentRecorder).shouldHaveNoInteractions();
     }
 
     @Test
     void testShouldNotChargeAndShouldThrowWhenCustomerNotFound() {
         // Given
         UUID customerId = UUID.randomUUID();
-        // Customer exists
-        given(customerRepository
-                .findById(customerId))
-                .willReturn(Optional.empty());
+        // Customer does not exist
+        given(customerExistenceService.exists(customerId)).willReturn(false);
         // When
         assertThatThrownBy(() -> paymentService.chargeCard(customerId, new PaymentRequest(new Payment())))
                 .isInstanceOf(IllegalAccessException.class)
@@ -182,5 +285,112 @@ class PaymentServiceTest {
         // Then
         then(cardPaymentCharger).shouldHaveNoInteractions();
         then(paymentRepository).shouldHaveNoInteractions();
+        then(paymentRecorder).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void testShouldSubmitPendingPayment() throws IllegalAccessException {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerExistenceService.exists(customerId)).willReturn(true);
+        PaymentRequest paymentRequest = new PaymentRequest(
+                new Payment(
+                        null,
+                        null,
+                        Money.parse("100.00", Currency.USD),
+                        "card123xx",
+                        "Donation"
+                )
+        );
+        given(paymentRepository.save(paymentRequest.getPayment())).willAnswer(invocation -> {
+            Payment payment = invocation.getArgument(0);
+            payment.setPaymentId(42L);
+            return payment;
+        });
+
+        // When
+        Long paymentId = paymentService.submitPayment(customerId, paymentRequest);
+
+        // Then
+        assertThat(paymentId).isEqualTo(42L);
+        assertThat(paymentRequest.getPayment().getStatus()).isEqualTo(PaymentStatus.PENDING);
+        assertThat(paymentRequest.getPayment().getCustomerId()).isEqualTo(customerId);
+        then(asyncPaymentProcessor).should().submit(paymentRequest.getPayment());
+        // The card is charged by the AsyncPaymentProcessor, not by the request thread.
+        then(cardPaymentCharger).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void testShouldFailPaymentWhenQueueIsFull() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(customerExistenceService.exists(customerId)).willReturn(true);
+        Payment payment = new Payment(
+                7L,
+                null,
+                Money.parse("100.00", Currency.USD),
+                "card123xx",
+                "Donation"
+        );
+        given(paymentRepository.save(payment)).willReturn(payment);
+        willThrow(new RejectedExecutionException()).given(asyncPaymentProcessor).submit(payment);
+
+        // When
+        assertThatThrownBy(() -> paymentService.submitPayment(customerId, new PaymentRequest(payment)))
+                .isInstanceOf(RejectedExecutionException.class);
+
+        // Then
+        then(paymentRepository).should().updateStatus(7L, PaymentStatus.FAILED);
+    }
+
+    @Test
+    void testShouldChargeCardOnceThroughIdempotencyService() throws Exception {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        PaymentRequest paymentRequest = new PaymentRequest(
+                new Payment(null, null, Money.parse("100.00", Currency.USD), "card123xx", "Donation"));
+        given(paymentIdempotencyService.execute(eq("key-1"), anyString(), any())).willReturn(42L);
+
+        // When
+        Long paymentId = paymentService.chargeCard(customerId, paymentRequest, "key-1");
+
+        // Then
+        assertThat(paymentId).isEqualTo(42L);
+        then(cardPaymentCharger).shouldHaveNoInteractions();
+    }
+
+    @Test
+    void testShouldReturnHistoryPageWithNextBeforeWhenThereAreMorePayments() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        List<PaymentSummary> payments = List.of(summary(30L), summary(20L), summary(10L));
+        given(paymentRepository.selectHistory(eq(customerId), eq(Long.MAX_VALUE), any())).willReturn(payments);
+
+        // When
+        PaymentHistoryResponse page = paymentService.getPaymentHistory(customerId, null, 2);
+
+        // Then
+        assertThat(page.getPayments()).extracting(PaymentSummary::getPaymentId).containsExactly(30L, 20L);
+        assertThat(page.getNextBefore()).isEqualTo(20L);
+        // One row more than the limit, and no count query.
+        then(paymentRepository).should().selectHistory(customerId, Long.MAX_VALUE, PageRequest.of(0, 3));
+    }
+
+    @Test
+    void testShouldReturnLastHistoryPageWithoutNextBefore() {
+        // Given
+        UUID customerId = UUID.randomUUID();
+        given(paymentRepository.selectHistory(eq(customerId), eq(20L), any())).willReturn(List.of(summary(10L)));
+
+        // When
+        PaymentHistoryResponse page = paymentService.getPaymentHistory(customerId, 20L, 2);
+
+        // Then
+        assertThat(page.getPayments()).extracting(PaymentSummary::getPaymentId).containsExactly(10L);
+        assertThat(page.getNextBefore()).isNull();
+    }
+
+    private static PaymentSummary summary(Long paymentId) {
+        return new PaymentSummary(paymentId, 1000L, Currency.USD, "Donation", PaymentStatus.SUCCEEDED, null);
     }
-}
\ No newline at end of file
+}
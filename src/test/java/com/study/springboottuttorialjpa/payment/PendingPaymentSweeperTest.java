@@ -0,0 +1,107 @@
+package com.study.springboottuttorialjpa.payment;
+
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import com.study.springboottuttorialjpa.general.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+class PendingPaymentSweeperTest {
+
+    private static final int BATCH_SIZE = 2;
+    private static final Instant NOW = Instant.parse("2026-10-18T12:00:00Z");
+
+    @Mock
+    private PaymentJdbcRepository paymentJdbcRepository;
+    @Mock
+    private AsyncPaymentProcessor asyncPaymentProcessor;
+    @Mock
+    private PaymentIdempotencyService paymentIdempotencyService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // Class to be tested: payments are stale 5 minutes after they were created.
+    private PendingPaymentSweeper pendingPaymentSweeper;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        pendingPaymentSweeper = new PendingPaymentSweeper(
+                paymentJdbcRepository, asyncPaymentProcessor, paymentIdempotencyService,
+                Duration.ofMinutes(5), BATCH_SIZE, Clock.fixed(NOW, ZoneOffset.UTC));
+        pendingPaymentSweeper.bindTo(meterRegistry);
+    }
+
+    @Test
+    void testShouldChargeStalePaymentsAgainAndSettleTheirKeys() {
+        // Given
+        Payment succeeding = payment(1L);
+        Payment failing = payment(2L);
+        given(paymentJdbcRepository.claimPending(
+                NOW.minus(Duration.ofMinutes(5)), NOW, NOW.plus(Duration.ofMinutes(5)), BATCH_SIZE))
+                .willReturn(List.of(succeeding, failing), Collections.emptyList());
+        given(asyncPaymentProcessor.charge(succeeding)).willAnswer(invocation -> {
+            succeeding.setStatus(PaymentStatus.SUCCEEDED);
+            return true;
+        });
+        given(asyncPaymentProcessor.charge(failing)).willAnswer(invocation -> {
+            failing.setStatus(PaymentStatus.FAILED);
+            return true;
+        });
+
+        // When
+        pendingPaymentSweeper.sweep();
+
+        // Then
+        then(paymentJdbcRepository).should(times(2)).claimPending(any(), any(), any(), anyInt());
+        then(paymentIdempotencyService).should().settle(1L, true);
+        then(paymentIdempotencyService).should().settle(2L, false);
+        assertThat(meterRegistry.get("payment.sweeper.charged").functionCounter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void testShouldKeepKeyClaimedWhenOutcomeIsStillUnknown() {
+        // Given
+        Payment payment = payment(3L);
+        given(paymentJdbcRepository.claimPending(any(), any(), any(), anyInt())).willReturn(List.of(payment));
+        given(asyncPaymentProcessor.charge(payment)).willAnswer(invocation -> {
+            payment.setStatus(PaymentStatus.UNKNOWN);
+            return true;
+        });
+
+        // When
+        int claimed = pendingPaymentSweeper.sweepBatch(NOW);
+
+        // Then
+        assertThat(claimed).isEqualTo(1);
+        then(paymentIdempotencyService).should(never()).settle(anyLong(), anyBoolean());
+    }
+
+    private static Payment payment(Long paymentId) {
+        Payment payment = new Payment(
+                paymentId, UUID.randomUUID(), Money.parse("10.00", Currency.EUR), "tok_visa", "Stale");
+        payment.setStatus(PaymentStatus.PENDING);
+        return payment;
+    }
+}
@@ -0,0 +1,50 @@
+package com.study.springboottuttorialjpa.payment.stripe;
+
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.general.Money;
+import com.study.springboottuttorialjpa.payment.CardPaymentCharge;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MockStripeServiceTest {
+
+    private static final Money AMOUNT = Money.parse("10.00", Currency.EUR);
+
+    private final AtomicLong nanoClock = new AtomicLong();
+
+    // Class to be tested: remembers at most 10 idempotency keys.
+    private final MockStripeService mockStripeService = new MockStripeService(0, 10, nanoClock::get);
+
+    @Test
+    void testShouldReturnSameChargeForSameIdempotencyKeyUntilItExpires() {
+        // Given
+        CardPaymentCharge first = mockStripeService.chargeCard("tok_visa", AMOUNT, "First", "key-1");
+
+        // When
+        CardPaymentCharge repeated = mockStripeService.chargeCard("tok_visa", AMOUNT, "First", "key-1");
+        nanoClock.addAndGet(TimeUnit.HOURS.toNanos(24));
+        CardPaymentCharge afterExpiry = mockStripeService.chargeCard("tok_visa", AMOUNT, "First", "key-1");
+
+        // Then
+        assertThat(repeated.getChargeId()).isEqualTo(first.getChargeId());
+        assertThat(afterExpiry.getChargeId()).isNotEqualTo(first.getChargeId());
+        assertThat(mockStripeService.lookupChargesByIdempotencyKey(List.of("key-1")))
+                .containsOnlyKeys("key-1");
+    }
+
+    @Test
+    void testShouldKeepIdempotencyKeysUnderMaximumSize() {
+        // When
+        for (int i = 0; i < 100; i++) {
+            mockStripeService.chargeCard("tok_visa", AMOUNT, "Payment " + i, "key-" + i);
+        }
+
+        // Then
+        assertThat(mockStripeService.idempotencyKeyCount()).isLessThanOrEqualTo(10);
+    }
+}
@@ -0,0 +1,93 @@
+package com.study.springboottuttorialjpa.payment.stripe;
+
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Charge;
+import com.stripe.net.RequestOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * StripeApi on PooledStripeHttpClient against the local StripeStub.
+ */
+class StripeApiTest {
+
+    private final RequestOptions requestOptions = RequestOptions.builder()
+            .setApiKey("sk_test_stub")
+            .build();
+
+    private StripeStub stripeStub;
+    private PooledStripeHttpClient httpClient;
+
+    // Class to be tested.
+    private StripeApi stripeApi;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stripeStub = new StripeStub();
+        httpClient = new PooledStripeHttpClient(4, 1000, 1000, 5000, 30000);
+        stripeApi = new StripeApi(httpClient, stripeStub.getApiBase());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        httpClient.close();
+        stripeStub.close();
+    }
+
+    @Test
+    void testShouldChargeThroughConfiguredApiBase() throws StripeException {
+        // Given
+        Map<String, Object> params = new HashMap<>();
+        params.put("amount", 1000);
+        params.put("currency", "eur");
+        params.put("source", "tok_visa");
+
+        // When
+        Charge charge = stripeApi.create(params, requestOptions);
+
+        // Then
+        assertThat(charge.getPaid()).isTrue();
+        assertThat(charge.getId()).isEqualTo("ch_1");
+        assertThat(stripeStub.getLastRequestBody())
+                .contains("amount=1000")
+                .contains("currency=eur")
+                .contains("source=tok_visa");
+    }
+
+    @Test
+    void testShouldReuseConnection() throws StripeException {
+        // When
+        for (int i = 0; i < 20; i++) {
+            stripeApi.create(new HashMap<>(), requestOptions);
+        }
+
+        // Then
+        assertThat(stripeStub.getRequestCount()).isEqualTo(20);
+        assertThat(stripeStub.getConnectionCount()).isEqualTo(1);
+        assertThat(httpClient.leasedConnections()).isZero();
+        assertThat(httpClient.availableConnections()).isEqualTo(1);
+    }
+
+    @Test
+    void testShouldThrowApiConnectionExceptionWhenUnreachable() {
+        // Given
+        String apiBase = stripeStub.getApiBase();
+        stripeStub.close();
+        StripeApi unreachable = new StripeApi(httpClient, apiBase);
+
+        // When
+        // Then
+        assertThatThrownBy(() -> unreachable.create(new HashMap<>(), requestOptions))
+                .isInstanceOf(ApiConnectionException.class)
+                .hasMessageContaining(apiBase);
+    }
+}
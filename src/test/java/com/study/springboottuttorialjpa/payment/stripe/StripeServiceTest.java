@@ -1,10 +1,16 @@
 package com.study.springboottuttorialjpa.payment.stripe;
 
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.InvalidRequestException;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Charge;
 import com.stripe.net.RequestOptions;
 import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.general.Money;
 import com.study.springboottuttorialjpa.payment.CardPaymentCharge;
+import com.study.springboottuttorialjpa.payment.CardPaymentChargerUnavailableException;
+import com.study.springboottuttorialjpa.payment.CardPaymentRefusedException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -13,15 +19,18 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 class StripeServiceTest {
@@ -41,8 +50,7 @@ class StripeServiceTest {
     void testShouldChargeCard() throws StripeException {
         // Given
         String cardSource = "0x0x0x";
-        BigDecimal amount = new BigDecimal("10.00");
-        Currency currency = Currency.USD;
+        Money amount = Money.parse("10.00", Currency.USD);
         String description = "Zakat";
 
         Charge charge = new Charge();
@@ -51,7 +59,7 @@ class StripeServiceTest {
 
         // When
         // We are trying to make a network call.
-        CardPaymentCharge cardPaymentCharge = stripeService.chargeCard(cardSource, amount, currency, description);
+        CardPaymentCharge cardPaymentCharge = stripeService.chargeCard(cardSource, amount, description, "payment-42");
 
         // Then
         ArgumentCaptor<Map<String, Object>> mapArgumentCaptor = ArgumentCaptor.forClass(Map.class);
@@ -60,12 +68,15 @@ class StripeServiceTest {
         then(stripeApi).should().create(mapArgumentCaptor.capture(), optionsArgumentCaptor.capture());
 
         Map<String, Object> requestMap = mapArgumentCaptor.getValue();
-        assertThat(requestMap.keySet()).hasSize(4);
+        assertThat(requestMap.keySet()).hasSize(5);
         assertThat(requestMap)
-                .containsEntry("amount", amount)
-                .containsEntry("currency", currency)
+                // In cents.
+                .containsEntry("amount", 1000L)
+                .containsEntry("currency", "usd")
                 .containsEntry("source", cardSource)
                 .containsEntry("description", description)
+                // For the lookup of a charge whose outcome is not known.
+                .containsEntry("metadata", Map.of("idempotency_key", "payment-42"))
         ;
 
         RequestOptions requestOptions = optionsArgumentCaptor.getValue();
@@ -73,27 +84,116 @@ class StripeServiceTest {
         // In the real world the value would vary.
         // We cannot really test whether it would work.
         assertThat(requestOptions).isNotNull();
+        // A retry of the same payment is the same charge for Stripe.
+        assertThat(requestOptions.getIdempotencyKey()).isEqualTo("payment-42");
         assertThat(cardPaymentCharge).isNotNull();
         assertThat(cardPaymentCharge.isCardDebited()).isTrue();
     }
 
     @Test
-    void testShouldNotChargeWhenThrowsException() throws StripeException {
+    void testShouldNotChargeWhenCardIsDeclined() throws StripeException {
         // Given
-        String cardSource = "0x0x0x";
-        BigDecimal amount = new BigDecimal("10.00");
-        Currency currency = Currency.USD;
-        String description = "Zakat";
+        Money amount = Money.parse("10.00", Currency.USD);
+        CardException declined = new CardException(
+                "Your card was declined", "req_1", "card_declined", null, "generic_decline", null, 402, null);
+        doThrow(declined).when(stripeApi).create(anyMap(), any());
+
+        // When
+        // Then
+        assertThatThrownBy(() -> stripeService.chargeCard("0x0x0x", amount, "Zakat", "payment-42"))
+                .isInstanceOf(CardPaymentRefusedException.class)
+                .hasRootCause(declined)
+                .hasMessageContaining("Cannot make stripe charge");
+    }
+
+    @Test
+    void testShouldReportUnknownOutcomeWhenConnectionFails() throws StripeException {
+        // Given
+        Money amount = Money.parse("10.00", Currency.USD);
+        // E.g. a read timeout after Stripe got the request: the charge may have gone through.
+        ApiConnectionException connectionFailure = new ApiConnectionException("Read timed out");
+        doThrow(connectionFailure).when(stripeApi).create(anyMap(), any());
 
         // When
-        // Throw an exception when stripeApi is called.
+        // Then
+        assertThatThrownBy(() -> stripeService.chargeCard("0x0x0x", amount, "Zakat", "payment-42"))
+                .isInstanceOfSatisfying(CardPaymentChargerUnavailableException.class,
+                        e -> assertThat(e.isTimeout()).isTrue())
+                .hasRootCause(connectionFailure);
+    }
+
+    @Test
+    void testShouldReportUnknownOutcomeWhenStripeFails() throws StripeException {
+        // Given
+        Money amount = Money.parse("10.00", Currency.USD);
         StripeException stripeException = mock(StripeException.class);
         doThrow(stripeException).when(stripeApi).create(anyMap(), any());
 
+        // When
         // Then
-        assertThatThrownBy(() -> stripeService.chargeCard(cardSource, amount, currency, description))
-                .isInstanceOf(IllegalStateException.class)
+        assertThatThrownBy(() -> stripeService.chargeCard("0x0x0x", amount, "Zakat", "payment-42"))
+                .isInstanceOfSatisfying(CardPaymentChargerUnavailableException.class,
+                        e -> assertThat(e.isTimeout()).isTrue())
                 .hasRootCause(stripeException)
                 .hasMessageContaining("Cannot make stripe charge");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testShouldLookUpChargesAndLeaveOutUnknownOnes() throws StripeException {
+        // Given
+        given(stripeApi.retrieve(eq("ch_1"), any())).willReturn(charge("ch_1", true, false));
+        given(stripeApi.retrieve(eq("ch_2"), any())).willReturn(charge("ch_2", true, true));
+        given(stripeApi.retrieve(eq("ch_3"), any()))
+                .willThrow(new InvalidRequestException("No such charge", null, "req_1", null, 404, null));
+
+        // When
+        List<CardPaymentCharge> charges = stripeService.lookupCharges(List.of("ch_1", "ch_2", "ch_3"));
+
+        // Then
+        assertThat(charges).hasSize(2);
+        assertThat(charges.get(0).getChargeId()).isEqualTo("ch_1");
+        assertThat(charges.get(0).isCardDebited()).isTrue();
+        assertThat(charges.get(0).getAmount()).isEqualTo(Money.parse("10.00", Currency.USD));
+        // Refunded.
+        assertThat(charges.get(1).isCardDebited()).isFalse();
+    }
+
+    @Test
+    void testShouldLookUpChargesByIdempotencyKeyTenKeysPerSearch() throws StripeException {
+        // Given
+        List<String> keys = new ArrayList<>();
+        for (int i = 1; i <= 11; i++) {
+            keys.add("payment-" + i);
+        }
+        Charge charge = charge("ch_1", true, false);
+        charge.setMetadata(Map.of("idempotency_key", "payment-1"));
+        ChargeSearchResult first = new ChargeSearchResult();
+        first.setData(List.of(charge));
+        ChargeSearchResult second = new ChargeSearchResult();
+        second.setData(List.of());
+        given(stripeApi.search(any(), eq(100), any())).willReturn(first, second);
+
+        // When
+        Map<String, CardPaymentCharge> charges = stripeService.lookupChargesByIdempotencyKey(keys);
+
+        // Then
+        ArgumentCaptor<String> queries = ArgumentCaptor.forClass(String.class);
+        then(stripeApi).should(times(2)).search(queries.capture(), eq(100), any());
+        assertThat(queries.getAllValues().get(0))
+                .startsWith("metadata['idempotency_key']:'payment-1' OR metadata['idempotency_key']:'payment-2'")
+                .endsWith("metadata['idempotency_key']:'payment-10'");
+        assertThat(queries.getAllValues().get(1)).isEqualTo("metadata['idempotency_key']:'payment-11'");
+        assertThat(charges).containsOnlyKeys("payment-1");
+        assertThat(charges.get("payment-1").getChargeId()).isEqualTo("ch_1");
+    }
+
+    private static Charge charge(String id, boolean paid, boolean refunded) {
+        Charge charge = new Charge();
+        charge.setId(id);
+        charge.setPaid(paid);
+        charge.setRefunded(refunded);
+        charge.setAmount(1000L);
+        charge.setCurrency("usd");
+        return charge;
+    }
+}
@@ -0,0 +1,86 @@
+package com.study.springboottuttorialjpa.payment.stripe;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the Stripe API, in the spirit of stripe-mock: POST /v1/charges answers with a paid charge.
+ * Listens on a free port of the loopback address; use getApiBase as stripe.api-base.
+ *
+ * Counts the requests and the client connections they came in on.
+ */
+class StripeStub implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    private final Set<SocketAddress> connections = ConcurrentHashMap.newKeySet();
+    private volatile String lastRequestBody;
+
+    StripeStub() throws IOException {
+        // Without TCP_NODELAY every response waits for the delayed ACK of the client (~40 ms).
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/v1/charges", this::charge);
+        executor = Executors.newFixedThreadPool(16);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String getApiBase() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    long getRequestCount() {
+        return requests.get();
+    }
+
+    int getConnectionCount() {
+        return connections.size();
+    }
+
+    String getLastRequestBody() {
+        return lastRequestBody;
+    }
+
+    private void charge(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        connections.add(exchange.getRemoteAddress());
+        try (InputStream body = exchange.getRequestBody()) {
+            lastRequestBody = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            return;
+        }
+        byte[] response = String.format(
+                "{\"id\": \"ch_%d\", \"object\": \"charge\", \"paid\": true, \"status\": \"succeeded\"}",
+                requests.get()).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Request-Id", "req_stub");
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
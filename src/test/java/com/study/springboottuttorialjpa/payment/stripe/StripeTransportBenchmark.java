@@ -0,0 +1,99 @@
+package com.study.springboottuttorialjpa.payment.stripe;
+
+import com.stripe.exception.StripeException;
+import com.stripe.model.Charge;
+import com.stripe.net.LiveStripeResponseGetter;
+import com.stripe.net.RequestOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Charges per second through StripeApi against the local StripeStub, on PooledStripeHttpClient versus the
+ * default transport of stripe-java (HttpURLConnectionClient), with 16 threads charging at the same time.
+ *
+ * Run via the main method, e.g. from the IDE, or:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) com.study.springboottuttorialjpa.payment.stripe.StripeTransportBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class StripeTransportBenchmark {
+
+    @Param({"pooled", "default"})
+    private String transport;
+
+    private final RequestOptions requestOptions = RequestOptions.builder()
+            .setApiKey("sk_test_stub")
+            .build();
+
+    private StripeStub stripeStub;
+    private PooledStripeHttpClient httpClient;
+    private StripeApi stripeApi;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // Outside of Spring Boot logback logs everything at DEBUG, including every request of HttpClient.
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME))
+                .setLevel(ch.qos.logback.classic.Level.INFO);
+        stripeStub = new StripeStub();
+        if ("pooled".equals(transport)) {
+            httpClient = new PooledStripeHttpClient(16, 1000, 1000, 5000, 30000);
+            stripeApi = new StripeApi(httpClient, stripeStub.getApiBase());
+        } else {
+            stripeApi = new StripeApi(new LiveStripeResponseGetter(), stripeStub.getApiBase());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.out.printf("%n%s transport: %d charges over %d connections%n",
+                transport, stripeStub.getRequestCount(), stripeStub.getConnectionCount());
+        if (httpClient != null) {
+            httpClient.close();
+        }
+        stripeStub.close();
+    }
+
+    @Benchmark
+    public Charge charge() throws StripeException {
+        Map<String, Object> params = new HashMap<>();
+        params.put("amount", 1000);
+        params.put("currency", "eur");
+        params.put("source", "tok_visa");
+        return stripeApi.create(params, requestOptions);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StripeTransportBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,122 @@
+package com.study.springboottuttorialjpa.ratelimit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitFilterTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    // Class to be tested: a burst of 1 per client, refilled every 2.5 seconds; the status reads have a limit of
+    // their own.
+    private RateLimitFilter rateLimitFilter;
+
+    @BeforeEach
+    void setUp() {
+        rateLimitFilter = new RateLimitFilter(List.of(
+                new RateLimitFilter.Endpoint("GET", "/api/v1/payment/status-reads",
+                        new TokenBucketRateLimiter("payment-read", 1, 0.4, now::get)),
+                new RateLimitFilter.Endpoint("/api/v1/payment",
+                        new TokenBucketRateLimiter("payment", 1, 0.4, now::get))));
+    }
+
+    @Test
+    void testShouldRefuseWith429AndRetryAfterOverLimit() throws ServletException, IOException {
+        // Given
+        MockHttpServletResponse first = filter(request("POST", "/api/v1/payment", "10.0.0.1"));
+
+        // When
+        MockHttpServletResponse second = filter(request("POST", "/api/v1/payment", "10.0.0.1"));
+
+        // Then
+        assertThat(first.getStatus()).isEqualTo(200);
+        assertThat(second.getStatus()).isEqualTo(429);
+        assertThat(second.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("3");
+        // Another client IP.
+        assertThat(filter(request("POST", "/api/v1/payment", "10.0.0.2")).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void testShouldLimitPerIpWhateverCustomerRequestNames() throws ServletException, IOException {
+        // Given
+        MockHttpServletRequest first = request("GET", "/api/v1/payment", "10.0.0.1");
+        first.addParameter("customerId", UUID.randomUUID().toString());
+        assertThat(filter(first).getStatus()).isEqualTo(200);
+
+        // When
+        // Then
+        // Another customer from the same IP.
+        MockHttpServletRequest second = request("GET", "/api/v1/payment", "10.0.0.1");
+        second.addParameter("customerId", UUID.randomUUID().toString());
+        assertThat(filter(second).getStatus()).isEqualTo(429);
+        assertThat(filter(request("GET", "/api/v1/payment/customer/" + UUID.randomUUID() + "/totals", "10.0.0.1"))
+                .getStatus()).isEqualTo(429);
+    }
+
+    @Test
+    void testShouldLimitAuthenticatedUserAcrossIps() throws ServletException, IOException {
+        // Given
+        MockHttpServletRequest first = request("POST", "/api/v1/payment", "10.0.0.1");
+        first.setUserPrincipal(() -> "alice");
+        assertThat(filter(first).getStatus()).isEqualTo(200);
+
+        // When
+        MockHttpServletRequest second = request("POST", "/api/v1/payment", "10.0.0.2");
+        second.setUserPrincipal(() -> "alice");
+
+        // Then
+        assertThat(filter(second).getStatus()).isEqualTo(429);
+        // Another user, but the IP of the first request.
+        MockHttpServletRequest third = request("POST", "/api/v1/payment", "10.0.0.1");
+        third.setUserPrincipal(() -> "bob");
+        assertThat(filter(third).getStatus()).isEqualTo(429);
+        // The refused request of alice has not used up the limit of its IP.
+        assertThat(filter(request("POST", "/api/v1/payment", "10.0.0.2")).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void testShouldLimitEndpointOfMethodApart() throws ServletException, IOException {
+        // Given
+        assertThat(filter(request("POST", "/api/v1/payment", "10.0.0.1")).getStatus()).isEqualTo(200);
+
+        // When
+        // Then
+        assertThat(filter(request("GET", "/api/v1/payment/status-reads", "10.0.0.1")).getStatus()).isEqualTo(200);
+        assertThat(filter(request("GET", "/api/v1/payment/status-reads", "10.0.0.1")).getStatus()).isEqualTo(429);
+        // Another method on the same path falls through to the next endpoint.
+        assertThat(filter(request("POST", "/api/v1/payment/status-reads", "10.0.0.1")).getStatus()).isEqualTo(429);
+    }
+
+    @Test
+    void testShouldNotLimitOtherPaths() throws ServletException, IOException {
+        // When
+        // Then
+        for (int i = 0; i < 3; i++) {
+            assertThat(filter(request("GET", "/api/v1/payment-export", "10.0.0.1")).getStatus()).isEqualTo(200);
+        }
+    }
+
+    private MockHttpServletResponse filter(MockHttpServletRequest request) throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        rateLimitFilter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String method, String path, String remoteAddress) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setRemoteAddr(remoteAddress);
+        return request;
+    }
+}
@@ -0,0 +1,66 @@
+package com.study.springboottuttorialjpa.ratelimit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of TokenBucketRateLimiter.tryAcquire per request, with one client and with many, on 4 threads.
+ * A limit this high never refuses, so every call takes the compare-and-set path.
+ *
+ * Run via the main method, e.g. from the IDE, or:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) com.study.springboottuttorialjpa.ratelimit.TokenBucketRateLimiterBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class TokenBucketRateLimiterBenchmark {
+
+    private final TokenBucketRateLimiter limiter = new TokenBucketRateLimiter("benchmark", 1_000_000, 1e9);
+
+    private String[] clients;
+
+    @Setup
+    public void setUp() {
+        clients = new String[10_000];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = "ip:10.0." + (i / 256) + "." + (i % 256);
+        }
+    }
+
+    @Benchmark
+    public long sameClient() {
+        return limiter.tryAcquire(clients[0]);
+    }
+
+    @Benchmark
+    public long manyClients() {
+        return limiter.tryAcquire(clients[ThreadLocalRandom.current().nextInt(clients.length)]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TokenBucketRateLimiterBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,149 @@
+package com.study.springboottuttorialjpa.ratelimit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenBucketRateLimiterTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong(1_000 * MILLIS);
+
+    // Class to be tested: a burst of 3, refilled at 10 per second (one token per 100 ms).
+    private TokenBucketRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new TokenBucketRateLimiter("test", 3, 10, now::get);
+    }
+
+    @Test
+    void testShouldAllowBurstOfCapacityAndThenRefuseUntilRefilled() {
+        // When
+        // Then
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isEqualTo(100 * MILLIS);
+        // Another client has a bucket of its own.
+        assertThat(limiter.tryAcquire("b")).isZero();
+
+        now.addAndGet(40 * MILLIS);
+        assertThat(limiter.tryAcquire("a")).isEqualTo(60 * MILLIS);
+        now.addAndGet(60 * MILLIS);
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isPositive();
+
+        assertThat(limiter.allowedCount()).isEqualTo(5);
+        assertThat(limiter.rejectedCount()).isEqualTo(3);
+    }
+
+    @Test
+    void testShouldTakeTokenFromBothBucketsOrNeither() {
+        // Given
+        limiter.tryAcquire("user");
+        limiter.tryAcquire("user");
+        limiter.tryAcquire("user");
+
+        // When
+        long waitNanos = limiter.tryAcquire("ip", "user");
+
+        // Then
+        assertThat(waitNanos).isEqualTo(100 * MILLIS);
+        // Still the full burst for the first bucket.
+        assertThat(limiter.tryAcquire("ip", "other")).isZero();
+        assertThat(limiter.tryAcquire("ip")).isZero();
+        assertThat(limiter.tryAcquire("ip")).isZero();
+        assertThat(limiter.tryAcquire("ip")).isPositive();
+        assertThat(limiter.allowedCount()).isEqualTo(6);
+        assertThat(limiter.rejectedCount()).isEqualTo(2);
+    }
+
+    @Test
+    void testShouldNotRefillBeyondCapacity() {
+        // Given
+        limiter.tryAcquire("a");
+        // When
+        now.addAndGet(10_000 * MILLIS);
+        // Then
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isZero();
+        assertThat(limiter.tryAcquire("a")).isPositive();
+    }
+
+    @Test
+    void testShouldEvictOnlyFullBuckets() {
+        // Given
+        limiter.tryAcquire("a");
+        now.addAndGet(50 * MILLIS);
+        limiter.tryAcquire("b");
+        now.addAndGet(50 * MILLIS);
+
+        // When
+        int evicted = limiter.evictIdle();
+
+        // Then
+        // a is full again, b still misses half a token.
+        assertThat(evicted).isEqualTo(1);
+        assertThat(limiter.size()).isEqualTo(1);
+        assertThat(limiter.evictionCount()).isEqualTo(1);
+        limiter.tryAcquire("b");
+        limiter.tryAcquire("b");
+        assertThat(limiter.tryAcquire("b")).isEqualTo(50 * MILLIS);
+    }
+
+    @Test
+    void testShouldNotAllowMoreThanCapacityFromConcurrentRequests() throws InterruptedException {
+        // Given
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger allowed = new AtomicInteger();
+
+        // When
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < 1_000; j++) {
+                        if (limiter.tryAcquire("a") == 0) {
+                            allowed.incrementAndGet();
+                        }
+                        if (j % 100 == 0) {
+                            limiter.evictIdle();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        // Then
+        // The clock stands still: there are no refills.
+        assertThat(allowed.get()).isEqualTo(3);
+        assertThat(limiter.allowedCount() + limiter.rejectedCount()).isEqualTo(threads * 1_000L);
+    }
+
+    @Test
+    void testShouldRejectInvalidLimits() {
+        assertThatThrownBy(() -> new TokenBucketRateLimiter("test", 0, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TokenBucketRateLimiter("test", 10, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
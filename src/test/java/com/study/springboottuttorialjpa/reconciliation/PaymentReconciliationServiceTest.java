@@ -0,0 +1,240 @@
+package com.study.springboottuttorialjpa.reconciliation;
+
+import com.stripe.exception.StripeException;
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import com.study.springboottuttorialjpa.enums.ReconciliationMismatchReason;
+import com.study.springboottuttorialjpa.general.Money;
+import com.study.springboottuttorialjpa.payment.CardPaymentCharge;
+import com.study.springboottuttorialjpa.payment.CardPaymentCharger;
+import com.study.springboottuttorialjpa.payment.CardPaymentChargerUnavailableException;
+import com.study.springboottuttorialjpa.payment.Payment;
+import com.study.springboottuttorialjpa.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+class PaymentReconciliationServiceTest {
+
+    private static final int CHUNK_SIZE = 2;
+    private static final int LOOKUP_BATCH_SIZE = 2;
+    private static final Instant NOW = Instant.parse("2026-10-18T02:00:00Z");
+    private static final Duration RUN_DELAY = Duration.ofMinutes(60);
+    // The payments created up to RUN_DELAY before NOW.
+    private static final long RUN_TO = SnowflakeIdGenerator.firstIdAt(NOW.minus(RUN_DELAY).toEpochMilli());
+
+    @Mock
+    private PaymentReconciliationRepository paymentReconciliationRepository;
+    @Mock
+    private CardPaymentCharger cardPaymentCharger;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    // Class to be tested.
+    private PaymentReconciliationService paymentReconciliationService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        paymentReconciliationService = new PaymentReconciliationService(
+                paymentReconciliationRepository, cardPaymentCharger, transactionManager,
+                CHUNK_SIZE, 2,
+                LOOKUP_BATCH_SIZE, RUN_DELAY, Clock.fixed(NOW, ZoneOffset.UTC));
+        given(paymentReconciliationRepository.completeChunk(anyLong(), anyInt(), anyInt(), any())).willReturn(1);
+    }
+
+    @Test
+    void testShouldStartFirstRunWithChunksUpToRunDelayAgo() {
+        // Given
+        given(paymentReconciliationRepository.selectUnfinishedRunId()).willReturn(null);
+        given(paymentReconciliationRepository.selectReconciledUpTo()).willReturn(null);
+        given(paymentReconciliationRepository.selectChunkBoundaries(CHUNK_SIZE, 0L, RUN_TO))
+                .willReturn(List.of(10L, 30L));
+
+        // When
+        PaymentReconciliationResult result = paymentReconciliationService.reconcile().orElseThrow();
+
+        // Then
+        ArgumentCaptor<List<PaymentReconciliationChunk>> chunks = ArgumentCaptor.forClass(List.class);
+        then(paymentReconciliationRepository).should().insertChunks(chunks.capture());
+        assertThat(chunks.getValue())
+                .extracting(PaymentReconciliationChunk::getFromPaymentId, PaymentReconciliationChunk::getToPaymentId)
+                .containsExactly(tuple(10L, 30L), tuple(30L, RUN_TO));
+        assertThat(chunks.getValue()).allMatch(chunk -> chunk.getRunId() == NOW.toEpochMilli());
+        assertThat(result.getRunId()).isEqualTo(NOW.toEpochMilli());
+        then(paymentReconciliationRepository).should().selectPendingChunks(NOW.toEpochMilli());
+    }
+
+    @Test
+    void testShouldStartRunAfterPreviousRun() {
+        // Given
+        long previousTo = SnowflakeIdGenerator.firstIdAt(NOW.minus(Duration.ofDays(1)).toEpochMilli());
+        given(paymentReconciliationRepository.selectUnfinishedRunId()).willReturn(null);
+        given(paymentReconciliationRepository.selectReconciledUpTo()).willReturn(previousTo);
+        given(paymentReconciliationRepository.selectChunkBoundaries(CHUNK_SIZE, previousTo, RUN_TO))
+                .willReturn(List.of(previousTo + 5));
+
+        // When
+        paymentReconciliationService.reconcile().orElseThrow();
+
+        // Then
+        ArgumentCaptor<List<PaymentReconciliationChunk>> chunks = ArgumentCaptor.forClass(List.class);
+        then(paymentReconciliationRepository).should().insertChunks(chunks.capture());
+        assertThat(chunks.getValue())
+                .extracting(PaymentReconciliationChunk::getFromPaymentId, PaymentReconciliationChunk::getToPaymentId)
+                .containsExactly(tuple(previousTo + 5, RUN_TO));
+    }
+
+    @Test
+    void testShouldSkipWhenAlreadyReconciling() {
+        // Given
+        AtomicReference<Optional<PaymentReconciliationResult>> overlapping = new AtomicReference<>();
+        given(paymentReconciliationRepository.selectUnfinishedRunId()).willAnswer(invocation -> {
+            overlapping.set(paymentReconciliationService.reconcile());
+            return 7L;
+        });
+
+        // When
+        Optional<PaymentReconciliationResult> result = paymentReconciliationService.reconcile();
+
+        // Then
+        assertThat(result).isPresent();
+        assertThat(overlapping.get()).isEmpty();
+        then(paymentReconciliationRepository).should().selectUnfinishedRunId();
+    }
+
+    @Test
+    void testShouldResumeUnfinishedRunAndReportMismatches() throws StripeException {
+        // Given
+        given(paymentReconciliationRepository.selectUnfinishedRunId()).willReturn(7L);
+        given(paymentReconciliationRepository.selectPendingChunks(7L)).willReturn(List.of(chunk(1L, 10L, 20L)));
+        given(paymentReconciliationRepository.selectPayments(10L, 20L)).willReturn(List.of(
+                payment(11L, "ch_11", "10.00", PaymentStatus.SUCCEEDED),
+                payment(12L, "ch_12", "10.00", PaymentStatus.SUCCEEDED),
+                payment(13L, "ch_13", "10.00", PaymentStatus.SUCCEEDED),
+                payment(14L, null, "10.00", PaymentStatus.SUCCEEDED)));
+        given(cardPaymentCharger.lookupCharges(List.of("ch_11", "ch_12"))).willReturn(List.of(
+                charge("ch_11", true, "10.00"),
+                charge("ch_12", true, "12.00")));
+        // ch_13 is unknown.
+        given(cardPaymentCharger.lookupCharges(List.of("ch_13"))).willReturn(List.of());
+
+        // When
+        PaymentReconciliationResult result = paymentReconciliationService.reconcile().orElseThrow();
+
+        // Then
+        then(paymentReconciliationRepository).should(never()).insertChunks(any());
+        assertThat(result.getRunId()).isEqualTo(7L);
+        assertThat(result.getChunks()).isEqualTo(1);
+        assertThat(result.getPayments()).isEqualTo(4);
+        assertThat(result.getMismatches()).isEqualTo(3);
+        ArgumentCaptor<List<PaymentReconciliationMismatch>> mismatches = ArgumentCaptor.forClass(List.class);
+        then(paymentReconciliationRepository).should().insertMismatches(mismatches.capture());
+        assertThat(mismatches.getValue())
+                .extracting(PaymentReconciliationMismatch::getPaymentId, PaymentReconciliationMismatch::getReason)
+                .containsExactly(
+                        tuple(12L, ReconciliationMismatchReason.AMOUNT_DIFFERS),
+                        tuple(13L, ReconciliationMismatchReason.CHARGE_NOT_FOUND),
+                        tuple(14L, ReconciliationMismatchReason.MISSING_CHARGE_ID));
+        then(paymentReconciliationRepository).should().completeChunk(1L, 4, 3, NOW);
+    }
+
+    @Test
+    void testShouldLeaveChunkPendingWhenLookupFails() throws StripeException {
+        // Given
+        given(paymentReconciliationRepository.selectUnfinishedRunId()).willReturn(7L);
+        given(paymentReconciliationRepository.selectPendingChunks(7L))
+                .willReturn(List.of(chunk(1L, 10L, 20L), chunk(2L, 20L, 30L)));
+        given(paymentReconciliationRepository.selectPayments(10L, 20L))
+                .willReturn(List.of(payment(11L, "ch_11", "10.00", PaymentStatus.SUCCEEDED)));
+        given(paymentReconciliationRepository.selectPayments(20L, 30L))
+                .willReturn(List.of(payment(21L, "ch_21", "10.00", PaymentStatus.SUCCEEDED)));
+        given(cardPaymentCharger.lookupCharges(List.of("ch_11")))
+                .willThrow(new CardPaymentChargerUnavailableException("open", false));
+        given(cardPaymentCharger.lookupCharges(List.of("ch_21")))
+                .willReturn(List.of(charge("ch_21", true, "10.00")));
+
+        // When
+        PaymentReconciliationResult result = paymentReconciliationService.reconcile().orElseThrow();
+
+        // Then
+        assertThat(result.getChunks()).isEqualTo(2);
+        assertThat(result.getFailedChunks()).isEqualTo(1);
+        assertThat(result.getPayments()).isEqualTo(1);
+        assertThat(result.getMismatches()).isZero();
+        then(paymentReconciliationRepository).should(never()).completeChunk(eq(1L), anyInt(), anyInt(), any());
+        then(paymentReconciliationRepository).should().completeChunk(2L, 1, 0, NOW);
+    }
+
+    @Test
+    void testShouldNotReportMismatchesOfChunkCompletedByOverlappingRun() throws StripeException {
+        // Given
+        given(paymentReconciliationRepository.selectUnfinishedRunId()).willReturn(7L);
+        given(paymentReconciliationRepository.selectPendingChunks(7L)).willReturn(List.of(chunk(1L, 10L, 20L)));
+        given(paymentReconciliationRepository.selectPayments(10L, 20L))
+                .willReturn(List.of(payment(11L, "ch_11", "10.00", PaymentStatus.SUCCEEDED)));
+        given(cardPaymentCharger.lookupCharges(List.of("ch_11"))).willReturn(List.of());
+        given(paymentReconciliationRepository.completeChunk(anyLong(), anyInt(), anyInt(), any())).willReturn(0);
+
+        // When
+        PaymentReconciliationResult result = paymentReconciliationService.reconcile().orElseThrow();
+
+        // Then
+        assertThat(result.getMismatches()).isZero();
+        then(paymentReconciliationRepository).should(never()).insertMismatches(any());
+    }
+
+    @Test
+    void testShouldReportDebitedCardOfFailedPayment() {
+        // When
+        PaymentReconciliationMismatch mismatch = PaymentReconciliationService.compare(
+                7L, payment(11L, "ch_11", "10.00", PaymentStatus.FAILED), charge("ch_11", true, "10.00"), NOW);
+
+        // Then
+        assertThat(mismatch.getReason()).isEqualTo(ReconciliationMismatchReason.DEBITED_NOT_SUCCEEDED);
+        assertThat(mismatch.getPayment()).isEqualTo("FAILED 10.00 USD");
+        assertThat(mismatch.getCharge()).isEqualTo("debited 10.00 USD");
+        assertThat(PaymentReconciliationService.compare(
+                7L, payment(12L, "ch_12", "10.00", PaymentStatus.SUCCEEDED), charge("ch_12", false, "10.00"), NOW)
+                .getReason()).isEqualTo(ReconciliationMismatchReason.NOT_DEBITED);
+        assertThat(PaymentReconciliationService.compare(
+                7L, payment(13L, "ch_13", "10.00", PaymentStatus.SUCCEEDED), charge("ch_13", true, "10.00"), NOW))
+                .isNull();
+    }
+
+    private static PaymentReconciliationChunk chunk(long chunkId, long from, long to) {
+        return new PaymentReconciliationChunk(chunkId, 7L, from, to, null, 0, 0);
+    }
+
+    private static Payment payment(long paymentId, String chargeId, String amount, PaymentStatus status) {
+        Payment payment = new Payment(paymentId, null, Money.parse(amount, Currency.USD), null, null);
+        payment.setChargeId(chargeId);
+        payment.setStatus(status);
+        return payment;
+    }
+
+    private static CardPaymentCharge charge(String chargeId, boolean debited, String amount) {
+        return new CardPaymentCharge(debited, chargeId, Money.parse(amount, Currency.USD));
+    }
+}
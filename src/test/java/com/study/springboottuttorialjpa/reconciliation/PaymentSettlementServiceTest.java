@@ -0,0 +1,150 @@
+package com.study.springboottuttorialjpa.reconciliation;
+
+import com.stripe.exception.StripeException;
+import com.study.springboottuttorialjpa.enums.Currency;
+import com.study.springboottuttorialjpa.enums.PaymentStatus;
+import com.study.springboottuttorialjpa.general.Money;
+import com.study.springboottuttorialjpa.payment.CardPaymentCharge;
+import com.study.springboottuttorialjpa.payment.CardPaymentCharger;
+import com.study.springboottuttorialjpa.payment.CardPaymentChargerUnavailableException;
+import com.study.springboottuttorialjpa.payment.Payment;
+import com.study.springboottuttorialjpa.payment.PaymentIdempotencyService;
+import com.study.springboottuttorialjpa.payment.PaymentRecorder;
+import com.study.springboottuttorialjpa.payment.PaymentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+
+class PaymentSettlementServiceTest {
+
+    private static final Instant NOW = Instant.parse("2026-10-18T02:00:00Z");
+    private static final Duration SETTLE_AFTER = Duration.ofMinutes(10);
+
+    @Mock
+    private PaymentRepository paymentRepository;
+    @Mock
+    private PaymentRecorder paymentRecorder;
+    @Mock
+    private PaymentIdempotencyService paymentIdempotencyService;
+    @Mock
+    private CardPaymentCharger cardPaymentCharger;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    // Class to be tested.
+    private PaymentSettlementService paymentSettlementService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        paymentSettlementService = new PaymentSettlementService(
+                paymentRepository, paymentRecorder, paymentIdempotencyService, cardPaymentCharger,
+                transactionManager, SETTLE_AFTER, 10, Clock.fixed(NOW, ZoneOffset.UTC));
+        given(paymentRecorder.updateStatus(any(), any(), any())).willReturn(true);
+    }
+
+    @Test
+    void testShouldSettlePaymentsByTheirChargeAtTheProcessor() throws StripeException {
+        // Given
+        Payment debited = payment(11L, PaymentStatus.UNKNOWN);
+        Payment declined = payment(12L, PaymentStatus.UNKNOWN);
+        Payment neverCharged = payment(13L, PaymentStatus.UNKNOWN);
+        Payment notChargedYet = payment(14L, PaymentStatus.PENDING);
+        Payment chargedPending = payment(15L, PaymentStatus.PENDING);
+        given(paymentRepository.selectByStatusCreatedBefore(
+                List.of(PaymentStatus.UNKNOWN, PaymentStatus.PENDING), NOW.minus(SETTLE_AFTER), Long.MIN_VALUE,
+                PageRequest.of(0, 10)))
+                .willReturn(List.of(debited, declined, neverCharged, notChargedYet, chargedPending));
+        given(cardPaymentCharger.lookupChargesByIdempotencyKey(
+                List.of("payment-11", "payment-12", "payment-13", "payment-14", "payment-15")))
+                .willReturn(Map.of(
+                        "payment-11", charge("ch_11", true),
+                        "payment-12", charge("ch_12", false),
+                        "payment-15", charge("ch_15", true)));
+
+        // When
+        int settled = paymentSettlementService.settle();
+
+        // Then
+        assertThat(settled).isEqualTo(4);
+        then(paymentRecorder).should().updateStatus(debited, PaymentStatus.UNKNOWN, PaymentStatus.SUCCEEDED);
+        assertThat(debited.getChargeId()).isEqualTo("ch_11");
+        then(paymentIdempotencyService).should().settle(11L, true);
+        then(paymentRecorder).should().updateStatus(declined, PaymentStatus.UNKNOWN, PaymentStatus.FAILED);
+        then(paymentIdempotencyService).should().settle(12L, false);
+        // Never got to the processor.
+        then(paymentRecorder).should().updateStatus(neverCharged, PaymentStatus.UNKNOWN, PaymentStatus.FAILED);
+        then(paymentIdempotencyService).should().settle(13L, false);
+        // Not charged yet: left PENDING.
+        then(paymentRecorder).should(never()).updateStatus(eq(notChargedYet), any(), any());
+        then(paymentRecorder).should().updateStatus(chargedPending, PaymentStatus.PENDING, PaymentStatus.SUCCEEDED);
+    }
+
+    @Test
+    void testShouldNotSettleKeyOfPaymentThatGotItsOutcomeInTheMeantime() throws StripeException {
+        // Given
+        Payment payment = payment(11L, PaymentStatus.UNKNOWN);
+        given(paymentRepository.selectByStatusCreatedBefore(any(), any(), anyLong(), any()))
+                .willReturn(List.of(payment));
+        given(cardPaymentCharger.lookupChargesByIdempotencyKey(List.of("payment-11")))
+                .willReturn(Map.of("payment-11", charge("ch_11", true)));
+        given(paymentRecorder.updateStatus(any(), any(), any())).willReturn(false);
+
+        // When
+        int settled = paymentSettlementService.settle();
+
+        // Then
+        assertThat(settled).isZero();
+        then(paymentIdempotencyService).should(never()).settle(any(), anyBoolean());
+    }
+
+    @Test
+    void testShouldCountSettledPaymentsAndGoOnWhenScheduledSettlingFails() throws StripeException {
+        // Given
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        paymentSettlementService.bindTo(meterRegistry);
+        given(paymentRepository.selectByStatusCreatedBefore(any(), any(), anyLong(), any()))
+                .willReturn(List.of(payment(11L, PaymentStatus.UNKNOWN)));
+        given(cardPaymentCharger.lookupChargesByIdempotencyKey(List.of("payment-11")))
+                .willReturn(Map.of("payment-11", charge("ch_11", true)))
+                .willThrow(new CardPaymentChargerUnavailableException("open", false));
+
+        // When
+        paymentSettlementService.settleScheduled();
+        paymentSettlementService.settleScheduled();
+
+        // Then
+        then(paymentIdempotencyService).should().settle(11L, true);
+        assertThat(meterRegistry.get("payment.settlement.settled").functionCounter().count()).isEqualTo(1);
+    }
+
+    private static Payment payment(long paymentId, PaymentStatus status) {
+        Payment payment = new Payment(paymentId, null, Money.parse("10.00", Currency.USD), null, null);
+        payment.setStatus(status);
+        return payment;
+    }
+
+    private static CardPaymentCharge charge(String chargeId, boolean debited) {
+        return new CardPaymentCharge(debited, chargeId, Money.parse("10.00", Currency.USD));
+    }
+}
@@ -0,0 +1,66 @@
+package com.study.springboottuttorialjpa.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BloomFilterTest {
+
+    @Test
+    void testShouldNeverReturnFalseNegatives() {
+        // Given
+        BloomFilter bloomFilter = new BloomFilter(10_000, 0.01);
+
+        // When
+        for (int i = 0; i < 10_000; i++) {
+            bloomFilter.put("+314643" + i);
+        }
+
+        // Then
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(bloomFilter.mightContain("+314643" + i)).isTrue();
+        }
+    }
+
+    @Test
+    void testShouldKeepFalsePositiveRateNearConfiguredProbability() {
+        // Given
+        BloomFilter bloomFilter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            bloomFilter.put("+314643" + i);
+        }
+
+        // When
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (bloomFilter.mightContain("+449876" + i)) {
+                falsePositives++;
+            }
+        }
+
+        // Then
+        assertThat(falsePositives / 100_000.0).isLessThan(0.02);
+        assertThat(bloomFilter.expectedFalsePositiveProbability()).isBetween(0.005, 0.015);
+        assertThat(bloomFilter.approximateElementCount()).isBetween(9_500L, 10_500L);
+    }
+
+    @Test
+    void testShouldReportWhetherPutChangedTheFilter() {
+        // Given
+        BloomFilter bloomFilter = new BloomFilter(100, 0.01);
+
+        // When
+        // Then
+        assertThat(bloomFilter.mightContain("+31464332059")).isFalse();
+        assertThat(bloomFilter.put("+31464332059")).isTrue();
+        assertThat(bloomFilter.put("+31464332059")).isFalse();
+        assertThat(bloomFilter.mightContain("+31464332059")).isTrue();
+    }
+
+    @Test
+    void testShouldRejectInvalidSizing() {
+        assertThatThrownBy(() -> new BloomFilter(0, 0.01)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new BloomFilter(100, 1.0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,79 @@
+package com.study.springboottuttorialjpa.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PhoneNumberNormalizerTest {
+
+    private PhoneNumberNormalizer phoneNumberNormalizer;
+
+    @BeforeEach
+    void setUp() {
+        phoneNumberNormalizer = new PhoneNumberNormalizer();
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+            "+31464332059, +31464332059",
+            "+31 46 433 20 59, +31464332059",
+            "+31 (0)46-4332059, +31464332059",
+            "0031 46 433 2059, +31464332059",
+            "' +31.46.433.20.59', +31464332059",
+            "+1 (212) 555-0123, +12125550123",
+            "+44 20 7946 0018, +442079460018",
+            "+49 30 123456, +4930123456",
+            "+353 1 234 5678, +35312345678",
+            "+39 06 1234 5678, +390612345678"
+    })
+    void testShouldNormalizeToE164(String phoneNumber, String expected) {
+        // When
+        String normalized = phoneNumberNormalizer.normalize(phoneNumber);
+        // Then
+        assertThat(normalized).isEqualTo(expected);
+        assertThat(phoneNumberNormalizer.isValid(phoneNumber)).isTrue();
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+            // No international prefix.
+            "0464332059",
+            "1234567890",
+            "-314643320591",
+            // Too long / too short for NL.
+            "+314643320591234567",
+            "+3146433",
+            // Unsupported country code.
+            "+999 123456789",
+            // Letters.
+            "+31 46 433 20 5X",
+            "+",
+            "00"
+    })
+    void testShouldRejectInvalidPhoneNumbers(String phoneNumber) {
+        assertThat(phoneNumberNormalizer.normalize(phoneNumber)).isNull();
+        assertThat(phoneNumberNormalizer.isValid(phoneNumber)).isFalse();
+    }
+
+    @Test
+    void testShouldReturnSameInstanceWhenAlreadyNormalized() {
+        // Given
+        String phoneNumber = "+31464332059";
+        // When
+        // Then
+        assertThat(phoneNumberNormalizer.normalize(phoneNumber)).isSameAs(phoneNumber);
+    }
+
+    @Test
+    void testShouldNormalizeBatch() {
+        // When
+        String[] normalized = phoneNumberNormalizer.normalizeAll(Arrays.asList("+31 46 433 20 59", "000099", null));
+        // Then
+        assertThat(normalized).containsExactly("+31464332059", null, null);
+    }
+}
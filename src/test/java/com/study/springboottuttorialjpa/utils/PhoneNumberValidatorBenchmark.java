@@ -0,0 +1,80 @@
+package com.study.springboottuttorialjpa.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The original startsWith("+31") check versus PhoneNumberNormalizer.
+ * Run with the gc profiler to see the allocation per operation (gc.alloc.rate.norm).
+ *
+ * Run via the main method, e.g. from the IDE, or:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) com.study.springboottuttorialjpa.utils.PhoneNumberValidatorBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PhoneNumberValidatorBenchmark {
+
+    private final PhoneNumberNormalizer phoneNumberNormalizer = new PhoneNumberNormalizer();
+
+    private String canonical = "+31464332059";
+    private String formatted = "+31 (0)46-433 20 59";
+
+    @Benchmark
+    public boolean legacyTest() {
+        return canonical.startsWith("+31") && canonical.length() == 12;
+    }
+
+    @Benchmark
+    public boolean isValidCanonical() {
+        return phoneNumberNormalizer.isValid(canonical);
+    }
+
+    @Benchmark
+    public boolean isValidFormatted() {
+        return phoneNumberNormalizer.isValid(formatted);
+    }
+
+    @Benchmark
+    public String normalizeCanonical() {
+        return phoneNumberNormalizer.normalize(canonical);
+    }
+
+    @Benchmark
+    public String normalizeFormatted() {
+        return phoneNumberNormalizer.normalize(formatted);
+    }
+
+    /**
+     * What a hand-written normalization typically looks like: a chain of String operations.
+     */
+    @Benchmark
+    public String replaceAllFormatted() {
+        String digits = formatted.replace("(0)", "").replaceAll("[\\s\\-./()]", "");
+        return digits.startsWith("+31") && digits.length() == 12 ? digits : null;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PhoneNumberValidatorBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,50 @@
+package com.study.springboottuttorialjpa.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SizeBoundedEvictionTest {
+
+    @Test
+    void testShouldEvictExpiredThenEvictableElementsOnceOverMaximumSize() {
+        // Given
+        SizeBoundedEviction eviction = new SizeBoundedEviction(10);
+        Set<Integer> elements = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < 10; i++) {
+            elements.add(i);
+        }
+
+        // When
+        eviction.evictIfFull(elements, i -> i < 2, i -> i % 2 == 0);
+        int sizeAtMaximum = elements.size();
+        elements.add(10);
+        // Expired: 0 and 1; then even ones until 9 are left.
+        eviction.evictIfFull(elements, i -> i < 2, i -> i % 2 == 0);
+
+        // Then
+        assertThat(sizeAtMaximum).isEqualTo(10);
+        assertThat(elements).hasSize(9).doesNotContain(0, 1).contains(3, 5, 7, 9);
+        assertThat(eviction.evictionCount()).isEqualTo(2);
+    }
+
+    @Test
+    void testShouldOnlyEvictEvictableElements() {
+        // Given
+        SizeBoundedEviction eviction = new SizeBoundedEviction(10);
+        Set<Integer> elements = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < 20; i++) {
+            elements.add(i);
+        }
+
+        // When
+        eviction.evictIfFull(elements, i -> false, i -> i >= 15);
+
+        // Then
+        assertThat(elements).hasSize(15);
+        assertThat(eviction.evictionCount()).isEqualTo(5);
+    }
+}
@@ -0,0 +1,106 @@
+package com.study.springboottuttorialjpa.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnowflakeIdGeneratorTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    void testShouldEncodeTimestampAndNodeId() {
+        // Given
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(42, () -> NOW, 1000);
+
+        // When
+        long id = generator.nextId();
+
+        // Then
+        assertThat(id).isPositive();
+        assertThat(SnowflakeIdGenerator.timestampOf(id)).isEqualTo(NOW);
+        assertThat(SnowflakeIdGenerator.nodeIdOf(id)).isEqualTo(42);
+        assertThat(SnowflakeIdGenerator.firstIdAt(NOW)).isLessThanOrEqualTo(id);
+        assertThat(SnowflakeIdGenerator.firstIdAt(NOW + 1)).isGreaterThan(id);
+    }
+
+    @Test
+    void testShouldGenerateIncreasingIdsWithinSameMillisecondAndWhenClockGoesBack() {
+        // Given
+        AtomicLong clock = new AtomicLong(NOW);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, clock::get, 1000);
+
+        // When
+        List<Long> ids = new ArrayList<>();
+        // More than fit in one millisecond.
+        for (int i = 0; i < 5000; i++) {
+            ids.add(generator.nextId());
+        }
+        clock.addAndGet(-100);
+        for (int i = 0; i < 10; i++) {
+            ids.add(generator.nextId());
+        }
+
+        // Then
+        assertThat(ids).isSorted().doesNotHaveDuplicates();
+        assertThat(ids).allMatch(id -> SnowflakeIdGenerator.nodeIdOf(id) == 1);
+        // 904 ids borrowed from the next millisecond (the first of them while the clock still was at the last id),
+        // and 10 generated after the clock went back.
+        assertThat(generator.clockRegressionCount()).isEqualTo(903 + 10);
+    }
+
+    @Test
+    void testShouldRefuseWhenClockIsTooFarBehind() {
+        // Given
+        AtomicLong clock = new AtomicLong(NOW);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, clock::get, 1000);
+        generator.nextId();
+
+        // When
+        clock.addAndGet(-5000);
+
+        // Then
+        assertThatThrownBy(generator::nextId).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void testShouldRejectInvalidNodeId() {
+        assertThatThrownBy(() -> SnowflakeIdGenerator.forNode(1024)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(SnowflakeIdGenerator.forNode(3)).isSameAs(SnowflakeIdGenerator.forNode(3));
+    }
+
+    @Test
+    void testShouldGenerateUniqueIdsConcurrently() throws Exception {
+        // Given
+        SnowflakeIdGenerator generator = SnowflakeIdGenerator.forNode(7);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // When
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    ids.add(generator.nextId());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Then
+        assertThat(ids).hasSize(80_000);
+    }
+}